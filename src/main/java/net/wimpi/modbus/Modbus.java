@@ -169,6 +169,20 @@ public interface Modbus {
 	 */
 	public static final int DEFAULT_UNIT_ID = 0;
 
+	/**
+	 * Defines the unit identifier addressing all slaves of a serial line (=
+	 * <tt>0</tt>). Slaves apply broadcast write requests but do not answer
+	 * them.
+	 */
+	public static final int BROADCAST_UNIT_ID = 0;
+
+	/**
+	 * Defines the default turnaround delay in milliseconds that a master waits
+	 * after a broadcast, giving the slaves time to process it (=
+	 * <tt>100</tt>).
+	 */
+	public static final int DEFAULT_TURNAROUND_DELAY = 100;
+
 	/**
 	 * Defines the default setting for validity checking in transactions (=
 	 * <tt>true</tt>).
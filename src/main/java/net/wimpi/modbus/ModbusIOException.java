@@ -31,6 +31,7 @@ package net.wimpi.modbus;
 public class ModbusIOException extends ModbusException {
 
 	private boolean m_EOF = false;
+	private boolean m_Timeout = false;
 
 	/**
 	 * Constructs a new <tt>ModbusIOException</tt> instance.
@@ -98,4 +99,25 @@ public class ModbusIOException extends ModbusException {
 		m_EOF = b;
 	}// setEOF
 
+	/**
+	 * Tests if this <tt>ModbusIOException</tt> is caused by a response that
+	 * did not arrive within the receive timeout.
+	 * 
+	 * @return true if timed out, false otherwise.
+	 */
+	public boolean isTimeout() {
+		return m_Timeout;
+	}// isTimeout
+
+	/**
+	 * Sets the flag that determines whether this <tt>ModbusIOException</tt> was
+	 * caused by a receive timeout.
+	 * 
+	 * @param b
+	 *            true if timed out, false otherwise.
+	 */
+	public void setTimeout(boolean b) {
+		m_Timeout = b;
+	}// setTimeout
+
 }// ModbusIOException
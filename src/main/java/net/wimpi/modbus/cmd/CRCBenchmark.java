@@ -0,0 +1,131 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.cmd;
+
+import java.util.Random;
+
+import net.wimpi.modbus.util.ModbusUtil;
+
+/**
+ * Class that implements a simple commandline benchmark comparing the
+ * byte-wise CRC16 table lookup with the slice-by-8 implementation in
+ * <tt>ModbusUtil</tt>, as well as the LRC calculation.
+ * <p>
+ * Each variant is warmed up before it is measured, and the results of all
+ * runs are accumulated into a checksum to keep the JIT from discarding the
+ * calculation.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class CRCBenchmark {
+
+	public static void main(String[] args) {
+
+		int size = 256;
+		int iterations = 2000000;
+
+		try {
+			if (args.length > 0) {
+				size = Integer.parseInt(args[0]);
+			}
+			if (args.length > 1) {
+				iterations = Integer.parseInt(args[1]);
+			}
+		} catch (Exception ex) {
+			printUsage();
+			System.exit(1);
+		}
+
+		byte[] data = new byte[size];
+		new Random(42).nextBytes(data);
+
+		if (referenceCRC(data, 0, size) != ModbusUtil.calculateCRC16(data, 0,
+				size)) {
+			System.err.println("CRC mismatch between implementations.");
+			System.exit(1);
+		}
+
+		// warm up
+		for (int i = 0; i < 3; i++) {
+			run(data, iterations / 10);
+		}
+		run(data, iterations);
+	}// main
+
+	private static void run(byte[] data, int iterations) {
+		int len = data.length;
+		long sum = 0;
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sum += referenceCRC(data, 0, len);
+		}
+		long bytewise = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sum += ModbusUtil.calculateCRC16(data, 0, len);
+		}
+		long sliced = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sum += ModbusUtil.calculateCRC(data, 0, len)[0];
+		}
+		long legacy = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sum += ModbusUtil.calculateLRC(data, 0, len);
+		}
+		long lrc = System.nanoTime() - start;
+
+		System.out.println("Frame size " + len + " bytes, " + iterations
+				+ " iterations (checksum " + sum + ")");
+		print("CRC16 byte-wise", bytewise, iterations, len);
+		print("CRC16 slice-by-8", sliced, iterations, len);
+		print("calculateCRC (int[])", legacy, iterations, len);
+		print("LRC", lrc, iterations, len);
+	}// run
+
+	private static void print(String name, long nanos, int iterations,
+			int len) {
+		double perOp = (double) nanos / iterations;
+		double mbps = ((double) len * iterations / (1024 * 1024))
+				/ (nanos / 1e9);
+		System.out.println("  " + name + ": " + Math.round(perOp)
+				+ " ns/frame, " + Math.round(mbps) + " MB/s");
+	}// print
+
+	/**
+	 * The classic byte-wise CRC16 calculation with a single lookup table,
+	 * used as baseline.
+	 */
+	private static int referenceCRC(byte[] data, int off, int len) {
+		int crc = ModbusUtil.CRC16_INITIAL;
+		for (int i = off; i < off + len; i++) {
+			crc = ModbusUtil.updateCRC16(crc, data[i]);
+		}
+		return crc;
+	}// referenceCRC
+
+	private static void printUsage() {
+		System.out.println("java net.wimpi.modbus.cmd.CRCBenchmark [<frame size> [<iterations>]]");
+	}// printUsage
+
+}// class CRCBenchmark
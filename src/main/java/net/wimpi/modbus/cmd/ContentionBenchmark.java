@@ -0,0 +1,269 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.cmd;
+
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.util.AtomicCounter;
+import net.wimpi.modbus.util.LinkedQueue;
+import net.wimpi.modbus.util.Mutex;
+
+/**
+ * Class that implements a simple commandline benchmark of the
+ * synchronization primitives in <tt>net.wimpi.modbus.util</tt> under
+ * contention.
+ * <p>
+ * For an increasing number of threads, it measures many producers feeding a
+ * single consumer through a <tt>LinkedQueue</tt>, threads taking turns on a
+ * non-fair and a fair <tt>Mutex</tt>, and threads drawing transaction
+ * identifiers from an <tt>AtomicCounter</tt>. Each is compared with a
+ * monitor based baseline equivalent to the former implementations.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class ContentionBenchmark {
+
+	public static void main(String[] args) {
+
+		int maxThreads = 8;
+		int iterations = 200000;
+
+		try {
+			if (args.length > 0) {
+				maxThreads = Integer.parseInt(args[0]);
+			}
+			if (args.length > 1) {
+				iterations = Integer.parseInt(args[1]);
+			}
+		} catch (Exception ex) {
+			printUsage();
+			System.exit(1);
+		}
+
+		try {
+			// warm up
+			run(2, iterations / 10, false);
+			for (int n = 1; n <= maxThreads; n *= 2) {
+				run(n, iterations, true);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}// main
+
+	private static void run(int threads, int iterations, boolean print)
+			throws InterruptedException {
+		long queue = runQueue(threads, iterations, new LinkedQueue());
+		long monitorQueue = runQueue(threads, iterations, null);
+		long mutex = runMutex(threads, iterations, new Mutex());
+		long fairMutex = runMutex(threads, iterations, new Mutex(true));
+		long monitorMutex = runMutex(threads, iterations, null);
+		long counter = runCounter(threads, iterations, new AtomicCounter());
+		long monitorCounter = runCounter(threads, iterations, null);
+
+		if (!print) {
+			return;
+		}
+		long ops = (long) threads * iterations;
+		System.out.println(threads + " thread(s), " + iterations
+				+ " operations each");
+		print("LinkedQueue put/take", queue, ops);
+		print("monitor queue put/take", monitorQueue, ops);
+		print("Mutex", mutex, ops);
+		print("Mutex (fair)", fairMutex, ops);
+		print("synchronized", monitorMutex, ops);
+		print("AtomicCounter", counter, ops);
+		print("synchronized counter", monitorCounter, ops);
+	}// run
+
+	/**
+	 * Runs <tt>threads</tt> producers against a single consumer; the queue is
+	 * a <tt>MonitorQueue</tt> if <tt>q</tt> is null.
+	 */
+	private static long runQueue(final int threads, final int iterations,
+			final LinkedQueue q) throws InterruptedException {
+		final MonitorQueue mq = new MonitorQueue();
+		final Integer item = Integer.valueOf(1);
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] producers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			producers[i] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for (int j = 0; j < iterations; j++) {
+							if (q != null) {
+								q.put(item);
+							} else {
+								mq.put(item);
+							}
+						}
+					} catch (InterruptedException ex) {
+						// end
+					}
+				}
+			};
+			producers[i].start();
+		}
+		long total = (long) threads * iterations;
+		long begin = System.nanoTime();
+		start.countDown();
+		for (long i = 0; i < total; i++) {
+			if (q != null) {
+				q.take();
+			} else {
+				mq.take();
+			}
+		}
+		long elapsed = System.nanoTime() - begin;
+		join(producers);
+		return elapsed;
+	}// runQueue
+
+	/**
+	 * Runs <tt>threads</tt> threads taking turns on the given mutex, or on a
+	 * monitor if <tt>mutex</tt> is null.
+	 */
+	private static long runMutex(final int threads, final int iterations,
+			final Mutex mutex) throws InterruptedException {
+		final long[] shared = new long[1];
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for (int j = 0; j < iterations; j++) {
+							if (mutex != null) {
+								mutex.acquire();
+								try {
+									shared[0]++;
+								} finally {
+									mutex.release();
+								}
+							} else {
+								synchronized (shared) {
+									shared[0]++;
+								}
+							}
+						}
+					} catch (InterruptedException ex) {
+						// end
+					}
+				}
+			};
+			workers[i].start();
+		}
+		return measure(start, workers);
+	}// runMutex
+
+	/**
+	 * Runs <tt>threads</tt> threads incrementing the given counter, or a
+	 * <tt>MonitorCounter</tt> if <tt>counter</tt> is null.
+	 */
+	private static long runCounter(final int threads, final int iterations,
+			final AtomicCounter counter) throws InterruptedException {
+		final MonitorCounter mc = new MonitorCounter();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for (int j = 0; j < iterations; j++) {
+							if (counter != null) {
+								counter.increment();
+							} else {
+								mc.increment();
+							}
+						}
+					} catch (InterruptedException ex) {
+						// end
+					}
+				}
+			};
+			workers[i].start();
+		}
+		return measure(start, workers);
+	}// runCounter
+
+	private static long measure(CountDownLatch start, Thread[] threads)
+			throws InterruptedException {
+		long begin = System.nanoTime();
+		start.countDown();
+		join(threads);
+		return System.nanoTime() - begin;
+	}// measure
+
+	private static void join(Thread[] threads) throws InterruptedException {
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+	}// join
+
+	private static void print(String name, long nanos, long ops) {
+		System.out.println("  " + name + ": " + Math.round((double) nanos / ops)
+				+ " ns/op, " + Math.round(ops / (nanos / 1e9)) + " ops/s");
+	}// print
+
+	private static void printUsage() {
+		System.out.println("java net.wimpi.modbus.cmd.ContentionBenchmark [<max threads> [<iterations>]]");
+	}// printUsage
+
+	/**
+	 * Baseline queue guarded by a single monitor with wait/notify.
+	 */
+	private static class MonitorQueue {
+
+		private final LinkedList<Object> m_List = new LinkedList<Object>();
+
+		public synchronized void put(Object x) {
+			m_List.addLast(x);
+			notify();
+		}// put
+
+		public synchronized Object take() throws InterruptedException {
+			while (m_List.isEmpty()) {
+				wait();
+			}
+			return m_List.removeFirst();
+		}// take
+
+	}// inner class MonitorQueue
+
+	/**
+	 * Baseline wrapping counter synchronized on every increment.
+	 */
+	private static class MonitorCounter {
+
+		private int m_Value;
+
+		public synchronized int increment() {
+			if (m_Value == Modbus.MAX_TRANSACTION_ID) {
+				m_Value = 0;
+			}
+			return ++m_Value;
+		}// increment
+
+	}// inner class MonitorCounter
+
+}// class ContentionBenchmark
@@ -0,0 +1,165 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.cmd;
+
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.io.ModbusSerialTransaction;
+import net.wimpi.modbus.io.SerialTiming;
+import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
+import net.wimpi.modbus.net.LoopbackSerialBus;
+import net.wimpi.modbus.net.ModbusSerialListener;
+import net.wimpi.modbus.net.SerialConnection;
+import net.wimpi.modbus.procimg.SimpleProcessImage;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import net.wimpi.modbus.util.SerialParameters;
+
+/**
+ * Class that implements a simple commandline load test running a serial
+ * master against a <tt>ModbusSerialListener</tt> on an in-memory
+ * <tt>LoopbackSerialBus</tt>, no hardware required.
+ * <p>
+ * Reports the transaction rate and compares the elapsed time with the
+ * simulated wire time, which yields the framing and processing overhead of
+ * the serial stack.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class SerialLoopbackTest {
+
+	public static void main(String[] args) {
+
+		String encoding = "ascii";
+		int baudrate = 115200;
+		int repeat = 1000;
+		int count = 10;
+		double errorRate = 0;
+
+		try {
+			if (args.length > 0) {
+				encoding = args[0];
+			}
+			if (args.length > 1) {
+				baudrate = Integer.parseInt(args[1]);
+			}
+			if (args.length > 2) {
+				repeat = Integer.parseInt(args[2]);
+			}
+			if (args.length > 3) {
+				count = Integer.parseInt(args[3]);
+			}
+			if (args.length > 4) {
+				errorRate = Double.parseDouble(args[4]);
+			}
+		} catch (Exception ex) {
+			printUsage();
+			System.exit(1);
+		}
+
+		ModbusSerialListener listener = null;
+		SerialConnection con = null;
+		try {
+			// 1. Prepare a process image
+			SimpleProcessImage spi = new SimpleProcessImage();
+			for (int i = 0; i < count; i++) {
+				spi.addRegister(new SimpleRegister(i));
+			}
+			ModbusCoupler.getReference().setProcessImage(spi);
+			ModbusCoupler.getReference().setMaster(false);
+			ModbusCoupler.getReference().setUnitID(1);
+
+			// 2. Set up the bus and its parameters
+			LoopbackSerialBus bus = new LoopbackSerialBus(0);
+			bus.setTimingEnabled(baudrate > 0);
+			bus.setErrorRate(errorRate);
+			SerialParameters params = new SerialParameters();
+			params.setPortName("loopback");
+			params.setBaudRate((baudrate > 0) ? baudrate : 115200);
+			params.setEncoding(encoding);
+			params.setReceiveTimeout(500);
+
+			// 3. Start the slave
+			listener = new ModbusSerialListener(params,
+					bus.createTerminal("slave"));
+			listener.start();
+
+			// 4. Open the master
+			con = new SerialConnection(params, bus.createTerminal("master"));
+			con.open();
+			con.setReceiveTimeout(params.getReceiveTimeout());
+
+			ReadMultipleRegistersRequest req = new ReadMultipleRegistersRequest(
+					0, count);
+			req.setUnitID(1);
+			ModbusSerialTransaction trans = new ModbusSerialTransaction(con);
+			trans.setRequest(req);
+
+			// 5. Execute the transaction repeat times
+			int failed = 0;
+			bus.resetStatistics();
+			con.getTiming().resetStatistics();
+			long start = System.nanoTime();
+			for (int k = 0; k < repeat; k++) {
+				try {
+					trans.execute();
+				} catch (ModbusException ex) {
+					failed++;
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			long wire = bus.getWireTimeNanos();
+
+			System.out.println("Encoding " + encoding + ", " + baudrate
+					+ " baud, " + repeat + " transactions, " + failed
+					+ " failed");
+			System.out.println("  " + Math.round(repeat / (elapsed / 1e9))
+					+ " transactions/s, " + (elapsed / repeat / 1000)
+					+ " us/transaction");
+			System.out.println("  bytes on the wire: "
+					+ bus.getBytesTransmitted() + ", corrupted: "
+					+ bus.getCorruptedBytes());
+			System.out.println("  wire time: " + (wire / 1000000)
+					+ " ms, overhead: " + ((elapsed - wire) / 1000000)
+					+ " ms");
+			SerialTiming timing = con.getTiming();
+			System.out.println("  latency p50/p99: "
+					+ (timing.getLatencyNanos(1, 0.5) / 1000) + "/"
+					+ (timing.getLatencyNanos(1, 0.99) / 1000)
+					+ " us, receive timeout: " + timing.getReceiveTimeout(1)
+					+ " ms, transactions: " + timing.getTransactionCount(1)
+					+ ", timeouts: " + timing.getTimeoutCount(1)
+					+ ", bus utilization: "
+					+ Math.round(timing.getBusUtilization() * 100) + "%");
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		} finally {
+			if (con != null) {
+				con.close();
+			}
+			if (listener != null) {
+				listener.stop();
+			}
+		}
+	}// main
+
+	private static void printUsage() {
+		System.out.println("java net.wimpi.modbus.cmd.SerialLoopbackTest [<encoding> [<baudrate> [<repeat> [<registers> [<error rate>]]]]]");
+		System.out.println("A baudrate of 0 disables the wire time simulation.");
+	}// printUsage
+
+}// class SerialLoopbackTest
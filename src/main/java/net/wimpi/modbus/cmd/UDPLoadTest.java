@@ -0,0 +1,278 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.cmd;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.io.ModbusFrame;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
+import net.wimpi.modbus.net.ModbusUDPChannelListener;
+import net.wimpi.modbus.net.ModbusUDPListener;
+import net.wimpi.modbus.net.ResponseCallback;
+import net.wimpi.modbus.net.UDPMasterPipeline;
+import net.wimpi.modbus.procimg.IllegalAddressException;
+import net.wimpi.modbus.procimg.InvalidUnitIDException;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleProcessImage;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import net.wimpi.modbus.util.BufferPool;
+
+/**
+ * Class that implements a simple commandline load test for the Modbus/UDP
+ * slave implementations on the loopback interface.
+ * <p>
+ * A number of client threads each send requests and wait for the matching
+ * reply, reporting the achieved request rate and the average round trip
+ * time. In <tt>pipeline</tt> mode, a single <tt>UDPMasterPipeline</tt>
+ * keeps up to <tt>clients</tt> requests outstanding instead.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class UDPLoadTest {
+
+	public static void main(String[] args) {
+
+		String listenerType = "channel";
+		int clients = 4;
+		int repeat = 10000;
+		int workers = 1;
+		int delay = 0;
+		int port = 5502;
+
+		try {
+			if (args.length > 0) {
+				listenerType = args[0];
+			}
+			if (args.length > 1) {
+				clients = Integer.parseInt(args[1]);
+			}
+			if (args.length > 2) {
+				repeat = Integer.parseInt(args[2]);
+			}
+			if (args.length > 3) {
+				workers = Integer.parseInt(args[3]);
+			}
+			if (args.length > 4) {
+				delay = Integer.parseInt(args[4]);
+			}
+		} catch (Exception ex) {
+			printUsage();
+			System.exit(1);
+		}
+
+		ModbusUDPListener listener = null;
+		ModbusUDPChannelListener channelListener = null;
+		try {
+			// 1. Prepare a process image
+			SimpleProcessImage spi = (delay > 0) ? new SlowProcessImage(delay)
+					: new SimpleProcessImage();
+			for (int i = 0; i < 10; i++) {
+				spi.addRegister(new SimpleRegister(i));
+			}
+			ModbusCoupler.getReference().setProcessImage(spi);
+			ModbusCoupler.getReference().setMaster(false);
+			ModbusCoupler.getReference().setUnitID(1);
+
+			// 2. Start the slave
+			final InetAddress addr = InetAddress.getByName("127.0.0.1");
+			if (!"thread".equals(listenerType)) {
+				channelListener = new ModbusUDPChannelListener(addr);
+				channelListener.setPort(port);
+				channelListener.setWorkerCount(workers);
+				channelListener.start();
+			} else {
+				listener = new ModbusUDPListener(addr);
+				listener.setPort(port);
+				listener.setWorkerCount(workers);
+				listener.start();
+				Thread.sleep(100);
+			}
+
+			// 3. Run the clients
+			final int count = repeat;
+			final int dest = port;
+			long lost = 0;
+			long start = System.nanoTime();
+			if ("pipeline".equals(listenerType)) {
+				lost = runPipeline(addr, dest, clients, (long) clients * count);
+			} else {
+				final long[] failed = new long[clients];
+				Thread[] threads = new Thread[clients];
+				for (int i = 0; i < clients; i++) {
+					final int idx = i;
+					threads[i] = new Thread() {
+						public void run() {
+							failed[idx] = runClient(addr, dest, idx, count);
+						}
+					};
+					threads[i].start();
+				}
+				for (int i = 0; i < clients; i++) {
+					threads[i].join();
+					lost += failed[i];
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			long total = (long) clients * repeat;
+
+			System.out.println("Listener " + listenerType + ", " + clients
+					+ " clients, " + total + " requests, " + lost + " lost");
+			System.out.println("  " + Math.round(total / (elapsed / 1e9))
+					+ " requests/s, "
+					+ (elapsed * clients / total / 1000) + " us/request");
+			BufferPool pool = BufferPool.getDefault();
+			System.out.println("  buffer pool: " + pool.getAcquireCount()
+					+ " acquired, " + pool.getAllocationCount()
+					+ " allocated, " + pool.getOutstandingCount()
+					+ " outstanding");
+			long drops = (channelListener != null) ? channelListener
+					.getKernelDropCount() : listener.getKernelDropCount();
+			System.out.println("  kernel drops: " + drops);
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		} finally {
+			// the thread based listener is left to System.exit(), its
+			// receiver thread cannot be joined while blocked in receive
+			if (channelListener != null) {
+				channelListener.stop();
+			}
+		}
+		System.exit(0);
+	}// main
+
+	private static long runClient(InetAddress addr, int port, int id,
+			int count) {
+		long lost = 0;
+		DatagramSocket socket = null;
+		try {
+			socket = new DatagramSocket();
+			socket.setSoTimeout(500);
+			// requests are encoded and matched on frames, without messages
+			byte[] out = new byte[260];
+			ModbusFrame request = new ModbusFrame().wrap(ByteBuffer.wrap(out),
+					0);
+			request.setProtocolID(Modbus.DEFAULT_PROTOCOL_ID);
+			request.setUnitID(1);
+			int len = request.writeRequest(Modbus.READ_MULTIPLE_REGISTERS, 0,
+					10);
+			DatagramPacket packet = new DatagramPacket(out, len, addr, port);
+			byte[] in = new byte[260];
+			ModbusFrame response = new ModbusFrame().wrap(ByteBuffer.wrap(in),
+					0);
+			DatagramPacket reply = new DatagramPacket(in, in.length);
+			for (int k = 0; k < count; k++) {
+				int tid = (id << 12 | k) & 0xffff;
+				request.setTransactionID(tid);
+				socket.send(packet);
+				try {
+					do {
+						reply.setLength(in.length);
+						socket.receive(reply);
+					} while (response.getTransactionID() != tid);
+				} catch (java.net.SocketTimeoutException ex) {
+					lost++;
+				}
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		} finally {
+			if (socket != null) {
+				socket.close();
+			}
+		}
+		return lost;
+	}// runClient
+
+	private static long runPipeline(InetAddress addr, int port, int window,
+			long count) throws Exception {
+		final AtomicLong failed = new AtomicLong();
+		final CountDownLatch done = new CountDownLatch((int) count);
+		ResponseCallback callback = new ResponseCallback() {
+			public void responseReceived(ModbusRequest request,
+					ModbusResponse response) {
+				done.countDown();
+			}
+
+			public void requestFailed(ModbusRequest request,
+					ModbusException ex) {
+				failed.incrementAndGet();
+				done.countDown();
+			}
+		};
+		UDPMasterPipeline pipeline = new UDPMasterPipeline();
+		pipeline.setMaxPending(window);
+		pipeline.setTimeout(200);
+		pipeline.setRetries(3);
+		pipeline.open();
+		try {
+			ReadMultipleRegistersRequest req = new ReadMultipleRegistersRequest(
+					0, 10);
+			req.setUnitID(1);
+			for (long k = 0; k < count; k++) {
+				pipeline.submit(addr, port, req, callback);
+			}
+			done.await();
+			System.out.println("  retransmits: "
+					+ pipeline.getRetransmitCount() + ", stray replies: "
+					+ pipeline.getStrayCount());
+		} finally {
+			pipeline.close();
+		}
+		return failed.get();
+	}// runPipeline
+
+	private static void printUsage() {
+		System.out.println("java net.wimpi.modbus.cmd.UDPLoadTest [<channel|thread|pipeline> [<clients> [<repeat> [<workers> [<delay us>]]]]]");
+	}// printUsage
+
+	/**
+	 * Process image simulating a slow backend, e.g. a database, by blocking
+	 * for a fixed time whenever register 0 is accessed, i.e. once for every
+	 * request of the test, whether served through the range or the element
+	 * accessors.
+	 */
+	static class SlowProcessImage extends SimpleProcessImage {
+
+		private final long m_DelayNanos;
+
+		public SlowProcessImage(int delayMicros) {
+			m_DelayNanos = delayMicros * 1000L;
+		}// constructor
+
+		public Register getRegister(int unitId, int ref)
+				throws IllegalAddressException, InvalidUnitIDException {
+			if (ref == 0) {
+				LockSupport.parkNanos(m_DelayNanos);
+			}
+			return super.getRegister(unitId, ref);
+		}// getRegister
+
+	}// inner class SlowProcessImage
+
+}// class UDPLoadTest
@@ -21,13 +21,19 @@ import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.io.ModbusSerialTransaction;
 import net.wimpi.modbus.msg.*;
 import net.wimpi.modbus.net.SerialConnection;
+import net.wimpi.modbus.net.SerialTerminal;
 import net.wimpi.modbus.procimg.InputRegister;
 import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.profile.CompiledProfile;
+import net.wimpi.modbus.profile.Tag;
 import net.wimpi.modbus.util.BitVector;
 import net.wimpi.modbus.util.SerialParameters;
 
 /**
  * Modbus/Serial Master facade.
+ * <p>
+ * Write requests to unit id <tt>0</tt> are only sent as unanswered
+ * broadcasts once {@link #setBroadcasting(boolean)} has been enabled.
  * 
  * @author Dieter Wimberger
  * @author John Charlton
@@ -47,6 +53,8 @@ public class ModbusSerialMaster {
 	private ReadMultipleRegistersRequest m_ReadMultipleRegistersRequest;
 	private WriteSingleRegisterRequest m_WriteSingleRegisterRequest;
 	private WriteMultipleRegistersRequest m_WriteMultipleRegistersRequest;
+	private int[] m_ScanWords = new int[CompiledProfile.MAX_READ_REGISTERS];
+	private boolean m_Broadcasting = false;
 
 	/**
 	 * Constructs a new master facade instance for communication with a given
@@ -57,9 +65,24 @@ public class ModbusSerialMaster {
 	 *            to communicate with the slave device network.
 	 */
 	public ModbusSerialMaster(SerialParameters param) {
+		this(param, null);
+	}// constructor
+
+	/**
+	 * Constructs a new master facade instance for communication with a given
+	 * slave through the given <tt>SerialTerminal</tt>.
+	 * 
+	 * @param param
+	 *            SerialParameters specifies the serial port parameters to use
+	 *            to communicate with the slave device network.
+	 * @param terminal
+	 *            the <tt>SerialTerminal</tt> to be used, or <tt>null</tt> for
+	 *            the default jssc port.
+	 */
+	public ModbusSerialMaster(SerialParameters param, SerialTerminal terminal) {
 		try {
 			m_CommParameters = param;
-			m_Connection = new SerialConnection(m_CommParameters);
+			m_Connection = new SerialConnection(m_CommParameters, terminal);
 			m_ReadCoilsRequest = new ReadCoilsRequest();
 			m_ReadInputDiscretesRequest = new ReadInputDiscretesRequest();
 			m_WriteCoilRequest = new WriteCoilRequest();
@@ -102,6 +125,7 @@ public class ModbusSerialMaster {
 		if (m_Connection != null && !m_Connection.isOpen()) {
 			m_Connection.open();
 			m_Transaction = new ModbusSerialTransaction(m_Connection);
+			m_Transaction.setBroadcasting(m_Broadcasting);
 		}
 	}// connect
 
@@ -115,6 +139,29 @@ public class ModbusSerialMaster {
 		}
 	}// disconnect
 
+	/**
+	 * Sets the flag that controls whether write requests to unit id
+	 * <tt>0</tt> are sent as broadcasts, i.e. without waiting for a response.
+	 * 
+	 * @param b
+	 *            true if broadcasts should not be answered, false otherwise.
+	 */
+	public void setBroadcasting(boolean b) {
+		m_Broadcasting = b;
+		if (m_Transaction != null) {
+			m_Transaction.setBroadcasting(b);
+		}
+	}// setBroadcasting
+
+	/**
+	 * Tests if write requests to unit id <tt>0</tt> are sent as broadcasts.
+	 * 
+	 * @return true if broadcasts are not answered, false otherwise.
+	 */
+	public boolean isBroadcasting() {
+		return m_Broadcasting;
+	}// isBroadcasting
+
 	/**
 	 * Reads a given number of coil states from the slave.
 	 * <p/>
@@ -154,7 +201,9 @@ public class ModbusSerialMaster {
 	 *            the offset of the coil to be written.
 	 * @param state
 	 *            the coil state to be written.
-	 * @return the state of the coil as returned from the slave.
+	 * @return the state of the coil as returned from the slave, or the given
+	 *         state for a broadcast (unit id 0, see
+	 *         {@link #setBroadcasting(boolean)}).
 	 * @throws ModbusException
 	 *             if an I/O error, a slave exception or a transaction error
 	 *             occurs.
@@ -166,6 +215,10 @@ public class ModbusSerialMaster {
 		m_WriteCoilRequest.setCoil(state);
 		m_Transaction.setRequest(m_WriteCoilRequest);
 		m_Transaction.execute();
+		if (m_Broadcasting && m_WriteCoilRequest.isBroadcast()) {
+			// broadcasts are not answered
+			return state;
+		}
 		return ((WriteCoilResponse) m_Transaction.getResponse()).getCoil();
 	}// writeCoil
 
@@ -328,4 +381,86 @@ public class ModbusSerialMaster {
 		m_Transaction.execute();
 	}// writeMultipleRegisters
 
+	/**
+	 * Reads all tags of a device profile from the slave, and decodes their
+	 * scaled values.
+	 * 
+	 * @param unitid
+	 *            the slave unit id.
+	 * @param profile
+	 *            the <tt>CompiledProfile</tt> of the slave.
+	 * @param values
+	 *            the array receiving the values, indexed like the tags of the
+	 *            profile.
+	 * @throws ModbusException
+	 *             if an I/O error, a slave exception or a transaction error
+	 *             occurs.
+	 */
+	public synchronized void scan(int unitid, CompiledProfile profile,
+			double[] values) throws ModbusException {
+		scan(unitid, profile, values, null);
+	}// scan
+
+	/**
+	 * Reads all tags of a device profile from the slave, and decodes their
+	 * unscaled integer values.
+	 * 
+	 * @param unitid
+	 *            the slave unit id.
+	 * @param profile
+	 *            the <tt>CompiledProfile</tt> of the slave.
+	 * @param values
+	 *            the array receiving the values, indexed like the tags of the
+	 *            profile.
+	 * @throws ModbusException
+	 *             if an I/O error, a slave exception or a transaction error
+	 *             occurs.
+	 */
+	public synchronized void scan(int unitid, CompiledProfile profile,
+			long[] values) throws ModbusException {
+		scan(unitid, profile, null, values);
+	}// scan
+
+	private void scan(int unitid, CompiledProfile profile, double[] values,
+			long[] raw) throws ModbusException {
+		for (int b = 0; b < profile.getBlockCount(); b++) {
+			int ref = profile.getBlockReference(b);
+			int count = profile.getBlockSize(b);
+			int table = profile.getBlockTable(b);
+			if (table == Tag.COIL || table == Tag.DISCRETE_INPUT) {
+				BitVector bits = (table == Tag.COIL) ? readCoils(unitid, ref,
+						count) : readInputDiscretes(unitid, ref, count);
+				if (values != null) {
+					profile.decode(b, bits, values);
+				} else {
+					profile.decode(b, bits, raw);
+				}
+				continue;
+			}
+			// register values are decoded from a reused buffer
+			if (table == Tag.INPUT_REGISTER) {
+				m_ReadInputRegistersRequest.setUnitID(unitid);
+				m_ReadInputRegistersRequest.setReference(ref);
+				m_ReadInputRegistersRequest.setWordCount(count);
+				m_Transaction.setRequest(m_ReadInputRegistersRequest);
+				m_Transaction.execute();
+				((ReadInputRegistersResponse) m_Transaction.getResponse())
+						.getRegisterValues(m_ScanWords, 0);
+			} else {
+				m_ReadMultipleRegistersRequest.setUnitID(unitid);
+				m_ReadMultipleRegistersRequest.setReference(ref);
+				m_ReadMultipleRegistersRequest.setWordCount(count);
+				m_Transaction.setRequest(m_ReadMultipleRegistersRequest);
+				m_Transaction.execute();
+				((ReadMultipleRegistersResponse) m_Transaction.getResponse())
+						.getRegisterValues(m_ScanWords, 0);
+			}
+			if (values != null) {
+				profile.decode(b, m_ScanWords, values);
+			} else {
+				profile.decode(b, m_ScanWords, raw);
+			}
+		}
+	}// scan
+
 }// class ModbusSerialMaster
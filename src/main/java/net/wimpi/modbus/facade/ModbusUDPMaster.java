@@ -22,6 +22,8 @@ import net.wimpi.modbus.msg.*;
 import net.wimpi.modbus.net.UDPMasterConnection;
 import net.wimpi.modbus.procimg.InputRegister;
 import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.profile.CompiledProfile;
+import net.wimpi.modbus.profile.Tag;
 import net.wimpi.modbus.util.BitVector;
 
 import java.net.InetAddress;
@@ -46,6 +48,7 @@ public class ModbusUDPMaster {
 	private ReadMultipleRegistersRequest m_ReadMultipleRegistersRequest;
 	private WriteSingleRegisterRequest m_WriteSingleRegisterRequest;
 	private WriteMultipleRegistersRequest m_WriteMultipleRegistersRequest;
+	private int[] m_ScanWords = new int[CompiledProfile.MAX_READ_REGISTERS];
 
 	/**
 	 * Constructs a new master facade instance for communication with a given
@@ -303,4 +306,80 @@ public class ModbusUDPMaster {
 		m_Transaction.execute();
 	}// writeMultipleRegisters
 
+	/**
+	 * Reads all tags of a device profile from the slave, and decodes their
+	 * scaled values.
+	 * 
+	 * @param profile
+	 *            the <tt>CompiledProfile</tt> of the slave.
+	 * @param values
+	 *            the array receiving the values, indexed like the tags of the
+	 *            profile.
+	 * @throws ModbusException
+	 *             if an I/O error, a slave exception or a transaction error
+	 *             occurs.
+	 */
+	public synchronized void scan(CompiledProfile profile,
+			double[] values) throws ModbusException {
+		scan(profile, values, null);
+	}// scan
+
+	/**
+	 * Reads all tags of a device profile from the slave, and decodes their
+	 * unscaled integer values.
+	 * 
+	 * @param profile
+	 *            the <tt>CompiledProfile</tt> of the slave.
+	 * @param values
+	 *            the array receiving the values, indexed like the tags of the
+	 *            profile.
+	 * @throws ModbusException
+	 *             if an I/O error, a slave exception or a transaction error
+	 *             occurs.
+	 */
+	public synchronized void scan(CompiledProfile profile,
+			long[] values) throws ModbusException {
+		scan(profile, null, values);
+	}// scan
+
+	private void scan(CompiledProfile profile, double[] values,
+			long[] raw) throws ModbusException {
+		for (int b = 0; b < profile.getBlockCount(); b++) {
+			int ref = profile.getBlockReference(b);
+			int count = profile.getBlockSize(b);
+			int table = profile.getBlockTable(b);
+			if (table == Tag.COIL || table == Tag.DISCRETE_INPUT) {
+				BitVector bits = (table == Tag.COIL) ? readCoils(ref,
+						count) : readInputDiscretes(ref, count);
+				if (values != null) {
+					profile.decode(b, bits, values);
+				} else {
+					profile.decode(b, bits, raw);
+				}
+				continue;
+			}
+			// register values are decoded from a reused buffer
+			if (table == Tag.INPUT_REGISTER) {
+				m_ReadInputRegistersRequest.setReference(ref);
+				m_ReadInputRegistersRequest.setWordCount(count);
+				m_Transaction.setRequest(m_ReadInputRegistersRequest);
+				m_Transaction.execute();
+				((ReadInputRegistersResponse) m_Transaction.getResponse())
+						.getRegisterValues(m_ScanWords, 0);
+			} else {
+				m_ReadMultipleRegistersRequest.setReference(ref);
+				m_ReadMultipleRegistersRequest.setWordCount(count);
+				m_Transaction.setRequest(m_ReadMultipleRegistersRequest);
+				m_Transaction.execute();
+				((ReadMultipleRegistersResponse) m_Transaction.getResponse())
+						.getRegisterValues(m_ScanWords, 0);
+			}
+			if (values != null) {
+				profile.decode(b, m_ScanWords, values);
+			} else {
+				profile.decode(b, m_ScanWords, raw);
+			}
+		}
+	}// scan
+
 }// class ModbusUDPMaster
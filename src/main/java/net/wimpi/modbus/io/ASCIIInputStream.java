@@ -57,39 +57,55 @@ public class ASCIIInputStream extends FilterInputStream {
 	 *             if an I/O error occurs.
 	 */
 	public int read() throws IOException {
-		StringBuffer sbuf = new StringBuffer(2);
 		int ch = in.read();
 		if (ch == -1) {
 			return -1;
 		}
-		// System.out.println("Read "+ch+ "="+(char)ch);
-		sbuf.append((char) ch);
-		if (sbuf.charAt(0) == ':') {
-			// System.out.println("FRAME START");
+		if (ch == ':') {
 			return ModbusASCIITransport.FRAME_START;
-		} else {
-			if (sbuf.charAt(0) == '\r') {
-				if (in.read() == 10) {
-					// System.out.println("FRAME END");
-					return ModbusASCIITransport.FRAME_END;
-				} else {
-					// malformed stream
-					throw new IOException("Malformed Stream No Frame Delims");
-				}
+		} else if (ch == '\r') {
+			if (in.read() == 10) {
+				return ModbusASCIITransport.FRAME_END;
 			} else {
-				try {
-					sbuf.append((char) in.read());
-					// System.out.println("Read byte: " +
-					// sbuf.toString().toLowerCase());
-					return Integer.parseInt(sbuf.toString().toLowerCase(), 16);
-				} catch (NumberFormatException ex) {
-					// malformed stream
-					if (Modbus.debug)
-						System.out.println(sbuf.toString());
-					throw new IOException("Malformed Stream - Wrong Characters");
-				}
+				// malformed stream
+				throw new IOException("Malformed Stream No Frame Delims");
+			}
+		} else {
+			int lo = in.read();
+			int hi = digit(ch);
+			int low = digit(lo);
+			if (hi < 0 || low < 0) {
+				// malformed stream
+				if (Modbus.debug)
+					System.out.println("" + (char) ch + (char) lo);
+				throw new IOException("Malformed Stream - Wrong Characters");
 			}
+			return (hi << 4) | low;
 		}
 	}// read
 
+	/**
+	 * Returns the value of the given hexadecimal character.
+	 * 
+	 * @param ch
+	 *            the character.
+	 * @return the value, or -1 if the character is not a hex digit.
+	 */
+	private static int digit(int ch) {
+		return (ch >= 0 && ch < c_HexValues.length) ? c_HexValues[ch] : -1;
+	}// digit
+
+	private static final byte[] c_HexValues = new byte[128];
+
+	static {
+		java.util.Arrays.fill(c_HexValues, (byte) -1);
+		for (int i = 0; i < 10; i++) {
+			c_HexValues['0' + i] = (byte) i;
+		}
+		for (int i = 0; i < 6; i++) {
+			c_HexValues['a' + i] = (byte) (10 + i);
+			c_HexValues['A' + i] = (byte) (10 + i);
+		}
+	}// static initializer
+
 }// class ASCIIInputStream
@@ -20,13 +20,16 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.FilterOutputStream;
 
-import net.wimpi.modbus.util.ModbusUtil;
+import net.wimpi.modbus.Modbus;
 
 /**
  * Class implementing a specialized <tt>OutputStream</tt> which encodes bytes
  * written to the stream into two hexadecimal characters each. Note that the
  * "virtual" characters FRAME_START and FRAME_END are exceptions, they are
  * translated to the respective characters as given by the specification.
+ * <p>
+ * The encoded characters are collected and passed on to the raw stream with a
+ * single write when the stream is flushed.
  * 
  * @author Dieter Wimberger
  * @version @version@ (@date@)
@@ -45,6 +48,7 @@ public class ASCIIOutputStream extends FilterOutputStream {
 	 */
 	public ASCIIOutputStream(OutputStream out) {
 		super(out);
+		m_Buffer = new byte[2 * Modbus.MAX_MESSAGE_LENGTH + 4];
 	}// constructor
 
 	/**
@@ -58,18 +62,14 @@ public class ASCIIOutputStream extends FilterOutputStream {
 	 */
 	public void write(int b) throws IOException {
 		if (b == ModbusASCIITransport.FRAME_START) {
-			out.write(58);
-			// System.out.println("Wrote FRAME_START");
-			return;
+			m_Count = 0; // drop leftovers of a failed frame
+			append(58);
 		} else if (b == ModbusASCIITransport.FRAME_END) {
-			out.write(13);
-			out.write(10);
-			// System.out.println("Wrote FRAME_END");
-			return;
+			append(13);
+			append(10);
 		} else {
-			out.write(ModbusUtil.toHex(b));
-			// System.out.println("Wrote byte "+b+"="+new
-			// String(ModbusUtil.toHex(b)));
+			append(HEX_DIGITS[(b >> 4) & 0x0f]);
+			append(HEX_DIGITS[b & 0x0f]);
 		}
 	}// write
 
@@ -103,9 +103,55 @@ public class ASCIIOutputStream extends FilterOutputStream {
 	 *             if an I/O error occurs.
 	 */
 	public void write(byte[] data, int off, int len) throws IOException {
-		for (int i = off; i < len; i++) {
+		for (int i = off; i < off + len; i++) {
 			write(data[i]);
 		}
 	}// write(byte[])
 
+	/**
+	 * Writes all encoded characters to the raw output stream and flushes it.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	/**
+	 * Writes bytes that are already encoded, e.g. a complete frame including
+	 * the frame delimiters, directly to the underlying stream and flushes it.
+	 * 
+	 * @param data
+	 *            the encoded bytes.
+	 * @param len
+	 *            the number of bytes to write.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public void writeEncoded(byte[] data, int len) throws IOException {
+		m_Count = 0;
+		out.write(data, 0, len);
+		out.flush();
+	}// writeEncoded
+
+	public void flush() throws IOException {
+		if (m_Count > 0) {
+			out.write(m_Buffer, 0, m_Count);
+			m_Count = 0;
+		}
+		out.flush();
+	}// flush
+
+	private void append(int ch) {
+		if (m_Count == m_Buffer.length) {
+			byte[] buf = new byte[m_Buffer.length * 2];
+			System.arraycopy(m_Buffer, 0, buf, 0, m_Count);
+			m_Buffer = buf;
+		}
+		m_Buffer[m_Count++] = (byte) ch;
+	}// append
+
+	private byte[] m_Buffer;
+	private int m_Count;
+
+	private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5',
+			'6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
 }// class ASCIIOutputStream
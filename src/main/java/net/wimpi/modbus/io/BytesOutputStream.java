@@ -20,6 +20,8 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import net.wimpi.modbus.util.BitVector;
+
 /**
  * Class implementing a byte array output stream with a DataInput interface.
  * 
@@ -69,6 +71,25 @@ public class BytesOutputStream extends FastByteArrayOutputStream implements
 		count = 0;
 	}// reset
 
+	/**
+	 * Writes the bits of the given <tt>BitVector</tt> packed as in Modbus coil
+	 * messages, straight into the output buffer. Bytes beyond the size of the
+	 * <tt>BitVector</tt> are written as zero.
+	 * 
+	 * @param bits
+	 *            the <tt>BitVector</tt> to be written.
+	 * @param len
+	 *            the number of bytes to be written.
+	 */
+	public void writeBits(BitVector bits, int len) {
+		ensureCapacity(count + len);
+		int n = bits.pack(0, Math.min(bits.size(), len * 8), buf, count);
+		for (int k = n; k < len; k++) {
+			buf[count + k] = 0;
+		}
+		count += len;
+	}// writeBits
+
 	public void writeBoolean(boolean v) throws IOException {
 		m_Dout.writeBoolean(v);
 	}// writeBoolean
@@ -0,0 +1,266 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusIOException;
+
+/**
+ * Class implementing a circuit breaker for the transactions with one device.
+ * <p>
+ * The breaker is <i>closed</i> while the device answers. After a number of
+ * consecutive failed transactions it <i>opens</i>, and requests fail
+ * immediately with a <tt>ModbusIOException</tt> instead of waiting for all
+ * retries to time out. Once the open delay has passed, the breaker is
+ * <i>half open</i> and lets a single probe request through: if it succeeds
+ * the breaker closes, otherwise it opens again with twice the delay, up to a
+ * maximum.
+ * <p>
+ * An exception response counts as success, as the device is evidently
+ * reachable.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class CircuitBreaker {
+
+	/**
+	 * State in which requests pass.
+	 */
+	public static final int CLOSED = 0;
+
+	/**
+	 * State in which requests fail immediately.
+	 */
+	public static final int OPEN = 1;
+
+	/**
+	 * State in which a single probe request is in progress.
+	 */
+	public static final int HALF_OPEN = 2;
+
+	private final String m_Name;
+	private int m_FailureThreshold = 3;
+	private long m_OpenDelay = 1000;
+	private long m_MaxOpenDelay = 60000;
+
+	private int m_State = CLOSED;
+	private int m_Failures;
+	private long m_CurrentDelay;
+	private long m_OpenUntil;
+	private long m_TripCount;
+	private long m_RejectedCount;
+
+	/**
+	 * Constructs a new <tt>CircuitBreaker</tt> with the given name.
+	 * 
+	 * @param name
+	 *            the name of the device, used in messages.
+	 */
+	public CircuitBreaker(String name) {
+		m_Name = name;
+	}// constructor
+
+	/**
+	 * Returns the name of this <tt>CircuitBreaker</tt>.
+	 * 
+	 * @return the name.
+	 */
+	public String getName() {
+		return m_Name;
+	}// getName
+
+	/**
+	 * Sets the number of consecutive failures that open the breaker.
+	 * 
+	 * @param n
+	 *            the number of failures.
+	 */
+	public synchronized void setFailureThreshold(int n) {
+		m_FailureThreshold = Math.max(1, n);
+	}// setFailureThreshold
+
+	/**
+	 * Returns the number of consecutive failures that open the breaker.
+	 * 
+	 * @return the number of failures.
+	 */
+	public synchronized int getFailureThreshold() {
+		return m_FailureThreshold;
+	}// getFailureThreshold
+
+	/**
+	 * Sets the time the breaker stays open before the first probe.
+	 * 
+	 * @param ms
+	 *            the delay in milliseconds.
+	 */
+	public synchronized void setOpenDelay(long ms) {
+		m_OpenDelay = Math.max(1, ms);
+	}// setOpenDelay
+
+	/**
+	 * Returns the time the breaker stays open before the first probe.
+	 * 
+	 * @return the delay in milliseconds.
+	 */
+	public synchronized long getOpenDelay() {
+		return m_OpenDelay;
+	}// getOpenDelay
+
+	/**
+	 * Sets the maximum time the breaker stays open between probes.
+	 * 
+	 * @param ms
+	 *            the maximum delay in milliseconds.
+	 */
+	public synchronized void setMaxOpenDelay(long ms) {
+		m_MaxOpenDelay = Math.max(1, ms);
+	}// setMaxOpenDelay
+
+	/**
+	 * Returns the maximum time the breaker stays open between probes.
+	 * 
+	 * @return the maximum delay in milliseconds.
+	 */
+	public synchronized long getMaxOpenDelay() {
+		return m_MaxOpenDelay;
+	}// getMaxOpenDelay
+
+	/**
+	 * Admits a request, failing if the breaker is open. If the open delay
+	 * has passed, the calling request becomes the probe. Every admitted
+	 * request has to be followed by {@link #recordSuccess()} or
+	 * {@link #recordFailure()}.
+	 * 
+	 * @return true if the request is the probe, which should be tried only
+	 *         once, false otherwise.
+	 * @throws ModbusIOException
+	 *             if the breaker is open or a probe is in progress.
+	 */
+	public synchronized boolean acquire() throws ModbusIOException {
+		if (m_State == CLOSED) {
+			return false;
+		}
+		if (m_State == OPEN && System.currentTimeMillis() >= m_OpenUntil) {
+			m_State = HALF_OPEN;
+			if (Modbus.debug)
+				System.out.println("CircuitBreaker " + m_Name + " half open");
+			return true;
+		}
+		m_RejectedCount++;
+		throw new ModbusIOException("Circuit open for " + m_Name);
+	}// acquire
+
+	/**
+	 * Records a transaction that reached the device.
+	 */
+	public synchronized void recordSuccess() {
+		if (m_State != CLOSED && Modbus.debug)
+			System.out.println("CircuitBreaker " + m_Name + " closed");
+		m_State = CLOSED;
+		m_Failures = 0;
+		m_CurrentDelay = 0;
+	}// recordSuccess
+
+	/**
+	 * Records a transaction that failed with an I/O error, i.e. after all
+	 * retries were exhausted.
+	 */
+	public synchronized void recordFailure() {
+		m_Failures++;
+		if (m_State == HALF_OPEN) {
+			open(Math.min(m_MaxOpenDelay, m_CurrentDelay * 2));
+		} else if (m_State == CLOSED && m_Failures >= m_FailureThreshold) {
+			open(Math.min(m_MaxOpenDelay, m_OpenDelay));
+		}
+	}// recordFailure
+
+	private void open(long delay) {
+		m_State = OPEN;
+		m_CurrentDelay = delay;
+		m_OpenUntil = System.currentTimeMillis() + delay;
+		m_TripCount++;
+		if (Modbus.debug)
+			System.out.println("CircuitBreaker " + m_Name + " open for "
+					+ delay + " ms");
+	}// open
+
+	/**
+	 * Closes the breaker, e.g. after the device has been repaired.
+	 */
+	public void reset() {
+		recordSuccess();
+	}// reset
+
+	/**
+	 * Returns the state of this <tt>CircuitBreaker</tt>.
+	 * 
+	 * @return {@link #CLOSED}, {@link #OPEN} or {@link #HALF_OPEN}.
+	 */
+	public synchronized int getState() {
+		return m_State;
+	}// getState
+
+	/**
+	 * Returns the number of consecutive failed transactions.
+	 * 
+	 * @return the number of failures.
+	 */
+	public synchronized int getConsecutiveFailures() {
+		return m_Failures;
+	}// getConsecutiveFailures
+
+	/**
+	 * Returns the number of times the breaker opened.
+	 * 
+	 * @return the number of trips.
+	 */
+	public synchronized long getTripCount() {
+		return m_TripCount;
+	}// getTripCount
+
+	/**
+	 * Returns the number of requests that failed immediately.
+	 * 
+	 * @return the number of rejected requests.
+	 */
+	public synchronized long getRejectedCount() {
+		return m_RejectedCount;
+	}// getRejectedCount
+
+	/**
+	 * Returns the time until the next probe is let through.
+	 * 
+	 * @return the time in milliseconds, 0 if not open.
+	 */
+	public synchronized long getRemainingOpenTime() {
+		if (m_State != OPEN) {
+			return 0;
+		}
+		return Math.max(0, m_OpenUntil - System.currentTimeMillis());
+	}// getRemainingOpenTime
+
+	public synchronized String toString() {
+		String state = (m_State == CLOSED) ? "closed"
+				: (m_State == OPEN) ? "open" : "half open";
+		return "CircuitBreaker[" + m_Name + ", " + state + ", " + m_Failures
+				+ " failures, " + m_TripCount + " trips, " + m_RejectedCount
+				+ " rejected]";
+	}// toString
+
+}// class CircuitBreaker
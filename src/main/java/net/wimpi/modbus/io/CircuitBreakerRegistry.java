@@ -0,0 +1,142 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class that holds the <tt>CircuitBreaker</tt> instances of the devices
+ * polled by a master, keyed by endpoint and unit identifier, e.g.
+ * <tt>192.168.1.10:502/1</tt> or <tt>/dev/ttyS0/3</tt>.
+ * <p>
+ * New breakers are configured with the threshold and delays of the
+ * registry. A transaction uses a registry once it has been set with
+ * <tt>setCircuitBreakers()</tt>; the shared default registry can be used
+ * for monitoring all devices of an application.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class CircuitBreakerRegistry {
+
+	private static final CircuitBreakerRegistry c_Default = new CircuitBreakerRegistry();
+
+	private final ConcurrentHashMap<String, CircuitBreaker> m_Breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	private int m_FailureThreshold = 3;
+	private long m_OpenDelay = 1000;
+	private long m_MaxOpenDelay = 60000;
+
+	/**
+	 * Returns the shared default <tt>CircuitBreakerRegistry</tt>.
+	 * 
+	 * @return the default registry.
+	 */
+	public static CircuitBreakerRegistry getDefault() {
+		return c_Default;
+	}// getDefault
+
+	/**
+	 * Returns the breaker of the given device, creating it if necessary.
+	 * 
+	 * @param name
+	 *            the endpoint and unit of the device.
+	 * @return the <tt>CircuitBreaker</tt>.
+	 */
+	public CircuitBreaker getBreaker(String name) {
+		CircuitBreaker cb = m_Breakers.get(name);
+		if (cb == null) {
+			CircuitBreaker created = new CircuitBreaker(name);
+			synchronized (this) {
+				created.setFailureThreshold(m_FailureThreshold);
+				created.setOpenDelay(m_OpenDelay);
+				created.setMaxOpenDelay(m_MaxOpenDelay);
+			}
+			cb = m_Breakers.putIfAbsent(name, created);
+			if (cb == null) {
+				cb = created;
+			}
+		}
+		return cb;
+	}// getBreaker
+
+	/**
+	 * Returns a snapshot of all breakers of this registry.
+	 * 
+	 * @return a list of <tt>CircuitBreaker</tt> instances.
+	 */
+	public List<CircuitBreaker> getBreakers() {
+		return new ArrayList<CircuitBreaker>(m_Breakers.values());
+	}// getBreakers
+
+	/**
+	 * Returns the breakers that are currently not closed.
+	 * 
+	 * @return a list of <tt>CircuitBreaker</tt> instances.
+	 */
+	public List<CircuitBreaker> getOpenBreakers() {
+		List<CircuitBreaker> open = new ArrayList<CircuitBreaker>();
+		for (CircuitBreaker cb : m_Breakers.values()) {
+			if (cb.getState() != CircuitBreaker.CLOSED) {
+				open.add(cb);
+			}
+		}
+		return open;
+	}// getOpenBreakers
+
+	/**
+	 * Removes the breaker of the given device.
+	 * 
+	 * @param name
+	 *            the endpoint and unit of the device.
+	 */
+	public void remove(String name) {
+		m_Breakers.remove(name);
+	}// remove
+
+	/**
+	 * Sets the failure threshold of breakers created afterwards.
+	 * 
+	 * @param n
+	 *            the number of consecutive failures that open a breaker.
+	 */
+	public synchronized void setFailureThreshold(int n) {
+		m_FailureThreshold = Math.max(1, n);
+	}// setFailureThreshold
+
+	/**
+	 * Sets the open delay of breakers created afterwards.
+	 * 
+	 * @param ms
+	 *            the delay before the first probe in milliseconds.
+	 */
+	public synchronized void setOpenDelay(long ms) {
+		m_OpenDelay = Math.max(1, ms);
+	}// setOpenDelay
+
+	/**
+	 * Sets the maximum open delay of breakers created afterwards.
+	 * 
+	 * @param ms
+	 *            the maximum delay between probes in milliseconds.
+	 */
+	public synchronized void setMaxOpenDelay(long ms) {
+		m_MaxOpenDelay = Math.max(1, ms);
+	}// setMaxOpenDelay
+
+}// class CircuitBreakerRegistry
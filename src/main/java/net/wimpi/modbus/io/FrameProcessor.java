@@ -0,0 +1,286 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.BulkProcessImage;
+import net.wimpi.modbus.procimg.DigitalIn;
+import net.wimpi.modbus.procimg.DigitalOut;
+import net.wimpi.modbus.procimg.IllegalAddressException;
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.procimg.InvalidUnitIDException;
+import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.Register;
+
+/**
+ * Class implementing the execution of request frames against a process
+ * image, writing the response frame directly.
+ * <p>
+ * This is the allocation free counterpart of decoding a
+ * <tt>ModbusRequest</tt>, calling <tt>createResponse()</tt> and encoding the
+ * <tt>ModbusResponse</tt>: the request fields are read from a
+ * {@link ModbusFrame}, and the results are put straight into the response
+ * frame. Read requests are served through the range methods of the process
+ * image, or with a single bulk copy of the range from a
+ * <tt>BulkProcessImage</tt>. The responses are the same as those of the
+ * message classes, including the exception responses; unknown function
+ * codes are answered with an illegal function exception.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public final class FrameProcessor {
+
+	/**
+	 * Maximum number of registers per read request.
+	 */
+	public static final int MAX_READ_REGISTERS = 125;
+
+	/**
+	 * Maximum number of registers per write request.
+	 */
+	public static final int MAX_WRITE_REGISTERS = 123;
+
+	/**
+	 * Maximum number of coils per write request.
+	 */
+	public static final int MAX_WRITE_BITS = 1968;
+
+	private FrameProcessor() {
+	}// constructor
+
+	/**
+	 * Executes the request frame against the given process image and writes
+	 * the response frame.
+	 * <p>
+	 * If the given process image is <tt>null</tt>, the one of the
+	 * <tt>ModbusCoupler</tt> is used. The response frame may be wrapped
+	 * around the same buffer region as the request, as all request fields are
+	 * read before the response is written.
+	 * 
+	 * @param image
+	 *            the process image, or <tt>null</tt>.
+	 * @param request
+	 *            the request frame.
+	 * @param length
+	 *            the number of valid bytes of the request frame.
+	 * @param response
+	 *            the frame to write the response to.
+	 * @return the length of the response frame, without checksum, 0 if
+	 *         nothing is to be sent, or -1 if the request is malformed.
+	 */
+	public static int execute(ProcessImage image, ModbusFrame request,
+			int length, ModbusFrame response) {
+		int pdulen = length - request.getHeaderLength();
+		if (pdulen < 1) {
+			return -1;
+		}
+		int fc = request.getFunctionCode();
+		int unit = request.getUnitID();
+		if (image == null) {
+			image = ModbusCoupler.getReference().getProcessImage();
+		}
+		if (image == null) {
+			response.copyHeader(request);
+			return response.writeException(fc,
+					Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+		}
+		try {
+			switch (fc) {
+			case Modbus.READ_COILS:
+			case Modbus.READ_INPUT_DISCRETES:
+			case Modbus.READ_MULTIPLE_REGISTERS:
+			case Modbus.READ_INPUT_REGISTERS:
+				if (pdulen < 5) {
+					return -1;
+				}
+				return read(image, fc, unit, request.getReference(),
+						request.getCount(), request, response);
+			case Modbus.WRITE_COIL:
+			case Modbus.WRITE_SINGLE_REGISTER:
+				if (pdulen < 5) {
+					return -1;
+				}
+				return writeSingle(image, fc, unit, request, response);
+			case Modbus.WRITE_MULTIPLE_COILS:
+			case Modbus.WRITE_MULTIPLE_REGISTERS:
+				if (pdulen < 6 || pdulen < 6 + request.getRequestByteCount()) {
+					return -1;
+				}
+				return writeMultiple(image, fc, unit, request, response);
+			default:
+				response.copyHeader(request);
+				return response.writeException(fc,
+						Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+			}
+		} catch (IllegalAddressException ex) {
+			response.copyHeader(request);
+			return response.writeException(fc,
+					Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+		} catch (InvalidUnitIDException ex) {
+			return 0; // don't send a response
+		}
+	}// execute
+
+	private static int read(ProcessImage image, int fc, int unit, int ref,
+			int count, ModbusFrame request, ModbusFrame response)
+			throws IllegalAddressException, InvalidUnitIDException {
+
+		boolean bits = fc == Modbus.READ_COILS
+				|| fc == Modbus.READ_INPUT_DISCRETES;
+		if (count < 1
+				|| count > (bits ? Modbus.MAX_BITS : MAX_READ_REGISTERS)) {
+			response.copyHeader(request);
+			return response.writeException(fc, Modbus.ILLEGAL_VALUE_EXCEPTION);
+		}
+		response.copyHeader(request);
+		response.setFunctionCode(fc);
+		int bytes;
+		if (image instanceof BulkProcessImage) {
+			// copy straight from the backing storage into the frame
+			BulkProcessImage bulk = (BulkProcessImage) image;
+			int data = response.getPDUOffset() + 2;
+			switch (fc) {
+			case Modbus.READ_COILS:
+				bytes = (count + 7) / 8;
+				bulk.readCoils(unit, ref, count, response.getBuffer(), data);
+				break;
+			case Modbus.READ_INPUT_DISCRETES:
+				bytes = (count + 7) / 8;
+				bulk.readDiscreteInputs(unit, ref, count, response.getBuffer(),
+						data);
+				break;
+			case Modbus.READ_INPUT_REGISTERS:
+				bytes = count * 2;
+				bulk.readInputRegisters(unit, ref, count, response.getBuffer(),
+						data);
+				break;
+			default:
+				bytes = count * 2;
+				bulk.readRegisters(unit, ref, count, response.getBuffer(), data);
+				break;
+			}
+			response.setByteCount(bytes);
+			return response.setPDULength(2 + bytes);
+		}
+		// the range methods are the read path of the image, broadcasts are
+		// only accepted for writes
+		switch (fc) {
+		case Modbus.READ_COILS:
+			bytes = (count + 7) / 8;
+			DigitalOut[] douts = image.getDigitalOutRange(unit, ref, count);
+			for (int k = 0; k < bytes; k++) {
+				int v = 0;
+				for (int i = k * 8; i < count && i < k * 8 + 8; i++) {
+					if (douts[i].isSet()) {
+						v |= 1 << (i & 7);
+					}
+				}
+				response.setDataByte(k, v);
+			}
+			break;
+		case Modbus.READ_INPUT_DISCRETES:
+			bytes = (count + 7) / 8;
+			DigitalIn[] dins = image.getDigitalInRange(unit, ref, count);
+			for (int k = 0; k < bytes; k++) {
+				int v = 0;
+				for (int i = k * 8; i < count && i < k * 8 + 8; i++) {
+					if (dins[i].isSet()) {
+						v |= 1 << (i & 7);
+					}
+				}
+				response.setDataByte(k, v);
+			}
+			break;
+		case Modbus.READ_INPUT_REGISTERS:
+			bytes = count * 2;
+			InputRegister[] iregs = image.getInputRegisterRange(unit, ref,
+					count);
+			for (int i = 0; i < count; i++) {
+				response.setRegister(i, iregs[i].getValue());
+			}
+			break;
+		default:
+			bytes = count * 2;
+			Register[] regs = image.getRegisterRange(unit, ref, count);
+			for (int i = 0; i < count; i++) {
+				response.setRegister(i, regs[i].getValue());
+			}
+			break;
+		}
+		response.setByteCount(bytes);
+		return response.setPDULength(2 + bytes);
+	}// read
+
+	private static int writeSingle(ProcessImage image, int fc, int unit,
+			ModbusFrame request, ModbusFrame response)
+			throws IllegalAddressException, InvalidUnitIDException {
+
+		int ref = request.getReference();
+		int value = request.getValue();
+		if (fc == Modbus.WRITE_COIL) {
+			DigitalOut dout = image.getDigitalOut(unit, ref);
+			dout.set((value >> 8) == (Modbus.COIL_ON & 0xff));
+			value = dout.isSet() ? (Modbus.COIL_ON & 0xff) << 8
+					: Modbus.COIL_OFF;
+		} else {
+			image.getRegister(unit, ref).setValue(value);
+		}
+		response.copyHeader(request);
+		return response.writeRequest(fc, ref, value);
+	}// writeSingle
+
+	private static int writeMultiple(ProcessImage image, int fc, int unit,
+			ModbusFrame request, ModbusFrame response)
+			throws IllegalAddressException, InvalidUnitIDException {
+
+		int ref = request.getReference();
+		int count = request.getCount();
+		boolean bits = fc == Modbus.WRITE_MULTIPLE_COILS;
+		if (count < 1 || count > (bits ? MAX_WRITE_BITS : MAX_WRITE_REGISTERS)
+				|| request.getRequestByteCount() < (bits ? (count + 7) / 8
+						: count * 2)) {
+			response.copyHeader(request);
+			return response.writeException(fc, Modbus.ILLEGAL_VALUE_EXCEPTION);
+		}
+		if (bits && image instanceof BulkProcessImage) {
+			// unpack straight from the frame into the backing storage
+			((BulkProcessImage) image).writeCoils(unit, ref, count,
+					request.getBuffer(), request.getPDUOffset() + 6);
+		} else if (bits) {
+			// ensure the whole range is valid before writing any of it
+			image.getDigitalOut(unit, ref);
+			image.getDigitalOut(unit, ref + count - 1);
+			for (int i = 0; i < count; i++) {
+				image.getDigitalOut(unit, ref + i)
+						.set(request.getRequestBit(i));
+			}
+		} else {
+			image.getRegister(unit, ref);
+			image.getRegister(unit, ref + count - 1);
+			for (int i = 0; i < count; i++) {
+				Register reg = image.getRegister(unit, ref + i);
+				reg.setValue(request.getRequestRegister(i));
+			}
+		}
+		response.copyHeader(request);
+		return response.writeRequest(fc, ref, count);
+	}// writeMultiple
+
+}// class FrameProcessor
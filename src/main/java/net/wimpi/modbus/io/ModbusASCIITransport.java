@@ -26,9 +26,9 @@ import net.wimpi.modbus.util.ModbusUtil;
 
 import java.io.DataInputStream;
 import java.io.IOException;
-
-import jssc.SerialInputStream;
-import jssc.SerialOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Class that implements the Modbus/ASCII transport flavor.
@@ -49,6 +49,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 	private BytesOutputStream m_ByteInOut; // to buffer message to
 	private BytesOutputStream m_ByteOut; // write frames
 	private ProcessImage m_ProcessImage;
+	private ModbusFrame m_Frame;
 
 	/**
 	 * Constructs a new <tt>MobusASCIITransport</tt> instance.
@@ -66,21 +67,31 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 		try {
 			synchronized (m_ByteOut) {
 				// write message to byte out
+				m_ByteOut.reset();
 				msg.setHeadless();
 				msg.writeTo(m_ByteOut);
-				byte[] buf = m_ByteOut.getBuffer();
-				int len = m_ByteOut.size();
+				writeFrame(m_ByteOut.getBuffer(), m_ByteOut.size());
+			}
+		} catch (ModbusIOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new ModbusIOException("I/O failed to write" + ex);
+		}
+	}// writeMessage
+
+	public void writeFrame(byte[] buffer, int len) throws ModbusIOException {
 
+		try {
+			synchronized (m_ByteOut) {
 				// write message
 				m_OutputStream.write(FRAME_START); // FRAMESTART
-				m_OutputStream.write(buf, 0, len); // PDU
+				m_OutputStream.write(buffer, 0, len); // PDU
 				if (Modbus.debug)
 					System.out.println("Writing: "
-							+ ModbusUtil.toHex(buf, 0, len));
-				m_OutputStream.write(ModbusUtil.calculateLRC(buf, 0, len)); // LRC
+							+ ModbusUtil.toHex(buffer, 0, len));
+				m_OutputStream.write(ModbusUtil.calculateLRC(buffer, 0, len)); // LRC
 				m_OutputStream.write(FRAME_END); // FRAMEEND
 				m_OutputStream.flush();
-				m_ByteOut.reset();
 				// clears out the echoed message
 				// for RS485
 				if (m_Echo) {
@@ -91,50 +102,87 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 		} catch (Exception ex) {
 			throw new ModbusIOException("I/O failed to write" + ex);
 		}
-	}// writeMessage
+	}// writeFrame
+
+	public void writeTemplate(RequestTemplate template)
+			throws ModbusIOException {
+		if (template.getEncoding() != RequestTemplate.ASCII) {
+			writeMessage(template.getRequest());
+			return;
+		}
+		try {
+			synchronized (m_ByteOut) {
+				// the frame is already encoded, including the delimiters
+				m_OutputStream.writeEncoded(template.getFrame(),
+						template.getLength());
+			}
+			if (m_Echo) {
+				readEcho(template.getLength());
+			}
+		} catch (Exception ex) {
+			throw new ModbusIOException("I/O failed to write");
+		}
+	}// writeTemplate
 
 	public ModbusRequest readRequest() throws ModbusIOException {
 
-		boolean done = false;
-		ModbusRequest request = null;
+		try {
+			synchronized (m_InBuffer) {
+				int len = readRequestFrame(m_InBuffer);
+				// create request
+				ModbusRequest request = ModbusRequest
+						.createModbusRequest(m_InBuffer[1] & 0xff);
+				request.setProcessImage(m_ProcessImage);
+				request.setHeadless();
+				// read message
+				m_ByteIn.reset(m_InBuffer, len);
+				request.readFrom(m_ByteIn);
+				return request;
+			}
+		} catch (ModbusIOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			if (Modbus.debug)
+				System.out.println(ex.getMessage());
+			throw new ModbusIOException(
+					"readRequest: I/O exception - failed to read.");
+		}
+
+	}// readRequest
+
+	public int readRequestFrame(byte[] buffer) throws ModbusIOException {
 
 		int in = -1;
 
 		try {
 			do {
 				// 1. Skip to FRAME_START
-				while ((in = m_InputStream.read()) != FRAME_START)
-					;
+				while ((in = m_InputStream.read()) != FRAME_START) {
+					if (in == -1) {
+						throw new IOException(
+								"readRequest: I/O exception - Serial port timeout.");
+					}
+				}
 				// 2. Read to FRAME_END
-				synchronized (m_InBuffer) {
-					m_ByteInOut.reset();
-					while ((in = m_InputStream.read()) != FRAME_END) {
-						if (in == -1) {
-							throw new IOException(
-									"readRequest: I/O exception - Serial port timeout.");
-						}
-						m_ByteInOut.writeByte(in);
+				int len = 0;
+				while ((in = m_InputStream.read()) != FRAME_END) {
+					if (in == -1) {
+						throw new IOException(
+								"readRequest: I/O exception - Serial port timeout.");
 					}
-					// check LRC
-					if (((int) m_InBuffer[m_ByteInOut.size() - 1] & 0xff) != ModbusUtil
-							.calculateLRC(m_InBuffer, 0, m_ByteInOut.size() - 1)) {
-						continue;
+					if (len == buffer.length) {
+						throw new IOException("readRequest: frame too long.");
 					}
-					;
-					m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
-					in = m_ByteIn.readUnsignedByte();
-					in = m_ByteIn.readUnsignedByte();
-					// create request
-					request = ModbusRequest.createModbusRequest(in);
-					request.setProcessImage(m_ProcessImage);
-					request.setHeadless();
-					// read message
-					m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
-					request.readFrom(m_ByteIn);
+					buffer[len++] = (byte) in;
 				}
-				done = true;
-			} while (!done);
-			return request;
+				// check LRC
+				if (len < 3
+						|| ((int) buffer[len - 1] & 0xff) != ModbusUtil
+								.calculateLRC(buffer, 0, len - 1)) {
+					continue;
+				}
+				return len - 1;
+			} while (true);
 		} catch (Exception ex) {
 			if (Modbus.debug)
 				System.out.println(ex.getMessage());
@@ -142,9 +190,14 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 					"readRequest: I/O exception - failed to read.");
 		}
 
-	}// readRequest
+	}// readRequestFrame
 
 	public ModbusResponse readResponse() throws ModbusIOException {
+		return readResponse(null, null);
+	}// readResponse
+
+	public ModbusResponse readResponse(ModbusRequest request,
+			ResponseValidator validator) throws ModbusIOException {
 
 		boolean done = false;
 		ModbusResponse response = null;
@@ -155,8 +208,10 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 				// 1. Skip to FRAME_START
 				while ((in = m_InputStream.read()) != FRAME_START) {
 					if (in == -1) {
-						throw new IOException(
+						ModbusIOException ex = new ModbusIOException(
 								"readResponse: I/O exception - Serial port timeout.");
+						ex.setTimeout(true);
+						throw ex;
 					}
 				}
 				// 2. Read to FRAME_END
@@ -185,6 +240,15 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 						continue;
 					}
 
+					if (validator != null) {
+						int violation = validator.validate(request, m_Frame,
+								len - 1);
+						if (violation != ResponseValidator.VALID) {
+							throw new ModbusIOException("Invalid response: "
+									+ ResponseValidator
+											.getViolationName(violation));
+						}
+					}
 					m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
 					in = m_ByteIn.readUnsignedByte();
 					// JDC: To check slave unit identifier in a response we need
@@ -212,6 +276,8 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 				done = true;
 			} while (!done);
 			return response;
+		} catch (ModbusIOException ex) {
+			throw ex;
 		} catch (Exception ex) {
 			if (Modbus.debug)
 				System.out.println(ex.getMessage());
@@ -232,7 +298,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 	 * @throws IOException
 	 *             if an I\O related error occurs.
 	 */
-	public void prepareStreams(SerialInputStream in, SerialOutputStream out)
+	public void prepareStreams(InputStream in, OutputStream out)
 			throws IOException {
 		m_InputStream = new DataInputStream(new ASCIIInputStream(in));
 		m_OutputStream = new ASCIIOutputStream(out);
@@ -240,6 +306,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 		m_InBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
 		m_ByteIn = new BytesInputStream(m_InBuffer);
 		m_ByteInOut = new BytesOutputStream(m_InBuffer);
+		m_Frame = new ModbusFrame().wrapHeadless(ByteBuffer.wrap(m_InBuffer), 0);
 	}// prepareStreams
 
 	/**
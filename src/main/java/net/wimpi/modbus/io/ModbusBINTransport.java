@@ -26,9 +26,9 @@ import net.wimpi.modbus.procimg.ProcessImage;
 
 import java.io.DataInputStream;
 import java.io.IOException;
-
-import jssc.SerialInputStream;
-import jssc.SerialOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Class that implements the Modbus/BIN transport flavor.
@@ -46,6 +46,7 @@ public class ModbusBINTransport extends ModbusSerialTransport {
 	private BytesOutputStream m_ByteInOut; // to buffer message to
 	private BytesOutputStream m_ByteOut; // write frames
 	private ProcessImage m_ProcessImage;
+	private ModbusFrame m_Frame;
 
 	/**
 	 * Constructs a new <tt>MobusBINTransport</tt> instance.
@@ -61,23 +62,32 @@ public class ModbusBINTransport extends ModbusSerialTransport {
 	public void writeMessage(ModbusMessage msg) throws ModbusIOException {
 
 		try {
-			int len;
 			synchronized (m_ByteOut) {
 				// write message to byte out
+				m_ByteOut.reset();
 				msg.setHeadless();
 				msg.writeTo(m_ByteOut);
-				byte[] buf = m_ByteOut.getBuffer();
-				len = m_ByteOut.size();
+				writeFrame(m_ByteOut.getBuffer(), m_ByteOut.size());
+			}
+		} catch (ModbusIOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new ModbusIOException("I/O failed to write");
+		}
+	}// writeMessage
+
+	public void writeFrame(byte[] buffer, int len) throws ModbusIOException {
 
+		try {
+			synchronized (m_ByteOut) {
 				// write message
 				m_OutputStream.write(FRAME_START); // FRAMESTART
-				m_OutputStream.write(buf, 0, len); // PDU
-				int[] crc = ModbusUtil.calculateCRC(buf, 0, len); // CRC
-				m_OutputStream.write(crc[0]);
-				m_OutputStream.write(crc[1]);
+				m_OutputStream.write(buffer, 0, len); // PDU
+				int crc = ModbusUtil.calculateCRC16(buffer, 0, len); // CRC
+				m_OutputStream.write(crc & 0xff); // low byte first
+				m_OutputStream.write(crc >>> 8);
 				m_OutputStream.write(FRAME_END); // FRAMEEND
 				m_OutputStream.flush();
-				m_ByteOut.reset();
 			}
 			// clears out the echoed message
 			// for RS485
@@ -88,60 +98,102 @@ public class ModbusBINTransport extends ModbusSerialTransport {
 		} catch (Exception ex) {
 			throw new ModbusIOException("I/O failed to write");
 		}
-	}// writeMessage
+	}// writeFrame
+
+	public void writeTemplate(RequestTemplate template)
+			throws ModbusIOException {
+		if (template.getEncoding() != RequestTemplate.BIN) {
+			writeMessage(template.getRequest());
+			return;
+		}
+		try {
+			synchronized (m_ByteOut) {
+				// the frame is already encoded, including the delimiters
+				m_OutputStream.writeEncoded(template.getFrame(),
+						template.getLength());
+			}
+			if (m_Echo) {
+				readEcho(template.getLength());
+			}
+		} catch (Exception ex) {
+			throw new ModbusIOException("I/O failed to write");
+		}
+	}// writeTemplate
 
 	public ModbusRequest readRequest() throws ModbusIOException {
 
-		boolean done = false;
-		ModbusRequest request = null;
+		try {
+			synchronized (m_InBuffer) {
+				int len = readRequestFrame(m_InBuffer);
+				// create request
+				ModbusRequest request = ModbusRequest
+						.createModbusRequest(m_InBuffer[1] & 0xff);
+				request.setProcessImage(m_ProcessImage);
+				request.setHeadless();
+				// read message
+				m_ByteIn.reset(m_InBuffer, len);
+				request.readFrom(m_ByteIn);
+				return request;
+			}
+		} catch (ModbusIOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			if (Modbus.debug)
+				System.out.println(ex.getMessage());
+			throw new ModbusIOException("I/O exception - failed to read.");
+		}
+
+	}// readRequest
+
+	public int readRequestFrame(byte[] buffer) throws ModbusIOException {
 
 		int in = -1;
 
 		try {
 			do {
 				// 1. Skip to FRAME_START
-				while ((in = m_InputStream.read()) != FRAME_START)
-					;
+				while ((in = m_InputStream.read()) != FRAME_START) {
+					if (in == -1) {
+						throw new IOException(
+								"readRequest: I/O exception - Serial port timeout.");
+					}
+				}
 				// 2. Read to FRAME_END
-				synchronized (m_InBuffer) {
-					m_ByteInOut.reset();
-					while ((in = m_InputStream.read()) != FRAME_END) {
-						m_ByteInOut.writeByte(in);
+				int len = 0;
+				while ((in = m_InputStream.read()) != FRAME_END) {
+					if (in == -1) {
+						throw new IOException(
+								"I/O exception - Serial port timeout.");
 					}
-					// check CRC
-					int[] crc = ModbusUtil.calculateCRC(m_InBuffer, 0,
-							m_ByteInOut.size() - 2);
-
-					if (!(m_InBuffer[m_ByteInOut.size() - 2] == crc[0] // low
-																		// byte
-																		// first
-					&& m_InBuffer[m_ByteInOut.size() - 1] == crc[1] // hibyte
-					)) {
-						continue;
+					if (len == buffer.length) {
+						throw new IOException("Frame too long.");
 					}
-					m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
-					in = m_ByteIn.readUnsignedByte();
-					in = m_ByteIn.readUnsignedByte();
-					// create request
-					request = ModbusRequest.createModbusRequest(in);
-					request.setProcessImage(m_ProcessImage);
-					request.setHeadless();
-					// read message
-					m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
-					request.readFrom(m_ByteIn);
+					buffer[len++] = (byte) in;
 				}
-				done = true;
-			} while (!done);
-			return request;
+				// check CRC, low byte first
+				if (len < 4) {
+					continue;
+				}
+				int crc = ModbusUtil.calculateCRC16(buffer, 0, len - 2);
+				if (!((buffer[len - 2] & 0xff) == (crc & 0xff) && (buffer[len - 1] & 0xff) == (crc >>> 8))) {
+					continue;
+				}
+				return len - 2;
+			} while (true);
 		} catch (Exception ex) {
 			if (Modbus.debug)
 				System.out.println(ex.getMessage());
 			throw new ModbusIOException("I/O exception - failed to read.");
 		}
 
-	}// readRequest
+	}// readRequestFrame
 
 	public ModbusResponse readResponse() throws ModbusIOException {
+		return readResponse(null, null);
+	}// readResponse
+
+	public ModbusResponse readResponse(ModbusRequest request,
+			ResponseValidator validator) throws ModbusIOException {
 
 		boolean done = false;
 		ModbusResponse response = null;
@@ -150,24 +202,41 @@ public class ModbusBINTransport extends ModbusSerialTransport {
 		try {
 			do {
 				// 1. Skip to FRAME_START
-				while ((in = m_InputStream.read()) != FRAME_START)
-					;
+				while ((in = m_InputStream.read()) != FRAME_START) {
+					if (in == -1) {
+						ModbusIOException ex = new ModbusIOException(
+								"readResponse: I/O exception - Serial port timeout.");
+						ex.setTimeout(true);
+						throw ex;
+					}
+				}
 				// 2. Read to FRAME_END
 				synchronized (m_InBuffer) {
 					m_ByteInOut.reset();
 					while ((in = m_InputStream.read()) != FRAME_END) {
+						if (in == -1) {
+							throw new IOException(
+									"I/O exception - Serial port timeout.");
+						}
 						m_ByteInOut.writeByte(in);
 					}
 					// check CRC
-					int[] crc = ModbusUtil.calculateCRC(m_InBuffer, 0,
+					int crc = ModbusUtil.calculateCRC16(m_InBuffer, 0,
 							m_ByteInOut.size() - 2);
-					if (!(m_InBuffer[m_ByteInOut.size() - 2] == crc[0] // low
-																		// byte
-																		// first
-					&& m_InBuffer[m_ByteInOut.size() - 1] == crc[1] // hibyte
-					)) {
+					// low byte first
+					if (!((m_InBuffer[m_ByteInOut.size() - 2] & 0xff) == (crc & 0xff)
+					&& (m_InBuffer[m_ByteInOut.size() - 1] & 0xff) == (crc >>> 8))) {
 						continue;
 					}
+					if (validator != null) {
+						int violation = validator.validate(request, m_Frame,
+								m_ByteInOut.size() - 2);
+						if (violation != ResponseValidator.VALID) {
+							throw new ModbusIOException("Invalid response: "
+									+ ResponseValidator
+											.getViolationName(violation));
+						}
+					}
 					m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
 					in = m_ByteIn.readUnsignedByte();
 					m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
@@ -184,6 +253,8 @@ public class ModbusBINTransport extends ModbusSerialTransport {
 				done = true;
 			} while (!done);
 			return response;
+		} catch (ModbusIOException ex) {
+			throw ex;
 		} catch (Exception ex) {
 			if (Modbus.debug)
 				System.out.println(ex.getMessage());
@@ -203,7 +274,7 @@ public class ModbusBINTransport extends ModbusSerialTransport {
 	 * @throws java.io.IOException
 	 *             if an I\O related error occurs.
 	 */
-	public void prepareStreams(SerialInputStream in, SerialOutputStream out)
+	public void prepareStreams(InputStream in, OutputStream out)
 			throws IOException {
 		m_InputStream = new DataInputStream(new ASCIIInputStream(in));
 		m_OutputStream = new ASCIIOutputStream(out);
@@ -211,6 +282,7 @@ public class ModbusBINTransport extends ModbusSerialTransport {
 		m_InBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
 		m_ByteIn = new BytesInputStream(m_InBuffer);
 		m_ByteInOut = new BytesOutputStream(m_InBuffer);
+		m_Frame = new ModbusFrame().wrapHeadless(ByteBuffer.wrap(m_InBuffer), 0);
 	}// prepareStreams
 
 	/**
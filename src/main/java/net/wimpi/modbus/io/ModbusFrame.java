@@ -0,0 +1,466 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.io;
+
+import java.nio.ByteBuffer;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing a flyweight view on a Modbus frame held in a
+ * <tt>ByteBuffer</tt>.
+ * <p>
+ * The header and PDU fields are read and written directly at their offsets
+ * in the buffer, which may be a heap or a direct buffer, so that a frame can
+ * be decoded, executed and answered without materializing
+ * <tt>ModbusMessage</tt> instances. A <tt>ModbusFrame</tt> holds no data of
+ * its own and can be re-wrapped around any number of frames; it is not
+ * thread safe.
+ * <p>
+ * A frame either starts with the Modbus/TCP (MBAP) header, or it is
+ * <i>headless</i> and starts with the unit identifier, as on serial lines.
+ * The accessors for the PDU fields do not check the function code, it is up
+ * to the caller to use those that apply. Positions and limits of the buffer
+ * are not used nor changed.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public final class ModbusFrame {
+
+	/**
+	 * The length of the Modbus/TCP header, including the unit identifier.
+	 */
+	public static final int HEADER_LENGTH = 7;
+
+	private ByteBuffer m_Buffer;
+	private int m_Offset;
+	private int m_Unit;
+	private int m_PDU;
+	private boolean m_Headless;
+
+	/**
+	 * Wraps this <tt>ModbusFrame</tt> around the Modbus/TCP frame starting at
+	 * the given offset of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer holding the frame.
+	 * @param offset
+	 *            the offset of the first header byte.
+	 * @return this <tt>ModbusFrame</tt>.
+	 */
+	public ModbusFrame wrap(ByteBuffer buf, int offset) {
+		m_Buffer = buf;
+		m_Offset = offset;
+		m_Unit = offset + HEADER_LENGTH - 1;
+		m_PDU = m_Unit + 1;
+		m_Headless = false;
+		return this;
+	}// wrap
+
+	/**
+	 * Wraps this <tt>ModbusFrame</tt> around the headless frame starting with
+	 * the unit identifier at the given offset of the buffer.
+	 * 
+	 * @param buf
+	 *            the buffer holding the frame.
+	 * @param offset
+	 *            the offset of the unit identifier.
+	 * @return this <tt>ModbusFrame</tt>.
+	 */
+	public ModbusFrame wrapHeadless(ByteBuffer buf, int offset) {
+		m_Buffer = buf;
+		m_Offset = offset;
+		m_Unit = offset;
+		m_PDU = offset + 1;
+		m_Headless = true;
+		return this;
+	}// wrapHeadless
+
+	/**
+	 * Returns the buffer this <tt>ModbusFrame</tt> is wrapped around.
+	 * 
+	 * @return the buffer as <tt>ByteBuffer</tt>.
+	 */
+	public ByteBuffer getBuffer() {
+		return m_Buffer;
+	}// getBuffer
+
+	/**
+	 * Returns the offset of the first byte of the frame in the buffer.
+	 * 
+	 * @return the offset as <tt>int</tt>.
+	 */
+	public int getOffset() {
+		return m_Offset;
+	}// getOffset
+
+	/**
+	 * Returns the offset of the function code in the buffer.
+	 * 
+	 * @return the offset as <tt>int</tt>.
+	 */
+	public int getPDUOffset() {
+		return m_PDU;
+	}// getPDUOffset
+
+	/**
+	 * Tests if the frame has no Modbus/TCP header.
+	 * 
+	 * @return true if headless, false otherwise.
+	 */
+	public boolean isHeadless() {
+		return m_Headless;
+	}// isHeadless
+
+	/**
+	 * Returns the number of bytes preceding the PDU in the frame.
+	 * 
+	 * @return the header length as <tt>int</tt>.
+	 */
+	public int getHeaderLength() {
+		return m_PDU - m_Offset;
+	}// getHeaderLength
+
+	// header fields
+
+	public int getTransactionID() {
+		return getShort(m_Offset);
+	}// getTransactionID
+
+	public void setTransactionID(int tid) {
+		putShort(m_Offset, tid);
+	}// setTransactionID
+
+	public int getProtocolID() {
+		return getShort(m_Offset + 2);
+	}// getProtocolID
+
+	public void setProtocolID(int pid) {
+		putShort(m_Offset + 2, pid);
+	}// setProtocolID
+
+	/**
+	 * Returns the length field of the Modbus/TCP header, which counts the
+	 * unit identifier and the PDU.
+	 * 
+	 * @return the length field as <tt>int</tt>.
+	 */
+	public int getLength() {
+		return getShort(m_Offset + 4);
+	}// getLength
+
+	public void setLength(int length) {
+		putShort(m_Offset + 4, length);
+	}// setLength
+
+	public int getUnitID() {
+		return m_Buffer.get(m_Unit) & 0xff;
+	}// getUnitID
+
+	public void setUnitID(int unit) {
+		m_Buffer.put(m_Unit, (byte) unit);
+	}// setUnitID
+
+	public int getFunctionCode() {
+		return m_Buffer.get(m_PDU) & 0xff;
+	}// getFunctionCode
+
+	public void setFunctionCode(int fc) {
+		m_Buffer.put(m_PDU, (byte) fc);
+	}// setFunctionCode
+
+	/**
+	 * Tests if the frame holds an exception response.
+	 * 
+	 * @return true if the exception bit of the function code is set, false
+	 *         otherwise.
+	 */
+	public boolean isException() {
+		return getFunctionCode() >= Modbus.EXCEPTION_OFFSET;
+	}// isException
+
+	/**
+	 * Returns the exception code of an exception response.
+	 * 
+	 * @return the exception code as <tt>int</tt>.
+	 */
+	public int getExceptionCode() {
+		return m_Buffer.get(m_PDU + 1) & 0xff;
+	}// getExceptionCode
+
+	/**
+	 * Copies the transaction identifier, protocol identifier and unit
+	 * identifier from the given frame, e.g. a request into its response.
+	 * 
+	 * @param frame
+	 *            the frame to copy the header from.
+	 */
+	public void copyHeader(ModbusFrame frame) {
+		if (!m_Headless) {
+			if (frame.m_Headless) {
+				setTransactionID(Modbus.DEFAULT_TRANSACTION_ID);
+				setProtocolID(Modbus.DEFAULT_PROTOCOL_ID);
+			} else {
+				setTransactionID(frame.getTransactionID());
+				setProtocolID(frame.getProtocolID());
+			}
+		}
+		setUnitID(frame.getUnitID());
+	}// copyHeader
+
+	/**
+	 * Completes the frame for a PDU of the given length, setting the length
+	 * field of the Modbus/TCP header.
+	 * 
+	 * @param length
+	 *            the length of the PDU, including the function code.
+	 * @return the length of the whole frame, without checksum.
+	 */
+	public int setPDULength(int length) {
+		if (!m_Headless) {
+			setLength(length + 1);
+		}
+		return m_PDU - m_Offset + length;
+	}// setPDULength
+
+	// request fields
+
+	/**
+	 * Returns the reference (starting address) of a request, or of the
+	 * response to a write request.
+	 * 
+	 * @return the reference as <tt>int</tt>.
+	 */
+	public int getReference() {
+		return getShort(m_PDU + 1);
+	}// getReference
+
+	public void setReference(int ref) {
+		putShort(m_PDU + 1, ref);
+	}// setReference
+
+	/**
+	 * Returns the number of registers or bits of a read or write multiple
+	 * request.
+	 * 
+	 * @return the count as <tt>int</tt>.
+	 */
+	public int getCount() {
+		return getShort(m_PDU + 3);
+	}// getCount
+
+	public void setCount(int count) {
+		putShort(m_PDU + 3, count);
+	}// setCount
+
+	/**
+	 * Returns the value of a write single register or write coil request.
+	 * 
+	 * @return the value as <tt>int</tt>.
+	 */
+	public int getValue() {
+		return getShort(m_PDU + 3);
+	}// getValue
+
+	public void setValue(int value) {
+		putShort(m_PDU + 3, value);
+	}// setValue
+
+	/**
+	 * Returns the byte count of a write multiple request.
+	 * 
+	 * @return the byte count as <tt>int</tt>.
+	 */
+	public int getRequestByteCount() {
+		return m_Buffer.get(m_PDU + 5) & 0xff;
+	}// getRequestByteCount
+
+	public void setRequestByteCount(int count) {
+		m_Buffer.put(m_PDU + 5, (byte) count);
+	}// setRequestByteCount
+
+	/**
+	 * Returns the value of a register of a write multiple registers request.
+	 * 
+	 * @param index
+	 *            the index of the register in the request.
+	 * @return the value as <tt>int</tt>.
+	 */
+	public int getRequestRegister(int index) {
+		return getShort(m_PDU + 6 + 2 * index);
+	}// getRequestRegister
+
+	public void setRequestRegister(int index, int value) {
+		putShort(m_PDU + 6 + 2 * index, value);
+	}// setRequestRegister
+
+	/**
+	 * Returns a bit of a write multiple coils request.
+	 * 
+	 * @param index
+	 *            the index of the coil in the request.
+	 * @return the state of the coil.
+	 */
+	public boolean getRequestBit(int index) {
+		return getBit(m_PDU + 6, index);
+	}// getRequestBit
+
+	public void setRequestBit(int index, boolean b) {
+		setBit(m_PDU + 6, index, b);
+	}// setRequestBit
+
+	/**
+	 * Writes a request made of a reference and a count or value, which is the
+	 * form of all read requests and of the single write requests.
+	 * 
+	 * @param fc
+	 *            the function code.
+	 * @param ref
+	 *            the reference.
+	 * @param value
+	 *            the count or value.
+	 * @return the length of the frame, without checksum.
+	 */
+	public int writeRequest(int fc, int ref, int value) {
+		setFunctionCode(fc);
+		setReference(ref);
+		setValue(value);
+		return setPDULength(5);
+	}// writeRequest
+
+	// response fields
+
+	/**
+	 * Returns the byte count of a read response.
+	 * 
+	 * @return the byte count as <tt>int</tt>.
+	 */
+	public int getByteCount() {
+		return m_Buffer.get(m_PDU + 1) & 0xff;
+	}// getByteCount
+
+	public void setByteCount(int count) {
+		m_Buffer.put(m_PDU + 1, (byte) count);
+	}// setByteCount
+
+	/**
+	 * Returns the value of a register of a read registers response.
+	 * 
+	 * @param index
+	 *            the index of the register in the response.
+	 * @return the value as <tt>int</tt>.
+	 */
+	public int getRegister(int index) {
+		return getShort(m_PDU + 2 + 2 * index);
+	}// getRegister
+
+	public void setRegister(int index, int value) {
+		putShort(m_PDU + 2 + 2 * index, value);
+	}// setRegister
+
+	/**
+	 * Returns a bit of a read coils or read input discretes response.
+	 * 
+	 * @param index
+	 *            the index of the bit in the response.
+	 * @return the state of the bit.
+	 */
+	public boolean getBit(int index) {
+		return getBit(m_PDU + 2, index);
+	}// getBit
+
+	public void setBit(int index, boolean b) {
+		setBit(m_PDU + 2, index, b);
+	}// setBit
+
+	/**
+	 * Sets a byte of the data of a read response, following the byte count.
+	 * 
+	 * @param index
+	 *            the index of the byte in the data.
+	 * @param b
+	 *            the value of the byte.
+	 */
+	public void setDataByte(int index, int b) {
+		m_Buffer.put(m_PDU + 2 + index, (byte) b);
+	}// setDataByte
+
+	/**
+	 * Writes an exception response for the given function code.
+	 * 
+	 * @param fc
+	 *            the function code of the request.
+	 * @param code
+	 *            the exception code.
+	 * @return the length of the frame, without checksum.
+	 */
+	public int writeException(int fc, int code) {
+		setFunctionCode(fc | Modbus.EXCEPTION_OFFSET);
+		m_Buffer.put(m_PDU + 1, (byte) code);
+		return setPDULength(2);
+	}// writeException
+
+	/**
+	 * Returns the first <tt>length</tt> bytes of the frame as hexadecimal
+	 * string, for debugging.
+	 * 
+	 * @param length
+	 *            the length of the frame.
+	 * @return the frame as hexadecimal <tt>String</tt>.
+	 */
+	public String toHex(int length) {
+		StringBuffer buf = new StringBuffer(length * 3);
+		for (int i = 0; i < length; i++) {
+			int b = m_Buffer.get(m_Offset + i) & 0xff;
+			if (b < 0x10) {
+				buf.append("0");
+			}
+			buf.append(Integer.toString(b, 16));
+			if (i < length - 1) {
+				buf.append(" ");
+			}
+		}
+		return buf.toString();
+	}// toHex
+
+	private int getShort(int idx) {
+		return (m_Buffer.get(idx) & 0xff) << 8 | (m_Buffer.get(idx + 1) & 0xff);
+	}// getShort
+
+	private void putShort(int idx, int v) {
+		m_Buffer.put(idx, (byte) (v >> 8));
+		m_Buffer.put(idx + 1, (byte) v);
+	}// putShort
+
+	private boolean getBit(int idx, int index) {
+		return (m_Buffer.get(idx + (index >> 3)) & (1 << (index & 7))) != 0;
+	}// getBit
+
+	private void setBit(int idx, int index, boolean b) {
+		int pos = idx + (index >> 3);
+		int v = m_Buffer.get(pos);
+		if (b) {
+			v |= 1 << (index & 7);
+		} else {
+			v &= ~(1 << (index & 7));
+		}
+		m_Buffer.put(pos, (byte) v);
+	}// setBit
+
+}// class ModbusFrame
@@ -0,0 +1,141 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.io.IOException;
+
+/**
+ * Class implementing the framing rules of Modbus/RTU.
+ * <p>
+ * RTU frames carry no delimiters or length field; the length of a frame
+ * follows from its function code and, for variable length messages, a byte
+ * count in the frame. The methods of this class determine the total frame
+ * length (including unit identifier and CRC) from the bytes received so far,
+ * which allows a transport to read a frame with few bulk reads while the CRC
+ * is updated incrementally.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public final class ModbusRTUFramer {
+
+	private ModbusRTUFramer() {
+	}// constructor
+
+	/**
+	 * Returns the total length of a request frame.
+	 * 
+	 * @param frame
+	 *            the bytes of the frame received so far.
+	 * @param count
+	 *            the number of bytes received so far.
+	 * @return the total length of the frame including the CRC if it can be
+	 *         determined; otherwise the negated number of bytes that have to be
+	 *         received to determine it.
+	 * @throws IOException
+	 *             if the function code is not supported.
+	 */
+	public static int getRequestLength(byte[] frame, int count)
+			throws IOException {
+		if (count < 2) {
+			return -2;
+		}
+		int fc = frame[1] & 0xff;
+		switch (fc) {
+		case 0x01:
+		case 0x02:
+		case 0x03:
+		case 0x04:
+		case 0x05:
+		case 0x06:
+		case 0x08:
+			return 8;
+		case 0x07:
+		case 0x0B:
+		case 0x0C:
+		case 0x11:
+			return 4;
+		case 0x0F:
+		case 0x10:
+			return (count < 7) ? -7 : 9 + (frame[6] & 0xff);
+		case 0x14:
+		case 0x15:
+			return (count < 3) ? -3 : 5 + (frame[2] & 0xff);
+		case 0x16:
+			return 10;
+		case 0x17:
+			return (count < 11) ? -11 : 13 + (frame[10] & 0xff);
+		case 0x18:
+			return 6;
+		default:
+			throw new IOException("Unsupported function code " + fc);
+		}
+	}// getRequestLength
+
+	/**
+	 * Returns the total length of a response frame.
+	 * 
+	 * @param frame
+	 *            the bytes of the frame received so far.
+	 * @param count
+	 *            the number of bytes received so far.
+	 * @return the total length of the frame including the CRC if it can be
+	 *         determined; otherwise the negated number of bytes that have to be
+	 *         received to determine it.
+	 * @throws IOException
+	 *             if the function code is not supported.
+	 */
+	public static int getResponseLength(byte[] frame, int count)
+			throws IOException {
+		if (count < 2) {
+			return -2;
+		}
+		int fc = frame[1] & 0xff;
+		if ((fc & 0x80) != 0) {
+			// exception response: unit, function code, exception code, CRC
+			return 5;
+		}
+		switch (fc) {
+		case 0x01:
+		case 0x02:
+		case 0x03:
+		case 0x04:
+		case 0x0C:
+		case 0x11:
+		case 0x14:
+		case 0x15:
+		case 0x17:
+			return (count < 3) ? -3 : 5 + (frame[2] & 0xff);
+		case 0x05:
+		case 0x06:
+		case 0x08:
+		case 0x0B:
+		case 0x0F:
+		case 0x10:
+			return 8;
+		case 0x07:
+			return 5;
+		case 0x16:
+			return 10;
+		case 0x18:
+			return (count < 4) ? -4 : 6 + (((frame[2] & 0xff) << 8) | (frame[3] & 0xff));
+		default:
+			throw new IOException("Unsupported function code " + fc);
+		}
+	}// getResponseLength
+
+}// class ModbusRTUFramer
@@ -22,12 +22,14 @@ import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.util.BufferPool;
 import net.wimpi.modbus.util.ModbusUtil;
 
 import java.io.IOException;
-
-import jssc.SerialInputStream;
-import jssc.SerialOutputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Class that implements the ModbusRTU transport flavor.
@@ -39,59 +41,149 @@ import jssc.SerialOutputStream;
  */
 public class ModbusRTUTransport extends ModbusSerialTransport {
 
-	private SerialInputStream m_InputStream; // wrap into filter input
-	private SerialOutputStream m_OutputStream; // wrap into filter output
+	private InputStream m_InputStream; // wrap into filter input
+	private OutputStream m_OutputStream; // wrap into filter output
 
 	private byte[] m_InBuffer;
 	private BytesInputStream m_ByteIn; // to read message from
-	private BytesOutputStream m_ByteInOut; // to buffer message to
 	private BytesOutputStream m_ByteOut; // write frames
-	private byte[] lastRequest = null;
-	//private ProcessImage m_ProcessImage; //not used
+	private byte[] m_LastRequest = new byte[Modbus.MAX_MESSAGE_LENGTH];
+	private int m_LastRequestLength;
+	private ProcessImage m_ProcessImage;
+	private ModbusFrame m_Frame;
 
 	public void writeMessage(ModbusMessage msg) throws ModbusIOException {
 		try {
-			int len;
 			synchronized (m_ByteOut) {
-				// first clear any input from the receive buffer to prepare
-				// for the reply since RTU doesn't have message delimiters
-				clearInput();
 				// write message to byte out
 				m_ByteOut.reset();
 				msg.setHeadless();
 				msg.writeTo(m_ByteOut);
-				len = m_ByteOut.size();
-				int[] crc = ModbusUtil.calculateCRC(m_ByteOut.getBuffer(), 0,
-						len);
-				m_ByteOut.writeByte(crc[0]);
-				m_ByteOut.writeByte(crc[1]);
+				int len = m_ByteOut.size();
+				m_ByteOut.writeShort(0); // room for the CRC
+				writeFrame(m_ByteOut.getBuffer(), len);
+			}
+		} catch (ModbusIOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new ModbusIOException("I/O failed to write");
+		}
+
+	}// writeMessage
+
+	public void writeFrame(byte[] buffer, int len) throws ModbusIOException {
+		try {
+			synchronized (m_ByteOut) {
+				// first clear any input from the receive buffer to prepare
+				// for the reply since RTU doesn't have message delimiters
+				clearInput();
+				int crc = ModbusUtil.calculateCRC16(buffer, 0, len);
+				buffer[len++] = (byte) (crc & 0xff); // low byte first
+				buffer[len++] = (byte) (crc >>> 8);
 				// write message
-				len = m_ByteOut.size();
-				byte buf[] = m_ByteOut.getBuffer();
-				m_OutputStream.write(buf, 0, len); // PDU + CRC
+				m_OutputStream.write(buffer, 0, len); // PDU + CRC
 				m_OutputStream.flush();
 				if (Modbus.debug)
-					System.out
-							.println("Sent: " + ModbusUtil.toHex(buf, 0, len));
+					System.out.println("Sent: "
+							+ ModbusUtil.toHex(buffer, 0, len));
 				// clears out the echoed message
 				// for RS485
 				if (m_Echo) {
 					readEcho(len);
 				}
-				lastRequest = new byte[len];
-				System.arraycopy(buf, 0, lastRequest, 0, len);
+				System.arraycopy(buffer, 0, m_LastRequest, 0, len);
+				m_LastRequestLength = len;
 			}
-
 		} catch (Exception ex) {
 			throw new ModbusIOException("I/O failed to write");
 		}
+	}// writeFrame
 
-	}// writeMessage
+	public void writeTemplate(RequestTemplate template)
+			throws ModbusIOException {
+		if (template.getEncoding() != RequestTemplate.RTU) {
+			writeMessage(template.getRequest());
+			return;
+		}
+		try {
+			synchronized (m_ByteOut) {
+				clearInput();
+				byte[] frame = template.getFrame();
+				int len = template.getLength();
+				m_OutputStream.write(frame, 0, len); // PDU + CRC
+				m_OutputStream.flush();
+				if (Modbus.debug)
+					System.out.println("Sent: "
+							+ ModbusUtil.toHex(frame, 0, len));
+				if (m_Echo) {
+					readEcho(len);
+				}
+				System.arraycopy(frame, 0, m_LastRequest, 0, len);
+				m_LastRequestLength = len;
+			}
+		} catch (Exception ex) {
+			throw new ModbusIOException("I/O failed to write");
+		}
+	}// writeTemplate
 
-	// This is required for the slave that is not supported
 	public ModbusRequest readRequest() throws ModbusIOException {
-		throw new RuntimeException("Operation not supported.");
-	} // readRequest
+		try {
+			synchronized (m_ByteIn) {
+				int len = readRequestFrame(m_InBuffer);
+				// create request
+				ModbusRequest request = ModbusRequest
+						.createModbusRequest(m_InBuffer[1] & 0xff);
+				request.setProcessImage(m_ProcessImage);
+				request.setHeadless();
+				// read message
+				m_ByteIn.reset(m_InBuffer, len);
+				request.readFrom(m_ByteIn);
+				return request;
+			}
+		} catch (ModbusIOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			if (Modbus.debug)
+				System.out.println(ex.getMessage());
+			throw new ModbusIOException(
+					"readRequest: I/O exception - failed to read.");
+		}
+	}// readRequest
+
+	public int readRequestFrame(byte[] buffer) throws ModbusIOException {
+		try {
+			do {
+				int len;
+				try {
+					len = readFrame(buffer, true);
+				} catch (InterruptedIOException ex) {
+					throw ex;
+				} catch (IOException ex) {
+					// garbage or partial frame, resynchronize
+					if (Modbus.debug)
+						System.out.println(ex.getMessage());
+					clearInput();
+					continue;
+				}
+				if (len == -1) {
+					// idle line
+					if (Thread.currentThread().isInterrupted()) {
+						throw new InterruptedIOException();
+					}
+					continue;
+				}
+				if (Modbus.debug)
+					System.out.println("Request: "
+							+ ModbusUtil.toHex(buffer, 0, len));
+				return len - 2; // less the crc
+			} while (true);
+		} catch (Exception ex) {
+			if (Modbus.debug)
+				System.out.println(ex.getMessage());
+			throw new ModbusIOException(
+					"readRequest: I/O exception - failed to read.");
+		}
+	}// readRequestFrame
 
 	/**
 	 * Clear the input if characters are found in the input stream.
@@ -101,89 +193,116 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
 	public void clearInput() throws IOException {
 		if (m_InputStream.available() > 0) {
 			int len = m_InputStream.available();
-			byte buf[] = new byte[len];
-			m_InputStream.read(buf, 0, len);
-			if (Modbus.debug)
-				System.out.println("Clear input: "
-						+ ModbusUtil.toHex(buf, 0, len));
+			byte buf[] = BufferPool.getDefault().acquire(len);
+			try {
+				len = m_InputStream.read(buf, 0, len);
+				if (Modbus.debug)
+					System.out.println("Clear input: "
+							+ ModbusUtil.toHex(buf, 0, len));
+			} finally {
+				BufferPool.getDefault().release(buf);
+			}
 		}
 	}// cleanInput
 
 	public ModbusResponse readResponse() throws ModbusIOException {
+		return readResponse(null, null);
+	}// readResponse
+
+	public ModbusResponse readResponse(ModbusRequest request,
+			ResponseValidator validator) throws ModbusIOException {
 
-		boolean done = false;
 		ModbusResponse response = null;
-		int dlength = 0;
 
 		try {
-			do {
-				// 1. read to function code, create request and read function
-				// specific bytes
-				synchronized (m_ByteIn) {
-					int uid = m_InputStream.read();
-					if (uid != -1) {
-						int fc = m_InputStream.read();
-						m_ByteInOut.reset();
-						m_ByteInOut.writeByte(uid);
-						m_ByteInOut.writeByte(fc);
-
-						// create response to acquire length of message
-						response = ModbusResponse.createModbusResponse(fc);
-						response.setHeadless();
-
-						// With Modbus RTU, there is no end frame. Either we
-						// assume
-						// the message is complete as is or we must do function
-						// specific processing to know the correct length. To
-						// avoid
-						// moving frame timing to the serial input functions, we
-						// set the
-						// timeout and to message specific parsing to read a
-						// response.
-						getResponse(fc, m_ByteInOut);
-						dlength = m_ByteInOut.size() - 2; // less the crc
-						if (Modbus.debug)
-							System.out.println("Response: "
-									+ ModbusUtil.toHex(m_ByteInOut.getBuffer(),
-											0, dlength + 2));
-
-						m_ByteIn.reset(m_InBuffer, dlength);
-
-						// check CRC
-						int[] crc = ModbusUtil.calculateCRC(m_InBuffer, 0,
-								dlength); // does not include CRC
-						if (ModbusUtil.unsignedByteToInt(m_InBuffer[dlength]) != crc[0]
-								|| ModbusUtil
-										.unsignedByteToInt(m_InBuffer[dlength + 1]) != crc[1]) {
-							throw new IOException(
-									"CRC Error in received frame: "
-											+ dlength
-											+ " bytes: "
-											+ ModbusUtil.toHex(
-													m_ByteIn.getBuffer(), 0,
-													dlength));
-						}
-					} else {
-						throw new IOException("Error reading response");
+			// 1. read the frame, its length follows from the function code
+			synchronized (m_ByteIn) {
+				int len = readFrame(m_InBuffer, false);
+				if (len == -1) {
+					ModbusIOException ex = new ModbusIOException(
+							"I/O exception - Serial port timeout.");
+					ex.setTimeout(true);
+					throw ex;
+				}
+				int dlength = len - 2; // less the crc
+				if (Modbus.debug)
+					System.out.println("Response: "
+							+ ModbusUtil.toHex(m_InBuffer, 0, len));
+				if (validator != null) {
+					int violation = validator.validate(request, m_Frame, dlength);
+					if (violation != ResponseValidator.VALID) {
+						throw new ModbusIOException("Invalid response: "
+								+ ResponseValidator.getViolationName(violation));
 					}
+				}
 
-					// read response
-					m_ByteIn.reset(m_InBuffer, dlength);
-					if (response != null) {
-						response.readFrom(m_ByteIn);
-					}
-					done = true;
-				}// synchronized
-			} while (!done);
+				// 2. create response and read it
+				response = ModbusResponse
+						.createModbusResponse(m_InBuffer[1] & 0xff);
+				response.setHeadless();
+				m_ByteIn.reset(m_InBuffer, dlength);
+				response.readFrom(m_ByteIn);
+			}// synchronized
 			return response;
+		} catch (ModbusIOException ex) {
+			throw ex;
 		} catch (Exception ex) {
 			System.err
-					.println("Last request: " + ModbusUtil.toHex(lastRequest));
+					.println("Last request: "
+							+ ModbusUtil.toHex(m_LastRequest, 0,
+									m_LastRequestLength));
 			System.err.println(ex.getMessage());
 			throw new ModbusIOException("I/O exception - failed to read");
 		}
 	}// readResponse
 
+	/**
+	 * Reads a complete frame into the given buffer. The frame is read with as
+	 * few reads as the framing rules allow, updating the CRC incrementally.
+	 * 
+	 * @param buf
+	 *            the buffer to read into.
+	 * @param request
+	 *            true if a request frame is expected, false for a response.
+	 * @return the length of the frame including the CRC, or -1 if the receive
+	 *         timeout expired before the first byte arrived.
+	 * @throws IOException
+	 *             if the frame is incomplete, too long or has a wrong CRC.
+	 */
+	private int readFrame(byte[] buf, boolean request) throws IOException {
+		int count = 0;
+		int length = -2; // need unit and function code first
+		int crc = ModbusUtil.CRC16_INITIAL;
+		while (length < 0 || count < length) {
+			int want = (length < 0) ? -length - count : length - count;
+			if (count + want > buf.length) {
+				throw new IOException("Frame too long: " + (count + want)
+						+ " bytes");
+			}
+			int n = m_InputStream.read(buf, count, want);
+			if (n == -1) {
+				if (count == 0) {
+					return -1;
+				}
+				throw new IOException("Incomplete frame: " + count
+						+ " bytes: " + ModbusUtil.toHex(buf, 0, count));
+			}
+			crc = ModbusUtil.updateCRC16(crc, buf, count, n);
+			count += n;
+			if (length < 0 && count >= -length) {
+				length = (request) ? ModbusRTUFramer.getRequestLength(
+						buf, count) : ModbusRTUFramer
+						.getResponseLength(buf, count);
+			}
+		}
+		// the CRC over a frame including its CRC is zero
+		if (crc != 0) {
+			throw new IOException("CRC Error in received frame: " + count
+					+ " bytes: " + ModbusUtil.toHex(buf, 0, count));
+		}
+		return count;
+	}// readFrame
+
 	/**
 	 * Prepares the input and output streams of this <tt>ModbusRTUTransport</tt>
 	 * instance.
@@ -195,14 +314,14 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
 	 * @throws IOException
 	 *             if an I\O error occurs.
 	 */
-	public void prepareStreams(SerialInputStream in, SerialOutputStream out) {
+	public void prepareStreams(InputStream in, OutputStream out) {
 		m_InputStream = in;
 		m_OutputStream = out;
 
 		m_ByteOut = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
 		m_InBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
 		m_ByteIn = new BytesInputStream(m_InBuffer);
-		m_ByteInOut = new BytesOutputStream(m_InBuffer);
+		m_Frame = new ModbusFrame().wrapHeadless(ByteBuffer.wrap(m_InBuffer), 0);
 	} // prepareStreams
 
 	public void close() throws IOException {
@@ -210,72 +329,6 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
 		m_OutputStream.close();
 	}// close
 
-	private void getResponse(int fn, BytesOutputStream out) throws IOException {
-		int bc = -1, bc2 = -1, bcw = -1;
-		int inpBytes = 0;
-		byte inpBuf[] = new byte[256];
-
-		try {
-			switch (fn) {
-			case 0x01:
-			case 0x02:
-			case 0x03:
-			case 0x04:
-			case 0x0C:
-			case 0x11: // report slave ID version and run/stop state
-			case 0x14: // read log entry (60000 memory reference)
-			case 0x15: // write log entry (60000 memory reference)
-			case 0x17:
-				// read the byte count;
-				bc = m_InputStream.read();
-				out.write(bc);
-				// now get the specified number of bytes and the 2 CRC bytes
-				inpBytes = m_InputStream.blockingRead(inpBuf, 0, bc + 2);
-				out.write(inpBuf, 0, inpBytes);
-				if (inpBytes != bc + 2) {
-					System.out.println("Error: looking for " + (bc + 2)
-							+ " bytes, received " + inpBytes);
-				}
-				break;
-			case 0x05:
-			case 0x06:
-			case 0x0B:
-			case 0x0F:
-			case 0x10:
-				// read status: only the CRC remains after address and function
-				// code
-				inpBytes = m_InputStream.blockingRead(inpBuf, 0, 6);
-				out.write(inpBuf, 0, inpBytes);
-				break;
-			case 0x07:
-			case 0x08:
-				// read status: only the CRC remains after address and function
-				// code
-				inpBytes = m_InputStream.blockingRead(inpBuf, 0, 3);
-				out.write(inpBuf, 0, inpBytes);
-				break;
-			case 0x16:
-				// eight bytes in addition to the address and function codes
-				inpBytes = m_InputStream.blockingRead(inpBuf, 0, 8);
-				out.write(inpBuf, 0, inpBytes);
-				break;
-			case 0x18:
-				// read the byte count word
-				bc = m_InputStream.read();
-				out.write(bc);
-				bc2 = m_InputStream.read();
-				out.write(bc2);
-				bcw = ModbusUtil.makeWord(bc, bc2);
-				// now get the specified number of bytes and the 2 CRC bytes
-				inpBytes = m_InputStream.blockingRead(inpBuf, 0, bcw + 2);
-				out.write(inpBuf, 0, inpBytes);
-				break;
-			}
-		} catch (IOException e) {
-			throw new IOException("getResponse serial port exception");
-		}
-	}// getResponse
-
 	@Override
 	public void flush() {
 		try {
@@ -287,7 +340,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
 
 	@Override
 	public void setProcessImage(ProcessImage image) {
-		//m_ProcessImage = image; //Not used
+		m_ProcessImage = image;
 	}
 
 } // ModbusRTUTransport
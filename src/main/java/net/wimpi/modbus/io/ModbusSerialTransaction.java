@@ -23,6 +23,7 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.metrics.Metrics;
 import net.wimpi.modbus.msg.ExceptionResponse;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
@@ -47,13 +48,21 @@ public class ModbusSerialTransaction implements ModbusTransaction {
 	private ModbusTransport m_IO;
 	private ModbusRequest m_Request;
 	private ModbusResponse m_Response;
+	private RequestTemplate m_Template;
+	private ResponseValidator m_Validator = new ResponseValidator();
 	private boolean m_ValidityCheck = Modbus.DEFAULT_VALIDITYCHECK;
 	private int m_Retries = Modbus.DEFAULT_RETRIES;
 	private int m_TransDelayMS = Modbus.DEFAULT_TRANSMIT_DELAY;
+	private int m_TurnaroundDelay = Modbus.DEFAULT_TURNAROUND_DELAY;
+	private boolean m_Broadcasting = false;
 	private SerialConnection m_SerialCon;
 
 	private Mutex m_TransactionLock = new Mutex();
 
+	private CircuitBreakerRegistry m_Breakers;
+
+	private String m_MetricsName;
+
 	/**
 	 * Constructs a new <tt>ModbusSerialTransaction</tt> instance.
 	 */
@@ -96,20 +105,66 @@ public class ModbusSerialTransaction implements ModbusTransaction {
 	public void setSerialConnection(SerialConnection con) {
 		m_SerialCon = con;
 		m_IO = con.getModbusTransport();
+		m_MetricsName = null;
 	}// setConnection
 
+	/**
+	 * Sets the registry of the circuit breakers guarding the units on the
+	 * line. Once set, requests to a unit whose breaker is open fail
+	 * immediately, so that a unit that went offline does not hold up the
+	 * polling of the others on the bus.
+	 * 
+	 * @param breakers
+	 *            the <tt>CircuitBreakerRegistry</tt>, or null to disable.
+	 */
+	public void setCircuitBreakers(CircuitBreakerRegistry breakers) {
+		m_Breakers = breakers;
+	}// setCircuitBreakers
+
+	/**
+	 * Returns the registry of the circuit breakers of this transaction.
+	 * 
+	 * @return the <tt>CircuitBreakerRegistry</tt>, or null if disabled.
+	 */
+	public CircuitBreakerRegistry getCircuitBreakers() {
+		return m_Breakers;
+	}// getCircuitBreakers
+
+	/**
+	 * Returns the breaker of the port and unit of the current request.
+	 * Broadcasts are not answered and therefore not guarded.
+	 */
+	private CircuitBreaker getCircuitBreaker() {
+		if (m_Breakers == null || (m_Broadcasting && m_Request.isBroadcast())) {
+			return null;
+		}
+		return m_Breakers.getBreaker(m_SerialCon.getParameters()
+				.getPortName()
+				+ "/" + m_Request.getUnitID());
+	}// getCircuitBreaker
+
 	public int getTransactionID() {
 		return c_TransactionID.get();
 	}// getTransactionID
 
 	public void setRequest(ModbusRequest req) {
 		m_Request = req;
+		m_Template = null;
 	}// setRequest
 
 	public ModbusRequest getRequest() {
 		return m_Request;
 	}// getRequest
 
+	public void setRequestTemplate(RequestTemplate template) {
+		m_Request = template.getRequest();
+		m_Template = template;
+	}// setRequestTemplate
+
+	public RequestTemplate getRequestTemplate() {
+		return m_Template;
+	}// getRequestTemplate
+
 	public ModbusResponse getResponse() {
 		return m_Response;
 	}// getResponse
@@ -122,6 +177,14 @@ public class ModbusSerialTransaction implements ModbusTransaction {
 		return m_ValidityCheck;
 	}// isCheckingValidity
 
+	public void setResponseValidator(ResponseValidator validator) {
+		m_Validator = validator;
+	}// setResponseValidator
+
+	public ResponseValidator getResponseValidator() {
+		return m_Validator;
+	}// getResponseValidator
+
 	public int getRetries() {
 		return m_Retries;
 	}// getRetries
@@ -140,7 +203,9 @@ public class ModbusSerialTransaction implements ModbusTransaction {
 	}
 
 	/**
-	 * Set the TransDelayMS value.
+	 * Set the TransDelayMS value. If set to <tt>0</tt> (the default), the
+	 * transaction waits for the inter-frame delay of the line instead, as
+	 * computed by the <tt>SerialTiming</tt> of the connection.
 	 * 
 	 * @param newTransDelayMS
 	 *            The new TransDelayMS value.
@@ -149,11 +214,71 @@ public class ModbusSerialTransaction implements ModbusTransaction {
 		this.m_TransDelayMS = newTransDelayMS;
 	}
 
+	/**
+	 * Sets the flag that controls whether broadcast requests are sent without
+	 * waiting for a response. Write requests to unit identifier <tt>0</tt>
+	 * are otherwise executed like any other request, so that a request whose
+	 * unit identifier was never set still expects an answer.
+	 * 
+	 * @param b
+	 *            true if broadcasts should not be answered, false otherwise.
+	 * @see ModbusRequest#isBroadcast()
+	 */
+	public void setBroadcasting(boolean b) {
+		m_Broadcasting = b;
+	}// setBroadcasting
+
+	/**
+	 * Tests if broadcast requests are sent without waiting for a response.
+	 * 
+	 * @return true if broadcasts are not answered, false otherwise.
+	 */
+	public boolean isBroadcasting() {
+		return m_Broadcasting;
+	}// isBroadcasting
+
+	/**
+	 * Returns the turnaround delay that is waited after a broadcast.
+	 * 
+	 * @return the turnaround delay in milliseconds.
+	 */
+	public int getTurnaroundDelay() {
+		return m_TurnaroundDelay;
+	}// getTurnaroundDelay
+
+	/**
+	 * Sets the turnaround delay that is waited after a broadcast, giving the
+	 * slaves time to process the request before the next one is sent.
+	 * 
+	 * @param ms
+	 *            the turnaround delay in milliseconds.
+	 */
+	public void setTurnaroundDelay(int ms) {
+		m_TurnaroundDelay = ms;
+	}// setTurnaroundDelay
+
+	/**
+	 * Executes this transaction.
+	 * <p>
+	 * If broadcasting is enabled (see {@link #setBroadcasting(boolean)}), a
+	 * broadcast request (see {@link ModbusRequest#isBroadcast()}) is sent
+	 * only once and not answered; the transaction waits for the turnaround
+	 * delay and returns with a <tt>null</tt> response.
+	 */
 	public void execute() throws ModbusIOException, ModbusSlaveException,
 			ModbusException {
 		// 1. assert executeability
 		assertExecutable();
 
+		// fail fast if the unit is known to be down, a probe is tried once
+		CircuitBreaker breaker = getCircuitBreaker();
+		int retries = m_Retries;
+		if (breaker != null && breaker.acquire()) {
+			retries = 1;
+		}
+		boolean timed = Metrics.isEnabled();
+		long began = timed ? System.nanoTime() : 0;
+		boolean failed = false;
 		try {
 			// 2. Lock transaction
 			/**
@@ -172,26 +297,49 @@ public class ModbusSerialTransaction implements ModbusTransaction {
 				// toggle the id
 				m_Request.setTransactionID(c_TransactionID.increment());
 
+				SerialTiming timing = m_SerialCon.getTiming();
+				int unit = m_Request.getUnitID();
+
+				if (m_Broadcasting && m_Request.isBroadcast()) {
+					awaitTransmit(timing);
+					writeRequest();
+					timing.recordBroadcast(m_Request);
+					m_Response = null;
+					if (m_TurnaroundDelay > 0) {
+						Thread.sleep(m_TurnaroundDelay);
+					}
+					return;
+				}
+
 				do {
+					awaitTransmit(timing);
+					int timeout = timing.getReceiveTimeout(unit);
+					((ModbusSerialTransport) m_IO).setReceiveTimeout(timeout);
+					long start = System.nanoTime();
 					try {
-						if (m_TransDelayMS > 0) {
-							try {
-								Thread.sleep(m_TransDelayMS);
-							} catch (InterruptedException ex) {
-								System.err.println("InterruptedException: "
-										+ ex.getMessage());
-							}
-						}
 						// write request message
-						m_IO.writeMessage(m_Request);
+						writeRequest();
 						// read response message
-						m_Response = m_IO.readResponse();
+						m_Response = readResponse();
 						m_Response.setReference(m_Request.getReference());
+						timing.recordTransaction(unit, start, m_Request,
+								m_Response);
 						finished = true;
 					} catch (ModbusIOException e) {
-						if (++tries >= m_Retries) {
+						timing.recordFailure(unit, start, m_Request, timeout);
+						if (e.isTimeout() && Metrics.isEnabled()) {
+							Metrics.getCollector().requestTimedOut(
+									getMetricsName(), unit,
+									m_Request.getFunctionCode());
+						}
+						if (++tries >= retries) {
 							throw e;
 						}
+						if (Metrics.isEnabled()) {
+							Metrics.getCollector().requestRetried(
+									getMetricsName(), unit,
+									m_Request.getFunctionCode());
+						}
 						System.err.println("execute try " + tries + " error: "
 								+ e.getMessage());
 					}
@@ -207,14 +355,63 @@ public class ModbusSerialTransaction implements ModbusTransaction {
 			if (isCheckingValidity()) {
 				checkValidity();
 			}
+		} catch (ModbusIOException ex) {
+			failed = true;
+			throw ex;
 		} catch (InterruptedException ex) {
+			failed = true;
 			throw new ModbusIOException(
 					"Thread acquiring lock was interrupted.");
 		} finally {
 			m_TransactionLock.release();
+			if (breaker != null) {
+				if (failed) {
+					breaker.recordFailure();
+				} else {
+					breaker.recordSuccess();
+				}
+			}
+			if (timed) {
+				if (failed) {
+					Metrics.getCollector().requestFailed(getMetricsName(),
+							m_Request.getUnitID(), m_Request.getFunctionCode());
+				} else {
+					Metrics.exchanged(getMetricsName(), m_Request, m_Response,
+							System.nanoTime() - began);
+				}
+			}
 		}
 	}// execute
 
+	/**
+	 * Returns the name of the line this transaction reports metrics for.
+	 */
+	private String getMetricsName() {
+		if (m_MetricsName == null) {
+			m_MetricsName = "serial:"
+					+ m_SerialCon.getParameters().getPortName();
+		}
+		return m_MetricsName;
+	}// getMetricsName
+
+	/**
+	 * Waits before a request is written. A configured transmit delay takes
+	 * precedence, otherwise the inter-frame delay of the line is observed.
+	 * 
+	 * @param timing
+	 *            the <tt>SerialTiming</tt> of the line.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted.
+	 */
+	private void awaitTransmit(SerialTiming timing)
+			throws InterruptedException {
+		if (m_TransDelayMS > 0) {
+			Thread.sleep(m_TransDelayMS);
+		} else {
+			timing.awaitInterFrameDelay();
+		}
+	}// awaitTransmit
+
 	/**
 	 * Asserts if this <tt>ModbusSerialTransaction</tt> is executable.
 	 * 
@@ -238,4 +435,36 @@ public class ModbusSerialTransaction implements ModbusTransaction {
 	protected void checkValidity() throws ModbusException {
 	}// checkValidity
 
+	/**
+	 * Writes the request, as the pre-encoded frame of the template if one is
+	 * set.
+	 * 
+	 * @throws ModbusIOException
+	 *             if writing fails.
+	 */
+	private void writeRequest() throws ModbusIOException {
+		if (m_Template != null && m_IO instanceof TemplateTransport) {
+			m_Template.setTransactionID(m_Request.getTransactionID());
+			((TemplateTransport) m_IO).writeTemplate(m_Template);
+		} else {
+			m_IO.writeMessage(m_Request);
+		}
+	}// writeRequest
+
+	/**
+	 * Reads the response, validated against the request if validity is
+	 * checked and the transport is a <tt>ValidatingTransport</tt>.
+	 * 
+	 * @return the <tt>ModbusResponse</tt> read.
+	 * @throws ModbusIOException
+	 *             if reading fails, or the response is invalid.
+	 */
+	private ModbusResponse readResponse() throws ModbusIOException {
+		if (m_IO instanceof ValidatingTransport) {
+			return ((ValidatingTransport) m_IO).readResponse(m_Request,
+					isCheckingValidity() ? m_Validator : null);
+		}
+		return m_IO.readResponse();
+	}// readResponse
+
 }// class ModbusSerialTransaction
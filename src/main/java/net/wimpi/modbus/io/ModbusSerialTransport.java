@@ -24,12 +24,18 @@ import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.util.BufferPool;
 import net.wimpi.modbus.util.ModbusUtil;
 
+import net.wimpi.modbus.net.JSSCSerialTerminal;
+import net.wimpi.modbus.net.SerialTerminal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
-import jssc.SerialInputStream;
-import jssc.SerialOutputStream;
 import jssc.SerialPort;
 
 /**
@@ -41,11 +47,13 @@ import jssc.SerialPort;
  * 
  * @version @version@ (@date@)
  */
-abstract public class ModbusSerialTransport implements ModbusTransport {
+abstract public class ModbusSerialTransport implements TemplateTransport,
+		ValidatingTransport {
 	protected SerialPort m_SerialPort;
+	protected SerialTerminal m_Terminal;
 	protected boolean m_Echo = false; // require RS-485 echo processing
-	protected SerialInputStream inputStream;
-	protected SerialOutputStream outputStream;
+	protected InputStream inputStream;
+	protected OutputStream outputStream;
 	protected int timeout=0;
 
 	/**
@@ -58,6 +66,27 @@ abstract public class ModbusSerialTransport implements ModbusTransport {
 	 */
 	abstract public ModbusResponse readResponse() throws ModbusIOException;
 
+	/**
+	 * The <code>readResponse</code> method reads the response to the given
+	 * request, validating its raw frame with the given validator.
+	 * <p>
+	 * This implementation reads the response with {@link #readResponse()},
+	 * without validating it; the serial transports of this package validate
+	 * the frame before decoding it.
+	 * 
+	 * @param request
+	 *            the <tt>ModbusRequest</tt> the response answers.
+	 * @param validator
+	 *            the <tt>ResponseValidator</tt> to be used, or <tt>null</tt>.
+	 * @return a <code>ModbusResponse</code> value
+	 * @exception ModbusIOException
+	 *                if an error occurs
+	 */
+	public ModbusResponse readResponse(ModbusRequest request,
+			ResponseValidator validator) throws ModbusIOException {
+		return readResponse();
+	}// readResponse
+
 	/**
 	 * The <code>readRequest</code> method listens continuously on the serial
 	 * input stream for master request messages and replies if the request slave
@@ -81,6 +110,75 @@ abstract public class ModbusSerialTransport implements ModbusTransport {
 	abstract public void writeMessage(ModbusMessage msg)
 			throws ModbusIOException;
 
+	/**
+	 * The <code>readRequestFrame</code> method reads the next request frame
+	 * into the given buffer, without decoding it. The frame is headless, i.e.
+	 * it starts with the unit identifier, and its checksum has been verified
+	 * and is not included in the returned length.
+	 * <p>
+	 * This implementation reads the request with {@link #readRequest()} and
+	 * encodes it again; the serial transports of this package read the frame
+	 * directly.
+	 * 
+	 * @param buffer
+	 *            the buffer to read into, of at least
+	 *            <tt>Modbus.MAX_MESSAGE_LENGTH</tt> bytes.
+	 * @return the length of the frame without checksum.
+	 * @exception ModbusIOException
+	 *                if an error occurs
+	 */
+	public int readRequestFrame(byte[] buffer) throws ModbusIOException {
+		ModbusRequest request = readRequest();
+		try {
+			BytesOutputStream out = new BytesOutputStream(buffer);
+			request.setHeadless();
+			request.writeTo(out);
+			return out.size();
+		} catch (IOException ex) {
+			throw new ModbusIOException("I/O failed to read");
+		}
+	}// readRequestFrame
+
+	/**
+	 * The <code>writeFrame</code> method writes a headless frame, adding the
+	 * checksum and framing of the transport flavor, with a single write to
+	 * the serial output stream. The two bytes following the frame in the
+	 * buffer may be used for the checksum.
+	 * <p>
+	 * This implementation passes the frame to
+	 * {@link #writeMessage(ModbusMessage)}; the serial transports of this
+	 * package write it directly.
+	 * 
+	 * @param buffer
+	 *            the buffer holding the frame, starting with the unit
+	 *            identifier.
+	 * @param len
+	 *            the length of the frame without checksum.
+	 * @exception ModbusIOException
+	 *                if an error occurs
+	 */
+	public void writeFrame(byte[] buffer, int len) throws ModbusIOException {
+		writeMessage(new FrameMessage(buffer, len));
+	}// writeFrame
+
+	/**
+	 * The <code>writeTemplate</code> method writes the pre-encoded frame of a
+	 * <tt>RequestTemplate</tt>.
+	 * <p>
+	 * This implementation writes the request of the template with
+	 * {@link #writeMessage(ModbusMessage)}; the serial transports of this
+	 * package write the frame directly.
+	 * 
+	 * @param template
+	 *            a <tt>RequestTemplate</tt>.
+	 * @exception ModbusIOException
+	 *                if an error occurs
+	 */
+	public void writeTemplate(RequestTemplate template)
+			throws ModbusIOException {
+		writeMessage(template.getRequest());
+	}// writeTemplate
+
 	/**
 	 * The <code>close</code> method closes the serial input/output streams.
 	 * 
@@ -100,7 +198,7 @@ abstract public class ModbusSerialTransport implements ModbusTransport {
 	* @throws IOException
 	*             if an I\O error occurs.
 	*/
-	abstract public void prepareStreams(SerialInputStream in, SerialOutputStream out)
+	abstract public void prepareStreams(InputStream in, OutputStream out)
 			throws IOException;
 
 	/**
@@ -111,13 +209,35 @@ abstract public class ModbusSerialTransport implements ModbusTransport {
 	 * @throws IOException on error.
 	 */
 	public void setSerialPort(SerialPort sp) throws IOException {
+		setSerialTerminal(new JSSCSerialTerminal(sp));
 		m_SerialPort = sp;
-		inputStream = new SerialInputStream(sp);
-		inputStream.setTimeout(timeout);
-		outputStream = new SerialOutputStream(sp);
-		prepareStreams(inputStream, outputStream);
 	}
 
+	/**
+	 * <code>setSerialTerminal</code> sets the serial terminal to read from
+	 * and write to, and prepares the streams of this transport.
+	 * 
+	 * @param terminal
+	 *            the <tt>SerialTerminal</tt> to read from/write to.
+	 * @throws IOException on error.
+	 */
+	public void setSerialTerminal(SerialTerminal terminal) throws IOException {
+		m_Terminal = terminal;
+		m_Terminal.setReceiveTimeout(timeout);
+		inputStream = terminal.getInputStream();
+		outputStream = terminal.getOutputStream();
+		prepareStreams(inputStream, outputStream);
+	}// setSerialTerminal
+
+	/**
+	 * Returns the <tt>SerialTerminal</tt> of this transport.
+	 * 
+	 * @return the <tt>SerialTerminal</tt>.
+	 */
+	public SerialTerminal getSerialTerminal() {
+		return m_Terminal;
+	}// getSerialTerminal
+
 	/**
 	 * <code>isEcho</code> method returns the output echo state.
 	 * 
@@ -145,8 +265,8 @@ abstract public class ModbusSerialTransport implements ModbusTransport {
 	 */
 	public void setReceiveTimeout(int ms) {
 		timeout = ms;
-		if (inputStream != null) {
-			inputStream.setTimeout(timeout);
+		if (m_Terminal != null) {
+			m_Terminal.setReceiveTimeout(timeout);
 		}
 	}
 
@@ -164,18 +284,76 @@ abstract public class ModbusSerialTransport implements ModbusTransport {
 	 */
 	public void readEcho(int len) throws IOException {
 
-		byte echoBuf[] = new byte[len];
+		byte echoBuf[] = BufferPool.getDefault().acquire(len);
 		try {
-			inputStream.blockingRead(echoBuf);
+			if (readBytes(echoBuf, 0, len) != len) {
+				throw new IOException("Echo incomplete.");
+			}
+			if (Modbus.debug) {
+				System.out.println("Echo: "
+						+ ModbusUtil.toHex(echoBuf, 0, len));
+			}
 		} catch (IOException e) {
 			if (Modbus.debug)
 				System.err.println("Error: Transmit echo not received (serial port exception).");
 			throw e;
-		}
-		
-		if (Modbus.debug) {
-			System.out.println("Echo: " + ModbusUtil.toHex(echoBuf, 0, echoBuf.length));
+		} finally {
+			BufferPool.getDefault().release(echoBuf);
 		}
 	}// readEcho
 
+	/**
+	 * Reads the given number of bytes from the raw input stream, blocking
+	 * until all bytes have been read or the receive timeout expired while
+	 * waiting for more bytes.
+	 * 
+	 * @param buf
+	 *            the buffer to read into.
+	 * @param off
+	 *            the offset into the buffer.
+	 * @param len
+	 *            the number of bytes to be read.
+	 * @return the number of bytes actually read.
+	 * @throws IOException
+	 *             if a I/O error occurred.
+	 */
+	protected int readBytes(byte[] buf, int off, int len) throws IOException {
+		int count = 0;
+		while (count < len) {
+			int n = inputStream.read(buf, off + count, len - count);
+			if (n == -1) {
+				break;
+			}
+			count += n;
+		}
+		return count;
+	}// readBytes
+
+	/**
+	 * A message holding an encoded headless frame, written as it is.
+	 */
+	private static final class FrameMessage extends ModbusResponse {
+
+		private final byte[] m_Frame;
+		private final int m_Length;
+
+		FrameMessage(byte[] frame, int len) {
+			m_Frame = frame;
+			m_Length = len;
+			setHeadless();
+			setUnitID(frame[0] & 0xff);
+			setFunctionCode(frame[1] & 0xff);
+			setDataLength(len - 2);
+		}// constructor
+
+		public void writeData(DataOutput dout) throws IOException {
+			dout.write(m_Frame, 2, m_Length - 2);
+		}// writeData
+
+		public void readData(DataInput din) throws IOException {
+			throw new UnsupportedOperationException();
+		}// readData
+
+	}// inner class FrameMessage
+
 }// interface ModbusSerialTransport
@@ -23,6 +23,7 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.metrics.Metrics;
 import net.wimpi.modbus.msg.ExceptionResponse;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
@@ -47,12 +48,22 @@ public class ModbusTCPTransaction implements ModbusTransaction {
 	private ModbusTransport m_IO;
 	private ModbusRequest m_Request;
 	private ModbusResponse m_Response;
+	private RequestTemplate m_Template;
+	private ResponseValidator m_Validator = new ResponseValidator();
 	private boolean m_ValidityCheck = Modbus.DEFAULT_VALIDITYCHECK;
 	private boolean m_Reconnecting = Modbus.DEFAULT_RECONNECTING;
 	private int m_Retries = Modbus.DEFAULT_RETRIES;
+	private boolean m_Broadcasting = false;
+	private int m_TurnaroundDelay = Modbus.DEFAULT_TURNAROUND_DELAY;
 
 	private Mutex m_TransactionLock = new Mutex();
 
+	private CircuitBreakerRegistry m_Breakers;
+	private CircuitBreaker m_Breaker;
+	private int m_BreakerUnit = -1;
+
+	private String m_MetricsName;
+
 	/**
 	 * Constructs a new <tt>ModbusTCPTransaction</tt> instance.
 	 */
@@ -97,16 +108,67 @@ public class ModbusTCPTransaction implements ModbusTransaction {
 	public void setConnection(TCPMasterConnection con) {
 		m_Connection = con;
 		m_IO = con.getModbusTransport();
+		m_Breaker = null;
+		m_MetricsName = null;
 	}// setConnection
 
+	/**
+	 * Sets the registry of the circuit breakers guarding the devices this
+	 * transaction talks to. Once set, requests to a device whose breaker is
+	 * open fail immediately instead of running through all retries.
+	 * 
+	 * @param breakers
+	 *            the <tt>CircuitBreakerRegistry</tt>, or null to disable.
+	 */
+	public void setCircuitBreakers(CircuitBreakerRegistry breakers) {
+		m_Breakers = breakers;
+		m_Breaker = null;
+	}// setCircuitBreakers
+
+	/**
+	 * Returns the registry of the circuit breakers of this transaction.
+	 * 
+	 * @return the <tt>CircuitBreakerRegistry</tt>, or null if disabled.
+	 */
+	public CircuitBreakerRegistry getCircuitBreakers() {
+		return m_Breakers;
+	}// getCircuitBreakers
+
+	/**
+	 * Returns the breaker of the endpoint and unit of the current request.
+	 */
+	private CircuitBreaker getCircuitBreaker() {
+		if (m_Breakers == null || (m_Broadcasting && m_Request.isBroadcast())) {
+			return null;
+		}
+		int unit = m_Request.getUnitID();
+		if (m_Breaker == null || m_BreakerUnit != unit) {
+			m_Breaker = m_Breakers.getBreaker(m_Connection.getAddress()
+					.getHostAddress()
+					+ ":" + m_Connection.getPort() + "/" + unit);
+			m_BreakerUnit = unit;
+		}
+		return m_Breaker;
+	}// getCircuitBreaker
+
 	public void setRequest(ModbusRequest req) {
 		m_Request = req;
+		m_Template = null;
 	}// setRequest
 
 	public ModbusRequest getRequest() {
 		return m_Request;
 	}// getRequest
 
+	public void setRequestTemplate(RequestTemplate template) {
+		m_Request = template.getRequest();
+		m_Template = template;
+	}// setRequestTemplate
+
+	public RequestTemplate getRequestTemplate() {
+		return m_Template;
+	}// getRequestTemplate
+
 	public ModbusResponse getResponse() {
 		return m_Response;
 	}// getResponse
@@ -123,6 +185,14 @@ public class ModbusTCPTransaction implements ModbusTransaction {
 		return m_ValidityCheck;
 	}// isCheckingValidity
 
+	public void setResponseValidator(ResponseValidator validator) {
+		m_Validator = validator;
+	}// setResponseValidator
+
+	public ResponseValidator getResponseValidator() {
+		return m_Validator;
+	}// getResponseValidator
+
 	/**
 	 * Sets the flag that controls whether a connection is openend and closed
 	 * for <b>each</b> execution or not.
@@ -154,12 +224,63 @@ public class ModbusTCPTransaction implements ModbusTransaction {
 		m_Retries = num;
 	}// setRetries
 
+	/**
+	 * Sets the flag that controls whether broadcast requests are sent without
+	 * waiting for a response. This should only be enabled when talking to a
+	 * gateway that forwards broadcasts to a serial line; Modbus/TCP devices
+	 * usually answer requests for unit identifier <tt>0</tt>.
+	 * 
+	 * @param b
+	 *            true if broadcasts should not be answered, false otherwise.
+	 * @see ModbusRequest#isBroadcast()
+	 */
+	public void setBroadcasting(boolean b) {
+		m_Broadcasting = b;
+	}// setBroadcasting
+
+	/**
+	 * Tests if broadcast requests are sent without waiting for a response.
+	 * 
+	 * @return true if broadcasts are not answered, false otherwise.
+	 */
+	public boolean isBroadcasting() {
+		return m_Broadcasting;
+	}// isBroadcasting
+
+	/**
+	 * Returns the turnaround delay that is waited after a broadcast.
+	 * 
+	 * @return the turnaround delay in milliseconds.
+	 */
+	public int getTurnaroundDelay() {
+		return m_TurnaroundDelay;
+	}// getTurnaroundDelay
+
+	/**
+	 * Sets the turnaround delay that is waited after a broadcast.
+	 * 
+	 * @param ms
+	 *            the turnaround delay in milliseconds.
+	 */
+	public void setTurnaroundDelay(int ms) {
+		m_TurnaroundDelay = ms;
+	}// setTurnaroundDelay
+
 	public void execute() throws ModbusIOException, ModbusSlaveException,
 			ModbusException {
 
 		// 1. check that the transaction can be executed
 		assertExecutable();
 
+		// fail fast if the device is known to be down, a probe is tried once
+		CircuitBreaker breaker = getCircuitBreaker();
+		int retries = m_Retries;
+		if (breaker != null && breaker.acquire()) {
+			retries = 1;
+		}
+		boolean timed = Metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0;
+		boolean failed = false;
 		try {
 			// 2. Lock transaction
 			/**
@@ -168,84 +289,178 @@ public class ModbusTCPTransaction implements ModbusTransaction {
 			 * simply call notify() and the JVM will handle the rest.
 			 */
 			m_TransactionLock.acquire();
-
-			// 3. open the connection if not connected
-			if (!m_Connection.isConnected()) {
-				try {
-					m_Connection.connect();
-					m_IO = m_Connection.getModbusTransport();
-				} catch (Exception ex) {
-					throw new ModbusIOException("Connecting failed.");
+			m_Connection.beginExchange();
+			try {
+				exchange(retries);
+			} finally {
+				m_Connection.endExchange();
+			}
+		} catch (ModbusIOException ex) {
+			failed = true;
+			throw ex;
+		} catch (InterruptedException ex) {
+			failed = true;
+			throw new ModbusIOException(
+					"Thread acquiring lock was interrupted.");
+		} finally {
+			m_TransactionLock.release();
+			if (breaker != null) {
+				if (failed) {
+					breaker.recordFailure();
+				} else {
+					breaker.recordSuccess();
+				}
+			}
+			if (timed) {
+				if (failed) {
+					Metrics.getCollector().requestFailed(getMetricsName(),
+							m_Request.getUnitID(), m_Request.getFunctionCode());
+				} else {
+					Metrics.exchanged(getMetricsName(), m_Request, m_Response,
+							System.nanoTime() - start);
 				}
 			}
+		}
+	}// execute
 
-			// 4. Retry transaction m_Retries times, in case of
-			// I/O Exception problems.
-			int retryCounter = 0;
-			int transactionId;
-			while (retryCounter < m_Retries) {
-				try {
-					// toggle and set the id
-					transactionId = c_TransactionID.increment();
-					m_Request.setTransactionID(transactionId);
-
-					// 3. write request, and read response
-					m_IO.flush();
-					m_IO.writeMessage(m_Request);
-
-					// read response message
-					ModbusResponse response = m_IO.readResponse();
-
-					// Check the transaction ID
-					if (response.getTransactionID() == transactionId) {
-						m_Response = response;
-						m_Response.setReference(m_Request.getReference());
-						break;
-					} else {
-						if (retryCounter == (m_Retries - 1)) {
-							throw new ModbusIOException(
-									"Executing transaction failed (tried "
-											+ m_Retries + " times)");
-						} else {
-							retryCounter++;
-							continue;
-						}
-					}
-				} catch (ModbusIOException ex) {
-					if (retryCounter == (m_Retries - 1)) {
+	/**
+	 * Returns the name of the device this transaction reports metrics for.
+	 */
+	private String getMetricsName() {
+		if (m_MetricsName == null) {
+			m_MetricsName = "tcp:" + m_Connection.getAddress().getHostAddress()
+					+ ":" + m_Connection.getPort();
+		}
+		return m_MetricsName;
+	}// getMetricsName
+
+	/**
+	 * Opens the connection if it is not connected.
+	 * 
+	 * @throws ModbusIOException
+	 *             if connecting fails.
+	 */
+	private void connect() throws ModbusIOException {
+		if (!m_Connection.isConnected()) {
+			try {
+				m_Connection.connect();
+				m_IO = m_Connection.getModbusTransport();
+			} catch (Exception ex) {
+				throw new ModbusIOException("Connecting failed.");
+			}
+		}
+	}// connect
+
+	/**
+	 * Writes the request and reads the response, called with the exchange of
+	 * the connection begun.
+	 */
+	private void exchange(int retries) throws ModbusIOException,
+			ModbusSlaveException,
+			ModbusException, InterruptedException {
+		// 3. open the connection if not connected
+		connect();
+
+		// broadcasts through a gateway are not answered
+		if (m_Broadcasting && m_Request.isBroadcast()) {
+			m_Request.setTransactionID(c_TransactionID.increment());
+			m_IO.flush();
+			writeRequest();
+			m_Response = null;
+			if (m_TurnaroundDelay > 0) {
+				Thread.sleep(m_TurnaroundDelay);
+			}
+			if (isReconnecting()) {
+				m_Connection.close();
+			}
+			return;
+		}
+
+		// 4. Retry transaction up to retries times, in case of
+		// I/O Exception problems.
+		int retryCounter = 0;
+		int transactionId;
+		boolean autoReconnect = m_Connection.isAutoReconnect();
+		while (retryCounter < retries) {
+			try {
+				// a broken connection is reopened for the retry
+				if (autoReconnect) {
+					connect();
+				}
+
+				// toggle and set the id
+				transactionId = c_TransactionID.increment();
+				m_Request.setTransactionID(transactionId);
+
+				// 3. write request, and read response
+				m_IO.flush();
+				writeRequest();
+
+				// read response message
+				ModbusResponse response = readResponse();
+
+				// Check the transaction ID
+				if (response.getTransactionID() == transactionId) {
+					m_Response = response;
+					m_Response.setReference(m_Request.getReference());
+					break;
+				} else {
+					if (retryCounter == (retries - 1)) {
 						throw new ModbusIOException(
 								"Executing transaction failed (tried "
-										+ m_Retries + " times)");
+										+ retries + " times)");
 					} else {
 						retryCounter++;
+						if (Metrics.isEnabled()) {
+							Metrics.getCollector().requestRetried(
+									getMetricsName(), m_Request.getUnitID(),
+									m_Request.getFunctionCode());
+						}
 						continue;
 					}
 				}
+			} catch (ModbusIOException ex) {
+				if (ex.isTimeout() && Metrics.isEnabled()) {
+					Metrics.getCollector().requestTimedOut(getMetricsName(),
+							m_Request.getUnitID(), m_Request.getFunctionCode());
+				}
+				// the stream may hold a partial or late response, so
+				// start over on a fresh socket
+				if (autoReconnect) {
+					m_Connection.close();
+				}
+				if (retryCounter == (retries - 1)) {
+					throw new ModbusIOException(
+							"Executing transaction failed (tried "
+									+ retries + " times)");
+				} else {
+					retryCounter++;
+					if (Metrics.isEnabled()) {
+						Metrics.getCollector().requestRetried(getMetricsName(),
+								m_Request.getUnitID(), m_Request
+										.getFunctionCode());
+					}
+					continue;
+				}
 			}
+		}
 
-			// 5. deal with "application level" exceptions
-			if (m_Response instanceof ExceptionResponse) {
-				throw new ModbusSlaveException(
-						((ExceptionResponse) m_Response).getExceptionCode());
-			}
-
-			// 6. close connection if reconnecting
-			if (isReconnecting()) {
-				m_Connection.close();
-			}
+		// 5. deal with "application level" exceptions
+		if (m_Response instanceof ExceptionResponse) {
+			throw new ModbusSlaveException(
+					((ExceptionResponse) m_Response).getExceptionCode());
+		}
 
-			// 7. Check transaction validity
-			if (isCheckingValidity()) {
-				checkValidity();
-			}
+		// 6. close connection if reconnecting
+		if (isReconnecting()) {
+			m_Connection.close();
+		}
 
-		} catch (InterruptedException ex) {
-			throw new ModbusIOException(
-					"Thread acquiring lock was interrupted.");
-		} finally {
-			m_TransactionLock.release();
+		// 7. Check transaction validity
+		if (isCheckingValidity()) {
+			checkValidity();
 		}
-	}// execute
+	}// exchange
 
 	/**
 	 * Asserts if this <tt>ModbusTCPTransaction</tt> is executable.
@@ -271,4 +486,36 @@ public class ModbusTCPTransaction implements ModbusTransaction {
 	protected void checkValidity() throws ModbusException {
 	}// checkValidity
 
+	/**
+	 * Writes the request, as the pre-encoded frame of the template if one is
+	 * set.
+	 * 
+	 * @throws ModbusIOException
+	 *             if writing fails.
+	 */
+	private void writeRequest() throws ModbusIOException {
+		if (m_Template != null && m_IO instanceof TemplateTransport) {
+			m_Template.setTransactionID(m_Request.getTransactionID());
+			((TemplateTransport) m_IO).writeTemplate(m_Template);
+		} else {
+			m_IO.writeMessage(m_Request);
+		}
+	}// writeRequest
+
+	/**
+	 * Reads the response, validated against the request if validity is
+	 * checked and the transport is a <tt>ValidatingTransport</tt>.
+	 * 
+	 * @return the <tt>ModbusResponse</tt> read.
+	 * @throws ModbusIOException
+	 *             if reading fails, or the response is invalid.
+	 */
+	private ModbusResponse readResponse() throws ModbusIOException {
+		if (m_IO instanceof ValidatingTransport) {
+			return ((ValidatingTransport) m_IO).readResponse(m_Request,
+					isCheckingValidity() ? m_Validator : null);
+		}
+		return m_IO.readResponse();
+	}// readResponse
+
 }// class ModbusTCPTransaction
@@ -23,7 +23,9 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.net.SocketException;
 
 import net.wimpi.modbus.Modbus;
@@ -40,12 +42,14 @@ import net.wimpi.modbus.util.ModbusUtil;
  * @author Dieter Wimberger
  * @version @version@ (@date@)
  */
-public class ModbusTCPTransport implements ModbusTransport {
+public class ModbusTCPTransport implements TemplateTransport,
+		ValidatingTransport {
 
 	// instance attributes
 	private DataInputStream m_Input; // input stream
 	private DataOutputStream m_Output; // output stream
 	private BytesInputStream m_ByteIn;
+	private ModbusFrame m_Frame;
 	private ProcessImage m_ProcessImage;
 
 	/**
@@ -105,24 +109,9 @@ public class ModbusTCPTransport implements ModbusTransport {
 			synchronized (m_ByteIn) {
 				// use same buffer
 				byte[] buffer = m_ByteIn.getBuffer();
-
-				// read to byte length of message
-				if (m_Input.read(buffer, 0, 6) == -1) {
-					throw new EOFException(
-							"Premature end of stream (Header truncated).");
-				}
-				// extract length of bytes following in message
-				int bf = ModbusUtil.registerToShort(buffer, 4);
-				// read rest
-				if (m_Input.read(buffer, 6, bf) == -1) {
-					throw new ModbusIOException(
-							"Premature end of stream (Message truncated).");
-				}
-				m_ByteIn.reset(buffer, (6 + bf));
-				m_ByteIn.skip(7);
-				int functionCode = m_ByteIn.readUnsignedByte();
-				m_ByteIn.reset();
-				req = ModbusRequest.createModbusRequest(functionCode);
+				int len = readFrame(buffer);
+				m_ByteIn.reset(buffer, len);
+				req = ModbusRequest.createModbusRequest(buffer[7] & 0xff);
 				req.setProcessImage(m_ProcessImage);
 				req.readFrom(m_ByteIn);
 			}
@@ -147,12 +136,83 @@ public class ModbusTCPTransport implements ModbusTransport {
 		} catch (SocketException sockex) {
 			// connection reset by peer, also EOF
 			throw new ModbusIOException(true);
+		} catch (IOException ioex) {
+			// stream closed, e.g. the connection was dropped while idle
+			throw new ModbusIOException(true);
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			throw new ModbusIOException("I/O exception - failed to read.");
 		}
 	}// readRequest
 
+	/**
+	 * Reads the next request frame into the given buffer, without decoding
+	 * it.
+	 * 
+	 * @param buffer
+	 *            the buffer to read into, of at least
+	 *            <tt>Modbus.MAX_IP_MESSAGE_LENGTH</tt> bytes.
+	 * @return the length of the frame.
+	 * @throws ModbusIOException
+	 *             marked as EOF if the connection was closed or broke.
+	 */
+	public int readRequestFrame(byte[] buffer) throws ModbusIOException {
+		try {
+			return readFrame(buffer);
+		} catch (IOException ex) {
+			// end of stream, connection reset or stream closed
+			throw new ModbusIOException(true);
+		}
+	}// readRequestFrame
+
+	/**
+	 * Writes a complete frame with a single write to the socket.
+	 * 
+	 * @param buffer
+	 *            the buffer holding the frame.
+	 * @param len
+	 *            the length of the frame.
+	 * @throws ModbusIOException
+	 *             if writing fails.
+	 */
+	public void writeFrame(byte[] buffer, int len) throws ModbusIOException {
+		try {
+			m_Output.write(buffer, 0, len);
+			m_Output.flush();
+		} catch (Exception ex) {
+			throw new ModbusIOException("I/O exception - failed to write.");
+		}
+	}// writeFrame
+
+	public void writeTemplate(RequestTemplate template)
+			throws ModbusIOException {
+		if (template.getEncoding() != RequestTemplate.IP) {
+			writeMessage(template.getRequest());
+			return;
+		}
+		writeFrame(template.getFrame(), template.getLength());
+	}// writeTemplate
+
+	/**
+	 * Reads a complete frame, header first, then as many bytes as the length
+	 * field announces.
+	 * 
+	 * @param buffer
+	 *            the buffer to read into.
+	 * @return the length of the frame.
+	 * @throws IOException
+	 *             if the stream ended or the length field is invalid.
+	 */
+	private int readFrame(byte[] buffer) throws IOException {
+		m_Input.readFully(buffer, 0, 6);
+		int bf = ModbusUtil.registerToShort(buffer, 4) & 0xffff;
+		if (bf < 2 || 6 + bf > buffer.length) {
+			throw new IOException("Invalid frame length: " + bf);
+		}
+		m_Input.readFully(buffer, 6, bf);
+		return 6 + bf;
+	}// readFrame
+
 	public void flush() {
 		try {
 			m_Input.skip(m_Input.available());
@@ -162,6 +222,11 @@ public class ModbusTCPTransport implements ModbusTransport {
 	}
 
 	public ModbusResponse readResponse() throws ModbusIOException {
+		return readResponse(null, null);
+	}// readResponse
+
+	public ModbusResponse readResponse(ModbusRequest request,
+			ResponseValidator validator) throws ModbusIOException {
 		// System.out.println("readResponse()");
 
 		try {
@@ -170,20 +235,19 @@ public class ModbusTCPTransport implements ModbusTransport {
 			synchronized (m_ByteIn) {
 				// use same buffer
 				byte[] buffer = m_ByteIn.getBuffer();
-
-				// read to byte length of message
-				if (m_Input.read(buffer, 0, 6) == -1) {
-					throw new ModbusIOException(
-							"Premature end of stream (Header truncated).");
-				}
-				// extract length of bytes following in message
-				int bf = ModbusUtil.registerToShort(buffer, 4);
-				// read rest
-				if (m_Input.read(buffer, 6, bf) == -1) {
-					throw new ModbusIOException(
-							"Premature end of stream (Message truncated).");
+				int len = readFrame(buffer);
+				// a late response to an earlier request is left to the
+				// transaction identifier check of the transaction
+				if (validator != null
+						&& m_Frame.getTransactionID() == request
+								.getTransactionID()) {
+					int violation = validator.validate(request, m_Frame, len);
+					if (violation != ResponseValidator.VALID) {
+						throw new ModbusIOException("Invalid response: "
+								+ ResponseValidator.getViolationName(violation));
+					}
 				}
-				m_ByteIn.reset(buffer, (6 + bf));
+				m_ByteIn.reset(buffer, len);
 				m_ByteIn.skip(7);
 				int functionCode = m_ByteIn.readUnsignedByte();
 				m_ByteIn.reset();
@@ -211,8 +275,16 @@ public class ModbusTCPTransport implements ModbusTransport {
 			 * response.setProtocolID(protocolID); response.setUnitID(unitID);
 			 * return response;
 			 */
+		} catch (ModbusIOException ex) {
+			throw ex;
+		} catch (InterruptedIOException ioex) {
+			ModbusIOException ex = new ModbusIOException("Socket timed out.");
+			ex.setTimeout(true);
+			throw ex;
 		} catch (Exception ex) {
-			ex.printStackTrace();
+			// broken connections are expected with reconnecting masters
+			if (Modbus.debug)
+				ex.printStackTrace();
 			throw new ModbusIOException("I/O exception - failed to read.");
 		}
 	}// readResponse
@@ -233,6 +305,8 @@ public class ModbusTCPTransport implements ModbusTransport {
 		m_Output = new DataOutputStream(new BufferedOutputStream(
 				socket.getOutputStream()));
 		m_ByteIn = new BytesInputStream(Modbus.MAX_IP_MESSAGE_LENGTH);
+		m_Frame = new ModbusFrame().wrap(ByteBuffer.wrap(m_ByteIn.getBuffer()),
+				0);
 	}// prepareStreams
 
 	@Override
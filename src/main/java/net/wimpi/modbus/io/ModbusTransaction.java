@@ -52,6 +52,27 @@ public interface ModbusTransaction {
 	 */
 	public ModbusRequest getRequest();
 
+	/**
+	 * Sets a <tt>RequestTemplate</tt> for this <tt>ModbusTransaction</tt>.
+	 * <p>
+	 * The request of the template becomes the request of this transaction,
+	 * and is sent as the pre-encoded frame of the template until another
+	 * request or template is set.
+	 * 
+	 * @param template
+	 *            a <tt>RequestTemplate</tt>.
+	 */
+	public void setRequestTemplate(RequestTemplate template);
+
+	/**
+	 * Returns the <tt>RequestTemplate</tt> associated with this
+	 * <tt>ModbusTransaction</tt>.
+	 * 
+	 * @return the <tt>RequestTemplate</tt>, or <tt>null</tt> if the request
+	 *         is encoded on every execution.
+	 */
+	public RequestTemplate getRequestTemplate();
+
 	/**
 	 * Returns the <tt>ModbusResponse</tt> instance associated with this
 	 * <tt>ModbusTransaction</tt>.
@@ -108,6 +129,24 @@ public interface ModbusTransaction {
 	 */
 	public boolean isCheckingValidity();
 
+	/**
+	 * Sets the <tt>ResponseValidator</tt> used to check responses, while the
+	 * validity of transactions is checked. Transactions sharing a validator
+	 * share its violation counters.
+	 * 
+	 * @param validator
+	 *            a <tt>ResponseValidator</tt>.
+	 */
+	public void setResponseValidator(ResponseValidator validator);
+
+	/**
+	 * Returns the <tt>ResponseValidator</tt> of this
+	 * <tt>ModbusTransaction</tt>.
+	 * 
+	 * @return the <tt>ResponseValidator</tt>.
+	 */
+	public ResponseValidator getResponseValidator();
+
 	/**
 	 * Executes this <tt>ModbusTransaction</tt>. Locks the
 	 * <tt>ModbusTransport</tt> for sending the <tt>ModbusRequest</tt> and
@@ -23,6 +23,7 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.metrics.Metrics;
 import net.wimpi.modbus.msg.ExceptionResponse;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
@@ -46,15 +47,20 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 
 	// instance attributes and associations
 	private UDPTerminal m_Terminal;
+	private UDPMasterConnection m_Connection;
 	private ModbusTransport m_IO;
 	private ModbusRequest m_Request;
 	private ModbusResponse m_Response;
+	private RequestTemplate m_Template;
+	private ResponseValidator m_Validator = new ResponseValidator();
 	private boolean m_ValidityCheck = Modbus.DEFAULT_VALIDITYCHECK;
 	private int m_Retries = Modbus.DEFAULT_RETRIES;
 	private int m_RetryCounter = 0;
 
 	private Mutex m_TransactionLock = new Mutex();
 
+	private String m_MetricsName;
+
 	/**
 	 * Constructs a new <tt>ModbusUDPTransaction</tt> instance.
 	 */
@@ -95,6 +101,7 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 	 */
 	public ModbusUDPTransaction(UDPMasterConnection con) {
 		setTerminal(con.getTerminal());
+		m_Connection = con;
 	}// constructor
 
 	/**
@@ -107,6 +114,8 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 	 */
 	public void setTerminal(UDPTerminal terminal) {
 		m_Terminal = terminal;
+		m_Connection = null;
+		m_MetricsName = null;
 		if (terminal.isActive()) {
 			m_IO = terminal.getModbusTransport();
 		}
@@ -114,6 +123,7 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 
 	public void setRequest(ModbusRequest req) {
 		m_Request = req;
+		m_Template = null;
 		// m_Response = req.getResponse();
 	}// setRequest
 
@@ -121,6 +131,15 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 		return m_Request;
 	}// getRequest
 
+	public void setRequestTemplate(RequestTemplate template) {
+		m_Request = template.getRequest();
+		m_Template = template;
+	}// setRequestTemplate
+
+	public RequestTemplate getRequestTemplate() {
+		return m_Template;
+	}// getRequestTemplate
+
 	public ModbusResponse getResponse() {
 		return m_Response;
 	}// getResponse
@@ -137,6 +156,14 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 		return m_ValidityCheck;
 	}// isCheckingValidity
 
+	public void setResponseValidator(ResponseValidator validator) {
+		m_Validator = validator;
+	}// setResponseValidator
+
+	public ResponseValidator getResponseValidator() {
+		return m_Validator;
+	}// getResponseValidator
+
 	public int getRetries() {
 		return m_Retries;
 	}// getRetries
@@ -151,6 +178,9 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 		// 1. assert executeability
 		assertExecutable();
 
+		boolean timed = Metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0;
+		boolean answered = false;
 		try {
 			// 2. Lock transaction
 			/**
@@ -183,14 +213,27 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 					// while holding the lock on the IO object
 					synchronized (m_IO) {
 						// write request message
-						m_IO.writeMessage(m_Request);
+						writeRequest();
 						// read response message
-						m_Response = m_IO.readResponse();
+						m_Response = readResponse();
 						m_Response.setReference(m_Request.getReference());
+						answered = true;
 						break;
 					}
 				} catch (ModbusIOException ex) {
 					m_RetryCounter++;
+					if (Metrics.isEnabled()) {
+						if (ex.isTimeout()) {
+							Metrics.getCollector().requestTimedOut(
+									getMetricsName(), m_Request.getUnitID(),
+									m_Request.getFunctionCode());
+						}
+						if (m_RetryCounter <= m_Retries) {
+							Metrics.getCollector().requestRetried(
+									getMetricsName(), m_Request.getUnitID(),
+									m_Request.getFunctionCode());
+						}
+					}
 					continue;
 				}
 			}
@@ -209,10 +252,40 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 					"Thread acquiring lock was interrupted.");
 		} finally {
 			m_TransactionLock.release();
+			if (timed) {
+				if (answered) {
+					Metrics.exchanged(getMetricsName(), m_Request, m_Response,
+							System.nanoTime() - start);
+				} else {
+					Metrics.getCollector().requestFailed(getMetricsName(),
+							m_Request.getUnitID(), m_Request.getFunctionCode());
+				}
+			}
 		}
 
 	}// execute
 
+	/**
+	 * Returns the name of the device this transaction reports metrics for,
+	 * the local end of the terminal if it was not given by a connection.
+	 */
+	private String getMetricsName() {
+		if (m_MetricsName == null) {
+			if (m_Connection != null) {
+				m_MetricsName = "udp:"
+						+ m_Connection.getAddress().getHostAddress() + ":"
+						+ m_Connection.getPort();
+			} else if (m_Terminal.getLocalAddress() != null) {
+				m_MetricsName = "udp:"
+						+ m_Terminal.getLocalAddress().getHostAddress() + ":"
+						+ m_Terminal.getLocalPort();
+			} else {
+				return "udp:" + m_Terminal.getLocalPort();
+			}
+		}
+		return m_MetricsName;
+	}// getMetricsName
+
 	/**
 	 * Asserts if this <tt>ModbusTCPTransaction</tt> is executable.
 	 * 
@@ -237,4 +310,36 @@ public class ModbusUDPTransaction implements ModbusTransaction {
 	protected void checkValidity() throws ModbusException {
 	}// checkValidity
 
+	/**
+	 * Writes the request, as the pre-encoded frame of the template if one is
+	 * set.
+	 * 
+	 * @throws ModbusIOException
+	 *             if writing fails.
+	 */
+	private void writeRequest() throws ModbusIOException {
+		if (m_Template != null && m_IO instanceof TemplateTransport) {
+			m_Template.setTransactionID(m_Request.getTransactionID());
+			((TemplateTransport) m_IO).writeTemplate(m_Template);
+		} else {
+			m_IO.writeMessage(m_Request);
+		}
+	}// writeRequest
+
+	/**
+	 * Reads the response, validated against the request if validity is
+	 * checked and the transport is a <tt>ValidatingTransport</tt>.
+	 * 
+	 * @return the <tt>ModbusResponse</tt> read.
+	 * @throws ModbusIOException
+	 *             if reading fails, or the response is invalid.
+	 */
+	private ModbusResponse readResponse() throws ModbusIOException {
+		if (m_IO instanceof ValidatingTransport) {
+			return ((ValidatingTransport) m_IO).readResponse(m_Request,
+					isCheckingValidity() ? m_Validator : null);
+		}
+		return m_IO.readResponse();
+	}// readResponse
+
 }// class ModbusUDPTransaction
@@ -19,14 +19,18 @@ package net.wimpi.modbus.io;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.net.BufferedUDPTerminal;
 import net.wimpi.modbus.net.UDPTerminal;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.util.BufferPool;
+import net.wimpi.modbus.util.ModbusUtil;
 
 /**
  * Class that implements the Modbus UDP transport flavor.
@@ -34,13 +38,18 @@ import net.wimpi.modbus.procimg.ProcessImage;
  * @author Dieter Wimberger
  * @version 1.0 (29/04/2002)
  */
-public class ModbusUDPTransport implements ModbusTransport {
+public class ModbusUDPTransport implements TemplateTransport,
+		ValidatingTransport {
 
 	// instance attributes
 	private UDPTerminal m_Terminal;
+	private BufferedUDPTerminal m_Buffered;
 	private BytesOutputStream m_ByteOut;
 	private BytesInputStream m_ByteIn;
 	private ProcessImage m_ProcessImage;
+	private BufferPool m_Pool = BufferPool.getDefault();
+	private ModbusFrame m_Frame = new ModbusFrame();
+	private ByteBuffer m_In;
 
 	/**
 	 * Constructs a new <tt>ModbusTransport</tt> instance, for a given
@@ -52,6 +61,9 @@ public class ModbusUDPTransport implements ModbusTransport {
 	 */
 	public ModbusUDPTransport(UDPTerminal terminal) {
 		m_Terminal = terminal;
+		if (terminal instanceof BufferedUDPTerminal) {
+			m_Buffered = (BufferedUDPTerminal) terminal;
+		}
 		m_ByteOut = new BytesOutputStream(Modbus.MAX_IP_MESSAGE_LENGTH);
 		m_ByteIn = new BytesInputStream(Modbus.MAX_IP_MESSAGE_LENGTH);
 	}// constructor
@@ -65,24 +77,69 @@ public class ModbusUDPTransport implements ModbusTransport {
 			synchronized (m_ByteOut) {
 				m_ByteOut.reset();
 				msg.writeTo((DataOutput) m_ByteOut);
-				m_Terminal.sendMessage(m_ByteOut.toByteArray());
+				send(m_ByteOut.getBuffer(), m_ByteOut.size());
 			}
 		} catch (Exception ex) {
 			throw new ModbusIOException("I/O exception - failed to write.");
 		}
 	}// write
 
+	public void writeTemplate(RequestTemplate template)
+			throws ModbusIOException {
+		if (template.getEncoding() != RequestTemplate.IP) {
+			writeMessage(template.getRequest());
+			return;
+		}
+		try {
+			send(template.getFrame(), template.getLength());
+		} catch (Exception ex) {
+			throw new ModbusIOException("I/O exception - failed to write.");
+		}
+	}// writeTemplate
+
+	/**
+	 * Sends the first <tt>len</tt> bytes of the given data, through a pooled
+	 * buffer if the terminal is a <tt>BufferedUDPTerminal</tt>.
+	 */
+	private void send(byte[] data, int len) throws Exception {
+		if (m_Buffered != null) {
+			// the terminal releases the buffer once sent
+			byte[] buf = m_Pool.acquire(len);
+			System.arraycopy(data, 0, buf, 0, len);
+			m_Buffered.sendMessage(buf, len);
+		} else {
+			byte[] msg = new byte[len];
+			System.arraycopy(data, 0, msg, 0, len);
+			m_Terminal.sendMessage(msg);
+		}
+	}// send
+
+	/**
+	 * Releases a received message, if the terminal is a
+	 * <tt>BufferedUDPTerminal</tt> and has taken it from the pool.
+	 */
+	private void release(byte[] buf) {
+		if (m_Buffered != null) {
+			m_Pool.release(buf);
+		}
+	}// release
+
 	public ModbusRequest readRequest() throws ModbusIOException {
 		try {
 			ModbusRequest req = null;
 			synchronized (m_ByteIn) {
-				m_ByteIn.reset(m_Terminal.receiveMessage());
-				m_ByteIn.skip(7);
-				int functionCode = m_ByteIn.readUnsignedByte();
-				m_ByteIn.reset();
-				req = ModbusRequest.createModbusRequest(functionCode);
-				req.setProcessImage(m_ProcessImage);
-				req.readFrom(m_ByteIn);
+				byte[] buf = m_Terminal.receiveMessage();
+				try {
+					m_ByteIn.reset(buf);
+					m_ByteIn.skip(7);
+					int functionCode = m_ByteIn.readUnsignedByte();
+					m_ByteIn.reset();
+					req = ModbusRequest.createModbusRequest(functionCode);
+					req.setProcessImage(m_ProcessImage);
+					req.readFrom(m_ByteIn);
+				} finally {
+					release(buf);
+				}
 			}
 			return req;
 		} catch (Exception ex) {
@@ -91,21 +148,64 @@ public class ModbusUDPTransport implements ModbusTransport {
 	}// readRequest
 
 	public ModbusResponse readResponse() throws ModbusIOException {
+		return readResponse(null, null);
+	}// readResponse
+
+	public ModbusResponse readResponse(ModbusRequest request,
+			ResponseValidator validator) throws ModbusIOException {
 
 		try {
 			ModbusResponse res = null;
 			synchronized (m_ByteIn) {
-				m_ByteIn.reset(m_Terminal.receiveMessage());
-				m_ByteIn.skip(7);
-				int functionCode = m_ByteIn.readUnsignedByte();
-				m_ByteIn.reset();
-				res = ModbusResponse.createModbusResponse(functionCode);
-				res.setProcessImage(m_ProcessImage);
-				res.readFrom(m_ByteIn);
+				byte[] buf;
+				int len;
+				if (m_Buffered != null) {
+					buf = m_Pool.acquire(Modbus.MAX_IP_MESSAGE_LENGTH);
+					len = m_Buffered.receiveMessage(buf);
+				} else {
+					// the length field of the header gives the datagram size
+					buf = m_Terminal.receiveMessage();
+					len = Math.min(buf.length,
+							6 + (ModbusUtil.registerToShort(buf, 4) & 0xffff));
+				}
+				try {
+					if (validator != null) {
+						// pooled buffers recur, so is the view on them
+						if (m_In == null || m_In.array() != buf) {
+							m_In = ByteBuffer.wrap(buf);
+						}
+						m_Frame.wrap(m_In, 0);
+						// a late response to an earlier request is left to the
+						// transaction identifier check of the transaction
+						if (m_Frame.getTransactionID() == request
+								.getTransactionID()) {
+							int violation = validator.validate(request, m_Frame,
+									len);
+							if (violation != ResponseValidator.VALID) {
+								throw new ModbusIOException("Invalid response: "
+										+ ResponseValidator
+												.getViolationName(violation));
+							}
+						}
+					}
+					m_ByteIn.reset(buf, len);
+					m_ByteIn.skip(7);
+					int functionCode = m_ByteIn.readUnsignedByte();
+					m_ByteIn.reset();
+					res = ModbusResponse.createModbusResponse(functionCode);
+					res.setProcessImage(m_ProcessImage);
+					res.readFrom(m_ByteIn);
+				} finally {
+					release(buf);
+				}
 			}
 			return res;
+		} catch (ModbusIOException ex) {
+			throw ex;
 		} catch (InterruptedIOException ioex) {
-			throw new ModbusIOException("Socket timed out.");
+			ModbusIOException ex = new ModbusIOException("Socket timed out.");
+			ex.setTimeout(true);
+			throw ex;
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			throw new ModbusIOException("I/O exception - failed to read.");
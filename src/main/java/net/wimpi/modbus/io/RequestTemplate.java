@@ -0,0 +1,209 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.msg.ModbusRequest;
+
+/**
+ * Class implementing a request that has been encoded once into the bytes
+ * sent on the wire, for requests that are repeated over and over, e.g. by a
+ * poller.
+ * <p>
+ * Executing a transaction with a template does not encode the request
+ * again: for Modbus/TCP and Modbus/UDP only the transaction identifier is
+ * patched in place, and the frame is written with a single write. Serial
+ * frames carry no transaction identifier, so their checksum (the CRC for
+ * RTU and BIN, the LRC for ASCII) is computed once together with the frame.
+ * The serial frames are encoded by the transports themselves, so a
+ * template is identical to what <tt>writeMessage</tt> would send.
+ * <p>
+ * A template is a snapshot: changes to the request after the template has
+ * been created are not reflected. As the transaction identifier is patched
+ * in place, a template must not be used by concurrent transactions.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ * @see ModbusTransaction#setRequestTemplate(RequestTemplate)
+ */
+public final class RequestTemplate {
+
+	/**
+	 * Encoding with the Modbus/TCP header, for TCP and UDP.
+	 */
+	public static final int IP = 0;
+
+	/**
+	 * Encoding of the Modbus/RTU serial flavor.
+	 */
+	public static final int RTU = 1;
+
+	/**
+	 * Encoding of the Modbus/ASCII serial flavor.
+	 */
+	public static final int ASCII = 2;
+
+	/**
+	 * Encoding of the Modbus/BIN serial flavor.
+	 */
+	public static final int BIN = 3;
+
+	private final ModbusRequest m_Request;
+	private final int m_Encoding;
+	private final byte[] m_Frame;
+
+	/**
+	 * Constructs a new <tt>RequestTemplate</tt> encoding the given request.
+	 * 
+	 * @param request
+	 *            the <tt>ModbusRequest</tt> to be encoded.
+	 * @param encoding
+	 *            one of <tt>IP</tt>, <tt>RTU</tt>, <tt>ASCII</tt> or
+	 *            <tt>BIN</tt>.
+	 * @throws IllegalArgumentException
+	 *             if the encoding is unknown.
+	 */
+	public RequestTemplate(ModbusRequest request, int encoding) {
+		m_Request = request;
+		m_Encoding = encoding;
+
+		// 1. encode the frame regardless of the headless flag of the request
+		BytesOutputStream out = new BytesOutputStream(
+				Modbus.MAX_IP_MESSAGE_LENGTH);
+		try {
+			if (encoding == IP) {
+				out.writeShort(request.getTransactionID());
+				out.writeShort(request.getProtocolID());
+				out.writeShort(request.getDataLength());
+			}
+			out.writeByte(request.getUnitID());
+			out.writeByte(request.getFunctionCode());
+			request.writeData(out);
+			if (encoding == IP) {
+				m_Frame = new byte[out.size()];
+				System.arraycopy(out.getBuffer(), 0, m_Frame, 0, m_Frame.length);
+				return;
+			}
+
+			// 2. frame it as the serial transport of the encoding would
+			ModbusSerialTransport transport;
+			switch (encoding) {
+			case RTU:
+				transport = new ModbusRTUTransport();
+				break;
+			case ASCII:
+				transport = new ModbusASCIITransport();
+				break;
+			case BIN:
+				transport = new ModbusBINTransport();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown encoding: "
+						+ encoding);
+			}
+			int len = out.size();
+			out.writeShort(0); // room for the checksum
+			ByteArrayOutputStream wire = new ByteArrayOutputStream(
+					2 * Modbus.MAX_MESSAGE_LENGTH + 4);
+			transport.prepareStreams(new ByteArrayInputStream(new byte[0]),
+					wire);
+			transport.writeFrame(out.getBuffer(), len);
+			m_Frame = wire.toByteArray();
+		} catch (IllegalArgumentException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			// cannot happen when writing to memory
+			throw new IllegalStateException("Encoding failed: "
+					+ ex.getMessage());
+		}
+	}// constructor
+
+	/**
+	 * Returns the encoding of the serial flavor with the given name.
+	 * 
+	 * @param name
+	 *            one of the <tt>Modbus.SERIAL_ENCODING_</tt> names.
+	 * @return the encoding as <tt>int</tt>.
+	 * @throws IllegalArgumentException
+	 *             if the name is unknown.
+	 */
+	public static int getSerialEncoding(String name) {
+		if (Modbus.SERIAL_ENCODING_RTU.equals(name)) {
+			return RTU;
+		} else if (Modbus.SERIAL_ENCODING_ASCII.equals(name)) {
+			return ASCII;
+		} else if (Modbus.SERIAL_ENCODING_BIN.equals(name)) {
+			return BIN;
+		}
+		throw new IllegalArgumentException("Unknown encoding: " + name);
+	}// getSerialEncoding
+
+	/**
+	 * Returns the request this template was created from.
+	 * 
+	 * @return the <tt>ModbusRequest</tt>.
+	 */
+	public ModbusRequest getRequest() {
+		return m_Request;
+	}// getRequest
+
+	/**
+	 * Returns the encoding of this template.
+	 * 
+	 * @return the encoding as <tt>int</tt>.
+	 */
+	public int getEncoding() {
+		return m_Encoding;
+	}// getEncoding
+
+	/**
+	 * Returns the encoded frame. The array is not copied.
+	 * 
+	 * @return the frame as <tt>byte[]</tt>.
+	 */
+	public byte[] getFrame() {
+		return m_Frame;
+	}// getFrame
+
+	/**
+	 * Returns the number of bytes of the encoded frame.
+	 * 
+	 * @return the length as <tt>int</tt>.
+	 */
+	public int getLength() {
+		return m_Frame.length;
+	}// getLength
+
+	/**
+	 * Sets the transaction identifier in the encoded frame. Serial frames
+	 * carry no transaction identifier and are not changed.
+	 * 
+	 * @param tid
+	 *            the transaction identifier.
+	 */
+	public void setTransactionID(int tid) {
+		if (m_Encoding == IP) {
+			m_Frame[0] = (byte) (tid >> 8);
+			m_Frame[1] = (byte) tid;
+		}
+	}// setTransactionID
+
+}// class RequestTemplate
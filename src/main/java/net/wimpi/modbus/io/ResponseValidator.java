@@ -0,0 +1,228 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.io;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ReadCoilsRequest;
+import net.wimpi.modbus.msg.ReadInputDiscretesRequest;
+import net.wimpi.modbus.msg.ReadInputRegistersRequest;
+import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
+import net.wimpi.modbus.msg.WriteCoilRequest;
+import net.wimpi.modbus.msg.WriteMultipleCoilsRequest;
+import net.wimpi.modbus.msg.WriteMultipleRegistersRequest;
+import net.wimpi.modbus.msg.WriteSingleRegisterRequest;
+
+/**
+ * Class implementing the validation of a raw response frame against the
+ * request it answers, before the response is decoded.
+ * <p>
+ * A response is valid if its unit identifier and function code match those
+ * of the request (or the function code of an exception response), the
+ * byte count of a read matches the requested quantity, and a write echoes
+ * the reference and the value or quantity of the request. Responses of
+ * other function codes are checked for unit identifier and function code
+ * only.
+ * <p>
+ * Each violation is counted by type. A validator may be shared by several
+ * transactions to aggregate their counts, the counters are updated without
+ * locking.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ * @see ModbusTransport#readResponse(ModbusRequest, ResponseValidator)
+ */
+public final class ResponseValidator {
+
+	/**
+	 * The response is valid.
+	 */
+	public static final int VALID = 0;
+
+	/**
+	 * The unit identifier does not match the request.
+	 */
+	public static final int UNIT_ID = 1;
+
+	/**
+	 * The function code does not match the request.
+	 */
+	public static final int FUNCTION_CODE = 2;
+
+	/**
+	 * The byte count of a read does not match the requested quantity.
+	 */
+	public static final int BYTE_COUNT = 3;
+
+	/**
+	 * The reference echoed by a write does not match the request.
+	 */
+	public static final int REFERENCE = 4;
+
+	/**
+	 * The value or quantity echoed by a write does not match the request.
+	 */
+	public static final int VALUE = 5;
+
+	/**
+	 * The frame is shorter than its function code or byte count requires.
+	 */
+	public static final int LENGTH = 6;
+
+	private static final String[] c_Names = { "valid", "unit id",
+			"function code", "byte count", "reference", "value", "length" };
+
+	private final AtomicLongArray m_Violations = new AtomicLongArray(
+			c_Names.length);
+
+	/**
+	 * Validates the given response frame against the given request, and
+	 * counts a violation.
+	 * 
+	 * @param request
+	 *            the <tt>ModbusRequest</tt> the response answers.
+	 * @param response
+	 *            the <tt>ModbusFrame</tt> holding the response.
+	 * @param length
+	 *            the length of the frame, without any checksum.
+	 * @return <tt>VALID</tt>, or the type of the violation found.
+	 */
+	public int validate(ModbusRequest request, ModbusFrame response, int length) {
+		int violation = check(request, response, length
+				- response.getHeaderLength());
+		if (violation != VALID) {
+			m_Violations.incrementAndGet(violation);
+			if (Modbus.debug)
+				System.out.println("Invalid response (" + c_Names[violation]
+						+ "): " + response.toHex(length));
+		}
+		return violation;
+	}// validate
+
+	/**
+	 * Returns the number of responses found invalid for the given reason.
+	 * 
+	 * @param violation
+	 *            the type of the violation, e.g. <tt>BYTE_COUNT</tt>.
+	 * @return the count as <tt>long</tt>.
+	 */
+	public long getViolationCount(int violation) {
+		return m_Violations.get(violation);
+	}// getViolationCount
+
+	/**
+	 * Returns the number of responses found invalid for any reason.
+	 * 
+	 * @return the count as <tt>long</tt>.
+	 */
+	public long getViolationCount() {
+		long total = 0;
+		for (int i = UNIT_ID; i < m_Violations.length(); i++) {
+			total += m_Violations.get(i);
+		}
+		return total;
+	}// getViolationCount
+
+	/**
+	 * Resets all violation counters to zero.
+	 */
+	public void resetCounters() {
+		for (int i = 0; i < m_Violations.length(); i++) {
+			m_Violations.set(i, 0);
+		}
+	}// resetCounters
+
+	/**
+	 * Returns a readable name of the given violation type.
+	 * 
+	 * @param violation
+	 *            the type of the violation.
+	 * @return the name as <tt>String</tt>.
+	 */
+	public static String getViolationName(int violation) {
+		return c_Names[violation];
+	}// getViolationName
+
+	private static int check(ModbusRequest request, ModbusFrame response,
+			int pdu) {
+		if (pdu < 2) {
+			return LENGTH;
+		}
+		if (response.getUnitID() != request.getUnitID()) {
+			return UNIT_ID;
+		}
+		int fc = request.getFunctionCode();
+		if (response.isException()) {
+			return ((response.getFunctionCode() & 0x7f) == fc) ? VALID
+					: FUNCTION_CODE;
+		}
+		if (response.getFunctionCode() != fc) {
+			return FUNCTION_CODE;
+		}
+		switch (fc) {
+		case Modbus.READ_COILS:
+			return checkRead(response, pdu,
+					(((ReadCoilsRequest) request).getBitCount() + 7) / 8);
+		case Modbus.READ_INPUT_DISCRETES:
+			return checkRead(response, pdu, (((ReadInputDiscretesRequest) request)
+					.getBitCount() + 7) / 8);
+		case Modbus.READ_INPUT_REGISTERS:
+			return checkRead(response, pdu,
+					((ReadInputRegistersRequest) request).getWordCount() * 2);
+		case Modbus.READ_MULTIPLE_REGISTERS:
+			return checkRead(response, pdu,
+					((ReadMultipleRegistersRequest) request).getWordCount() * 2);
+		case Modbus.WRITE_COIL:
+			return checkWrite(response, pdu, request.getReference(),
+					((WriteCoilRequest) request).getCoil() ? 0xff00 : 0);
+		case Modbus.WRITE_SINGLE_REGISTER:
+			return checkWrite(response, pdu, request.getReference(),
+					((WriteSingleRegisterRequest) request).getRegister()
+							.toUnsignedShort());
+		case Modbus.WRITE_MULTIPLE_COILS:
+			return checkWrite(response, pdu, request.getReference(),
+					((WriteMultipleCoilsRequest) request).getBitCount());
+		case Modbus.WRITE_MULTIPLE_REGISTERS:
+			return checkWrite(response, pdu, request.getReference(),
+					((WriteMultipleRegistersRequest) request).getWordCount());
+		default:
+			return VALID;
+		}
+	}// check
+
+	private static int checkRead(ModbusFrame response, int pdu, int bytes) {
+		if (response.getByteCount() != bytes) {
+			return BYTE_COUNT;
+		}
+		return (pdu < 2 + bytes) ? LENGTH : VALID;
+	}// checkRead
+
+	private static int checkWrite(ModbusFrame response, int pdu, int ref,
+			int value) {
+		if (pdu < 5) {
+			return LENGTH;
+		}
+		if (response.getReference() != ref) {
+			return REFERENCE;
+		}
+		return (response.getValue() != value) ? VALUE : VALID;
+	}// checkWrite
+
+}// class ResponseValidator
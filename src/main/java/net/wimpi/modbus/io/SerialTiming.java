@@ -0,0 +1,499 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.msg.ModbusMessage;
+import net.wimpi.modbus.util.SerialParameters;
+
+/**
+ * Class that manages the timing of a serial line.
+ * <p>
+ * The minimum silent interval between two frames (t3.5) is derived from the
+ * baud rate and character format in the <tt>SerialParameters</tt>, so that a
+ * master does not have to rely on a fixed transmit delay. In addition, the
+ * response latency of each unit is tracked, i.e. the time between the end of
+ * a request and the start of its response, excluding the time spent on the
+ * wire. Once enough samples are available, the receive timeout for a unit is
+ * derived from its 99th latency percentile:
+ * 
+ * <pre>
+ * timeout = p99 * factor + margin
+ * </pre>
+ * 
+ * clamped between the minimum timeout and the receive timeout configured in
+ * the <tt>SerialParameters</tt>. A transaction that runs into the timeout is
+ * recorded with the timeout as latency, so that the timeout of a unit that
+ * slows down grows again quickly.
+ * <p>
+ * The wire time of all frames is accumulated as well, which yields the
+ * achieved bus utilization.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class SerialTiming {
+
+	/**
+	 * The number of latency samples that are kept per unit.
+	 */
+	public static final int SAMPLE_COUNT = 64;
+
+	/**
+	 * The number of samples that are required before the receive timeout of a
+	 * unit is adapted.
+	 */
+	public static final int MIN_SAMPLES = 8;
+
+	private String m_Encoding;
+	private long m_CharacterNanos;
+	private long m_InterFrameNanos;
+	private int m_MaxTimeout;
+	private int m_MinTimeout = 20;
+	private int m_TimeoutMargin = 10;
+	private double m_TimeoutFactor = 2;
+	private boolean m_Adaptive = true;
+
+	private final UnitTiming[] m_Units = new UnitTiming[256];
+	private long m_LastFrameEnd;
+	private long m_BusyNanos;
+	private long m_StartedAt;
+
+	/**
+	 * Constructs a new <tt>SerialTiming</tt> instance for a line with the
+	 * given parameters.
+	 * 
+	 * @param params
+	 *            the <tt>SerialParameters</tt> of the line.
+	 */
+	public SerialTiming(SerialParameters params) {
+		setParameters(params);
+		m_LastFrameEnd = System.nanoTime();
+		m_StartedAt = m_LastFrameEnd;
+	}// constructor
+
+	/**
+	 * Updates the timing to the given line parameters.
+	 * 
+	 * @param params
+	 *            the <tt>SerialParameters</tt> of the line.
+	 */
+	public synchronized void setParameters(SerialParameters params) {
+		m_Encoding = params.getEncoding();
+		m_CharacterNanos = params.getCharacterTimeNanos();
+		m_InterFrameNanos = params.getInterFrameDelayNanos();
+		m_MaxTimeout = params.getReceiveTimeout();
+		updateUnits();
+	}// setParameters
+
+	/**
+	 * Returns the minimum silent interval between two frames (t3.5).
+	 * 
+	 * @return the inter-frame delay in nanoseconds.
+	 */
+	public long getInterFrameDelayNanos() {
+		return m_InterFrameNanos;
+	}// getInterFrameDelayNanos
+
+	/**
+	 * Tests if the receive timeouts are adapted to the observed latencies.
+	 * 
+	 * @return true if adaptive, false otherwise.
+	 */
+	public boolean isAdaptive() {
+		return m_Adaptive;
+	}// isAdaptive
+
+	/**
+	 * Sets the flag that controls whether the receive timeouts are adapted to
+	 * the observed latencies. If not, the receive timeout configured in the
+	 * <tt>SerialParameters</tt> is used for all units.
+	 * 
+	 * @param b
+	 *            true if adaptive, false otherwise.
+	 */
+	public void setAdaptive(boolean b) {
+		m_Adaptive = b;
+	}// setAdaptive
+
+	/**
+	 * Returns the upper bound of an adapted receive timeout, which is also
+	 * the timeout used for units without enough samples. A maximum of 0
+	 * waits forever, and turns the adaptation off for the line.
+	 * 
+	 * @return the maximum timeout in milliseconds.
+	 */
+	public int getMaximumTimeout() {
+		return m_MaxTimeout;
+	}// getMaximumTimeout
+
+	/**
+	 * Sets the upper bound of an adapted receive timeout.
+	 * 
+	 * @param ms
+	 *            the maximum timeout in milliseconds, 0 to wait forever.
+	 */
+	public synchronized void setMaximumTimeout(int ms) {
+		m_MaxTimeout = ms;
+		updateUnits();
+	}// setMaximumTimeout
+
+	/**
+	 * Returns the lower bound of an adapted receive timeout.
+	 * 
+	 * @return the minimum timeout in milliseconds.
+	 */
+	public int getMinimumTimeout() {
+		return m_MinTimeout;
+	}// getMinimumTimeout
+
+	/**
+	 * Sets the lower bound of an adapted receive timeout.
+	 * 
+	 * @param ms
+	 *            the minimum timeout in milliseconds.
+	 */
+	public synchronized void setMinimumTimeout(int ms) {
+		m_MinTimeout = ms;
+		updateUnits();
+	}// setMinimumTimeout
+
+	/**
+	 * Returns the margin that is added to the scaled latency percentile.
+	 * 
+	 * @return the margin in milliseconds.
+	 */
+	public int getTimeoutMargin() {
+		return m_TimeoutMargin;
+	}// getTimeoutMargin
+
+	/**
+	 * Sets the margin that is added to the scaled latency percentile.
+	 * 
+	 * @param ms
+	 *            the margin in milliseconds.
+	 */
+	public synchronized void setTimeoutMargin(int ms) {
+		m_TimeoutMargin = ms;
+		updateUnits();
+	}// setTimeoutMargin
+
+	/**
+	 * Returns the factor the latency percentile is scaled with.
+	 * 
+	 * @return the timeout factor.
+	 */
+	public double getTimeoutFactor() {
+		return m_TimeoutFactor;
+	}// getTimeoutFactor
+
+	/**
+	 * Sets the factor the latency percentile is scaled with.
+	 * 
+	 * @param factor
+	 *            the timeout factor, not less than 1.
+	 */
+	public synchronized void setTimeoutFactor(double factor) {
+		m_TimeoutFactor = Math.max(1, factor);
+		updateUnits();
+	}// setTimeoutFactor
+
+	/**
+	 * Returns the estimated number of characters of the given message on the
+	 * line, including address, checksum and framing.
+	 * 
+	 * @param msg
+	 *            a <tt>ModbusMessage</tt>.
+	 * @return the frame length in characters.
+	 */
+	public int getFrameLength(ModbusMessage msg) {
+		// the data length includes unit id and function code
+		int len = msg.getDataLength();
+		if (Modbus.SERIAL_ENCODING_ASCII.equals(m_Encoding)) {
+			return (len + 1) * 2 + 3;
+		} else if (Modbus.SERIAL_ENCODING_BIN.equals(m_Encoding)) {
+			return len + 4;
+		}
+		return len + 2;
+	}// getFrameLength
+
+	/**
+	 * Returns the time it takes to transmit the given number of characters.
+	 * 
+	 * @param chars
+	 *            the number of characters.
+	 * @return the wire time in nanoseconds.
+	 */
+	public long getWireTimeNanos(int chars) {
+		return chars * m_CharacterNanos;
+	}// getWireTimeNanos
+
+	/**
+	 * Waits until the line has been silent for at least the inter-frame delay
+	 * since the end of the last frame.
+	 * 
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted.
+	 */
+	public void awaitInterFrameDelay() throws InterruptedException {
+		long deadline;
+		synchronized (this) {
+			deadline = m_LastFrameEnd + m_InterFrameNanos;
+		}
+		long wait = deadline - System.nanoTime();
+		while (wait > 0) {
+			LockSupport.parkNanos(wait);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			wait = deadline - System.nanoTime();
+		}
+	}// awaitInterFrameDelay
+
+	/**
+	 * Marks the end of a frame on the line, i.e. the start of the silent
+	 * interval that has to pass before the next frame may be sent.
+	 */
+	public synchronized void markFrameEnd() {
+		m_LastFrameEnd = System.nanoTime();
+	}// markFrameEnd
+
+	/**
+	 * Returns the receive timeout to be used for a request to the given unit.
+	 * 
+	 * @param unit
+	 *            the unit id.
+	 * @return the receive timeout in milliseconds.
+	 */
+	public synchronized int getReceiveTimeout(int unit) {
+		UnitTiming ut = m_Units[unit & 0xff];
+		// a line waiting forever keeps doing so
+		if (!m_Adaptive || m_MaxTimeout <= 0 || ut == null
+				|| ut.m_Timeout == 0) {
+			return m_MaxTimeout;
+		}
+		return ut.m_Timeout;
+	}// getReceiveTimeout
+
+	/**
+	 * Records a completed transaction.
+	 * 
+	 * @param unit
+	 *            the unit id.
+	 * @param start
+	 *            the value of <tt>System.nanoTime()</tt> when the request was
+	 *            started to be written.
+	 * @param request
+	 *            the request.
+	 * @param response
+	 *            the response.
+	 */
+	public synchronized void recordTransaction(int unit, long start,
+			ModbusMessage request, ModbusMessage response) {
+		long now = System.nanoTime();
+		long wire = getWireTimeNanos(getFrameLength(request)
+				+ getFrameLength(response));
+		m_BusyNanos += wire;
+		m_LastFrameEnd = now;
+		getUnit(unit).add(Math.max(0, now - start - wire), false);
+	}// recordTransaction
+
+	/**
+	 * Records a failed transaction. If the failure took at least the receive
+	 * timeout, it is counted as timeout and the timeout is recorded as
+	 * latency.
+	 * 
+	 * @param unit
+	 *            the unit id.
+	 * @param start
+	 *            the value of <tt>System.nanoTime()</tt> when the request was
+	 *            started to be written.
+	 * @param request
+	 *            the request.
+	 * @param timeout
+	 *            the receive timeout in milliseconds that was used.
+	 */
+	public synchronized void recordFailure(int unit, long start,
+			ModbusMessage request, int timeout) {
+		long now = System.nanoTime();
+		long wire = getWireTimeNanos(getFrameLength(request));
+		m_BusyNanos += wire;
+		m_LastFrameEnd = now;
+		UnitTiming ut = getUnit(unit);
+		if (now - start - wire >= timeout * 1000000L) {
+			ut.add(timeout * 1000000L, true);
+		} else {
+			ut.m_Failures++;
+		}
+	}// recordFailure
+
+	/**
+	 * Records a broadcast, which occupies the line but is not answered.
+	 * 
+	 * @param request
+	 *            the broadcast request.
+	 */
+	public synchronized void recordBroadcast(ModbusMessage request) {
+		m_BusyNanos += getWireTimeNanos(getFrameLength(request));
+		m_LastFrameEnd = System.nanoTime();
+	}// recordBroadcast
+
+	/**
+	 * Returns the given latency percentile of a unit.
+	 * 
+	 * @param unit
+	 *            the unit id.
+	 * @param p
+	 *            the percentile, between 0 and 1.
+	 * @return the latency in nanoseconds, or -1 if there are no samples.
+	 */
+	public synchronized long getLatencyNanos(int unit, double p) {
+		UnitTiming ut = m_Units[unit & 0xff];
+		if (ut == null || ut.m_Size == 0) {
+			return -1;
+		}
+		return ut.percentile(p);
+	}// getLatencyNanos
+
+	/**
+	 * Returns the number of transactions recorded for a unit, including
+	 * failed ones and those that ran into the receive timeout.
+	 * 
+	 * @param unit
+	 *            the unit id.
+	 * @return the number of transactions.
+	 */
+	public synchronized long getTransactionCount(int unit) {
+		UnitTiming ut = m_Units[unit & 0xff];
+		return (ut == null) ? 0 : ut.m_Transactions + ut.m_Failures
+				+ ut.m_Timeouts;
+	}// getTransactionCount
+
+	/**
+	 * Returns the number of transactions of a unit that ran into the receive
+	 * timeout.
+	 * 
+	 * @param unit
+	 *            the unit id.
+	 * @return the number of timeouts.
+	 */
+	public synchronized long getTimeoutCount(int unit) {
+		UnitTiming ut = m_Units[unit & 0xff];
+		return (ut == null) ? 0 : ut.m_Timeouts;
+	}// getTimeoutCount
+
+	/**
+	 * Returns the fraction of time the line was occupied by frames since the
+	 * statistics were reset.
+	 * 
+	 * @return the bus utilization, between 0 and 1.
+	 */
+	public synchronized double getBusUtilization() {
+		long elapsed = System.nanoTime() - m_StartedAt;
+		if (elapsed <= 0) {
+			return 0;
+		}
+		return Math.min(1.0, (double) m_BusyNanos / elapsed);
+	}// getBusUtilization
+
+	/**
+	 * Resets the bus utilization and the counters, keeping the latency
+	 * samples and the adapted timeouts.
+	 */
+	public synchronized void resetStatistics() {
+		m_BusyNanos = 0;
+		m_StartedAt = System.nanoTime();
+		for (int i = 0; i < m_Units.length; i++) {
+			UnitTiming ut = m_Units[i];
+			if (ut != null) {
+				ut.m_Transactions = 0;
+				ut.m_Failures = 0;
+				ut.m_Timeouts = 0;
+			}
+		}
+	}// resetStatistics
+
+	private UnitTiming getUnit(int unit) {
+		UnitTiming ut = m_Units[unit & 0xff];
+		if (ut == null) {
+			ut = new UnitTiming();
+			m_Units[unit & 0xff] = ut;
+		}
+		return ut;
+	}// getUnit
+
+	private void updateUnits() {
+		for (int i = 0; i < m_Units.length; i++) {
+			if (m_Units[i] != null) {
+				m_Units[i].update();
+			}
+		}
+	}// updateUnits
+
+	/**
+	 * Latency samples and counters of a single unit.
+	 */
+	private class UnitTiming {
+
+		private final long[] m_Samples = new long[SAMPLE_COUNT];
+		private final long[] m_Sorted = new long[SAMPLE_COUNT];
+		private int m_Size;
+		private int m_Next;
+		private int m_Timeout;
+		private long m_Transactions;
+		private long m_Failures;
+		private long m_Timeouts;
+
+		void add(long latency, boolean timeout) {
+			m_Samples[m_Next] = latency;
+			m_Next = (m_Next + 1) % SAMPLE_COUNT;
+			if (m_Size < SAMPLE_COUNT) {
+				m_Size++;
+			}
+			if (timeout) {
+				m_Timeouts++;
+			} else {
+				m_Transactions++;
+			}
+			update();
+		}// add
+
+		long percentile(double p) {
+			System.arraycopy(m_Samples, 0, m_Sorted, 0, m_Size);
+			Arrays.sort(m_Sorted, 0, m_Size);
+			int idx = (int) Math.ceil(p * m_Size) - 1;
+			return m_Sorted[Math.max(0, Math.min(m_Size - 1, idx))];
+		}// percentile
+
+		void update() {
+			if (m_Size < MIN_SAMPLES) {
+				m_Timeout = 0;
+				return;
+			}
+			long p99 = percentile(0.99);
+			int ms = (int) Math.ceil(p99 * m_TimeoutFactor / 1000000.0)
+					+ m_TimeoutMargin;
+			int max = (m_MaxTimeout <= 0) ? Integer.MAX_VALUE : m_MaxTimeout;
+			m_Timeout = Math.max(m_MinTimeout, Math.min(max, ms));
+		}// update
+
+	}// inner class UnitTiming
+
+}// class SerialTiming
@@ -0,0 +1,48 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.ModbusIOException;
+
+/**
+ * Interface defining a <tt>ModbusTransport</tt> that can write the
+ * pre-encoded frame of a <tt>RequestTemplate</tt>.
+ * <p>
+ * The transactions write the template of a request through this interface
+ * when their transport implements it, and the request itself otherwise.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface TemplateTransport extends ModbusTransport {
+
+	/**
+	 * Writes the pre-encoded frame of a <tt>RequestTemplate</tt> to the output
+	 * stream of this <tt>ModbusTransport</tt>. A template of an encoding that
+	 * does not match this transport is written as its request.
+	 * <p>
+	 * 
+	 * @param template
+	 *            a <tt>RequestTemplate</tt>.
+	 * @throws ModbusIOException
+	 *             data cannot be written properly to the raw output stream of
+	 *             this <tt>ModbusTransport</tt>.
+	 */
+	public void writeTemplate(RequestTemplate template)
+			throws ModbusIOException;
+
+}// interface TemplateTransport
@@ -0,0 +1,56 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+
+/**
+ * Interface defining a <tt>ModbusTransport</tt> that can validate the raw
+ * frame of a response against its request, with a
+ * <tt>ResponseValidator</tt>.
+ * <p>
+ * The transactions read their responses through this interface when their
+ * transport implements it, and with <tt>readResponse()</tt> otherwise.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface ValidatingTransport extends ModbusTransport {
+
+	/**
+	 * Reads a <tt>ModbusResponse</tt> to the given request from the input
+	 * stream of this <tt>ModbusTransport</tt>. The raw frame is validated
+	 * against the request before it is decoded, an invalid frame is
+	 * discarded without being decoded.
+	 * <p>
+	 * 
+	 * @param request
+	 *            the <tt>ModbusRequest</tt> the response answers.
+	 * @param validator
+	 *            the <tt>ResponseValidator</tt> to be used, or <tt>null</tt>
+	 *            to read the response without validation.
+	 * @return res the <tt>ModbusResponse</tt> read from the underlying stream.
+	 * @throws ModbusIOException
+	 *             data cannot be read properly from the raw input stream of
+	 *             this <tt>ModbusTransport</tt>, or the response is invalid.
+	 */
+	public ModbusResponse readResponse(ModbusRequest request,
+			ResponseValidator validator) throws ModbusIOException;
+
+}// interface ValidatingTransport
@@ -0,0 +1,128 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import net.wimpi.modbus.metrics.MetricsRegistry;
+import net.wimpi.modbus.metrics.RequestMetrics;
+
+/**
+ * Abstract class implementing the <tt>DeviceStatisticsMBean</tt> by summing
+ * up the entries of a device in a <tt>MetricsRegistry</tt>.
+ * <p>
+ * The registry is only read with atomic loads, so querying an MBean never
+ * blocks the requests of the device it describes.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public abstract class DeviceStatistics implements DeviceStatisticsMBean {
+
+	private final MetricsRegistry m_Registry;
+	private long m_LastCount;
+	private long m_LastTime = System.nanoTime();
+
+	/**
+	 * Constructs a new <tt>DeviceStatistics</tt> instance.
+	 * 
+	 * @param registry
+	 *            the <tt>MetricsRegistry</tt> the requests are collected in.
+	 */
+	protected DeviceStatistics(MetricsRegistry registry) {
+		m_Registry = registry;
+	}// constructor
+
+	public long getRequestCount() {
+		return getSummary().getRequestCount();
+	}// getRequestCount
+
+	public long getFailureCount() {
+		return getSummary().getFailureCount();
+	}// getFailureCount
+
+	public long getExceptionCount() {
+		return getSummary().getExceptionCount();
+	}// getExceptionCount
+
+	public long getRetryCount() {
+		return getSummary().getRetryCount();
+	}// getRetryCount
+
+	public long getTimeoutCount() {
+		return getSummary().getTimeoutCount();
+	}// getTimeoutCount
+
+	public long getRequestBytes() {
+		return getSummary().getRequestBytes();
+	}// getRequestBytes
+
+	public long getResponseBytes() {
+		return getSummary().getResponseBytes();
+	}// getResponseBytes
+
+	public synchronized double getRequestRate() {
+		long count = getSummary().getRequestCount();
+		long now = System.nanoTime();
+		double rate = 0;
+		if (now > m_LastTime && count >= m_LastCount) {
+			rate = (count - m_LastCount) * 1e9 / (now - m_LastTime);
+		}
+		m_LastCount = count;
+		m_LastTime = now;
+		return rate;
+	}// getRequestRate
+
+	public double getLatencyMean() {
+		return getSummary().getLatency().getMean() / 1e6;
+	}// getLatencyMean
+
+	public double getLatencyP50() {
+		return getSummary().getLatency().getValueAtPercentile(50) / 1e6;
+	}// getLatencyP50
+
+	public double getLatencyP90() {
+		return getSummary().getLatency().getValueAtPercentile(90) / 1e6;
+	}// getLatencyP90
+
+	public double getLatencyP99() {
+		return getSummary().getLatency().getValueAtPercentile(99) / 1e6;
+	}// getLatencyP99
+
+	public double getLatencyP999() {
+		return getSummary().getLatency().getValueAtPercentile(99.9) / 1e6;
+	}// getLatencyP999
+
+	public double getLatencyMax() {
+		return getSummary().getLatency().getMax() / 1e6;
+	}// getLatencyMax
+
+	public void resetCounters() {
+		m_Registry.reset(getMetricsName());
+		synchronized (this) {
+			m_LastCount = 0;
+			m_LastTime = System.nanoTime();
+		}
+	}// resetCounters
+
+	/**
+	 * Returns the metrics of the device summed up over all units and
+	 * function codes.
+	 */
+	private RequestMetrics getSummary() {
+		return m_Registry.getSummary(getMetricsName());
+	}// getSummary
+
+}// class DeviceStatistics
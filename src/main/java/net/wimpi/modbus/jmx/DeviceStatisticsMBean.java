@@ -0,0 +1,77 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+/**
+ * Management interface of the request statistics of a master connection or
+ * a listener, as collected by the <tt>MetricsRegistry</tt>.
+ * <p>
+ * Latencies are given in milliseconds.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface DeviceStatisticsMBean {
+
+	/**
+	 * Returns the name the requests are reported under to the
+	 * <tt>Metrics</tt>.
+	 * 
+	 * @return the device name.
+	 */
+	public String getMetricsName();
+
+	public long getRequestCount();
+
+	public long getFailureCount();
+
+	public long getExceptionCount();
+
+	public long getRetryCount();
+
+	public long getTimeoutCount();
+
+	public long getRequestBytes();
+
+	public long getResponseBytes();
+
+	/**
+	 * Returns the number of requests per second completed since this
+	 * attribute was last read, or since the counters were reset.
+	 * 
+	 * @return the request rate.
+	 */
+	public double getRequestRate();
+
+	public double getLatencyMean();
+
+	public double getLatencyP50();
+
+	public double getLatencyP90();
+
+	public double getLatencyP99();
+
+	public double getLatencyP999();
+
+	public double getLatencyMax();
+
+	/**
+	 * Clears the request counters and latencies.
+	 */
+	public void resetCounters();
+
+}// interface DeviceStatisticsMBean
@@ -0,0 +1,180 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.wimpi.modbus.metrics.Metrics;
+import net.wimpi.modbus.metrics.MetricsRegistry;
+import net.wimpi.modbus.net.ModbusSerialListener;
+import net.wimpi.modbus.net.ModbusTCPListener;
+import net.wimpi.modbus.net.ModbusUDPChannelListener;
+import net.wimpi.modbus.net.ModbusUDPListener;
+import net.wimpi.modbus.net.SerialConnection;
+import net.wimpi.modbus.net.TCPMasterConnection;
+import net.wimpi.modbus.net.UDPMasterConnection;
+import net.wimpi.modbus.procimg.ProcessImage;
+
+/**
+ * Class registering the MBeans of listeners, master connections and process
+ * images with the platform <tt>MBeanServer</tt>.
+ * <p>
+ * The MBeans are named
+ * <tt>net.wimpi.modbus:type=&lt;type&gt;,name=&lt;name&gt;</tt>, with the
+ * name the instance reports its requests under, e.g.
+ * <tt>net.wimpi.modbus:type=TCPListener,name="tcp-listener:0.0.0.0:502"</tt>.
+ * If no <tt>MetricsCollector</tt> is set when an instance with request
+ * statistics is registered, the default <tt>MetricsRegistry</tt> is set, as
+ * the MBeans read their statistics from it.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public final class ModbusManagement {
+
+	/**
+	 * The domain of the MBeans.
+	 */
+	public static final String DOMAIN = "net.wimpi.modbus";
+
+	private ModbusManagement() {
+	}// constructor
+
+	public static ObjectName register(ModbusTCPListener listener)
+			throws JMException {
+		enableMetrics();
+		return register(new TCPListenerMonitor(listener), "TCPListener",
+				listener.getMetricsName());
+	}// register
+
+	public static ObjectName register(ModbusUDPListener listener)
+			throws JMException {
+		enableMetrics();
+		return register(new UDPListenerMonitor(listener), "UDPListener",
+				listener.getMetricsName());
+	}// register
+
+	public static ObjectName register(ModbusUDPChannelListener listener)
+			throws JMException {
+		enableMetrics();
+		return register(new UDPListenerMonitor(listener), "UDPListener",
+				listener.getMetricsName());
+	}// register
+
+	public static ObjectName register(ModbusSerialListener listener)
+			throws JMException {
+		enableMetrics();
+		return register(new SerialListenerMonitor(listener),
+				"SerialListener", listener.getMetricsName());
+	}// register
+
+	public static ObjectName register(TCPMasterConnection con)
+			throws JMException {
+		enableMetrics();
+		TCPMasterMonitor monitor = new TCPMasterMonitor(con);
+		return register(monitor, "TCPMasterConnection", monitor
+				.getMetricsName());
+	}// register
+
+	public static ObjectName register(UDPMasterConnection con)
+			throws JMException {
+		enableMetrics();
+		UDPMasterMonitor monitor = new UDPMasterMonitor(con);
+		return register(monitor, "UDPMasterConnection", monitor
+				.getMetricsName());
+	}// register
+
+	public static ObjectName register(SerialConnection con)
+			throws JMException {
+		enableMetrics();
+		SerialMasterMonitor monitor = new SerialMasterMonitor(con);
+		return register(monitor, "SerialConnection", monitor
+				.getMetricsName());
+	}// register
+
+	/**
+	 * Registers the MBean of a process image.
+	 * 
+	 * @param image
+	 *            the <tt>ProcessImage</tt>.
+	 * @param name
+	 *            the name of the image, as it is not known to the image.
+	 * @return the <tt>ObjectName</tt> of the MBean.
+	 * @throws JMException
+	 *             if registering fails.
+	 */
+	public static ObjectName register(ProcessImage image, String name)
+			throws JMException {
+		return register(new ProcessImageMonitor(image), "ProcessImage", name);
+	}// register
+
+	/**
+	 * Registers the given MBean under a name of the modbus domain, replacing
+	 * an MBean registered under the same name.
+	 * 
+	 * @param mbean
+	 *            the MBean.
+	 * @param type
+	 *            the value of the <tt>type</tt> key.
+	 * @param name
+	 *            the value of the <tt>name</tt> key, which is quoted.
+	 * @return the <tt>ObjectName</tt> of the MBean.
+	 * @throws JMException
+	 *             if registering fails.
+	 */
+	public static ObjectName register(Object mbean, String type, String name)
+			throws JMException {
+		ObjectName oname = new ObjectName(DOMAIN + ":type=" + type + ",name="
+				+ ObjectName.quote(name));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (server.isRegistered(oname)) {
+			server.unregisterMBean(oname);
+		}
+		server.registerMBean(mbean, oname);
+		return oname;
+	}// register
+
+	/**
+	 * Unregisters the MBean of the given name, if it is registered.
+	 * 
+	 * @param oname
+	 *            the <tt>ObjectName</tt> returned when it was registered.
+	 * @throws JMException
+	 *             if unregistering fails.
+	 */
+	public static void unregister(ObjectName oname) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (server.isRegistered(oname)) {
+			server.unregisterMBean(oname);
+		}
+	}// unregister
+
+	/**
+	 * Sets the default <tt>MetricsRegistry</tt> as collector, unless a
+	 * collector is set.
+	 */
+	private static synchronized void enableMetrics() {
+		if (!Metrics.isEnabled()) {
+			Metrics.setCollector(MetricsRegistry.getDefault());
+		}
+	}// enableMetrics
+
+}// class ModbusManagement
@@ -0,0 +1,103 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import net.wimpi.modbus.procimg.ArrayProcessImage;
+import net.wimpi.modbus.procimg.BulkProcessImage;
+import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.SimpleProcessImage;
+
+/**
+ * Class implementing the <tt>ProcessImageMonitorMBean</tt>.
+ * <p>
+ * Only attributes that can be read without the locks of the image are
+ * exposed; in particular the element counts of a
+ * <tt>SimpleProcessImage</tt> are not, as its tables synchronize every
+ * access.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class ProcessImageMonitor implements ProcessImageMonitorMBean {
+
+	private final ProcessImage m_Image;
+
+	/**
+	 * Constructs a new <tt>ProcessImageMonitor</tt> instance.
+	 * 
+	 * @param image
+	 *            the <tt>ProcessImage</tt> to monitor.
+	 */
+	public ProcessImageMonitor(ProcessImage image) {
+		m_Image = image;
+	}// constructor
+
+	public String getImplementation() {
+		return m_Image.getClass().getName();
+	}// getImplementation
+
+	public int getUnitID() {
+		Integer unit = null;
+		if (m_Image instanceof ArrayProcessImage) {
+			unit = ((ArrayProcessImage) m_Image).getUnitId();
+		} else if (m_Image instanceof SimpleProcessImage) {
+			unit = ((SimpleProcessImage) m_Image).getUnitId();
+		}
+		return (unit == null) ? -1 : unit.intValue();
+	}// getUnitID
+
+	public boolean isBulk() {
+		return m_Image instanceof BulkProcessImage;
+	}// isBulk
+
+	public int getCoilCount() {
+		ArrayProcessImage image = getArrayImage();
+		return (image == null) ? -1 : image.getCoilCount();
+	}// getCoilCount
+
+	public int getDiscreteInputCount() {
+		ArrayProcessImage image = getArrayImage();
+		return (image == null) ? -1 : image.getDiscreteInputCount();
+	}// getDiscreteInputCount
+
+	public int getInputRegisterCount() {
+		ArrayProcessImage image = getArrayImage();
+		return (image == null) ? -1 : image.getInputRegisterCount();
+	}// getInputRegisterCount
+
+	public int getRegisterCount() {
+		ArrayProcessImage image = getArrayImage();
+		return (image == null) ? -1 : image.getRegisterCount();
+	}// getRegisterCount
+
+	public boolean isLocked() {
+		return (m_Image instanceof SimpleProcessImage)
+				&& ((SimpleProcessImage) m_Image).isLocked();
+	}// isLocked
+
+	public void setLocked(boolean b) {
+		if (m_Image instanceof SimpleProcessImage) {
+			((SimpleProcessImage) m_Image).setLocked(b);
+		}
+	}// setLocked
+
+	private ArrayProcessImage getArrayImage() {
+		return (m_Image instanceof ArrayProcessImage) ? (ArrayProcessImage) m_Image
+				: null;
+	}// getArrayImage
+
+}// class ProcessImageMonitor
@@ -0,0 +1,69 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+/**
+ * Management interface of a <tt>ProcessImage</tt>.
+ * <p>
+ * The sizes of the tables are known for an <tt>ArrayProcessImage</tt> only,
+ * otherwise they are reported as -1.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface ProcessImageMonitorMBean {
+
+	/**
+	 * Returns the name of the class implementing the process image.
+	 * 
+	 * @return the class name.
+	 */
+	public String getImplementation();
+
+	/**
+	 * Returns the unit identifier the process image answers to.
+	 * 
+	 * @return the unit identifier, or -1 if it answers to any unit.
+	 */
+	public int getUnitID();
+
+	/**
+	 * Tests if the process image serves range requests in bulk.
+	 * 
+	 * @return true if a <tt>BulkProcessImage</tt>, false otherwise.
+	 */
+	public boolean isBulk();
+
+	public int getCoilCount();
+
+	public int getDiscreteInputCount();
+
+	public int getInputRegisterCount();
+
+	public int getRegisterCount();
+
+	/**
+	 * Tests if the process image is locked against adding and removing
+	 * elements, which applies to a <tt>SimpleProcessImage</tt> only.
+	 * 
+	 * @return true if locked, false otherwise.
+	 */
+	public boolean isLocked();
+
+	public void setLocked(boolean b);
+
+}// interface ProcessImageMonitorMBean
@@ -0,0 +1,90 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import net.wimpi.modbus.metrics.MetricsRegistry;
+import net.wimpi.modbus.net.ModbusSerialListener;
+
+/**
+ * Class implementing the <tt>SerialListenerMonitorMBean</tt>.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class SerialListenerMonitor extends DeviceStatistics implements
+		SerialListenerMonitorMBean {
+
+	private final ModbusSerialListener m_Listener;
+
+	/**
+	 * Constructs a new <tt>SerialListenerMonitor</tt> instance reading the
+	 * default <tt>MetricsRegistry</tt>.
+	 * 
+	 * @param listener
+	 *            the <tt>ModbusSerialListener</tt> to monitor.
+	 */
+	public SerialListenerMonitor(ModbusSerialListener listener) {
+		this(listener, MetricsRegistry.getDefault());
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>SerialListenerMonitor</tt> instance.
+	 * 
+	 * @param listener
+	 *            the <tt>ModbusSerialListener</tt> to monitor.
+	 * @param registry
+	 *            the <tt>MetricsRegistry</tt> the requests are collected in.
+	 */
+	public SerialListenerMonitor(ModbusSerialListener listener,
+			MetricsRegistry registry) {
+		super(registry);
+		m_Listener = listener;
+	}// constructor
+
+	public String getMetricsName() {
+		return m_Listener.getMetricsName();
+	}// getMetricsName
+
+	public boolean isListening() {
+		return m_Listener.isListening();
+	}// isListening
+
+	public boolean isOpen() {
+		return m_Listener.getSerialConnection().isOpen();
+	}// isOpen
+
+	public String getPortName() {
+		return m_Listener.getSerialConnection().getParameters().getPortName();
+	}// getPortName
+
+	public int getBaudRate() {
+		return m_Listener.getSerialConnection().getParameters().getBaudRate();
+	}// getBaudRate
+
+	public String getEncoding() {
+		return m_Listener.getSerialConnection().getParameters().getEncoding();
+	}// getEncoding
+
+	public boolean isTracing() {
+		return m_Listener.isTracing();
+	}// isTracing
+
+	public void setTracing(boolean b) {
+		m_Listener.setTracing(b);
+	}// setTracing
+
+}// class SerialListenerMonitor
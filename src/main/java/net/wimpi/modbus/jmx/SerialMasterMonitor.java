@@ -0,0 +1,96 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import net.wimpi.modbus.metrics.MetricsRegistry;
+import net.wimpi.modbus.net.SerialConnection;
+
+/**
+ * Class implementing the <tt>SerialMasterMonitorMBean</tt>.
+ * <p>
+ * The statistics of the <tt>SerialTiming</tt> are not exposed, as reading
+ * them locks the timing of the line.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class SerialMasterMonitor extends DeviceStatistics implements
+		SerialMasterMonitorMBean {
+
+	private final SerialConnection m_Connection;
+
+	/**
+	 * Constructs a new <tt>SerialMasterMonitor</tt> instance reading the
+	 * default <tt>MetricsRegistry</tt>.
+	 * 
+	 * @param con
+	 *            the <tt>SerialConnection</tt> to monitor.
+	 */
+	public SerialMasterMonitor(SerialConnection con) {
+		this(con, MetricsRegistry.getDefault());
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>SerialMasterMonitor</tt> instance.
+	 * 
+	 * @param con
+	 *            the <tt>SerialConnection</tt> to monitor.
+	 * @param registry
+	 *            the <tt>MetricsRegistry</tt> the requests are collected in.
+	 */
+	public SerialMasterMonitor(SerialConnection con, MetricsRegistry registry) {
+		super(registry);
+		m_Connection = con;
+	}// constructor
+
+	public String getMetricsName() {
+		return "serial:" + getPortName();
+	}// getMetricsName
+
+	public boolean isOpen() {
+		return m_Connection.isOpen();
+	}// isOpen
+
+	public String getPortName() {
+		return m_Connection.getParameters().getPortName();
+	}// getPortName
+
+	public int getBaudRate() {
+		return m_Connection.getParameters().getBaudRate();
+	}// getBaudRate
+
+	public String getEncoding() {
+		return m_Connection.getParameters().getEncoding();
+	}// getEncoding
+
+	public long getInterFrameDelay() {
+		return m_Connection.getTiming().getInterFrameDelayNanos() / 1000;
+	}// getInterFrameDelay
+
+	public boolean isAdaptive() {
+		return m_Connection.getTiming().isAdaptive();
+	}// isAdaptive
+
+	public void setAdaptive(boolean b) {
+		m_Connection.getTiming().setAdaptive(b);
+	}// setAdaptive
+
+	public void close() {
+		m_Connection.close();
+	}// close
+
+}// class SerialMasterMonitor
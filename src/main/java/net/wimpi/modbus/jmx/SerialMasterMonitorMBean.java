@@ -0,0 +1,51 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+/**
+ * Management interface of a <tt>SerialConnection</tt> used by a master.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface SerialMasterMonitorMBean extends DeviceStatisticsMBean {
+
+	public boolean isOpen();
+
+	public String getPortName();
+
+	public int getBaudRate();
+
+	public String getEncoding();
+
+	/**
+	 * Returns the minimum silent interval between two frames (t3.5).
+	 * 
+	 * @return the inter-frame delay in microseconds.
+	 */
+	public long getInterFrameDelay();
+
+	public boolean isAdaptive();
+
+	public void setAdaptive(boolean b);
+
+	/**
+	 * Closes the serial port.
+	 */
+	public void close();
+
+}// interface SerialMasterMonitorMBean
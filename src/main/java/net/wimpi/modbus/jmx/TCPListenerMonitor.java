@@ -0,0 +1,147 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import net.wimpi.modbus.metrics.MetricsRegistry;
+import net.wimpi.modbus.net.ModbusTCPListener;
+import net.wimpi.modbus.net.TCPSlaveConnection;
+
+/**
+ * Class implementing the <tt>TCPListenerMonitorMBean</tt>.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class TCPListenerMonitor extends DeviceStatistics implements
+		TCPListenerMonitorMBean {
+
+	private final ModbusTCPListener m_Listener;
+
+	/**
+	 * Constructs a new <tt>TCPListenerMonitor</tt> instance reading the
+	 * default <tt>MetricsRegistry</tt>.
+	 * 
+	 * @param listener
+	 *            the <tt>ModbusTCPListener</tt> to monitor.
+	 */
+	public TCPListenerMonitor(ModbusTCPListener listener) {
+		this(listener, MetricsRegistry.getDefault());
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>TCPListenerMonitor</tt> instance.
+	 * 
+	 * @param listener
+	 *            the <tt>ModbusTCPListener</tt> to monitor.
+	 * @param registry
+	 *            the <tt>MetricsRegistry</tt> the requests are collected in.
+	 */
+	public TCPListenerMonitor(ModbusTCPListener listener,
+			MetricsRegistry registry) {
+		super(registry);
+		m_Listener = listener;
+	}// constructor
+
+	public String getMetricsName() {
+		return m_Listener.getMetricsName();
+	}// getMetricsName
+
+	public boolean isListening() {
+		return m_Listener.isListening();
+	}// isListening
+
+	public String getAddress() {
+		InetAddress addr = m_Listener.getAddress();
+		return (addr == null) ? null : addr.getHostAddress();
+	}// getAddress
+
+	public int getPoolSize() {
+		return m_Listener.getPoolSize();
+	}// getPoolSize
+
+	public int getMaxConnections() {
+		return m_Listener.getMaxConnections();
+	}// getMaxConnections
+
+	public int getMaxConnectionsPerAddress() {
+		return m_Listener.getMaxConnectionsPerAddress();
+	}// getMaxConnectionsPerAddress
+
+	public int getActiveConnectionCount() {
+		return m_Listener.getActiveConnectionCount();
+	}// getActiveConnectionCount
+
+	public int getQueuedConnectionCount() {
+		return m_Listener.getQueuedConnectionCount();
+	}// getQueuedConnectionCount
+
+	public long getAcceptedConnectionCount() {
+		return m_Listener.getAcceptedConnectionCount();
+	}// getAcceptedConnectionCount
+
+	public long getRejectedConnectionCount() {
+		return m_Listener.getRejectedConnectionCount();
+	}// getRejectedConnectionCount
+
+	public long getDroppedConnectionCount() {
+		return m_Listener.getConnectionRegistry().getDroppedCount();
+	}// getDroppedConnectionCount
+
+	public long getReapedConnectionCount() {
+		return m_Listener.getConnectionRegistry().getReapedCount();
+	}// getReapedConnectionCount
+
+	public long getIdleTimeout() {
+		return m_Listener.getIdleTimeout();
+	}// getIdleTimeout
+
+	public void setIdleTimeout(long timeout) {
+		m_Listener.setIdleTimeout(timeout);
+	}// setIdleTimeout
+
+	public String[] getConnections() {
+		List<TCPSlaveConnection> cons = m_Listener.getConnectionRegistry()
+				.getConnections();
+		String[] s = new String[cons.size()];
+		for (int i = 0; i < s.length; i++) {
+			s[i] = cons.get(i).toString();
+		}
+		return s;
+	}// getConnections
+
+	public boolean isTracing() {
+		return m_Listener.isTracing();
+	}// isTracing
+
+	public void setTracing(boolean b) {
+		m_Listener.setTracing(b);
+	}// setTracing
+
+	public int dropConnections(String address) throws UnknownHostException {
+		return m_Listener.getConnectionRegistry().drop(
+				InetAddress.getByName(address));
+	}// dropConnections
+
+	public int dropAllConnections() {
+		return m_Listener.getConnectionRegistry().dropAll();
+	}// dropAllConnections
+
+}// class TCPListenerMonitor
@@ -0,0 +1,96 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import java.net.UnknownHostException;
+
+/**
+ * Management interface of a <tt>ModbusTCPListener</tt>.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface TCPListenerMonitorMBean extends DeviceStatisticsMBean {
+
+	public boolean isListening();
+
+	public String getAddress();
+
+	public int getPoolSize();
+
+	public int getMaxConnections();
+
+	public int getMaxConnectionsPerAddress();
+
+	/**
+	 * Returns the number of connections currently handled by a thread.
+	 * 
+	 * @return the number of active connections.
+	 */
+	public int getActiveConnectionCount();
+
+	/**
+	 * Returns the number of admitted connections waiting for a thread of
+	 * the pool.
+	 * 
+	 * @return the depth of the pool queue.
+	 */
+	public int getQueuedConnectionCount();
+
+	public long getAcceptedConnectionCount();
+
+	public long getRejectedConnectionCount();
+
+	public long getDroppedConnectionCount();
+
+	public long getReapedConnectionCount();
+
+	public long getIdleTimeout();
+
+	public void setIdleTimeout(long timeout);
+
+	/**
+	 * Returns a description of each open connection, with its remote
+	 * address, request count and idle time.
+	 * 
+	 * @return the connections as <tt>String[]</tt>.
+	 */
+	public String[] getConnections();
+
+	public boolean isTracing();
+
+	public void setTracing(boolean b);
+
+	/**
+	 * Closes all connections from the given address.
+	 * 
+	 * @param address
+	 *            the remote address, as name or literal.
+	 * @return the number of closed connections.
+	 * @throws UnknownHostException
+	 *             if the address cannot be resolved.
+	 */
+	public int dropConnections(String address) throws UnknownHostException;
+
+	/**
+	 * Closes all connections.
+	 * 
+	 * @return the number of closed connections.
+	 */
+	public int dropAllConnections();
+
+}// interface TCPListenerMonitorMBean
@@ -0,0 +1,109 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import net.wimpi.modbus.metrics.MetricsRegistry;
+import net.wimpi.modbus.net.TCPMasterConnection;
+
+/**
+ * Class implementing the <tt>TCPMasterMonitorMBean</tt>.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class TCPMasterMonitor extends DeviceStatistics implements
+		TCPMasterMonitorMBean {
+
+	private final TCPMasterConnection m_Connection;
+
+	/**
+	 * Constructs a new <tt>TCPMasterMonitor</tt> instance reading the
+	 * default <tt>MetricsRegistry</tt>.
+	 * 
+	 * @param con
+	 *            the <tt>TCPMasterConnection</tt> to monitor.
+	 */
+	public TCPMasterMonitor(TCPMasterConnection con) {
+		this(con, MetricsRegistry.getDefault());
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>TCPMasterMonitor</tt> instance.
+	 * 
+	 * @param con
+	 *            the <tt>TCPMasterConnection</tt> to monitor.
+	 * @param registry
+	 *            the <tt>MetricsRegistry</tt> the requests are collected in.
+	 */
+	public TCPMasterMonitor(TCPMasterConnection con, MetricsRegistry registry) {
+		super(registry);
+		m_Connection = con;
+	}// constructor
+
+	public String getMetricsName() {
+		return "tcp:" + getAddress() + ":" + m_Connection.getPort();
+	}// getMetricsName
+
+	public boolean isConnected() {
+		return m_Connection.isConnected();
+	}// isConnected
+
+	public String getAddress() {
+		return m_Connection.getAddress().getHostAddress();
+	}// getAddress
+
+	public int getPort() {
+		return m_Connection.getPort();
+	}// getPort
+
+	public int getTimeout() {
+		return m_Connection.getTimeout();
+	}// getTimeout
+
+	public void setTimeout(int timeout) {
+		m_Connection.setTimeout(timeout);
+	}// setTimeout
+
+	public boolean isAutoReconnect() {
+		return m_Connection.isAutoReconnect();
+	}// isAutoReconnect
+
+	public void setAutoReconnect(boolean b) {
+		m_Connection.setAutoReconnect(b);
+	}// setAutoReconnect
+
+	public long getReconnectCount() {
+		return m_Connection.getReconnectCount();
+	}// getReconnectCount
+
+	public int getConnectFailures() {
+		return m_Connection.getConnectFailures();
+	}// getConnectFailures
+
+	public int getKeepAliveInterval() {
+		return m_Connection.getKeepAliveInterval();
+	}// getKeepAliveInterval
+
+	public long getKeepAliveFailures() {
+		return m_Connection.getKeepAliveFailures();
+	}// getKeepAliveFailures
+
+	public void close() {
+		m_Connection.close();
+	}// close
+
+}// class TCPMasterMonitor
@@ -0,0 +1,136 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import net.wimpi.modbus.metrics.MetricsRegistry;
+import net.wimpi.modbus.net.ModbusUDPChannelListener;
+import net.wimpi.modbus.net.ModbusUDPListener;
+import net.wimpi.modbus.net.SocketStatistics;
+
+/**
+ * Class implementing the <tt>UDPListenerMonitorMBean</tt> for either of the
+ * UDP listeners.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class UDPListenerMonitor extends DeviceStatistics implements
+		UDPListenerMonitorMBean {
+
+	private final ModbusUDPListener m_Listener;
+	private final ModbusUDPChannelListener m_ChannelListener;
+
+	/**
+	 * Constructs a new <tt>UDPListenerMonitor</tt> instance reading the
+	 * default <tt>MetricsRegistry</tt>.
+	 * 
+	 * @param listener
+	 *            the <tt>ModbusUDPListener</tt> to monitor.
+	 */
+	public UDPListenerMonitor(ModbusUDPListener listener) {
+		this(listener, MetricsRegistry.getDefault());
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>UDPListenerMonitor</tt> instance.
+	 * 
+	 * @param listener
+	 *            the <tt>ModbusUDPListener</tt> to monitor.
+	 * @param registry
+	 *            the <tt>MetricsRegistry</tt> the requests are collected in.
+	 */
+	public UDPListenerMonitor(ModbusUDPListener listener,
+			MetricsRegistry registry) {
+		super(registry);
+		m_Listener = listener;
+		m_ChannelListener = null;
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>UDPListenerMonitor</tt> instance reading the
+	 * default <tt>MetricsRegistry</tt>.
+	 * 
+	 * @param listener
+	 *            the <tt>ModbusUDPChannelListener</tt> to monitor.
+	 */
+	public UDPListenerMonitor(ModbusUDPChannelListener listener) {
+		this(listener, MetricsRegistry.getDefault());
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>UDPListenerMonitor</tt> instance.
+	 * 
+	 * @param listener
+	 *            the <tt>ModbusUDPChannelListener</tt> to monitor.
+	 * @param registry
+	 *            the <tt>MetricsRegistry</tt> the requests are collected in.
+	 */
+	public UDPListenerMonitor(ModbusUDPChannelListener listener,
+			MetricsRegistry registry) {
+		super(registry);
+		m_Listener = null;
+		m_ChannelListener = listener;
+	}// constructor
+
+	public String getMetricsName() {
+		return (m_Listener != null) ? m_Listener.getMetricsName()
+				: m_ChannelListener.getMetricsName();
+	}// getMetricsName
+
+	public boolean isListening() {
+		return (m_Listener != null) ? m_Listener.isListening()
+				: m_ChannelListener.isListening();
+	}// isListening
+
+	public int getPort() {
+		return (m_Listener != null) ? m_Listener.getPort() : m_ChannelListener
+				.getPort();
+	}// getPort
+
+	public int getWorkerCount() {
+		return (m_Listener != null) ? m_Listener.getWorkerCount()
+				: m_ChannelListener.getWorkerCount();
+	}// getWorkerCount
+
+	public long getMalformedCount() {
+		return (m_Listener != null) ? m_Listener.getErrorCount()
+				: m_ChannelListener.getErrorCount();
+	}// getMalformedCount
+
+	public long getKernelDropCount() {
+		return (m_Listener != null) ? m_Listener.getKernelDropCount()
+				: m_ChannelListener.getKernelDropCount();
+	}// getKernelDropCount
+
+	public long getReceiveQueueLength() {
+		return SocketStatistics.getUDPReceiveQueue(getPort());
+	}// getReceiveQueueLength
+
+	public boolean isTracing() {
+		return (m_Listener != null) ? m_Listener.isTracing()
+				: m_ChannelListener.isTracing();
+	}// isTracing
+
+	public void setTracing(boolean b) {
+		if (m_Listener != null) {
+			m_Listener.setTracing(b);
+		} else {
+			m_ChannelListener.setTracing(b);
+		}
+	}// setTracing
+
+}// class UDPListenerMonitor
@@ -0,0 +1,61 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+/**
+ * Management interface of a <tt>ModbusUDPListener</tt> or a
+ * <tt>ModbusUDPChannelListener</tt>.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface UDPListenerMonitorMBean extends DeviceStatisticsMBean {
+
+	public boolean isListening();
+
+	public int getPort();
+
+	public int getWorkerCount();
+
+	/**
+	 * Returns the number of datagrams that could not be decoded.
+	 * 
+	 * @return the number of malformed datagrams.
+	 */
+	public long getMalformedCount();
+
+	/**
+	 * Returns the number of datagrams the kernel dropped because the receive
+	 * buffer of the socket was full.
+	 * 
+	 * @return the number of drops, or -1 if not available.
+	 */
+	public long getKernelDropCount();
+
+	/**
+	 * Returns the number of bytes waiting in the receive buffer of the
+	 * socket.
+	 * 
+	 * @return the depth of the receive queue, or -1 if not available.
+	 */
+	public long getReceiveQueueLength();
+
+	public boolean isTracing();
+
+	public void setTracing(boolean b);
+
+}// interface UDPListenerMonitorMBean
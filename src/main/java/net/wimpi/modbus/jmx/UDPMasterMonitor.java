@@ -0,0 +1,88 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+import net.wimpi.modbus.metrics.MetricsRegistry;
+import net.wimpi.modbus.net.UDPMasterConnection;
+
+/**
+ * Class implementing the <tt>UDPMasterMonitorMBean</tt>.
+ * <p>
+ * The requests are found by the name a <tt>ModbusUDPTransaction</tt>
+ * created with the connection reports them under.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class UDPMasterMonitor extends DeviceStatistics implements
+		UDPMasterMonitorMBean {
+
+	private final UDPMasterConnection m_Connection;
+
+	/**
+	 * Constructs a new <tt>UDPMasterMonitor</tt> instance reading the
+	 * default <tt>MetricsRegistry</tt>.
+	 * 
+	 * @param con
+	 *            the <tt>UDPMasterConnection</tt> to monitor.
+	 */
+	public UDPMasterMonitor(UDPMasterConnection con) {
+		this(con, MetricsRegistry.getDefault());
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>UDPMasterMonitor</tt> instance.
+	 * 
+	 * @param con
+	 *            the <tt>UDPMasterConnection</tt> to monitor.
+	 * @param registry
+	 *            the <tt>MetricsRegistry</tt> the requests are collected in.
+	 */
+	public UDPMasterMonitor(UDPMasterConnection con, MetricsRegistry registry) {
+		super(registry);
+		m_Connection = con;
+	}// constructor
+
+	public String getMetricsName() {
+		return "udp:" + getAddress() + ":" + m_Connection.getPort();
+	}// getMetricsName
+
+	public boolean isConnected() {
+		return m_Connection.isConnected();
+	}// isConnected
+
+	public String getAddress() {
+		return m_Connection.getAddress().getHostAddress();
+	}// getAddress
+
+	public int getPort() {
+		return m_Connection.getPort();
+	}// getPort
+
+	public int getTimeout() {
+		return m_Connection.getTimeout();
+	}// getTimeout
+
+	public void setTimeout(int timeout) {
+		m_Connection.setTimeout(timeout);
+	}// setTimeout
+
+	public void close() {
+		m_Connection.close();
+	}// close
+
+}// class UDPMasterMonitor
@@ -0,0 +1,42 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.jmx;
+
+/**
+ * Management interface of a <tt>UDPMasterConnection</tt>.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface UDPMasterMonitorMBean extends DeviceStatisticsMBean {
+
+	public boolean isConnected();
+
+	public String getAddress();
+
+	public int getPort();
+
+	public int getTimeout();
+
+	public void setTimeout(int timeout);
+
+	/**
+	 * Closes the socket of the connection.
+	 */
+	public void close();
+
+}// interface UDPMasterMonitorMBean
@@ -0,0 +1,204 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class implementing a histogram of latencies in nanoseconds, with buckets
+ * of logarithmically increasing width as in HDR histograms.
+ * <p>
+ * Each power of two is divided into 16 linear buckets, so a recorded value
+ * is known to within 1/16, i.e. about 6%, over the whole range from 1 ns
+ * to about 18 minutes; larger values are counted in the last bucket.
+ * Recording is lock-free: it increments a bucket, the count and the sum,
+ * and updates the maximum with a compare-and-set. Reading while values are
+ * recorded gives a close but not necessarily consistent view.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1)
+			* SUB_BUCKETS;
+
+	private final AtomicLongArray m_Buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong m_Count = new AtomicLong();
+	private final AtomicLong m_Sum = new AtomicLong();
+	private final AtomicLong m_Max = new AtomicLong();
+
+	/**
+	 * Records a value.
+	 * 
+	 * @param nanos
+	 *            the latency in nanoseconds; negative values count as 0.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		m_Buckets.incrementAndGet(getBucket(nanos));
+		m_Count.incrementAndGet();
+		m_Sum.addAndGet(nanos);
+		long max = m_Max.get();
+		while (nanos > max && !m_Max.compareAndSet(max, nanos)) {
+			max = m_Max.get();
+		}
+	}// record
+
+	/**
+	 * Returns the number of recorded values.
+	 * 
+	 * @return the count as <tt>long</tt>.
+	 */
+	public long getCount() {
+		return m_Count.get();
+	}// getCount
+
+	/**
+	 * Returns the sum of the recorded values.
+	 * 
+	 * @return the sum in nanoseconds.
+	 */
+	public long getSum() {
+		return m_Sum.get();
+	}// getSum
+
+	/**
+	 * Returns the largest recorded value.
+	 * 
+	 * @return the maximum in nanoseconds, 0 if empty.
+	 */
+	public long getMax() {
+		return m_Max.get();
+	}// getMax
+
+	/**
+	 * Returns the mean of the recorded values.
+	 * 
+	 * @return the mean in nanoseconds, 0 if empty.
+	 */
+	public double getMean() {
+		long count = m_Count.get();
+		return (count == 0) ? 0 : (double) m_Sum.get() / count;
+	}// getMean
+
+	/**
+	 * Returns the value below or at which the given percentage of the
+	 * recorded values lie, as the upper bound of its bucket.
+	 * 
+	 * @param percentile
+	 *            the percentage, between 0 and 100.
+	 * @return the value in nanoseconds, 0 if empty.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = m_Buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile))
+				/ 100 * total);
+		rank = Math.max(1, rank);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(getLowestValue(i + 1) - 1, m_Max.get());
+			}
+		}
+		return m_Max.get();
+	}// getValueAtPercentile
+
+	/**
+	 * Adds the values recorded by the given histogram to this one, e.g. to
+	 * sum up the latencies of several function codes.
+	 * 
+	 * @param h
+	 *            the <tt>LatencyHistogram</tt> to add.
+	 */
+	public void add(LatencyHistogram h) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long n = h.m_Buckets.get(i);
+			if (n != 0) {
+				m_Buckets.addAndGet(i, n);
+			}
+		}
+		m_Count.addAndGet(h.m_Count.get());
+		m_Sum.addAndGet(h.m_Sum.get());
+		long hmax = h.m_Max.get();
+		long max = m_Max.get();
+		while (hmax > max && !m_Max.compareAndSet(max, hmax)) {
+			max = m_Max.get();
+		}
+	}// add
+
+	/**
+	 * Clears all recorded values. Values recorded concurrently may be lost or
+	 * partly kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			m_Buckets.set(i, 0);
+		}
+		m_Count.set(0);
+		m_Sum.set(0);
+		m_Max.set(0);
+	}// reset
+
+	public String toString() {
+		return "count=" + getCount() + " mean=" + Math.round(getMean())
+				+ "ns p50=" + getValueAtPercentile(50) + "ns p99="
+				+ getValueAtPercentile(99) + "ns max=" + getMax() + "ns";
+	}// toString
+
+	/**
+	 * Returns the bucket counting the given value.
+	 */
+	private static int getBucket(long v) {
+		if (v < SUB_BUCKETS) {
+			return (int) v;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(v);
+		if (exp >= MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		return (exp - SUB_BITS + 1) * SUB_BUCKETS
+				+ (int) ((v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1));
+	}// getBucket
+
+	/**
+	 * Returns the lowest value counted by the given bucket.
+	 */
+	private static long getLowestValue(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		}
+		int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exp - SUB_BITS);
+	}// getLowestValue
+
+}// class LatencyHistogram
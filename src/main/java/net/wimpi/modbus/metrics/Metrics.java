@@ -0,0 +1,186 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+import net.wimpi.modbus.io.ModbusFrame;
+import net.wimpi.modbus.msg.ExceptionResponse;
+import net.wimpi.modbus.msg.ModbusMessage;
+import net.wimpi.modbus.msg.ModbusMessageImpl;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+
+/**
+ * Class holding the <tt>MetricsCollector</tt> all transactions and listeners
+ * report to.
+ * <p>
+ * Per default no measurements are taken: the collector is {@link #NONE},
+ * and the request paths check {@link #isEnabled()} before reading the clock
+ * or naming the device, so they cost no more than a volatile read. To
+ * collect into the in-process registry, e.g. for scraping:
+ * 
+ * <pre>
+ * Metrics.setCollector(MetricsRegistry.getDefault());
+ * </pre>
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public final class Metrics {
+
+	/**
+	 * The collector that discards all measurements.
+	 */
+	public static final MetricsCollector NONE = new MetricsCollector() {
+
+		public void requestCompleted(String device, int unitId,
+				int functionCode, int requestBytes, int responseBytes,
+				long nanos) {
+		}// requestCompleted
+
+		public void exceptionResponse(String device, int unitId,
+				int functionCode, int exceptionCode) {
+		}// exceptionResponse
+
+		public void requestFailed(String device, int unitId, int functionCode) {
+		}// requestFailed
+
+		public void requestRetried(String device, int unitId, int functionCode) {
+		}// requestRetried
+
+		public void requestTimedOut(String device, int unitId,
+				int functionCode) {
+		}// requestTimedOut
+
+	};
+
+	private static volatile MetricsCollector c_Collector = NONE;
+
+	private Metrics() {
+	}// constructor
+
+	/**
+	 * Returns the collector measurements are reported to.
+	 * 
+	 * @return the <tt>MetricsCollector</tt>, {@link #NONE} if disabled.
+	 */
+	public static MetricsCollector getCollector() {
+		return c_Collector;
+	}// getCollector
+
+	/**
+	 * Sets the collector measurements are reported to.
+	 * 
+	 * @param collector
+	 *            the <tt>MetricsCollector</tt>, or null to disable.
+	 */
+	public static void setCollector(MetricsCollector collector) {
+		c_Collector = (collector == null) ? NONE : collector;
+	}// setCollector
+
+	/**
+	 * Tests if measurements are taken.
+	 * 
+	 * @return true if a collector is set, false otherwise.
+	 */
+	public static boolean isEnabled() {
+		return c_Collector != NONE;
+	}// isEnabled
+
+	/**
+	 * Reports a request of a master that was answered, or needed no answer.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 * @param request
+	 *            the request.
+	 * @param response
+	 *            the response, or null if there was none.
+	 * @param nanos
+	 *            the time taken in nanoseconds.
+	 */
+	public static void exchanged(String device, ModbusRequest request,
+			ModbusResponse response, long nanos) {
+		MetricsCollector collector = c_Collector;
+		int unit = request.getUnitID();
+		int fc = request.getFunctionCode();
+		collector.requestCompleted(device, unit, fc, getLength(request),
+				(response == null) ? 0 : getLength(response), nanos);
+		if (response instanceof ExceptionResponse) {
+			collector.exceptionResponse(device, unit, fc,
+					((ExceptionResponse) response).getExceptionCode());
+		}
+	}// exchanged
+
+	/**
+	 * Reports a request served by a listener.
+	 * 
+	 * @param device
+	 *            the name of the listener.
+	 * @param request
+	 *            the request frame.
+	 * @param length
+	 *            the length of the request frame.
+	 * @param response
+	 *            the response frame.
+	 * @param rlength
+	 *            the length of the response frame as returned by the
+	 *            <tt>FrameProcessor</tt>, i.e. 0 if nothing was sent and -1
+	 *            if the request was malformed.
+	 * @param nanos
+	 *            the time taken in nanoseconds.
+	 */
+	public static void served(String device, ModbusFrame request, int length,
+			ModbusFrame response, int rlength, long nanos) {
+		MetricsCollector collector = c_Collector;
+		if (rlength > 0) {
+			int unit = response.getUnitID();
+			int fc = response.getFunctionCode() & 0x7f;
+			collector.requestCompleted(device, unit, fc, length, rlength,
+					nanos);
+			if (response.isException()) {
+				collector.exceptionResponse(device, unit, fc, response
+						.getExceptionCode());
+			}
+		} else if (length > request.getHeaderLength()) {
+			if (rlength == 0) {
+				collector.requestCompleted(device, request.getUnitID(),
+						request.getFunctionCode(), length, 0, nanos);
+			} else {
+				collector.requestFailed(device, request.getUnitID(), request
+						.getFunctionCode());
+			}
+		} else {
+			collector.requestFailed(device, 0, 0);
+		}
+	}// served
+
+	/**
+	 * Returns the length of the given message as framed, i.e. the unit
+	 * identifier, function code and data, plus the header of six bytes
+	 * unless headless. The checksums of the serial encodings are not
+	 * counted.
+	 */
+	private static int getLength(ModbusMessage msg) {
+		int len = msg.getDataLength();
+		if (!(msg instanceof ModbusMessageImpl)
+				|| !((ModbusMessageImpl) msg).isHeadless()) {
+			len += 6;
+		}
+		return len;
+	}// getLength
+
+}// class Metrics
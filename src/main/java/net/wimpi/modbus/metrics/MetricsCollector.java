@@ -0,0 +1,114 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+/**
+ * Interface defining the receiver of the measurements taken by the
+ * transactions and listeners.
+ * <p>
+ * Each measurement names the device, the unit identifier and the function
+ * code of the request. The device is the endpoint a master talks to, e.g.
+ * <tt>tcp:192.168.1.10:502</tt>, <tt>udp:192.168.1.10:502</tt> or
+ * <tt>serial:/dev/ttyS0</tt>, or the endpoint a listener serves, e.g.
+ * <tt>tcp-listener:0.0.0.0:502</tt>. The device names are created once per
+ * connection or listener, so implementations may use them as map keys.
+ * <p>
+ * The methods are called on the request path of the transactions and
+ * listeners, and concurrently from several threads; implementations should
+ * return quickly and must not block. A collector is installed with
+ * {@link Metrics#setCollector(MetricsCollector)}.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ * @see MetricsRegistry
+ */
+public interface MetricsCollector {
+
+	/**
+	 * Records a completed request, i.e. one that was answered, possibly with
+	 * an exception response, or that needed no answer.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param functionCode
+	 *            the function code of the request.
+	 * @param requestBytes
+	 *            the length of the request frame.
+	 * @param responseBytes
+	 *            the length of the response frame, 0 if there was none.
+	 * @param nanos
+	 *            the time taken in nanoseconds.
+	 */
+	public void requestCompleted(String device, int unitId, int functionCode,
+			int requestBytes, int responseBytes, long nanos);
+
+	/**
+	 * Records an exception response, in addition to the completed request.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param functionCode
+	 *            the function code of the request.
+	 * @param exceptionCode
+	 *            the exception code of the response.
+	 */
+	public void exceptionResponse(String device, int unitId,
+			int functionCode, int exceptionCode);
+
+	/**
+	 * Records a request that failed, i.e. a master request that was not
+	 * answered within all retries, or a malformed request to a listener.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param functionCode
+	 *            the function code of the request.
+	 */
+	public void requestFailed(String device, int unitId, int functionCode);
+
+	/**
+	 * Records a retry of a master request.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param functionCode
+	 *            the function code of the request.
+	 */
+	public void requestRetried(String device, int unitId, int functionCode);
+
+	/**
+	 * Records an attempt of a master request that timed out waiting for the
+	 * response.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param functionCode
+	 *            the function code of the request.
+	 */
+	public void requestTimedOut(String device, int unitId, int functionCode);
+
+}// interface MetricsCollector
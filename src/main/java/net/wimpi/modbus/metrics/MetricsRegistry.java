@@ -0,0 +1,339 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class implementing a <tt>MetricsCollector</tt> that keeps the measurements
+ * in memory, as <tt>RequestMetrics</tt> per device, unit identifier and
+ * function code.
+ * <p>
+ * The metrics of a device are found in a concurrent map keyed by the device
+ * name, then in lazily created arrays indexed by unit identifier and
+ * function code, so recording neither locks nor allocates once the entry
+ * exists. The registry is read with {@link #getMetrics()}, or scraped in
+ * the Prometheus text format with {@link #writeText(Writer)}.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class MetricsRegistry implements MetricsCollector {
+
+	private static final MetricsRegistry c_Default = new MetricsRegistry();
+
+	private final ConcurrentHashMap<String, AtomicReferenceArray<AtomicReferenceArray<RequestMetrics>>> m_Devices = new ConcurrentHashMap<String, AtomicReferenceArray<AtomicReferenceArray<RequestMetrics>>>();
+
+	/**
+	 * Returns the shared default <tt>MetricsRegistry</tt>.
+	 * 
+	 * @return the default registry.
+	 */
+	public static MetricsRegistry getDefault() {
+		return c_Default;
+	}// getDefault
+
+	public void requestCompleted(String device, int unitId, int functionCode,
+			int requestBytes, int responseBytes, long nanos) {
+		getEntry(device, unitId, functionCode).recordCompleted(requestBytes,
+				responseBytes, nanos);
+	}// requestCompleted
+
+	public void exceptionResponse(String device, int unitId,
+			int functionCode, int exceptionCode) {
+		getEntry(device, unitId, functionCode).recordException(exceptionCode);
+	}// exceptionResponse
+
+	public void requestFailed(String device, int unitId, int functionCode) {
+		getEntry(device, unitId, functionCode).recordFailure();
+	}// requestFailed
+
+	public void requestRetried(String device, int unitId, int functionCode) {
+		getEntry(device, unitId, functionCode).recordRetry();
+	}// requestRetried
+
+	public void requestTimedOut(String device, int unitId, int functionCode) {
+		getEntry(device, unitId, functionCode).recordTimeout();
+	}// requestTimedOut
+
+	/**
+	 * Returns the metrics of the given device, unit and function code.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 * @param unitId
+	 *            the unit identifier.
+	 * @param functionCode
+	 *            the function code.
+	 * @return the <tt>RequestMetrics</tt>, or null if nothing was recorded.
+	 */
+	public RequestMetrics getMetrics(String device, int unitId,
+			int functionCode) {
+		AtomicReferenceArray<AtomicReferenceArray<RequestMetrics>> units = m_Devices
+				.get(device);
+		if (units == null) {
+			return null;
+		}
+		AtomicReferenceArray<RequestMetrics> functions = units
+				.get(unitId & 0xff);
+		return (functions == null) ? null : functions.get(functionCode & 0x7f);
+	}// getMetrics
+
+	/**
+	 * Returns a snapshot of all metrics of this registry.
+	 * 
+	 * @return a list of <tt>RequestMetrics</tt> instances.
+	 */
+	public List<RequestMetrics> getMetrics() {
+		List<RequestMetrics> list = new ArrayList<RequestMetrics>();
+		for (String device : m_Devices.keySet()) {
+			list.addAll(getMetrics(device));
+		}
+		return list;
+	}// getMetrics
+
+	/**
+	 * Returns a snapshot of the metrics of the given device.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 * @return a list of <tt>RequestMetrics</tt> instances.
+	 */
+	public List<RequestMetrics> getMetrics(String device) {
+		List<RequestMetrics> list = new ArrayList<RequestMetrics>();
+		AtomicReferenceArray<AtomicReferenceArray<RequestMetrics>> units = m_Devices
+				.get(device);
+		if (units != null) {
+			for (int u = 0; u < units.length(); u++) {
+				AtomicReferenceArray<RequestMetrics> functions = units.get(u);
+				if (functions == null) {
+					continue;
+				}
+				for (int f = 0; f < functions.length(); f++) {
+					RequestMetrics m = functions.get(f);
+					if (m != null) {
+						list.add(m);
+					}
+				}
+			}
+		}
+		return list;
+	}// getMetrics
+
+	/**
+	 * Returns the metrics of the given device summed up over all units and
+	 * function codes, which are reported as -1. The returned instance is a
+	 * snapshot and is not updated.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 * @return the summed up <tt>RequestMetrics</tt>.
+	 */
+	public RequestMetrics getSummary(String device) {
+		RequestMetrics summary = new RequestMetrics(device, -1, -1);
+		for (RequestMetrics m : getMetrics(device)) {
+			summary.add(m);
+		}
+		return summary;
+	}// getSummary
+
+	/**
+	 * Returns the names of the devices of this registry.
+	 * 
+	 * @return a list of device names.
+	 */
+	public List<String> getDevices() {
+		return new ArrayList<String>(m_Devices.keySet());
+	}// getDevices
+
+	/**
+	 * Removes the metrics of the given device.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 */
+	public void remove(String device) {
+		m_Devices.remove(device);
+	}// remove
+
+	/**
+	 * Clears the counters and histograms of the metrics of the given device.
+	 * 
+	 * @param device
+	 *            the name of the device.
+	 */
+	public void reset(String device) {
+		for (RequestMetrics m : getMetrics(device)) {
+			m.reset();
+		}
+	}// reset
+
+	/**
+	 * Clears the counters and histograms of all metrics.
+	 */
+	public void reset() {
+		for (RequestMetrics m : getMetrics()) {
+			m.reset();
+		}
+	}// reset
+
+	/**
+	 * Writes all metrics in the Prometheus text exposition format, with the
+	 * labels <tt>device</tt>, <tt>unit</tt> and <tt>function</tt>. Latencies
+	 * are written as summaries in seconds.
+	 * 
+	 * @param out
+	 *            the <tt>Writer</tt> to write to.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public void writeText(Writer out) throws IOException {
+		List<RequestMetrics> metrics = getMetrics();
+		StringBuffer sbuf = new StringBuffer();
+		sbuf.append("# TYPE modbus_requests_total counter\n");
+		for (RequestMetrics m : metrics) {
+			appendSample(sbuf, "modbus_requests_total", m, null, m
+					.getRequestCount());
+		}
+		sbuf.append("# TYPE modbus_failures_total counter\n");
+		for (RequestMetrics m : metrics) {
+			appendSample(sbuf, "modbus_failures_total", m, null, m
+					.getFailureCount());
+		}
+		sbuf.append("# TYPE modbus_retries_total counter\n");
+		for (RequestMetrics m : metrics) {
+			appendSample(sbuf, "modbus_retries_total", m, null, m
+					.getRetryCount());
+		}
+		sbuf.append("# TYPE modbus_timeouts_total counter\n");
+		for (RequestMetrics m : metrics) {
+			appendSample(sbuf, "modbus_timeouts_total", m, null, m
+					.getTimeoutCount());
+		}
+		sbuf.append("# TYPE modbus_request_bytes_total counter\n");
+		for (RequestMetrics m : metrics) {
+			appendSample(sbuf, "modbus_request_bytes_total", m, null, m
+					.getRequestBytes());
+		}
+		sbuf.append("# TYPE modbus_response_bytes_total counter\n");
+		for (RequestMetrics m : metrics) {
+			appendSample(sbuf, "modbus_response_bytes_total", m, null, m
+					.getResponseBytes());
+		}
+		sbuf.append("# TYPE modbus_exceptions_total counter\n");
+		for (RequestMetrics m : metrics) {
+			for (int code = 0; code < 256; code++) {
+				long n = m.getExceptionCount(code);
+				if (n > 0) {
+					appendSample(sbuf, "modbus_exceptions_total", m, ",code=\""
+							+ code + "\"", n);
+				}
+			}
+		}
+		sbuf.append("# TYPE modbus_latency_seconds summary\n");
+		for (RequestMetrics m : metrics) {
+			LatencyHistogram h = m.getLatency();
+			for (int i = 0; i < QUANTILES.length; i++) {
+				appendSample(sbuf, "modbus_latency_seconds", m, ",quantile=\""
+						+ QUANTILES[i] + "\"", h
+						.getValueAtPercentile(QUANTILES[i] * 100) / 1e9);
+			}
+			appendSample(sbuf, "modbus_latency_seconds_sum", m, null, h
+					.getSum() / 1e9);
+			appendSample(sbuf, "modbus_latency_seconds_count", m, null, h
+					.getCount());
+		}
+		out.write(sbuf.toString());
+		out.flush();
+	}// writeText
+
+	/**
+	 * Returns the entry of the given device, unit and function code, creating
+	 * it if necessary.
+	 */
+	private RequestMetrics getEntry(String device, int unitId,
+			int functionCode) {
+		if (device == null) {
+			device = "unknown";
+		}
+		AtomicReferenceArray<AtomicReferenceArray<RequestMetrics>> units = m_Devices
+				.get(device);
+		if (units == null) {
+			units = new AtomicReferenceArray<AtomicReferenceArray<RequestMetrics>>(
+					256);
+			AtomicReferenceArray<AtomicReferenceArray<RequestMetrics>> existing = m_Devices
+					.putIfAbsent(device, units);
+			if (existing != null) {
+				units = existing;
+			}
+		}
+		unitId &= 0xff;
+		AtomicReferenceArray<RequestMetrics> functions = units.get(unitId);
+		if (functions == null) {
+			units.compareAndSet(unitId, null,
+					new AtomicReferenceArray<RequestMetrics>(128));
+			functions = units.get(unitId);
+		}
+		functionCode &= 0x7f;
+		RequestMetrics m = functions.get(functionCode);
+		if (m == null) {
+			functions.compareAndSet(functionCode, null, new RequestMetrics(
+					device, unitId, functionCode));
+			m = functions.get(functionCode);
+		}
+		return m;
+	}// getEntry
+
+	private static void appendSample(StringBuffer sbuf, String name,
+			RequestMetrics m, String labels, double value) {
+		sbuf.append(name).append("{device=\"");
+		appendEscaped(sbuf, m.getDevice());
+		sbuf.append("\",unit=\"").append(m.getUnitID()).append(
+				"\",function=\"").append(m.getFunctionCode()).append('"');
+		if (labels != null) {
+			sbuf.append(labels);
+		}
+		sbuf.append("} ");
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			sbuf.append((long) value);
+		} else {
+			sbuf.append(value);
+		}
+		sbuf.append('\n');
+	}// appendSample
+
+	private static void appendEscaped(StringBuffer sbuf, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' || c == '"') {
+				sbuf.append('\\').append(c);
+			} else if (c == '\n') {
+				sbuf.append("\\n");
+			} else {
+				sbuf.append(c);
+			}
+		}
+	}// appendEscaped
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+}// class MetricsRegistry
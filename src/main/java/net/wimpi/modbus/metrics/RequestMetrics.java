@@ -0,0 +1,194 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class holding the counters and the latency histogram of the requests with
+ * one function code to one unit of a device.
+ * <p>
+ * Instances are created by the <tt>MetricsRegistry</tt>; all counters are
+ * updated without locking.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public final class RequestMetrics {
+
+	private final String m_Device;
+	private final int m_UnitID;
+	private final int m_FunctionCode;
+
+	private final AtomicLong m_Requests = new AtomicLong();
+	private final AtomicLong m_Failures = new AtomicLong();
+	private final AtomicLong m_Retries = new AtomicLong();
+	private final AtomicLong m_Timeouts = new AtomicLong();
+	private final AtomicLong m_RequestBytes = new AtomicLong();
+	private final AtomicLong m_ResponseBytes = new AtomicLong();
+	private final AtomicLong m_Exceptions = new AtomicLong();
+	private final AtomicLongArray m_ExceptionCodes = new AtomicLongArray(256);
+	private final LatencyHistogram m_Latency = new LatencyHistogram();
+
+	RequestMetrics(String device, int unitId, int functionCode) {
+		m_Device = device;
+		m_UnitID = unitId;
+		m_FunctionCode = functionCode;
+	}// constructor
+
+	public String getDevice() {
+		return m_Device;
+	}// getDevice
+
+	public int getUnitID() {
+		return m_UnitID;
+	}// getUnitID
+
+	public int getFunctionCode() {
+		return m_FunctionCode;
+	}// getFunctionCode
+
+	/**
+	 * Returns the number of completed requests, including those answered
+	 * with an exception response.
+	 * 
+	 * @return the count as <tt>long</tt>.
+	 */
+	public long getRequestCount() {
+		return m_Requests.get();
+	}// getRequestCount
+
+	public long getFailureCount() {
+		return m_Failures.get();
+	}// getFailureCount
+
+	public long getRetryCount() {
+		return m_Retries.get();
+	}// getRetryCount
+
+	public long getTimeoutCount() {
+		return m_Timeouts.get();
+	}// getTimeoutCount
+
+	public long getRequestBytes() {
+		return m_RequestBytes.get();
+	}// getRequestBytes
+
+	public long getResponseBytes() {
+		return m_ResponseBytes.get();
+	}// getResponseBytes
+
+	/**
+	 * Returns the number of exception responses.
+	 * 
+	 * @return the count as <tt>long</tt>.
+	 */
+	public long getExceptionCount() {
+		return m_Exceptions.get();
+	}// getExceptionCount
+
+	/**
+	 * Returns the number of exception responses with the given code.
+	 * 
+	 * @param code
+	 *            the exception code.
+	 * @return the count as <tt>long</tt>.
+	 */
+	public long getExceptionCount(int code) {
+		return m_ExceptionCodes.get(code & 0xff);
+	}// getExceptionCount
+
+	/**
+	 * Returns the histogram of the latencies of the completed requests.
+	 * 
+	 * @return the <tt>LatencyHistogram</tt>.
+	 */
+	public LatencyHistogram getLatency() {
+		return m_Latency;
+	}// getLatency
+
+	/**
+	 * Clears all counters and the histogram.
+	 */
+	public void reset() {
+		m_Requests.set(0);
+		m_Failures.set(0);
+		m_Retries.set(0);
+		m_Timeouts.set(0);
+		m_RequestBytes.set(0);
+		m_ResponseBytes.set(0);
+		m_Exceptions.set(0);
+		for (int i = 0; i < 256; i++) {
+			m_ExceptionCodes.set(i, 0);
+		}
+		m_Latency.reset();
+	}// reset
+
+	public String toString() {
+		return m_Device + "/" + m_UnitID + "/" + m_FunctionCode + ": "
+				+ m_Requests.get() + " requests, " + m_Exceptions.get()
+				+ " exceptions, " + m_Failures.get() + " failures, "
+				+ m_Retries.get() + " retries, " + m_Timeouts.get()
+				+ " timeouts, " + m_Latency;
+	}// toString
+
+	/**
+	 * Adds the counts and latencies of the given metrics to this one.
+	 */
+	void add(RequestMetrics m) {
+		m_Requests.addAndGet(m.m_Requests.get());
+		m_Failures.addAndGet(m.m_Failures.get());
+		m_Retries.addAndGet(m.m_Retries.get());
+		m_Timeouts.addAndGet(m.m_Timeouts.get());
+		m_RequestBytes.addAndGet(m.m_RequestBytes.get());
+		m_ResponseBytes.addAndGet(m.m_ResponseBytes.get());
+		m_Exceptions.addAndGet(m.m_Exceptions.get());
+		for (int i = 0; i < 256; i++) {
+			long n = m.m_ExceptionCodes.get(i);
+			if (n != 0) {
+				m_ExceptionCodes.addAndGet(i, n);
+			}
+		}
+		m_Latency.add(m.m_Latency);
+	}// add
+
+	void recordCompleted(int requestBytes, int responseBytes, long nanos) {
+		m_Requests.incrementAndGet();
+		m_RequestBytes.addAndGet(requestBytes);
+		m_ResponseBytes.addAndGet(responseBytes);
+		m_Latency.record(nanos);
+	}// recordCompleted
+
+	void recordException(int code) {
+		m_Exceptions.incrementAndGet();
+		m_ExceptionCodes.incrementAndGet(code & 0xff);
+	}// recordException
+
+	void recordFailure() {
+		m_Failures.incrementAndGet();
+	}// recordFailure
+
+	void recordRetry() {
+		m_Retries.incrementAndGet();
+	}// recordRetry
+
+	void recordTimeout() {
+		m_Timeouts.incrementAndGet();
+	}// recordTimeout
+
+}// class RequestMetrics
@@ -21,6 +21,7 @@ package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.io.RequestTemplate;
 import net.wimpi.modbus.procimg.ProcessImage;
 
 /**
@@ -61,6 +62,29 @@ public abstract class ModbusRequest extends ModbusMessageImpl {
 	 */
 	public abstract ModbusResponse createResponse();
 
+	/**
+	 * Tests if this <tt>ModbusRequest</tt> is a broadcast, i.e. a write
+	 * request addressed to the broadcast unit identifier. Broadcasts are
+	 * applied by all slaves of a serial line, but never answered.
+	 * 
+	 * @return true if this request is a broadcast, false otherwise.
+	 * @see Modbus#BROADCAST_UNIT_ID
+	 */
+	public boolean isBroadcast() {
+		if (getUnitID() != Modbus.BROADCAST_UNIT_ID) {
+			return false;
+		}
+		switch (getFunctionCode()) {
+		case Modbus.WRITE_COIL:
+		case Modbus.WRITE_SINGLE_REGISTER:
+		case Modbus.WRITE_MULTIPLE_COILS:
+		case Modbus.WRITE_MULTIPLE_REGISTERS:
+			return true;
+		default:
+			return false;
+		}
+	}// isBroadcast
+
 	/**
 	 * Factory method for creating exception responses with the given exception
 	 * code.
@@ -82,6 +106,20 @@ public abstract class ModbusRequest extends ModbusMessageImpl {
 		return response;
 	}// createExceptionResponse
 
+	/**
+	 * Encodes this <tt>ModbusRequest</tt> into a <tt>RequestTemplate</tt>,
+	 * to be sent repeatedly without being encoded again. The template does
+	 * not reflect later changes of this request.
+	 * 
+	 * @param encoding
+	 *            the encoding of the template, e.g.
+	 *            <tt>RequestTemplate.IP</tt>.
+	 * @return the <tt>RequestTemplate</tt>.
+	 */
+	public RequestTemplate createTemplate(int encoding) {
+		return new RequestTemplate(this, encoding);
+	}// createTemplate
+
 	/**
 	 * Factory method creating the required specialized <tt>ModbusRequest</tt>
 	 * instance.
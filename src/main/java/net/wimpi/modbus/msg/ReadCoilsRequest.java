@@ -22,8 +22,10 @@ package net.wimpi.modbus.msg;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.BulkProcessImage;
 import net.wimpi.modbus.procimg.DigitalOut;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.InvalidUnitIDException;
@@ -82,15 +84,28 @@ public final class ReadCoilsRequest extends ModbusRequest {
 		ProcessImage procimg = this.getProcessImage();
 
 		try {
-			// 2. get coil range
-			douts = procimg.getDigitalOutRange(this.getUnitID(),
-					this.getReference(), this.getBitCount());
+			if (procimg instanceof BulkProcessImage) {
+				// 2. get the packed coil range in one go
+				byte[] data = new byte[(m_BitCount + 7) / 8];
+				((BulkProcessImage) procimg).readCoils(this.getUnitID(),
+						this.getReference(), m_BitCount, ByteBuffer.wrap(data),
+						0);
+				response = new ReadCoilsResponse(m_BitCount);
+				response.getCoils().unpack(data, 0, 0, m_BitCount);
+			} else {
+				// 2. get coil range
+				douts = procimg.getDigitalOutRange(this.getUnitID(),
+						this.getReference(), this.getBitCount());
+				response = new ReadCoilsResponse(douts.length);
+				for (int i = 0; i < douts.length; i++) {
+					response.setCoilStatus(i, douts[i].isSet());
+				}
+			}
 		} catch (IllegalAddressException iaex) {
 			return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
 		} catch (InvalidUnitIDException e) {
 			return null; // Don't send a response
 		}
-		response = new ReadCoilsResponse(douts.length);
 
 		// transfer header data
 		if (!isHeadless()) {
@@ -102,10 +117,6 @@ public final class ReadCoilsRequest extends ModbusRequest {
 		response.setUnitID(this.getUnitID());
 		response.setFunctionCode(this.getFunctionCode());
 		response.setReference(m_Reference);
-
-		for (int i = 0; i < douts.length; i++) {
-			response.setCoilStatus(i, douts[i].isSet());
-		}
 		return response;
 	}// createResponse
 
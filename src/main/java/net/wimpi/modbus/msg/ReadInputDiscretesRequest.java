@@ -22,8 +22,10 @@ package net.wimpi.modbus.msg;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.BulkProcessImage;
 import net.wimpi.modbus.procimg.DigitalIn;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.InvalidUnitIDException;
@@ -89,15 +91,28 @@ public final class ReadInputDiscretesRequest extends ModbusRequest {
 		ProcessImage procimg = this.getProcessImage();
 
 		try {
-			// 2. get input discretes range
-			dins = procimg.getDigitalInRange(this.getUnitID(),
-					this.getReference(), this.getBitCount());
+			if (procimg instanceof BulkProcessImage) {
+				// 2. get the packed input discretes range in one go
+				byte[] data = new byte[(m_BitCount + 7) / 8];
+				((BulkProcessImage) procimg).readDiscreteInputs(
+						this.getUnitID(), this.getReference(), m_BitCount,
+						ByteBuffer.wrap(data), 0);
+				response = new ReadInputDiscretesResponse(m_BitCount);
+				response.getDiscretes().unpack(data, 0, 0, m_BitCount);
+			} else {
+				// 2. get input discretes range
+				dins = procimg.getDigitalInRange(this.getUnitID(),
+						this.getReference(), this.getBitCount());
+				response = new ReadInputDiscretesResponse(dins.length);
+				for (int i = 0; i < dins.length; i++) {
+					response.setDiscreteStatus(i, dins[i].isSet());
+				}
+			}
 		} catch (IllegalAddressException iaex) {
 			return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
 		} catch (InvalidUnitIDException e) {
 			return null; // Don't send a response
 		}
-		response = new ReadInputDiscretesResponse(dins.length);
 		// transfer header data
 		if (!isHeadless()) {
 			response.setTransactionID(this.getTransactionID());
@@ -108,10 +123,6 @@ public final class ReadInputDiscretesRequest extends ModbusRequest {
 		response.setUnitID(this.getUnitID());
 		response.setFunctionCode(this.getFunctionCode());
 		response.setReference(m_Reference);
-
-		for (int i = 0; i < dins.length; i++) {
-			response.setDiscreteStatus(i, dins[i].isSet());
-		}
 		return response;
 	}// createResponse
 
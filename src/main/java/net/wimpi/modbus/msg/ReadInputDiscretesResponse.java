@@ -23,6 +23,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+import net.wimpi.modbus.io.BytesOutputStream;
 import net.wimpi.modbus.util.BitVector;
 import net.wimpi.modbus.Modbus;
 
@@ -132,17 +133,24 @@ public final class ReadInputDiscretesResponse extends ModbusResponse {
 	}// setDiscreteStatus
 
 	public void writeData(DataOutput dout) throws IOException {
-		dout.writeByte(m_Discretes.byteSize());
-		dout.write(m_Discretes.getBytes(), 0, m_Discretes.byteSize());
+		int len = m_Discretes.byteSize();
+		dout.writeByte(len);
+		if (dout instanceof BytesOutputStream) {
+			// pack straight into the frame buffer
+			((BytesOutputStream) dout).writeBits(m_Discretes, len);
+		} else {
+			for (int k = 0; k < len; k++) {
+				int n = Math.min(8, m_Discretes.size() - k * 8);
+				dout.writeByte((n > 0) ? (int) m_Discretes.getBits(k * 8, n) : 0);
+			}
+		}
 	}// writeData
 
 	public void readData(DataInput din) throws IOException {
 
 		int count = din.readUnsignedByte();
 		byte[] data = new byte[count];
-		for (int k = 0; k < count; k++) {
-			data[k] = din.readByte();
-		}
+		din.readFully(data);
 
 		// decode bytes into bitvector
 		m_Discretes = BitVector.createBitVector(data);
@@ -138,6 +138,28 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
 		}
 	}// getRegister
 
+	/**
+	 * Copies the values of the registers read, interpreted as unsigned
+	 * short, into the given array, e.g. for decoding with
+	 * <tt>RegisterCodec</tt>.
+	 * 
+	 * @param dst
+	 *            the array to copy into.
+	 * @param off
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @return the number of values copied.
+	 * @throws IndexOutOfBoundsException
+	 *             if the array is too small.
+	 */
+	public int getRegisterValues(int[] dst, int off)
+			throws IndexOutOfBoundsException {
+		int count = getWordCount();
+		for (int i = 0; i < count; i++) {
+			dst[off + i] = m_Registers[i].toUnsignedShort();
+		}
+		return count;
+	}// getRegisterValues
+
 	/**
 	 * Returns a reference to the array of registers read.
 	 * 
@@ -20,6 +20,8 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.io.BytesOutputStream;
+import net.wimpi.modbus.procimg.BulkProcessImage;
 import net.wimpi.modbus.procimg.DigitalOut;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.InvalidUnitIDException;
@@ -96,14 +98,24 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
 		// 1. get process image
 		ProcessImage procimg = this.getProcessImage();
 		
-		// 2. get coil range
 		try {
-			douts = procimg.getDigitalOutRange(getUnitID(), getReference(), m_Coils.size());
-			// 3. set coils
-			for (int i = 0; i < douts.length; i++) {
-				douts[i].set(m_Coils.getBit(i));
+			if (procimg instanceof BulkProcessImage) {
+				// 2. set the coil range from the bits in one go
+				((BulkProcessImage) procimg).writeCoils(getUnitID(),
+						getReference(), m_Coils.size(), m_Coils, 0);
+			} else {
+				// 2. get coils one by one, the lookup broadcasts are accepted
+				// on, before any of them is set
+				douts = new DigitalOut[m_Coils.size()];
+				for (int i = 0; i < douts.length; i++) {
+					douts[i] = procimg.getDigitalOut(getUnitID(), getReference()
+							+ i);
+				}
+				// 3. set coils
+				for (int i = 0; i < douts.length; i++) {
+					douts[i].set(m_Coils.getBit(i));
+				}
 			}
-			
 		} catch (IllegalAddressException iaex) {
 			return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
 		} catch (InvalidUnitIDException e) {
@@ -224,8 +236,17 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
 	public void writeData(DataOutput dout) throws IOException {
 		dout.writeShort(m_Reference);
 		dout.writeShort(m_Coils.size());
-		dout.writeByte(m_Coils.byteSize());
-		dout.write(m_Coils.getBytes());
+		int len = m_Coils.byteSize();
+		dout.writeByte(len);
+		if (dout instanceof BytesOutputStream) {
+			// pack straight into the frame buffer
+			((BytesOutputStream) dout).writeBits(m_Coils, len);
+		} else {
+			for (int k = 0; k < len; k++) {
+				int n = Math.min(8, m_Coils.size() - k * 8);
+				dout.writeByte((n > 0) ? (int) m_Coils.getBits(k * 8, n) : 0);
+			}
+		}
 	}// writeData
 
 	public void readData(DataInput din) throws IOException {
@@ -234,9 +255,7 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
 		int bitcount = din.readUnsignedShort();
 		int count = din.readUnsignedByte();
 		byte[] data = new byte[count];
-		for (int k = 0; k < count; k++) {
-			data[k] = din.readByte();
-		}
+		din.readFully(data);
 		// decode bytes into bitvector, sets data and bitcount
 		m_Coils = BitVector.createBitVector(data, bitcount);
 
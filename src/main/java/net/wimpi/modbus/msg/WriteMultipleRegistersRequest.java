@@ -80,8 +80,12 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
 			// 2. get registers
 			try {
 				// TODO: realize a setRegisterRange()?
-				regs = procimg.getRegisterRange(getUnitID() ,getReference(),
-						getWordCount());
+				// registers are looked up one by one, the lookup broadcasts
+				// are accepted on, before any of them is set
+				regs = new Register[getWordCount()];
+				for (int i = 0; i < regs.length; i++) {
+					regs[i] = procimg.getRegister(getUnitID(), getReference() + i);
+				}
 				// 3. set Register values
 				for (int i = 0; i < regs.length; i++) {
 					regs[i].setValue(this.getRegister(i).toBytes());
@@ -0,0 +1,61 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+/**
+ * Interface defining a <tt>UDPTerminal</tt> that exchanges its messages
+ * through buffers of the default <tt>BufferPool</tt>.
+ * <p>
+ * The message returned by {@link #receiveMessage()} is a pooled buffer, which
+ * the caller should release once the message has been decoded. A
+ * <tt>ModbusUDPTransport</tt> uses the operations of this interface when its
+ * terminal implements it, and the plain <tt>UDPTerminal</tt> operations
+ * otherwise.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface BufferedUDPTerminal extends UDPTerminal {
+
+	/**
+	 * Sends the first <tt>len</tt> bytes of the given message. The terminal
+	 * takes ownership of the buffer and releases it to the default
+	 * <tt>BufferPool</tt> once it has been sent.
+	 * 
+	 * @param msg
+	 *            the message as <tt>byte[]</tt>, obtained from the default
+	 *            <tt>BufferPool</tt>.
+	 * @param len
+	 *            the length of the message.
+	 * @throws Exception
+	 *             if sending the message fails.
+	 */
+	public void sendMessage(byte[] msg, int len) throws Exception;
+
+	/**
+	 * Receives a message into the given buffer.
+	 * 
+	 * @param buffer
+	 *            the buffer to receive the message into; it should be able to
+	 *            hold <tt>Modbus.MAX_IP_MESSAGE_LENGTH</tt> bytes.
+	 * @return the number of bytes received.
+	 * @throws Exception
+	 *             if receiving a message fails.
+	 */
+	public int receiveMessage(byte[] buffer) throws Exception;
+
+}// interface BufferedUDPTerminal
@@ -0,0 +1,342 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.util.ByteRingBuffer;
+import net.wimpi.modbus.util.SerialParameters;
+
+/**
+ * Class implementing a <tt>SerialTerminal</tt> on top of a jssc
+ * <tt>SerialPort</tt>.
+ * <p>
+ * By default, the terminal is event driven: RXCHAR events of the port drain
+ * all received bytes with a single native call into a ring buffer, and the
+ * input stream reads from that buffer. This avoids a native call for every
+ * byte read by the transports. Terminals wrapping an already opened port
+ * poll the port instead, as jssc allows only one event listener per port.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class JSSCSerialTerminal implements SerialTerminal {
+
+	private SerialPort m_SerialPort;
+	private PortInputStream m_InputStream;
+	private PortOutputStream m_OutputStream;
+	private volatile int m_ReceiveTimeout;
+	private boolean m_EventDriven = true;
+	private volatile ByteRingBuffer m_RxBuffer;
+
+	/**
+	 * Constructs a new <tt>JSSCSerialTerminal</tt> instance that will create
+	 * its port when it is opened.
+	 */
+	public JSSCSerialTerminal() {
+		m_InputStream = new PortInputStream();
+		m_OutputStream = new PortOutputStream();
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>JSSCSerialTerminal</tt> instance wrapping the
+	 * given, already opened and configured <tt>SerialPort</tt>.
+	 * 
+	 * @param port
+	 *            the <tt>SerialPort</tt> to be wrapped.
+	 */
+	public JSSCSerialTerminal(SerialPort port) {
+		this();
+		m_SerialPort = port;
+		m_EventDriven = false;
+	}// constructor
+
+	/**
+	 * Tests if this terminal receives data driven by port events.
+	 * 
+	 * @return true if event driven, false if polling.
+	 */
+	public boolean isEventDriven() {
+		return m_EventDriven;
+	}// isEventDriven
+
+	/**
+	 * Sets the flag that controls if this terminal receives data driven by
+	 * port events or by polling the port. Takes effect when the terminal is
+	 * opened.
+	 * 
+	 * @param b
+	 *            true if event driven, false if polling.
+	 */
+	public void setEventDriven(boolean b) {
+		m_EventDriven = b;
+	}// setEventDriven
+
+	/**
+	 * Returns the number of received bytes that were lost because the
+	 * receive buffer was full.
+	 * 
+	 * @return the number of lost bytes; 0 if not event driven.
+	 */
+	public long getOverruns() {
+		ByteRingBuffer rx = m_RxBuffer;
+		return (rx == null) ? 0 : rx.getOverruns();
+	}// getOverruns
+
+	/**
+	 * Returns the underlying <tt>SerialPort</tt>.
+	 * 
+	 * @return the <tt>SerialPort</tt> or <tt>null</tt> if not opened yet.
+	 */
+	public SerialPort getSerialPort() {
+		return m_SerialPort;
+	}// getSerialPort
+
+	public void open(SerialParameters params) throws Exception {
+		m_SerialPort = new SerialPort(params.getPortName());
+		try {
+			m_SerialPort.openPort();
+			setParameters(params);
+			if (m_EventDriven) {
+				m_RxBuffer = new ByteRingBuffer(RX_BUFFER_SIZE);
+				m_SerialPort.addEventListener(new ReceiveListener(),
+						SerialPort.MASK_RXCHAR);
+			}
+		} catch (Exception e) {
+			m_RxBuffer = null;
+			if (m_SerialPort.isOpened())
+				m_SerialPort.closePort();
+			if (Modbus.debug)
+				System.out.println("Failure opening port: " + e.getMessage());
+			throw e;
+		}
+	}// open
+
+	public void setParameters(SerialParameters params) throws Exception {
+		// Set connection parameters
+		try {
+			m_SerialPort.setParams(params.getBaudRate(), params.getDatabits(),
+					params.getStopbits(), params.getParity());
+		} catch (SerialPortException e) {
+			if (Modbus.debug)
+				System.out.println(e.getMessage());
+
+			throw new Exception(e);
+		}
+
+		// Set flow control.
+		try {
+			m_SerialPort.setFlowControlMode(params.getFlowControlIn()
+					| params.getFlowControlOut());
+		} catch (SerialPortException e) {
+			if (Modbus.debug)
+				System.out.println(e.getMessage());
+
+			throw new Exception(e);
+		}
+	}// setParameters
+
+	public void close() throws IOException {
+		if (m_SerialPort != null && m_SerialPort.isOpened()) {
+			try {
+				if (m_RxBuffer != null) {
+					m_SerialPort.removeEventListener();
+					m_RxBuffer.close();
+					m_RxBuffer = null;
+				}
+				m_SerialPort.closePort();
+			} catch (SerialPortException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+	}// close
+
+	public boolean isOpen() {
+		return m_SerialPort != null && m_SerialPort.isOpened();
+	}// isOpen
+
+	public String getName() {
+		return (m_SerialPort == null) ? null : m_SerialPort.getPortName();
+	}// getName
+
+	public InputStream getInputStream() {
+		return m_InputStream;
+	}// getInputStream
+
+	public OutputStream getOutputStream() {
+		return m_OutputStream;
+	}// getOutputStream
+
+	public void setReceiveTimeout(int ms) {
+		m_ReceiveTimeout = ms;
+	}// setReceiveTimeout
+
+	public int getReceiveTimeout() {
+		return m_ReceiveTimeout;
+	}// getReceiveTimeout
+
+	/**
+	 * Input stream reading from the port with the semantics required by
+	 * <tt>SerialTerminal</tt>.
+	 */
+	private class PortInputStream extends InputStream {
+
+		public int read() throws IOException {
+			ByteRingBuffer rx = m_RxBuffer;
+			if (rx != null) {
+				return rx.read(m_ReceiveTimeout);
+			}
+			byte[] b = readBytes(1);
+			return (b == null) ? -1 : b[0] & 0xff;
+		}// read
+
+		public int read(byte[] buf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			ByteRingBuffer rx = m_RxBuffer;
+			if (rx != null) {
+				return rx.read(buf, off, len, m_ReceiveTimeout);
+			}
+			int count = available();
+			if (count == 0) {
+				// block for the first byte, then take what is there
+				byte[] b = readBytes(1);
+				if (b == null) {
+					return -1;
+				}
+				buf[off] = b[0];
+				return 1 + readAvailable(buf, off + 1, len - 1);
+			}
+			return readAvailable(buf, off, len);
+		}// read
+
+		public int available() throws IOException {
+			ByteRingBuffer rx = m_RxBuffer;
+			if (rx != null) {
+				return rx.available();
+			}
+			try {
+				int count = m_SerialPort.getInputBufferBytesCount();
+				if (count < 0) {
+					throw new IOException(
+							"Error checking available bytes from the serial port.");
+				}
+				return count;
+			} catch (SerialPortException e) {
+				throw new IOException(e.getMessage());
+			}
+		}// available
+
+		private int readAvailable(byte[] buf, int off, int len)
+				throws IOException {
+			int count = Math.min(available(), len);
+			if (count <= 0) {
+				return 0;
+			}
+			try {
+				byte[] b = m_SerialPort.readBytes(count);
+				System.arraycopy(b, 0, buf, off, b.length);
+				return b.length;
+			} catch (SerialPortException e) {
+				throw new IOException(e.getMessage());
+			}
+		}// readAvailable
+
+		private byte[] readBytes(int count) throws IOException {
+			try {
+				int timeout = m_ReceiveTimeout;
+				if (timeout > 0) {
+					return m_SerialPort.readBytes(count, timeout);
+				} else {
+					return m_SerialPort.readBytes(count);
+				}
+			} catch (SerialPortTimeoutException e) {
+				return null;
+			} catch (SerialPortException e) {
+				throw new IOException(e.getMessage());
+			}
+		}// readBytes
+
+	}// inner class PortInputStream
+
+	/**
+	 * Listener draining received bytes into the ring buffer.
+	 */
+	private class ReceiveListener implements SerialPortEventListener {
+
+		public void serialEvent(SerialPortEvent event) {
+			if (!event.isRXCHAR() || event.getEventValue() <= 0) {
+				return;
+			}
+			ByteRingBuffer rx = m_RxBuffer;
+			try {
+				byte[] b = m_SerialPort.readBytes();
+				if (b != null && rx != null) {
+					rx.write(b, 0, b.length);
+				}
+			} catch (SerialPortException e) {
+				if (Modbus.debug)
+					System.out.println("Receive failed: " + e.getMessage());
+			}
+		}// serialEvent
+
+	}// inner class ReceiveListener
+
+	/**
+	 * Output stream writing to the port.
+	 */
+	private class PortOutputStream extends OutputStream {
+
+		public void write(int b) throws IOException {
+			try {
+				m_SerialPort.writeByte((byte) b);
+			} catch (SerialPortException e) {
+				throw new IOException(e.getMessage());
+			}
+		}// write
+
+		public void write(byte[] buf, int off, int len) throws IOException {
+			byte[] b = buf;
+			if (off != 0 || len != buf.length) {
+				b = new byte[len];
+				System.arraycopy(buf, off, b, 0, len);
+			}
+			try {
+				m_SerialPort.writeBytes(b);
+			} catch (SerialPortException e) {
+				throw new IOException(e.getMessage());
+			}
+		}// write
+
+	}// inner class PortOutputStream
+
+	/**
+	 * Size of the receive ring buffer in bytes.
+	 */
+	private static final int RX_BUFFER_SIZE = 4096;
+
+}// class JSSCSerialTerminal
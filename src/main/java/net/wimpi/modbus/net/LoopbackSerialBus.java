@@ -0,0 +1,432 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.wimpi.modbus.util.SerialParameters;
+
+/**
+ * Class implementing an in-memory multi-drop serial bus.
+ * <p>
+ * Every <tt>SerialTerminal</tt> created by the bus is a drop on the same
+ * line; bytes written by one drop are received by all other open drops (and
+ * by the writer itself if its parameters enable echo, like on a two-wire
+ * RS485 line). This allows to run and benchmark the serial transports,
+ * listeners and masters without any hardware.
+ * <p>
+ * The bus simulates:
+ * <ul>
+ * <li>the wire time of each character, derived from baud rate and character
+ * format of the sending drop; bytes become readable when their last bit has
+ * been "transmitted", and transmissions of different drops are serialized.
+ * Timing can be switched off to measure the framing overhead alone.</li>
+ * <li>an additional inter-character gap.</li>
+ * <li>line noise: with a configurable probability, a single bit of a
+ * transmitted character is flipped.</li>
+ * </ul>
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class LoopbackSerialBus {
+
+	private final List<Drop> m_Drops;
+	private final Random m_Random;
+	private volatile boolean m_Timing = true;
+	private volatile long m_InterCharacterGap; // ns
+	private volatile double m_ErrorRate;
+	private int m_BufferSize = 4096;
+
+	private long m_BusFreeAt;
+	private byte[] m_Scratch;
+
+	// statistics
+	private long m_BytesTransmitted;
+	private long m_CorruptedBytes;
+	private long m_WireTime;
+
+	/**
+	 * Constructs a new <tt>LoopbackSerialBus</tt> instance.
+	 */
+	public LoopbackSerialBus() {
+		this(System.nanoTime());
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>LoopbackSerialBus</tt> instance with a fixed seed
+	 * for the noise simulation, making corruption reproducible.
+	 * 
+	 * @param seed
+	 *            the seed for the noise generator.
+	 */
+	public LoopbackSerialBus(long seed) {
+		m_Drops = new CopyOnWriteArrayList<Drop>();
+		m_Random = new Random(seed);
+		m_Scratch = new byte[512];
+	}// constructor
+
+	/**
+	 * Creates a new drop on this bus.
+	 * 
+	 * @param name
+	 *            the port name of the drop.
+	 * @return the drop as <tt>SerialTerminal</tt>.
+	 */
+	public SerialTerminal createTerminal(String name) {
+		Drop d = new Drop(name);
+		m_Drops.add(d);
+		return d;
+	}// createTerminal
+
+	/**
+	 * Tests if the wire time of characters is simulated.
+	 * 
+	 * @return true if timing is simulated, false otherwise.
+	 */
+	public boolean isTimingEnabled() {
+		return m_Timing;
+	}// isTimingEnabled
+
+	/**
+	 * Sets the flag that controls if the wire time of characters is
+	 * simulated. If disabled, bytes are readable as soon as they are written.
+	 * 
+	 * @param b
+	 *            true if timing should be simulated, false otherwise.
+	 */
+	public void setTimingEnabled(boolean b) {
+		m_Timing = b;
+	}// setTimingEnabled
+
+	/**
+	 * Sets an additional gap between two transmitted characters.
+	 * 
+	 * @param micros
+	 *            the gap in microseconds.
+	 */
+	public void setInterCharacterGap(long micros) {
+		m_InterCharacterGap = micros * 1000;
+	}// setInterCharacterGap
+
+	/**
+	 * Returns the gap between two transmitted characters.
+	 * 
+	 * @return the gap in microseconds.
+	 */
+	public long getInterCharacterGap() {
+		return m_InterCharacterGap / 1000;
+	}// getInterCharacterGap
+
+	/**
+	 * Sets the probability that a transmitted character is corrupted by a
+	 * single flipped bit.
+	 * 
+	 * @param rate
+	 *            the probability between 0 and 1.
+	 */
+	public void setErrorRate(double rate) {
+		if (rate < 0 || rate > 1) {
+			throw new IllegalArgumentException("Error rate must be in [0,1].");
+		}
+		m_ErrorRate = rate;
+	}// setErrorRate
+
+	/**
+	 * Returns the probability that a transmitted character is corrupted.
+	 * 
+	 * @return the probability between 0 and 1.
+	 */
+	public double getErrorRate() {
+		return m_ErrorRate;
+	}// getErrorRate
+
+	/**
+	 * Sets the receive buffer size of drops created afterwards. Bytes that do
+	 * not fit into the buffer of a drop are lost (overrun).
+	 * 
+	 * @param size
+	 *            the buffer size in bytes.
+	 */
+	public synchronized void setBufferSize(int size) {
+		m_BufferSize = size;
+	}// setBufferSize
+
+	/**
+	 * Returns the number of characters transmitted on this bus.
+	 * 
+	 * @return the number of characters.
+	 */
+	public synchronized long getBytesTransmitted() {
+		return m_BytesTransmitted;
+	}// getBytesTransmitted
+
+	/**
+	 * Returns the number of characters that were corrupted by simulated line
+	 * noise.
+	 * 
+	 * @return the number of corrupted characters.
+	 */
+	public synchronized long getCorruptedBytes() {
+		return m_CorruptedBytes;
+	}// getCorruptedBytes
+
+	/**
+	 * Returns the accumulated time the line was busy transmitting characters.
+	 * 
+	 * @return the wire time in nanoseconds.
+	 */
+	public synchronized long getWireTimeNanos() {
+		return m_WireTime;
+	}// getWireTimeNanos
+
+	/**
+	 * Resets the statistics of this bus.
+	 */
+	public synchronized void resetStatistics() {
+		m_BytesTransmitted = 0;
+		m_CorruptedBytes = 0;
+		m_WireTime = 0;
+	}// resetStatistics
+
+	/**
+	 * Puts the given bytes on the line.
+	 */
+	private synchronized void transmit(Drop sender, byte[] data, int off,
+			int len) {
+		if (m_Scratch.length < len) {
+			m_Scratch = new byte[len];
+		}
+		byte[] line = m_Scratch;
+		System.arraycopy(data, off, line, 0, len);
+		double errorRate = m_ErrorRate;
+		if (errorRate > 0) {
+			for (int i = 0; i < len; i++) {
+				if (m_Random.nextDouble() < errorRate) {
+					line[i] ^= (byte) (1 << m_Random.nextInt(8));
+					m_CorruptedBytes++;
+				}
+			}
+		}
+
+		long chartime = 0;
+		if (m_Timing) {
+			chartime = sender.m_Parameters.getCharacterTimeNanos()
+					+ m_InterCharacterGap;
+		}
+		long start = Math.max(System.nanoTime(), m_BusFreeAt);
+		m_BusFreeAt = start + len * chartime;
+		m_BytesTransmitted += len;
+		m_WireTime += len * chartime;
+
+		for (Drop d : m_Drops) {
+			if (d != sender || sender.m_Parameters.isEcho()) {
+				d.receive(line, len, start, chartime);
+			}
+		}
+	}// transmit
+
+	/**
+	 * A drop on the bus.
+	 */
+	private class Drop implements SerialTerminal {
+
+		private final String m_Name;
+		private SerialParameters m_Parameters;
+		private volatile boolean m_Open;
+		private volatile int m_ReceiveTimeout;
+
+		private byte[] m_Buffer;
+		private long[] m_Arrival;
+		private int m_Head;
+		private int m_Count;
+
+		private final InputStream m_InputStream = new InputStream() {
+
+			public int read() throws IOException {
+				return Drop.this.read();
+			}// read
+
+			public int read(byte[] buf, int off, int len) throws IOException {
+				if (len == 0) {
+					return 0;
+				}
+				return Drop.this.read(buf, off, len);
+			}// read
+
+			public int available() {
+				return Drop.this.available();
+			}// available
+		};
+
+		private final OutputStream m_OutputStream = new OutputStream() {
+
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}// write
+
+			public void write(byte[] buf, int off, int len) throws IOException {
+				if (!m_Open) {
+					throw new IOException("Port " + m_Name + " is closed.");
+				}
+				transmit(Drop.this, buf, off, len);
+			}// write
+		};
+
+		public Drop(String name) {
+			m_Name = name;
+		}// constructor
+
+		public synchronized void open(SerialParameters params) {
+			m_Parameters = params;
+			m_Buffer = new byte[m_BufferSize];
+			m_Arrival = new long[m_BufferSize];
+			m_Head = 0;
+			m_Count = 0;
+			m_Open = true;
+		}// open
+
+		public synchronized void setParameters(SerialParameters params) {
+			m_Parameters = params;
+		}// setParameters
+
+		public synchronized void close() {
+			m_Open = false;
+			notifyAll();
+		}// close
+
+		public boolean isOpen() {
+			return m_Open;
+		}// isOpen
+
+		public String getName() {
+			return m_Name;
+		}// getName
+
+		public InputStream getInputStream() {
+			return m_InputStream;
+		}// getInputStream
+
+		public OutputStream getOutputStream() {
+			return m_OutputStream;
+		}// getOutputStream
+
+		public void setReceiveTimeout(int ms) {
+			m_ReceiveTimeout = ms;
+		}// setReceiveTimeout
+
+		public int getReceiveTimeout() {
+			return m_ReceiveTimeout;
+		}// getReceiveTimeout
+
+		synchronized void receive(byte[] data, int len, long start,
+				long chartime) {
+			if (!m_Open) {
+				return;
+			}
+			int cap = m_Buffer.length;
+			for (int i = 0; i < len && m_Count < cap; i++) {
+				int idx = (m_Head + m_Count) % cap;
+				m_Buffer[idx] = data[i];
+				m_Arrival[idx] = start + (i + 1) * chartime;
+				m_Count++;
+			}
+			notifyAll();
+		}// receive
+
+		synchronized int available() {
+			long now = System.nanoTime();
+			int n = 0;
+			while (n < m_Count
+					&& m_Arrival[(m_Head + n) % m_Buffer.length] <= now) {
+				n++;
+			}
+			return n;
+		}// available
+
+		synchronized int read() throws IOException {
+			if (!await()) {
+				return -1;
+			}
+			int b = m_Buffer[m_Head] & 0xff;
+			m_Head = (m_Head + 1) % m_Buffer.length;
+			m_Count--;
+			return b;
+		}// read
+
+		synchronized int read(byte[] buf, int off, int len) throws IOException {
+			if (!await()) {
+				return -1;
+			}
+			long now = System.nanoTime();
+			int n = 0;
+			while (n < len && m_Count > 0 && m_Arrival[m_Head] <= now) {
+				buf[off + n++] = m_Buffer[m_Head];
+				m_Head = (m_Head + 1) % m_Buffer.length;
+				m_Count--;
+			}
+			return n;
+		}// read
+
+		/**
+		 * Waits until the first buffered byte has arrived, or the receive
+		 * timeout expired. Must be called holding the lock of this drop.
+		 */
+		private boolean await() throws IOException {
+			int timeout = m_ReceiveTimeout;
+			long deadline = (timeout > 0) ? System.nanoTime() + timeout
+					* 1000000L : Long.MAX_VALUE;
+			while (true) {
+				if (!m_Open) {
+					throw new IOException("Port " + m_Name + " is closed.");
+				}
+				long now = System.nanoTime();
+				long wait = Long.MAX_VALUE;
+				if (m_Count > 0) {
+					if (m_Arrival[m_Head] <= now) {
+						return true;
+					}
+					wait = m_Arrival[m_Head] - now;
+				}
+				if (deadline != Long.MAX_VALUE) {
+					long left = deadline - now;
+					if (left <= 0) {
+						return false;
+					}
+					wait = Math.min(wait, left);
+				}
+				try {
+					if (wait == Long.MAX_VALUE) {
+						wait();
+					} else {
+						wait(wait / 1000000, (int) (wait % 1000000));
+					}
+				} catch (InterruptedException ex) {
+					throw new InterruptedIOException();
+				}
+			}
+		}// await
+
+	}// inner class Drop
+
+}// class LoopbackSerialBus
@@ -16,13 +16,15 @@
 
 package net.wimpi.modbus.net;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusIOException;
-import net.wimpi.modbus.io.ModbusTransport;
-import net.wimpi.modbus.msg.ModbusRequest;
-import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.io.FrameProcessor;
+import net.wimpi.modbus.io.ModbusFrame;
+import net.wimpi.modbus.io.ModbusSerialTransport;
+import net.wimpi.modbus.metrics.Metrics;
 import net.wimpi.modbus.procimg.ProcessImage;
 import net.wimpi.modbus.util.SerialParameters;
 
@@ -39,6 +41,8 @@ public class ModbusSerialListener implements Runnable {
 	private final AtomicBoolean m_Listening;
 	private SerialConnection m_SerialCon;
 	private Thread m_Listener;
+	private ProcessImage m_ProcessImage;
+	private volatile boolean m_Tracing;
 
 	/**
 	 * Constructs a new <tt>ModbusSerialListener</tt> instance.
@@ -51,6 +55,21 @@ public class ModbusSerialListener implements Runnable {
 		m_SerialCon = new SerialConnection(params);
 	}// constructor
 
+	/**
+	 * Constructs a new <tt>ModbusSerialListener</tt> instance that listens on
+	 * the given <tt>SerialTerminal</tt>.
+	 * 
+	 * @param params
+	 *            a <tt>SerialParameters</tt> instance.
+	 * @param terminal
+	 *            the <tt>SerialTerminal</tt> to listen on.
+	 */
+	public ModbusSerialListener(SerialParameters params,
+			SerialTerminal terminal) {
+		m_Listening = new AtomicBoolean(false);
+		m_SerialCon = new SerialConnection(params, terminal);
+	}// constructor
+
 	/**
 	 * Starts this <tt>ModbusTCPListener</tt>.
 	 */
@@ -75,37 +94,50 @@ public class ModbusSerialListener implements Runnable {
 		try {
 			m_SerialCon.open();
 			// System.out.println("Opened Serial connection.");
-			ModbusTransport transport = m_SerialCon.getModbusTransport();
+			ModbusSerialTransport transport = m_SerialCon.getModbusTransport();
+			// requests are served on headless frames
+			byte[] in = new byte[Modbus.MAX_MESSAGE_LENGTH];
+			byte[] out = new byte[Modbus.MAX_MESSAGE_LENGTH];
+			ModbusFrame request = new ModbusFrame().wrapHeadless(
+					ByteBuffer.wrap(in), 0);
+			ModbusFrame response = new ModbusFrame().wrapHeadless(
+					ByteBuffer.wrap(out), 0);
+			String name = getMetricsName();
 			while (m_Listening.get()) {
 				try {
 					// 1. read the request
-					ModbusRequest request = transport.readRequest();
-					ModbusResponse response = null;
-
-					// test if Process image exists
-					if (request.getProcessImage() == null) {
-						response = request
-								.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
-					} else {
-						response = request.createResponse();
-					}
-
-					if (Modbus.debug)
-						System.out
-								.println("Request:" + request.getHexMessage());
-					if (Modbus.debug) {
-						if (response != null)
+					int len = transport.readRequestFrame(in);
+					boolean timed = Metrics.isEnabled();
+					long start = timed ? System.nanoTime() : 0;
+
+					// 2. execute it, writing the response frame
+					int rlen = FrameProcessor.execute(m_ProcessImage, request,
+							len, response);
+
+					boolean trace = Modbus.debug || m_Tracing;
+					if (trace)
+						System.out.println("Request:" + request.toHex(len));
+					if (trace) {
+						if (rlen > 0)
 							System.out.println("Response:"
-									+ response.getHexMessage());
+									+ response.toHex(rlen));
 						else
 							System.out.println("Response: <Nothing to send>");
 					}
 
-					if (response != null)
-						transport.writeMessage(response);
+					// broadcasts are applied, but never answered
+					if (rlen > 0
+							&& request.getUnitID() != Modbus.BROADCAST_UNIT_ID)
+						transport.writeFrame(out, rlen);
+					if (timed) {
+						Metrics.served(name, request, len, response, rlen,
+								System.nanoTime() - start);
+					}
 
 				} catch (ModbusIOException ex) {
-					ex.printStackTrace();
+					if (m_Listening.get()) {
+						ex.printStackTrace();
+					}
 					continue;
 				}
 			}
@@ -125,11 +157,52 @@ public class ModbusSerialListener implements Runnable {
 	public boolean isListening() {
 		return m_Listening.get();
 	}// isListening
+
+	/**
+	 * Returns the connection this listener serves requests on.
+	 * 
+	 * @return the <tt>SerialConnection</tt>.
+	 */
+	public SerialConnection getSerialConnection() {
+		return m_SerialCon;
+	}// getSerialConnection
+
+	/**
+	 * Returns the name the requests served by this listener are reported
+	 * under to the <tt>Metrics</tt>.
+	 * 
+	 * @return the name, e.g. <tt>serial-listener:/dev/ttyS0</tt>.
+	 */
+	public String getMetricsName() {
+		return "serial-listener:" + m_SerialCon.getParameters().getPortName();
+	}// getMetricsName
+
+	/**
+	 * Tests if the requests and responses served by this listener are
+	 * printed.
+	 * 
+	 * @return true if tracing, false otherwise.
+	 */
+	public boolean isTracing() {
+		return m_Tracing;
+	}// isTracing
+
+	/**
+	 * Enables printing the requests and responses served by this listener,
+	 * as in debug mode.
+	 * 
+	 * @param b
+	 *            true to trace, false otherwise.
+	 */
+	public void setTracing(boolean b) {
+		m_Tracing = b;
+	}// setTracing
 	
 	/** Set the process image to associate with this listener.
 	 * @param image The process image to set.
 	 */
 	public void setProcessImage(ProcessImage image) {
+		m_ProcessImage = image;
 		this.m_SerialCon.setProcessImage(image);
 	}
 
@@ -21,11 +21,16 @@ package net.wimpi.modbus.net;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.procimg.ProcessImage;
@@ -34,18 +39,49 @@ import net.wimpi.modbus.util.ThreadPool;
 /**
  * Class that implements a ModbusTCPListener.<br>
  * If listening, it accepts incoming requests passing them on to be handled.
+ * <p>
+ * Every connection occupies a thread of the pool while it is open. The
+ * number of admitted connections is limited by {@link #setMaxConnections(int)}
+ * and, per client address, by {@link #setMaxConnectionsPerAddress(int)}.
+ * Once the limit is reached, the listener either stops accepting until a
+ * connection is closed, leaving further clients in the kernel backlog
+ * ({@link #ADMISSION_WAIT}), or closes new connections immediately
+ * ({@link #ADMISSION_REJECT}). Connections over the per-address limit are
+ * always closed immediately.
  * 
  * @author Dieter Wimberger
  * @version @version@ (@date@)
  */
 public class ModbusTCPListener implements Runnable {
 
+	/**
+	 * Admission policy that stops accepting connections while the limit is
+	 * reached.
+	 */
+	public static final int ADMISSION_WAIT = 0;
+
+	/**
+	 * Admission policy that closes connections over the limit immediately.
+	 */
+	public static final int ADMISSION_REJECT = 1;
+
 	private ServerSocket m_ServerSocket = null;
 	private ThreadPool m_ThreadPool;
+	private final int m_PoolSize;
+	private int m_MaxConnections;
+	private int m_MaxConnectionsPerAddress;
+	private int m_AdmissionPolicy = ADMISSION_WAIT;
+	private Semaphore m_Permits;
+	private final Map<InetAddress, int[]> m_PerAddress = new HashMap<InetAddress, int[]>();
+	private final AtomicLong m_Accepted = new AtomicLong();
+	private final AtomicLong m_Rejected = new AtomicLong();
+	private final TCPConnectionRegistry m_Registry = new TCPConnectionRegistry();
 	private Thread m_Listener;
 	private int m_Port = Modbus.DEFAULT_PORT;
-	private int m_FloodProtection = 5;
+	private TransportOptions m_Options = new TransportOptions();
 	private final AtomicBoolean m_Listening;
+	private final AtomicBoolean m_Tracing = new AtomicBoolean(false);
+	private volatile String m_MetricsName;
 	private InetAddress m_Address = null;
 	private ProcessImage m_ProcessImage = null;
 
@@ -58,7 +94,8 @@ public class ModbusTCPListener implements Runnable {
 	 */
 	public ModbusTCPListener(int poolsize) {
 		m_Listening = new AtomicBoolean(false);
-		m_ThreadPool = new ThreadPool(poolsize);
+		m_PoolSize = poolsize;
+		m_MaxConnections = poolsize;
 		try {
 			m_Address = InetAddress.getLocalHost();
 		} catch (UnknownHostException ex) {
@@ -79,7 +116,8 @@ public class ModbusTCPListener implements Runnable {
 	 */
 	public ModbusTCPListener(int poolsize, InetAddress addr) {
 		m_Listening = new AtomicBoolean(false);
-		m_ThreadPool = new ThreadPool(poolsize);
+		m_PoolSize = poolsize;
+		m_MaxConnections = poolsize;
 		m_Address = addr;
 	}// constructor
 
@@ -112,6 +150,216 @@ public class ModbusTCPListener implements Runnable {
 		return m_Address;
 	}
 
+	/**
+	 * Returns the socket options of this <tt>ModbusTCPListener</tt>.
+	 * 
+	 * @return the <tt>TransportOptions</tt>.
+	 */
+	public TransportOptions getTransportOptions() {
+		return m_Options;
+	}// getTransportOptions
+
+	/**
+	 * Sets the socket options of this <tt>ModbusTCPListener</tt>.
+	 * They are applied to the server socket when it is bound, and to every
+	 * accepted connection.
+	 * 
+	 * @param options
+	 *            the <tt>TransportOptions</tt>.
+	 */
+	public void setTransportOptions(TransportOptions options) {
+		m_Options = options;
+	}// setTransportOptions
+
+	/**
+	 * Returns the maximum number of connections admitted at a time.
+	 * 
+	 * @return the maximum number of connections, or 0 if unlimited.
+	 */
+	public int getMaxConnections() {
+		return m_MaxConnections;
+	}// getMaxConnections
+
+	/**
+	 * Sets the maximum number of connections admitted at a time. It defaults
+	 * to the pool size; connections beyond the pool size wait for a free
+	 * thread. 0 removes the limit. Has to be set before the listener is
+	 * started.
+	 * 
+	 * @param max
+	 *            the maximum number of connections.
+	 */
+	public void setMaxConnections(int max) {
+		m_MaxConnections = Math.max(0, max);
+	}// setMaxConnections
+
+	/**
+	 * Returns the maximum number of connections admitted from one client
+	 * address.
+	 * 
+	 * @return the maximum number of connections, or 0 if unlimited.
+	 */
+	public int getMaxConnectionsPerAddress() {
+		return m_MaxConnectionsPerAddress;
+	}// getMaxConnectionsPerAddress
+
+	/**
+	 * Sets the maximum number of connections admitted from one client
+	 * address, which keeps a single client reconnecting in a loop from
+	 * taking all connections. 0, the default, removes the limit. Has to be
+	 * set before the listener is started.
+	 * 
+	 * @param max
+	 *            the maximum number of connections per address.
+	 */
+	public void setMaxConnectionsPerAddress(int max) {
+		m_MaxConnectionsPerAddress = Math.max(0, max);
+	}// setMaxConnectionsPerAddress
+
+	/**
+	 * Returns the admission policy applied when the connection limit is
+	 * reached.
+	 * 
+	 * @return {@link #ADMISSION_WAIT} or {@link #ADMISSION_REJECT}.
+	 */
+	public int getAdmissionPolicy() {
+		return m_AdmissionPolicy;
+	}// getAdmissionPolicy
+
+	/**
+	 * Sets the admission policy applied when the connection limit is
+	 * reached.
+	 * 
+	 * @param policy
+	 *            {@link #ADMISSION_WAIT} or {@link #ADMISSION_REJECT}.
+	 */
+	public void setAdmissionPolicy(int policy) {
+		if (policy != ADMISSION_WAIT && policy != ADMISSION_REJECT) {
+			throw new IllegalArgumentException("Unknown admission policy: "
+					+ policy);
+		}
+		m_AdmissionPolicy = policy;
+	}// setAdmissionPolicy
+
+	/**
+	 * Returns the number of connections currently handled by a thread.
+	 * 
+	 * @return the number of active connections.
+	 */
+	public int getActiveConnectionCount() {
+		ThreadPool pool = m_ThreadPool;
+		return (pool == null) ? 0 : pool.getActiveCount();
+	}// getActiveConnectionCount
+
+	/**
+	 * Returns the number of admitted connections waiting for a thread.
+	 * 
+	 * @return the number of queued connections.
+	 */
+	public int getQueuedConnectionCount() {
+		ThreadPool pool = m_ThreadPool;
+		return (pool == null) ? 0 : pool.getQueuedCount();
+	}// getQueuedConnectionCount
+
+	/**
+	 * Returns the number of connections admitted since the listener was
+	 * created.
+	 * 
+	 * @return the number of accepted connections.
+	 */
+	public long getAcceptedConnectionCount() {
+		return m_Accepted.get();
+	}// getAcceptedConnectionCount
+
+	/**
+	 * Returns the number of connections closed immediately because a limit
+	 * was reached.
+	 * 
+	 * @return the number of rejected connections.
+	 */
+	public long getRejectedConnectionCount() {
+		return m_Rejected.get();
+	}// getRejectedConnectionCount
+
+	/**
+	 * Returns the registry of the connections handled by this listener, which
+	 * can be used to list and drop connections at runtime.
+	 * 
+	 * @return the <tt>TCPConnectionRegistry</tt>.
+	 */
+	public TCPConnectionRegistry getConnectionRegistry() {
+		return m_Registry;
+	}// getConnectionRegistry
+
+	/**
+	 * Sets the time after which a connection that did not receive a request
+	 * is closed. This releases the thread held by clients that disappeared
+	 * without closing their connection. 0, the default, disables the
+	 * timeout.
+	 * 
+	 * @param timeout
+	 *            the idle timeout in milliseconds.
+	 */
+	public void setIdleTimeout(long timeout) {
+		m_Registry.setIdleTimeout(timeout);
+	}// setIdleTimeout
+
+	/**
+	 * Returns the time after which a connection that did not receive a
+	 * request is closed.
+	 * 
+	 * @return the idle timeout in milliseconds, or 0 if disabled.
+	 */
+	public long getIdleTimeout() {
+		return m_Registry.getIdleTimeout();
+	}// getIdleTimeout
+
+	/**
+	 * Returns the size of the pool of threads handling connections.
+	 * 
+	 * @return the pool size.
+	 */
+	public int getPoolSize() {
+		return m_PoolSize;
+	}// getPoolSize
+
+	/**
+	 * Returns the name the requests served by this listener are reported
+	 * under to the <tt>Metrics</tt>.
+	 * 
+	 * @return the name, e.g. <tt>tcp-listener:127.0.0.1:502</tt>.
+	 */
+	public String getMetricsName() {
+		String name = m_MetricsName;
+		if (name == null) {
+			name = "tcp-listener:"
+					+ ((m_Address == null) ? "0.0.0.0" : m_Address
+							.getHostAddress()) + ":" + m_Port;
+		}
+		return name;
+	}// getMetricsName
+
+	/**
+	 * Tests if the requests and responses served by this listener are
+	 * printed.
+	 * 
+	 * @return true if tracing, false otherwise.
+	 */
+	public boolean isTracing() {
+		return m_Tracing.get();
+	}// isTracing
+
+	/**
+	 * Enables printing the requests and responses served by this listener,
+	 * as in debug mode, e.g. to diagnose a single device at runtime.
+	 * 
+	 * @param b
+	 *            true to trace, false otherwise.
+	 */
+	public void setTracing(boolean b) {
+		m_Tracing.set(b);
+	}// setTracing
+
 	/**
 	 * Starts this <tt>ModbusTCPListener</tt>.
 	 */
@@ -144,14 +392,19 @@ public class ModbusTCPListener implements Runnable {
 	public void run() {
 
 		/*
-		 * A server socket is opened with a connectivity queue of a size
-		 * specified in int floodProtection. Concurrent login handling under
-		 * normal circumstances should be allright, denial of service attacks
-		 * via massive parallel program logins can probably be prevented.
+		 * A server socket is opened with a connectivity queue of the size
+		 * specified by the backlog of the transport options. Connection
+		 * attempts beyond are refused by the kernel, which shows in
+		 * SocketStatistics.getTCPListenOverflows().
 		 */
 		try {
-			m_ServerSocket = new ServerSocket(m_Port, m_FloodProtection,
-					m_Address);
+			m_ServerSocket = new ServerSocket();
+			m_Options.apply(m_ServerSocket);
+			m_ServerSocket.bind(new InetSocketAddress(m_Address, m_Port),
+					m_Options.getBacklog());
+			m_MetricsName = "tcp-listener:"
+					+ m_ServerSocket.getInetAddress().getHostAddress() + ":"
+					+ m_ServerSocket.getLocalPort();
 			if (Modbus.debug)
 				System.out.println("Listenening to "
 						+ m_ServerSocket.toString() + "(Port " + m_Port + ")");
@@ -161,18 +414,56 @@ public class ModbusTCPListener implements Runnable {
 			m_Listening.set(false);
 		}
 
+		/*
+		 * Admitted connections beyond the pool size wait in the pool queue.
+		 * A handler frees its permit before its thread takes the next task,
+		 * so the queue can briefly hold as many tasks as there are permits;
+		 * it is sized to match, and a queued connection is never refused.
+		 */
+		if (m_MaxConnections > 0) {
+			m_Permits = new Semaphore(m_MaxConnections);
+			m_ThreadPool = new ThreadPool(m_PoolSize, m_MaxConnections);
+		} else {
+			m_Permits = null;
+			m_ThreadPool = new ThreadPool(m_PoolSize);
+		}
+
 		Socket incoming = null;
 
 		while (m_Listening.get()) {
 			try {
 				incoming = m_ServerSocket.accept();
+				InetAddress source = incoming.getInetAddress();
+				if (!admit(source)) {
+					m_Rejected.incrementAndGet();
+					if (Modbus.debug)
+						System.out.println("Rejecting connection "
+								+ incoming.toString());
+					incoming.close();
+					continue;
+				}
+				m_Accepted.incrementAndGet();
 				if (Modbus.debug)
 					System.out.println("Making new connection "
 							+ incoming.toString());
-				if (m_Listening.get()) {
-					// FIXME: Replace with object pool due to resource issues
-					m_ThreadPool.execute(new TCPConnectionHandler(
-							new TCPSlaveConnection(incoming), m_ProcessImage));
+				boolean queued = false;
+				try {
+					m_Options.apply(incoming);
+					if (m_Listening.get()) {
+						TCPSlaveConnection con = new TCPSlaveConnection(
+								incoming);
+						TCPConnectionHandler handler = new TCPConnectionHandler(
+								con, m_ProcessImage);
+						handler.setMetricsName(m_MetricsName);
+						handler.setTracing(m_Tracing);
+						queued = m_ThreadPool.offer(new AdmittedConnection(
+								source, con, handler));
+					}
+				} finally {
+					if (!queued) {
+						release(source);
+						incoming.close();
+					}
 				}
 
 				// We can get these exceptions while quitting. If so, hide the
@@ -201,8 +492,68 @@ public class ModbusTCPListener implements Runnable {
 		}
 
 		m_ThreadPool.killPool();
+		m_Registry.stop();
 	}// run
 
+	/**
+	 * Admits a connection from the given address if the limits allow it,
+	 * waiting for a free slot with the {@link #ADMISSION_WAIT} policy.
+	 */
+	private boolean admit(InetAddress source) {
+		if (m_MaxConnectionsPerAddress > 0) {
+			synchronized (m_PerAddress) {
+				int[] count = m_PerAddress.get(source);
+				if (count == null) {
+					count = new int[1];
+					m_PerAddress.put(source, count);
+				}
+				if (count[0] >= m_MaxConnectionsPerAddress) {
+					return false;
+				}
+				count[0]++;
+			}
+		}
+		if (m_Permits != null) {
+			boolean admitted;
+			if (m_AdmissionPolicy == ADMISSION_REJECT) {
+				admitted = m_Permits.tryAcquire();
+			} else {
+				try {
+					m_Permits.acquire();
+					admitted = true;
+				} catch (InterruptedException ex) {
+					admitted = false;
+				}
+			}
+			if (!admitted) {
+				releaseAddress(source);
+				return false;
+			}
+		}
+		return true;
+	}// admit
+
+	/**
+	 * Frees the slots taken by a connection from the given address.
+	 */
+	private void release(InetAddress source) {
+		if (m_Permits != null) {
+			m_Permits.release();
+		}
+		releaseAddress(source);
+	}// release
+
+	private void releaseAddress(InetAddress source) {
+		if (m_MaxConnectionsPerAddress > 0) {
+			synchronized (m_PerAddress) {
+				int[] count = m_PerAddress.get(source);
+				if (count != null && --count[0] <= 0) {
+					m_PerAddress.remove(source);
+				}
+			}
+		}
+	}// releaseAddress
+
 	/**
 	 * Tests if this <tt>ModbusTCPListener</tt> is listening and accepting
 	 * incoming connections.
@@ -224,4 +575,33 @@ public class ModbusTCPListener implements Runnable {
 		m_ProcessImage = image;
 	}
 
+	/**
+	 * Runs the handler of an admitted connection, keeping it registered while
+	 * it is handled, and frees its slots once the connection is closed.
+	 */
+	class AdmittedConnection implements Runnable {
+
+		private final InetAddress m_Source;
+		private final TCPSlaveConnection m_Connection;
+		private final TCPConnectionHandler m_Handler;
+
+		public AdmittedConnection(InetAddress source, TCPSlaveConnection con,
+				TCPConnectionHandler handler) {
+			m_Source = source;
+			m_Connection = con;
+			m_Handler = handler;
+		}// constructor
+
+		public void run() {
+			m_Registry.register(m_Connection);
+			try {
+				m_Handler.run();
+			} finally {
+				m_Registry.unregister(m_Connection);
+				release(m_Source);
+			}
+		}// run
+
+	}// inner class AdmittedConnection
+
 }// class ModbusTCPListener
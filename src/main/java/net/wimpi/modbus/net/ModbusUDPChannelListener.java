@@ -0,0 +1,415 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.io.FrameProcessor;
+import net.wimpi.modbus.io.ModbusFrame;
+import net.wimpi.modbus.metrics.Metrics;
+import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.util.BufferPool;
+
+/**
+ * Class that implements a Modbus/UDP slave on a <tt>DatagramChannel</tt>.
+ * <p>
+ * Unlike the <tt>ModbusUDPListener</tt>, which hands every packet from a
+ * receiver thread to a handler thread and from there to a sender thread,
+ * each worker of this listener receives a request, executes it against the
+ * process image and sends the reply from the same thread. The origin of a
+ * request is kept on the worker's stack, so no table of pending requests is
+ * needed. Every worker owns its direct packet buffers, and requests are
+ * executed on <tt>ModbusFrame</tt> views of them by the
+ * <tt>FrameProcessor</tt>, so the request path does not allocate besides the
+ * source address returned by the channel.
+ * <p>
+ * By default a single worker is used, which keeps the requests in order. More
+ * workers share the channel and process requests concurrently.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class ModbusUDPChannelListener {
+
+	private DatagramChannel m_Channel;
+	private Worker[] m_Workers;
+	private Thread[] m_Threads;
+	private int m_Port = Modbus.DEFAULT_PORT;
+	private int m_WorkerCount = 1;
+	private TransportOptions m_Options = new TransportOptions();
+	private InetAddress m_Interface;
+	private ProcessImage m_ProcessImage;
+	private volatile boolean m_Listening;
+	private volatile String m_MetricsName;
+	private volatile boolean m_Tracing;
+
+	/**
+	 * Constructs a new <tt>ModbusUDPChannelListener</tt> instance listening
+	 * to all interfaces.
+	 */
+	public ModbusUDPChannelListener() {
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>ModbusUDPChannelListener</tt> instance listening
+	 * to the given interface address.
+	 * 
+	 * @param ifc
+	 *            an <tt>InetAddress</tt> instance.
+	 */
+	public ModbusUDPChannelListener(InetAddress ifc) {
+		m_Interface = ifc;
+	}// constructor
+
+	/**
+	 * Returns the number of the port this <tt>ModbusUDPChannelListener</tt>
+	 * is listening to.
+	 * 
+	 * @return the number of the IP port as <tt>int</tt>.
+	 */
+	public int getPort() {
+		return m_Port;
+	}// getPort
+
+	/**
+	 * Sets the number of the port this <tt>ModbusUDPChannelListener</tt> is
+	 * listening to. A port of <tt>0</tt> binds an ephemeral port, which can
+	 * be obtained with {@link #getPort()} after the listener was started.
+	 * 
+	 * @param port
+	 *            the number of the IP port as <tt>int</tt>.
+	 */
+	public void setPort(int port) {
+		m_Port = ((port >= 0) ? port : Modbus.DEFAULT_PORT);
+	}// setPort
+
+	/**
+	 * Returns the number of worker threads.
+	 * 
+	 * @return the number of workers.
+	 */
+	public int getWorkerCount() {
+		return m_WorkerCount;
+	}// getWorkerCount
+
+	/**
+	 * Sets the number of worker threads that receive from the channel. Has to
+	 * be set before the listener is started.
+	 * 
+	 * @param count
+	 *            the number of workers, at least 1.
+	 */
+	public void setWorkerCount(int count) {
+		m_WorkerCount = Math.max(1, count);
+	}// setWorkerCount
+
+	/**
+	 * Returns the socket options of this <tt>ModbusUDPChannelListener</tt>.
+	 * 
+	 * @return the <tt>TransportOptions</tt>.
+	 */
+	public TransportOptions getTransportOptions() {
+		return m_Options;
+	}// getTransportOptions
+
+	/**
+	 * Sets the socket options of this <tt>ModbusUDPChannelListener</tt>.
+	 * They are applied when the socket is created on start.
+	 * 
+	 * @param options
+	 *            the <tt>TransportOptions</tt>.
+	 */
+	public void setTransportOptions(TransportOptions options) {
+		m_Options = options;
+	}// setTransportOptions
+
+	/**
+	 * Returns the number of datagrams the kernel dropped for the port of this
+	 * listener, e.g. because the receive buffer overflowed.
+	 * 
+	 * @return the number of dropped datagrams, or -1 if the platform does not
+	 *         expose it.
+	 */
+	public long getKernelDropCount() {
+		return SocketStatistics.getUDPDrops(m_Port);
+	}// getKernelDropCount
+
+	/**
+	 * Set the process image to associate with this listener. If not set, the
+	 * process image of the <tt>ModbusCoupler</tt> is used.
+	 * 
+	 * @param image
+	 *            The process image to set.
+	 */
+	public void setProcessImage(ProcessImage image) {
+		m_ProcessImage = image;
+	}// setProcessImage
+
+	/**
+	 * Starts this <tt>ModbusUDPChannelListener</tt>.
+	 * 
+	 * @throws IOException
+	 *             if the channel cannot be opened or bound.
+	 */
+	public synchronized void start() throws IOException {
+		if (m_Listening) {
+			return;
+		}
+		m_Channel = DatagramChannel.open();
+		try {
+			m_Options.apply(m_Channel.socket());
+			m_Channel.socket().bind(new InetSocketAddress(m_Interface, m_Port));
+		} catch (IOException ex) {
+			m_Channel.close();
+			throw ex;
+		}
+		m_Port = m_Channel.socket().getLocalPort();
+		m_MetricsName = "udp-listener:"
+				+ m_Channel.socket().getLocalAddress().getHostAddress() + ":"
+				+ m_Port;
+		m_Listening = true;
+
+		m_Workers = new Worker[m_WorkerCount];
+		m_Threads = new Thread[m_WorkerCount];
+		for (int i = 0; i < m_WorkerCount; i++) {
+			m_Workers[i] = new Worker();
+			m_Threads[i] = new Thread(m_Workers[i],
+					"ModbusUDPChannelListener-" + i);
+			m_Threads[i].setDaemon(true);
+			m_Threads[i].start();
+		}
+		if (Modbus.debug)
+			System.out.println("ModbusUDPChannelListener::started on port "
+					+ m_Port + " with " + m_WorkerCount + " worker(s)");
+	}// start
+
+	/**
+	 * Stops this <tt>ModbusUDPChannelListener</tt>.
+	 */
+	public synchronized void stop() {
+		if (!m_Listening) {
+			return;
+		}
+		m_Listening = false;
+		try {
+			// unblocks the workers waiting in receive
+			m_Channel.close();
+		} catch (IOException ex) {
+			// ignore
+		}
+		for (int i = 0; i < m_Threads.length; i++) {
+			try {
+				m_Threads[i].join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}// stop
+
+	/**
+	 * Tests if this <tt>ModbusUDPChannelListener</tt> is listening.
+	 * 
+	 * @return true if listening, false otherwise.
+	 */
+	public boolean isListening() {
+		return m_Listening;
+	}// isListening
+
+	/**
+	 * Returns the name the requests served by this listener are reported
+	 * under to the <tt>Metrics</tt>.
+	 * 
+	 * @return the name, e.g. <tt>udp-listener:127.0.0.1:502</tt>.
+	 */
+	public String getMetricsName() {
+		String name = m_MetricsName;
+		if (name == null) {
+			name = "udp-listener:"
+					+ ((m_Interface == null) ? "0.0.0.0" : m_Interface
+							.getHostAddress()) + ":" + m_Port;
+		}
+		return name;
+	}// getMetricsName
+
+	/**
+	 * Tests if the requests and responses served by this listener are
+	 * printed.
+	 * 
+	 * @return true if tracing, false otherwise.
+	 */
+	public boolean isTracing() {
+		return m_Tracing;
+	}// isTracing
+
+	/**
+	 * Enables printing the requests and responses served by this listener,
+	 * as in debug mode.
+	 * 
+	 * @param b
+	 *            true to trace, false otherwise.
+	 */
+	public void setTracing(boolean b) {
+		m_Tracing = b;
+	}// setTracing
+
+	/**
+	 * Returns the number of requests that were answered.
+	 * 
+	 * @return the number of requests.
+	 */
+	public long getRequestCount() {
+		long n = 0;
+		Worker[] workers = m_Workers;
+		if (workers != null) {
+			for (int i = 0; i < workers.length; i++) {
+				n += workers[i].m_Requests;
+			}
+		}
+		return n;
+	}// getRequestCount
+
+	/**
+	 * Returns the number of packets that could not be decoded.
+	 * 
+	 * @return the number of dropped packets.
+	 */
+	public long getErrorCount() {
+		long n = 0;
+		Worker[] workers = m_Workers;
+		if (workers != null) {
+			for (int i = 0; i < workers.length; i++) {
+				n += workers[i].m_Errors;
+			}
+		}
+		return n;
+	}// getErrorCount
+
+	/**
+	 * Receives, executes and answers requests on the calling thread.
+	 */
+	class Worker implements Runnable {
+
+		private final ByteBuffer m_In = BufferPool.getDefault()
+				.acquireDirect(Modbus.MAX_IP_MESSAGE_LENGTH);
+		private final ByteBuffer m_Out = BufferPool.getDefault()
+				.acquireDirect(Modbus.MAX_IP_MESSAGE_LENGTH);
+		private final ModbusFrame m_Request = new ModbusFrame().wrap(m_In, 0);
+		private final ModbusFrame m_Response = new ModbusFrame().wrap(m_Out,
+				0);
+		private volatile long m_Requests;
+		private volatile long m_Errors;
+
+		public void run() {
+			try {
+				serve();
+			} finally {
+				BufferPool.getDefault().releaseDirect(m_In);
+				BufferPool.getDefault().releaseDirect(m_Out);
+			}
+		}// run
+
+		private void serve() {
+			while (m_Listening) {
+				int len = 0;
+				long start = 0;
+				try {
+					// 1. receive the request
+					m_In.clear();
+					SocketAddress source = m_Channel.receive(m_In);
+					len = m_In.position();
+					boolean timed = Metrics.isEnabled();
+					start = timed ? System.nanoTime() : 0;
+					if (len < ModbusFrame.HEADER_LENGTH + 1) {
+						m_Errors++;
+						if (timed) {
+							Metrics.getCollector().requestFailed(
+									m_MetricsName, 0, 0);
+						}
+						continue;
+					}
+
+					// 2. execute it against the process image, writing the
+					// response frame in place
+					int rlen = FrameProcessor.execute(m_ProcessImage,
+							m_Request, len, m_Response);
+					if (rlen < 0) {
+						m_Errors++;
+						if (timed) {
+							Metrics.served(m_MetricsName, m_Request, len,
+									m_Response, rlen, System.nanoTime() - start);
+						}
+						continue;
+					}
+					boolean trace = Modbus.debug || m_Tracing;
+					if (trace)
+						System.out.println("Request:" + m_Request.toHex(len));
+					if (rlen == 0) {
+						if (trace)
+							System.out.println("Response: <Nothing to send>");
+						if (timed) {
+							Metrics.served(m_MetricsName, m_Request, len,
+									m_Response, rlen, System.nanoTime() - start);
+						}
+						continue;
+					}
+					if (trace)
+						System.out.println("Response:"
+								+ m_Response.toHex(rlen));
+
+					// 3. reply to the origin
+					m_Out.clear();
+					m_Out.limit(rlen);
+					m_Channel.send(m_Out, source);
+					m_Requests++;
+					if (timed) {
+						Metrics.served(m_MetricsName, m_Request, len,
+								m_Response, rlen, System.nanoTime() - start);
+					}
+				} catch (ClosedChannelException ex) {
+					break;
+				} catch (IOException ex) {
+					if (m_Listening) {
+						ex.printStackTrace();
+					}
+				} catch (RuntimeException ex) {
+					// a failing process image must not end the worker
+					m_Errors++;
+					if (Metrics.isEnabled()) {
+						if (len >= ModbusFrame.HEADER_LENGTH + 1) {
+							Metrics.served(m_MetricsName, m_Request, len,
+									m_Response, -1, System.nanoTime() - start);
+						} else {
+							Metrics.getCollector().requestFailed(
+									m_MetricsName, 0, 0);
+						}
+					}
+					if (Modbus.debug)
+						ex.printStackTrace();
+				}
+			}
+		}// serve
+
+	}// inner class Worker
+
+}// class ModbusUDPChannelListener
@@ -16,15 +16,20 @@
 
 package net.wimpi.modbus.net;
 
+import java.io.IOException;
+import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusIOException;
-import net.wimpi.modbus.io.ModbusUDPTransport;
-import net.wimpi.modbus.msg.ModbusRequest;
-import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.io.FrameProcessor;
+import net.wimpi.modbus.io.ModbusFrame;
+import net.wimpi.modbus.metrics.Metrics;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.util.BufferPool;
+import net.wimpi.modbus.util.LinkedQueue;
 
 /**
  * Class that implements a ModbusUDPListener.<br>
@@ -40,6 +45,17 @@ public class ModbusUDPListener {
 	private int m_Port = Modbus.DEFAULT_PORT;
 	private final AtomicBoolean m_Listening;
 	private InetAddress m_Interface;
+	private TransportOptions m_Options = new TransportOptions();
+	private ProcessImage m_ProcessImage;
+	private int m_WorkerCount = 1;
+	private boolean m_Ordered;
+	private LinkedQueue[] m_Queues;
+	private Thread[] m_Workers;
+	private final AtomicLong m_Requests = new AtomicLong();
+	private final AtomicLong m_Errors = new AtomicLong();
+	private final BufferPool m_Pool = BufferPool.getDefault();
+	private volatile String m_MetricsName;
+	private volatile boolean m_Tracing;
 
 	/**
 	 * Constructs a new ModbusUDPListener instance.
@@ -81,6 +97,102 @@ public class ModbusUDPListener {
 		m_Port = ((port > 0) ? port : Modbus.DEFAULT_PORT);
 	}// setPort
 
+	/**
+	 * Returns the socket options of this <tt>ModbusUDPListener</tt>.
+	 * 
+	 * @return the <tt>TransportOptions</tt>.
+	 */
+	public TransportOptions getTransportOptions() {
+		return m_Options;
+	}// getTransportOptions
+
+	/**
+	 * Sets the socket options of this <tt>ModbusUDPListener</tt>.
+	 * They are applied when the socket is created on start.
+	 * 
+	 * @param options
+	 *            the <tt>TransportOptions</tt>.
+	 */
+	public void setTransportOptions(TransportOptions options) {
+		m_Options = options;
+	}// setTransportOptions
+
+	/**
+	 * Returns the number of threads executing requests.
+	 * 
+	 * @return the number of workers.
+	 */
+	public int getWorkerCount() {
+		return m_WorkerCount;
+	}// getWorkerCount
+
+	/**
+	 * Sets the number of threads executing requests against the process
+	 * image. With a single worker, the default, requests are executed on the
+	 * receiving thread; with more workers a slow process image only delays
+	 * the requests handled by the same worker. Has to be set before the
+	 * listener is started.
+	 * 
+	 * @param count
+	 *            the number of workers.
+	 */
+	public void setWorkerCount(int count) {
+		m_WorkerCount = Math.max(1, count);
+	}// setWorkerCount
+
+	/**
+	 * Tests if the requests of each client are executed and answered in the
+	 * order they were received.
+	 * 
+	 * @return true if per-client ordering is kept, false otherwise.
+	 */
+	public boolean isOrdered() {
+		return m_Ordered;
+	}// isOrdered
+
+	/**
+	 * Sets whether the requests of each client should be executed and
+	 * answered in the order they were received. If set, the requests of one
+	 * source address and port are always handled by the same worker;
+	 * otherwise any idle worker picks up the next request. Has to be set
+	 * before the listener is started.
+	 * 
+	 * @param b
+	 *            true to keep per-client ordering, false otherwise.
+	 */
+	public void setOrdered(boolean b) {
+		m_Ordered = b;
+	}// setOrdered
+
+	/**
+	 * Returns the number of requests that were executed.
+	 * 
+	 * @return the number of requests.
+	 */
+	public long getRequestCount() {
+		return m_Requests.get();
+	}// getRequestCount
+
+	/**
+	 * Returns the number of requests that could not be decoded or answered.
+	 * 
+	 * @return the number of failed requests.
+	 */
+	public long getErrorCount() {
+		return m_Errors.get();
+	}// getErrorCount
+
+	/**
+	 * Returns the number of datagrams the kernel dropped for the port of this
+	 * listener, e.g. because the receive buffer overflowed.
+	 * 
+	 * @return the number of dropped datagrams, or -1 if the platform does not
+	 *         expose it.
+	 */
+	public long getKernelDropCount() {
+		return SocketStatistics.getUDPDrops(m_Port);
+	}// getKernelDropCount
+
 	/**
 	 * Starts this <tt>ModbusUDPListener</tt>.
 	 */
@@ -95,9 +207,34 @@ public class ModbusUDPListener {
 				m_Terminal = new UDPSlaveTerminal(m_Interface);
 			}
 			m_Terminal.setLocalPort(m_Port);
+			m_Terminal.setTransportOptions(m_Options);
 			m_Terminal.activate();
+			m_MetricsName = "udp-listener:"
+					+ m_Terminal.getLocalAddress().getHostAddress() + ":"
+					+ m_Terminal.getLocalPort();
 
-			m_Handler = new ModbusUDPHandler(m_Terminal.getModbusTransport());
+			if (m_ProcessImage != null) {
+				m_Terminal.setProcessImage(m_ProcessImage);
+			}
+
+			RequestWorker inline = null;
+			if (m_WorkerCount == 1) {
+				inline = new RequestWorker(null);
+			} else {
+				m_Queues = new LinkedQueue[m_Ordered ? m_WorkerCount : 1];
+				for (int i = 0; i < m_Queues.length; i++) {
+					m_Queues[i] = new LinkedQueue();
+				}
+				m_Workers = new Thread[m_WorkerCount];
+				for (int i = 0; i < m_WorkerCount; i++) {
+					m_Workers[i] = new Thread(new RequestWorker(
+							m_Queues[i % m_Queues.length]),
+							"ModbusUDPListener-" + i);
+					m_Workers[i].setDaemon(true);
+					m_Workers[i].start();
+				}
+			}
+			m_Handler = new ModbusUDPHandler(inline);
 			m_HandlerThread = new Thread(m_Handler);
 			m_HandlerThread.start();
 
@@ -115,6 +252,12 @@ public class ModbusUDPListener {
 		m_Listening.set(false);
 		m_Terminal.deactivate();
 		m_Handler.stop();
+		if (m_Workers != null) {
+			for (int i = 0; i < m_Workers.length; i++) {
+				m_Workers[i].interrupt();
+			}
+			m_Workers = null;
+		}
 	}// stop
 
 	/**
@@ -127,65 +270,103 @@ public class ModbusUDPListener {
 	public boolean isListening() {
 		return m_Listening.get();
 	}// isListening
+
+	/**
+	 * Returns the name the requests served by this listener are reported
+	 * under to the <tt>Metrics</tt>.
+	 * 
+	 * @return the name, e.g. <tt>udp-listener:127.0.0.1:502</tt>.
+	 */
+	public String getMetricsName() {
+		String name = m_MetricsName;
+		if (name == null) {
+			name = "udp-listener:"
+					+ ((m_Interface == null) ? "0.0.0.0" : m_Interface
+							.getHostAddress()) + ":" + m_Port;
+		}
+		return name;
+	}// getMetricsName
+
+	/**
+	 * Tests if the requests and responses served by this listener are
+	 * printed.
+	 * 
+	 * @return true if tracing, false otherwise.
+	 */
+	public boolean isTracing() {
+		return m_Tracing;
+	}// isTracing
+
+	/**
+	 * Enables printing the requests and responses served by this listener,
+	 * as in debug mode.
+	 * 
+	 * @param b
+	 *            true to trace, false otherwise.
+	 */
+	public void setTracing(boolean b) {
+		m_Tracing = b;
+	}// setTracing
 	
 	/** Set the process image to associate with this listener.
 	 * @param image The process image to set.
 	 */
 	public void setProcessImage(ProcessImage image) {
-		this.m_Terminal.setProcessImage(image);
+		m_ProcessImage = image;
+		if (m_Terminal != null) {
+			m_Terminal.setProcessImage(image);
+		}
 	}
 
+	/**
+	 * Returns the queue the given request datagram is dispatched to. With
+	 * per-client ordering all requests of one source address and port go to
+	 * the same worker.
+	 */
+	private LinkedQueue queueFor(DatagramPacket packet) {
+		if (!m_Ordered) {
+			return m_Queues[0];
+		}
+		int h = packet.getAddress().hashCode() * 31 + packet.getPort();
+		h ^= (h >>> 16);
+		return m_Queues[(h & 0x7fffffff) % m_Queues.length];
+	}// queueFor
+
+	/**
+	 * Receives request datagrams from the terminal and either handles them
+	 * directly or dispatches them to the workers.
+	 */
 	class ModbusUDPHandler implements Runnable {
 
-		private ModbusUDPTransport m_Transport;
 		private final AtomicBoolean m_Continue;
+		private final RequestWorker m_Inline;
 
-		public ModbusUDPHandler(ModbusUDPTransport transport) {
+		public ModbusUDPHandler(RequestWorker inline) {
 			m_Continue = new AtomicBoolean(true);
-			m_Transport = transport;
+			m_Inline = inline;
 		}// constructor
 
 		public void run() {
 			try {
 				while (m_Continue.get()) {
-					// 1. read the request
-					ModbusRequest request = m_Transport.readRequest();
-					// System.out.println("Request:" + request.getHexMessage());
-					ModbusResponse response = null;
-					
+					// 1. read the request datagram
+					DatagramPacket packet = m_Terminal.receivePacket();
+
 					// Getting the response could take a while, so bail
 					// if we already want to exit
 					if (!m_Continue.get()) {
+						m_Pool.release(packet.getData());
 						break;
 					}
-
-					// test if Process image exists
-					if (request.getProcessImage() == null) {
-						response = request
-								.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+					// 2. handle it here or pass it on to a worker
+					if (m_Inline != null) {
+						m_Inline.handle(packet);
 					} else {
-						response = request.createResponse();
-					}
-					/* DEBUG */
-					if (Modbus.debug)
-						System.out
-								.println("Request:" + request.getHexMessage());
-					if (Modbus.debug) {
-						if (response != null)
-							System.out.println("Response:"
-									+ response.getHexMessage());
-						else
-							System.out.println("Response: <Nothing to send>");
+						queueFor(packet).put(packet);
 					}
-
-					if (response != null)
-						m_Transport.writeMessage(response);
-				}
-			} catch (ModbusIOException ex) {
-				if (!ex.isEOF()) {
-					// other troubles, output for debug
-					ex.printStackTrace();
 				}
+			} catch (InterruptedException ex) {
+				// stopped
 			} finally {
 				try {
 					m_Terminal.deactivate();
@@ -201,4 +382,110 @@ public class ModbusUDPListener {
 
 	}// inner class ModbusUDPHandler
 
+	/**
+	 * Decodes, executes and answers requests. The response is sent back to
+	 * the source address of the request datagram, so that clients using the
+	 * same transaction identifiers cannot receive each other's responses.
+	 */
+	class RequestWorker implements Runnable {
+
+		private final LinkedQueue m_Queue;
+		private final byte[] m_Reply = new byte[Modbus.MAX_IP_MESSAGE_LENGTH];
+		private final ModbusFrame m_Request = new ModbusFrame();
+		private ByteBuffer m_In;
+		private final ModbusFrame m_Response = new ModbusFrame().wrap(
+				ByteBuffer.wrap(m_Reply), 0);
+
+		public RequestWorker(LinkedQueue queue) {
+			m_Queue = queue;
+		}// constructor
+
+		public void run() {
+			try {
+				while (m_Listening.get()) {
+					handle((DatagramPacket) m_Queue.take());
+				}
+			} catch (InterruptedException ex) {
+				// stopped
+			}
+		}// run
+
+		void handle(DatagramPacket packet) {
+			byte[] data = packet.getData();
+			int len = packet.getLength();
+			long start = 0;
+			try {
+				// 1. execute the request against the process image
+				int rlen = -1;
+				boolean timed = Metrics.isEnabled();
+				start = timed ? System.nanoTime() : 0;
+				if (len >= ModbusFrame.HEADER_LENGTH + 1) {
+					// the pooled packet buffers recur, keep the last view
+					if (m_In == null || m_In.array() != data) {
+						m_In = ByteBuffer.wrap(data);
+					}
+					m_Request.wrap(m_In, 0);
+					rlen = FrameProcessor.execute(m_ProcessImage, m_Request,
+							len, m_Response);
+				}
+				if (rlen < 0) {
+					m_Errors.incrementAndGet();
+					if (timed) {
+						if (len >= ModbusFrame.HEADER_LENGTH + 1) {
+							Metrics.served(m_MetricsName, m_Request, len,
+									m_Response, rlen, System.nanoTime() - start);
+						} else {
+							Metrics.getCollector().requestFailed(
+									m_MetricsName, 0, 0);
+						}
+					}
+					return;
+				}
+				/* DEBUG */
+				boolean trace = Modbus.debug || m_Tracing;
+				if (trace)
+					System.out.println("Request:" + m_Request.toHex(len));
+				if (trace) {
+					if (rlen > 0)
+						System.out.println("Response:"
+								+ m_Response.toHex(rlen));
+					else
+						System.out.println("Response: <Nothing to send>");
+				}
+
+				// 2. send the response to the source of the request
+				if (rlen > 0) {
+					m_Terminal.send(m_Reply, rlen, packet.getSocketAddress());
+				}
+				m_Requests.incrementAndGet();
+				if (timed) {
+					Metrics.served(m_MetricsName, m_Request, len, m_Response,
+							rlen, System.nanoTime() - start);
+				}
+			} catch (IOException ex) {
+				m_Errors.incrementAndGet();
+				if (m_Listening.get()) {
+					ex.printStackTrace();
+				}
+			} catch (RuntimeException ex) {
+				// a failing process image must not end the worker
+				m_Errors.incrementAndGet();
+				if (Metrics.isEnabled()) {
+					if (len >= ModbusFrame.HEADER_LENGTH + 1) {
+						Metrics.served(m_MetricsName, m_Request, len,
+								m_Response, -1, System.nanoTime() - start);
+					} else {
+						Metrics.getCollector().requestFailed(m_MetricsName,
+								0, 0);
+					}
+				}
+				if (Modbus.debug)
+					ex.printStackTrace();
+			} finally {
+				m_Pool.release(data);
+			}
+		}// handle
+
+	}// inner class RequestWorker
+
 }// class ModbusUDPListener
@@ -0,0 +1,58 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+
+/**
+ * Interface defining a callback that is notified about the completion of an
+ * asynchronous request.
+ * <p>
+ * Callbacks are invoked on the I/O or timer thread of the issuing
+ * component and should therefore return quickly.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface ResponseCallback {
+
+	/**
+	 * Invoked when the response to a request has been received.
+	 * 
+	 * @param request
+	 *            the <tt>ModbusRequest</tt>.
+	 * @param response
+	 *            the <tt>ModbusResponse</tt>.
+	 */
+	public void responseReceived(ModbusRequest request,
+			ModbusResponse response);
+
+	/**
+	 * Invoked when a request failed, i.e. it timed out after all retries, the
+	 * slave answered with an exception response or the request could not be
+	 * sent.
+	 * 
+	 * @param request
+	 *            the <tt>ModbusRequest</tt>.
+	 * @param ex
+	 *            the <tt>ModbusException</tt> describing the failure.
+	 */
+	public void requestFailed(ModbusRequest request, ModbusException ex);
+
+}// interface ResponseCallback
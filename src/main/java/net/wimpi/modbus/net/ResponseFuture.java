@@ -0,0 +1,137 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+
+/**
+ * Class implementing a <tt>Future</tt> for the response of an asynchronous
+ * request.
+ * <p>
+ * A failed request completes the future with an <tt>ExecutionException</tt>
+ * whose cause is the <tt>ModbusException</tt> describing the failure.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class ResponseFuture implements Future<ModbusResponse>,
+		ResponseCallback {
+
+	private final UDPMasterPipeline m_Pipeline;
+	private int m_TransactionID = -1;
+	private ModbusResponse m_Response;
+	private ModbusException m_Failure;
+	private boolean m_Done;
+	private boolean m_Cancelled;
+
+	/**
+	 * Constructs a new <tt>ResponseFuture</tt>.
+	 * 
+	 * @param pipeline
+	 *            the <tt>UDPMasterPipeline</tt> the request is issued on.
+	 */
+	ResponseFuture(UDPMasterPipeline pipeline) {
+		m_Pipeline = pipeline;
+	}// constructor
+
+	synchronized void setTransactionID(int tid) {
+		m_TransactionID = tid;
+	}// setTransactionID
+
+	public synchronized void responseReceived(ModbusRequest request,
+			ModbusResponse response) {
+		if (!m_Done) {
+			m_Response = response;
+			m_Done = true;
+			notifyAll();
+		}
+	}// responseReceived
+
+	public synchronized void requestFailed(ModbusRequest request,
+			ModbusException ex) {
+		if (!m_Done) {
+			m_Failure = ex;
+			m_Done = true;
+			notifyAll();
+		}
+	}// requestFailed
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		int tid;
+		synchronized (this) {
+			if (m_Done) {
+				return false;
+			}
+			m_Done = true;
+			m_Cancelled = true;
+			tid = m_TransactionID;
+			notifyAll();
+		}
+		if (tid >= 0) {
+			m_Pipeline.cancel(tid, this);
+		}
+		return true;
+	}// cancel
+
+	public synchronized boolean isCancelled() {
+		return m_Cancelled;
+	}// isCancelled
+
+	public synchronized boolean isDone() {
+		return m_Done;
+	}// isDone
+
+	public synchronized ModbusResponse get() throws InterruptedException,
+			ExecutionException {
+		while (!m_Done) {
+			wait();
+		}
+		return result();
+	}// get
+
+	public synchronized ModbusResponse get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!m_Done) {
+			long wait = deadline - System.nanoTime();
+			if (wait <= 0) {
+				throw new TimeoutException();
+			}
+			wait(wait / 1000000L, (int) (wait % 1000000L));
+		}
+		return result();
+	}// get
+
+	private ModbusResponse result() throws ExecutionException {
+		if (m_Cancelled) {
+			throw new CancellationException();
+		}
+		if (m_Failure != null) {
+			throw new ExecutionException(m_Failure);
+		}
+		return m_Response;
+	}// result
+
+}// class ResponseFuture
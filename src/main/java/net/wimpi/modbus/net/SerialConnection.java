@@ -27,7 +27,6 @@ import net.wimpi.modbus.util.SerialParameters;
 import java.io.IOException;
 
 import jssc.SerialPort;
-import jssc.SerialPortException;
 
 /**
  * Class that implements a serial connection which can be used for master and
@@ -42,7 +41,9 @@ public class SerialConnection {
 
 	private SerialParameters m_Parameters;
 	private ModbusSerialTransport m_Transport;
-	private SerialPort m_SerialPort;
+	private SerialTerminal m_Terminal;
+	private ProcessImage m_ProcessImage;
+	private SerialTiming m_Timing;
 	private boolean m_Open;
 
 	/**
@@ -53,26 +54,76 @@ public class SerialConnection {
 	 *            A SerialParameters object.
 	 */
 	public SerialConnection(SerialParameters parameters) {
+		this(parameters, null);
+	}// constructor
+
+	/**
+	 * Creates a SerialConnection object that communicates through the given
+	 * <tt>SerialTerminal</tt>.
+	 * 
+	 * @param parameters
+	 *            A SerialParameters object.
+	 * @param terminal
+	 *            the <tt>SerialTerminal</tt> to be used; if <tt>null</tt>, a
+	 *            <tt>JSSCSerialTerminal</tt> is created when the connection
+	 *            is opened.
+	 */
+	public SerialConnection(SerialParameters parameters,
+			SerialTerminal terminal) {
 		m_Parameters = parameters;
+		m_Terminal = terminal;
+		m_Timing = new SerialTiming(parameters);
 		m_Open = false;
 	}// constructor
 
 	/**
 	 * Returns the reference to the SerialPort instance.
 	 * 
-	 * @return a reference to the <tt>SerialPort</tt>.
+	 * @return a reference to the <tt>SerialPort</tt>, or <tt>null</tt> if the
+	 *         connection does not use a jssc port.
 	 */
 	public SerialPort getSerialPort() {
-		return m_SerialPort;
+		if (m_Terminal instanceof JSSCSerialTerminal) {
+			return ((JSSCSerialTerminal) m_Terminal).getSerialPort();
+		}
+		return null;
 	}// getSerialPort
 
+	/**
+	 * Returns the reference to the <tt>SerialTerminal</tt> instance.
+	 * 
+	 * @return a reference to the <tt>SerialTerminal</tt>.
+	 */
+	public SerialTerminal getSerialTerminal() {
+		return m_Terminal;
+	}// getSerialTerminal
+
+	/**
+	 * Returns the parameters of this <tt>SerialConnection</tt>.
+	 * 
+	 * @return the <tt>SerialParameters</tt>.
+	 */
+	public SerialParameters getParameters() {
+		return m_Parameters;
+	}// getParameters
+
+	/**
+	 * Returns the <tt>SerialTiming</tt> that manages the inter-frame delay
+	 * and the receive timeouts of the line.
+	 * 
+	 * @return the <tt>SerialTiming</tt> of this connection.
+	 */
+	public SerialTiming getTiming() {
+		return m_Timing;
+	}// getTiming
+
 	/**
 	 * Returns the <tt>ModbusTransport</tt> instance to be used for receiving
 	 * and sending messages.
 	 * 
 	 * @return a <tt>ModbusTransport</tt> instance.
 	 */
-	public ModbusTransport getModbusTransport() {
+	public ModbusSerialTransport getModbusTransport() {
 		return m_Transport;
 	}// getModbusTransport
 
@@ -85,19 +136,13 @@ public class SerialConnection {
 	public void open() throws Exception {
 		
 		// 1. create the port
-		m_SerialPort = new SerialPort(m_Parameters.getPortName());
+		if (m_Terminal == null) {
+			m_Terminal = new JSSCSerialTerminal();
+		}
 
 		// 2. set the parameters, open the port
-		try {
-			m_SerialPort.openPort();
-			setConnectionParameters();
-		} catch (Exception e) {
-			if (m_SerialPort.isOpened())
-				m_SerialPort.closePort();
-			if (Modbus.debug)
-				System.out.println("Failure opening port: "+e.getMessage());
-			throw e;
-		}
+		m_Terminal.open(m_Parameters);
+		m_Timing.setParameters(m_Parameters);
 
 		if (Modbus.SERIAL_ENCODING_ASCII.equals(m_Parameters.getEncoding())) {
 			m_Transport = new ModbusASCIITransport();
@@ -115,23 +160,34 @@ public class SerialConnection {
 		// Open the input and output streams for the connection. If they won't
 		// open, close the port before throwing an exception.
 		try {
-			m_Transport.setSerialPort(m_SerialPort);
+			m_Transport.setSerialTerminal(m_Terminal);
 		} catch (IOException e) {
-			m_SerialPort.closePort();
+			m_Terminal.close();
 			if (Modbus.debug)
 				System.out.println(e.getMessage());
 
 			throw new Exception("Error opening i/o streams");
 		}
 		// System.out.println("i/o Streams prepared");
+		if (m_ProcessImage != null) {
+			m_Transport.setProcessImage(m_ProcessImage);
+		}
 
 		m_Open = true;
 	}// open
 
+	/**
+	 * Sets the receive timeout of the connection. This is also the upper
+	 * bound for the receive timeouts adapted by the <tt>SerialTiming</tt>.
+	 * 
+	 * @param ms
+	 *            the receive timeout in milliseconds.
+	 */
 	public void setReceiveTimeout(int ms) {
 		// Set receive timeout to allow breaking out of polling loop during
 		// input handling.
 		m_Transport.setReceiveTimeout(ms);
+		m_Timing.setMaximumTimeout(ms);
 	}// setReceiveTimeout
 
 	/**
@@ -143,28 +199,8 @@ public class SerialConnection {
 	 */
 	public void setConnectionParameters() throws Exception {
 
-		// Set connection parameters
-		try {
-			m_SerialPort.setParams(m_Parameters.getBaudRate(),
-					m_Parameters.getDatabits(), m_Parameters.getStopbits(), 
-					m_Parameters.getParity());
-		} catch (SerialPortException e) {
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
-
-			throw new Exception(e);
-		}
-
-		// Set flow control.
-		try {
-			m_SerialPort.setFlowControlMode(m_Parameters.getFlowControlIn()
-					| m_Parameters.getFlowControlOut());
-		} catch (SerialPortException e) {
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
-
-			throw new Exception(e);
-		}
+		m_Terminal.setParameters(m_Parameters);
+		m_Timing.setParameters(m_Parameters);
 	}// setConnectionParameters
 
 	/**
@@ -177,7 +213,7 @@ public class SerialConnection {
 		}
 
 		// Check to make sure sPort has reference to avoid a NPE.
-		if (m_SerialPort != null) {
+		if (m_Terminal != null) {
 			try {
 				m_Transport.close();
 			} catch (IOException e) {
@@ -185,8 +221,8 @@ public class SerialConnection {
 			}
 			// Close the port.
 			try {
-				m_SerialPort.closePort();
-			} catch (SerialPortException e) {
+				m_Terminal.close();
+			} catch (IOException e) {
 			}
 		}
 
@@ -207,7 +243,10 @@ public class SerialConnection {
 	 * @param image The process image to set.
 	 */
 	public void setProcessImage(ProcessImage image) {
-		this.m_Transport.setProcessImage(image);
+		m_ProcessImage = image;
+		if (m_Transport != null) {
+			m_Transport.setProcessImage(image);
+		}
 	}
 
 }// class SerialConnection
@@ -0,0 +1,122 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import net.wimpi.modbus.util.SerialParameters;
+
+/**
+ * Interface defining a <tt>SerialTerminal</tt>, the raw serial line used by a
+ * <tt>SerialConnection</tt> and the serial transports.
+ * <p>
+ * The streams of a terminal have to follow these rules:
+ * <ul>
+ * <li><tt>read()</tt> returns the next byte as unsigned value; it blocks up to
+ * the receive timeout and returns <tt>-1</tt> if no byte arrived in time.</li>
+ * <li><tt>read(byte[],int,int)</tt> blocks up to the receive timeout for the
+ * first byte, then returns all bytes that are available without blocking; it
+ * returns <tt>-1</tt> if no byte arrived in time.</li>
+ * <li><tt>available()</tt> returns the number of bytes that can be read
+ * without blocking.</li>
+ * </ul>
+ * A receive timeout of <tt>0</tt> or less blocks indefinitely.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ * 
+ * @see JSSCSerialTerminal
+ * @see LoopbackSerialBus
+ */
+public interface SerialTerminal {
+
+	/**
+	 * Opens this <tt>SerialTerminal</tt> and configures it with the given
+	 * parameters.
+	 * 
+	 * @param params
+	 *            the <tt>SerialParameters</tt> to be used.
+	 * @throws Exception
+	 *             if the terminal cannot be opened or configured.
+	 */
+	public void open(SerialParameters params) throws Exception;
+
+	/**
+	 * Reconfigures this open <tt>SerialTerminal</tt> with the given
+	 * parameters.
+	 * 
+	 * @param params
+	 *            the <tt>SerialParameters</tt> to be used.
+	 * @throws Exception
+	 *             if the parameters cannot be set.
+	 */
+	public void setParameters(SerialParameters params) throws Exception;
+
+	/**
+	 * Closes this <tt>SerialTerminal</tt>.
+	 * 
+	 * @throws IOException
+	 *             if closing the underlying port fails.
+	 */
+	public void close() throws IOException;
+
+	/**
+	 * Tests if this <tt>SerialTerminal</tt> is open.
+	 * 
+	 * @return <tt>true</tt> if open, <tt>false</tt> otherwise.
+	 */
+	public boolean isOpen();
+
+	/**
+	 * Returns the name of the port of this <tt>SerialTerminal</tt>.
+	 * 
+	 * @return the port name.
+	 */
+	public String getName();
+
+	/**
+	 * Returns the stream to read raw bytes from.
+	 * 
+	 * @return an <tt>InputStream</tt> instance.
+	 */
+	public InputStream getInputStream();
+
+	/**
+	 * Returns the stream to write raw bytes to.
+	 * 
+	 * @return an <tt>OutputStream</tt> instance.
+	 */
+	public OutputStream getOutputStream();
+
+	/**
+	 * Sets the receive timeout of this <tt>SerialTerminal</tt>.
+	 * 
+	 * @param ms
+	 *            the timeout in milliseconds; <tt>0</tt> blocks indefinitely.
+	 */
+	public void setReceiveTimeout(int ms);
+
+	/**
+	 * Returns the receive timeout of this <tt>SerialTerminal</tt>.
+	 * 
+	 * @return the timeout in milliseconds.
+	 */
+	public int getReceiveTimeout();
+
+}// interface SerialTerminal
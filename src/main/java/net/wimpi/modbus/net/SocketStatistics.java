@@ -0,0 +1,181 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+/**
+ * Class providing access to the socket statistics of the kernel, where the
+ * platform exposes them.
+ * <p>
+ * On Linux the counters are read from <tt>/proc/net</tt>; on other
+ * platforms all methods return <tt>-1</tt>. The counters tell whether
+ * requests are lost before they reach the listener, e.g. because the
+ * socket receive buffer overflowed during a burst or the accept queue was
+ * full.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class SocketStatistics {
+
+	private SocketStatistics() {
+	}// constructor
+
+	/**
+	 * Returns the number of datagrams the kernel dropped for the UDP socket(s)
+	 * bound to the given local port, usually because the receive buffer was
+	 * full.
+	 * 
+	 * @param port
+	 *            the local port.
+	 * @return the number of dropped datagrams, or -1 if not available.
+	 */
+	public static long getUDPDrops(int port) {
+		long v4 = readUDP("/proc/net/udp", port, -1);
+		long v6 = readUDP("/proc/net/udp6", port, -1);
+		if (v4 < 0 && v6 < 0) {
+			return -1;
+		}
+		return Math.max(v4, 0) + Math.max(v6, 0);
+	}// getUDPDrops
+
+	/**
+	 * Returns the number of bytes queued in the receive buffer of the UDP
+	 * socket(s) bound to the given local port.
+	 * 
+	 * @param port
+	 *            the local port.
+	 * @return the number of queued bytes, or -1 if not available.
+	 */
+	public static long getUDPReceiveQueue(int port) {
+		long v4 = readUDP("/proc/net/udp", port, 4);
+		long v6 = readUDP("/proc/net/udp6", port, 4);
+		if (v4 < 0 && v6 < 0) {
+			return -1;
+		}
+		return Math.max(v4, 0) + Math.max(v6, 0);
+	}// getUDPReceiveQueue
+
+	/**
+	 * Returns the number of times the accept queue of a listening TCP socket
+	 * overflowed, summed over all sockets of the system.
+	 * 
+	 * @return the number of overflows, or -1 if not available.
+	 */
+	public static long getTCPListenOverflows() {
+		return readNetstat("TcpExt:", "ListenOverflows");
+	}// getTCPListenOverflows
+
+	/**
+	 * Returns the number of connection attempts a listening TCP socket
+	 * dropped, summed over all sockets of the system.
+	 * 
+	 * @return the number of dropped connection attempts, or -1 if not
+	 *         available.
+	 */
+	public static long getTCPListenDrops() {
+		return readNetstat("TcpExt:", "ListenDrops");
+	}// getTCPListenDrops
+
+	/**
+	 * Reads a column of the UDP socket table for the given local port. Column
+	 * 4 holds <tt>tx_queue:rx_queue</tt>, a column of -1 selects the drops
+	 * in the last column.
+	 */
+	private static long readUDP(String file, int port, int column) {
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader(file));
+			String line = in.readLine(); // header
+			long sum = 0;
+			while ((line = in.readLine()) != null) {
+				StringTokenizer tok = new StringTokenizer(line);
+				int n = tok.countTokens();
+				String[] cols = new String[n];
+				for (int i = 0; i < n; i++) {
+					cols[i] = tok.nextToken();
+				}
+				if (n < 5) {
+					continue;
+				}
+				String local = cols[1];
+				int idx = local.lastIndexOf(':');
+				if (Integer.parseInt(local.substring(idx + 1), 16) != port) {
+					continue;
+				}
+				if (column < 0) {
+					sum += Long.parseLong(cols[n - 1]);
+				} else {
+					String q = cols[column];
+					sum += Long.parseLong(q.substring(q.indexOf(':') + 1), 16);
+				}
+			}
+			return sum;
+		} catch (Exception ex) {
+			return -1;
+		} finally {
+			close(in);
+		}
+	}// readUDP
+
+	/**
+	 * Reads a counter from <tt>/proc/net/netstat</tt>, which lists a header
+	 * line of names followed by a line of values for each group.
+	 */
+	private static long readNetstat(String group, String name) {
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader("/proc/net/netstat"));
+			String names;
+			while ((names = in.readLine()) != null) {
+				String values = in.readLine();
+				if (values == null || !names.startsWith(group)) {
+					continue;
+				}
+				StringTokenizer n = new StringTokenizer(names);
+				StringTokenizer v = new StringTokenizer(values);
+				while (n.hasMoreTokens() && v.hasMoreTokens()) {
+					String key = n.nextToken();
+					String value = v.nextToken();
+					if (key.equals(name)) {
+						return Long.parseLong(value);
+					}
+				}
+			}
+			return -1;
+		} catch (Exception ex) {
+			return -1;
+		} finally {
+			close(in);
+		}
+	}// readNetstat
+
+	private static void close(BufferedReader in) {
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException ex) {
+				// ignore
+			}
+		}
+	}// close
+
+}// class SocketStatistics
@@ -16,15 +16,24 @@
 
 package net.wimpi.modbus.net;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusIOException;
-import net.wimpi.modbus.io.ModbusTransport;
-import net.wimpi.modbus.msg.ModbusRequest;
-import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.io.FrameProcessor;
+import net.wimpi.modbus.io.ModbusFrame;
+import net.wimpi.modbus.io.ModbusTCPTransport;
+import net.wimpi.modbus.metrics.Metrics;
 import net.wimpi.modbus.procimg.ProcessImage;
 
 /**
  * Class implementing a handler for incoming Modbus/TCP requests.
+ * <p>
+ * Requests are read as raw frames and executed by the
+ * <tt>FrameProcessor</tt>, which writes the response into a frame buffer
+ * owned by the handler, so serving a request does not create any message
+ * objects.
  * 
  * @author Dieter Wimberger
  * @version @version@ (@date@)
@@ -32,7 +41,17 @@ import net.wimpi.modbus.procimg.ProcessImage;
 public class TCPConnectionHandler implements Runnable {
 
 	private TCPSlaveConnection m_Connection;
-	private ModbusTransport m_Transport;
+	private ModbusTCPTransport m_Transport;
+	private ProcessImage m_ProcessImage;
+	private String m_MetricsName;
+	private AtomicBoolean m_Tracing;
+
+	private final byte[] m_In = new byte[Modbus.MAX_IP_MESSAGE_LENGTH];
+	private final byte[] m_Out = new byte[Modbus.MAX_IP_MESSAGE_LENGTH];
+	private final ModbusFrame m_Request = new ModbusFrame().wrap(
+			ByteBuffer.wrap(m_In), 0);
+	private final ModbusFrame m_Response = new ModbusFrame().wrap(
+			ByteBuffer.wrap(m_Out), 0);
 
 	/**
 	 * Constructs a new <tt>TCPConnectionHandler</tt> instance.
@@ -57,37 +76,43 @@ public class TCPConnectionHandler implements Runnable {
 	 */
 	public void setConnection(TCPSlaveConnection con) {
 		m_Connection = con;
-		m_Transport = m_Connection.getModbusTransport();
+		m_Transport = (ModbusTCPTransport) m_Connection.getModbusTransport();
+		m_MetricsName = "tcp-listener:" + con.getAddress().getHostAddress()
+				+ ":" + con.getPort();
 	}// setConnection
 
 	public void run() {
 		try {
 			do {
 				// 1. read the request
-				ModbusRequest request = m_Transport.readRequest();
-				// System.out.println("Request:" + request.getHexMessage());
-				ModbusResponse response = null;
-
-				// test if Process image exists
-				if (request.getProcessImage() == null) {
-					response = request
-							.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
-				} else {
-					response = request.createResponse();
-				}
+				int len = m_Transport.readRequestFrame(m_In);
+				m_Connection.touch();
+				boolean timed = Metrics.isEnabled();
+				long start = timed ? System.nanoTime() : 0;
+
+				// 2. execute it, writing the response frame
+				int rlen = FrameProcessor.execute(m_ProcessImage, m_Request,
+						len, m_Response);
 				/* DEBUG */
-				if (Modbus.debug)
-					System.out.println("Request:" + request.getHexMessage());
-				if (Modbus.debug) {
-					if (response != null)
+				boolean trace = Modbus.debug
+						|| (m_Tracing != null && m_Tracing.get());
+				if (trace)
+					System.out.println("Request:" + m_Request.toHex(len));
+				if (trace) {
+					if (rlen > 0)
 						System.out.println("Response:"
-								+ response.getHexMessage());
+								+ m_Response.toHex(rlen));
 					else
 						System.out.println("Response: <Nothing to send>");
 				}
 
-				if (response != null)
-					m_Transport.writeMessage(response);
+				// 3. send it
+				if (rlen > 0)
+					m_Transport.writeFrame(m_Out, rlen);
+				if (timed) {
+					Metrics.served(m_MetricsName, m_Request, len, m_Response,
+							rlen, System.nanoTime() - start);
+				}
 			} while (true);
 		} catch (ModbusIOException ex) {
 			if (!ex.isEOF()) {
@@ -104,6 +129,28 @@ public class TCPConnectionHandler implements Runnable {
 		}
 	}// run
 
+	/**
+	 * Sets the name requests are reported under to the <tt>Metrics</tt>,
+	 * instead of the local address of the connection.
+	 * 
+	 * @param name
+	 *            the name of the listener.
+	 */
+	void setMetricsName(String name) {
+		m_MetricsName = name;
+	}// setMetricsName
+
+	/**
+	 * Sets the switch of the listener that enables printing the requests
+	 * and responses, as in debug mode.
+	 * 
+	 * @param tracing
+	 *            the switch shared by the handlers of a listener.
+	 */
+	void setTracing(AtomicBoolean tracing) {
+		m_Tracing = tracing;
+	}// setTracing
+
 	/**
 	 * Set the process image to associate with this connection handler.
 	 * 
@@ -111,6 +158,7 @@ public class TCPConnectionHandler implements Runnable {
 	 *            The process image to set.
 	 */
 	public void setProcessImage(ProcessImage image) {
+		m_ProcessImage = image;
 		m_Transport.setProcessImage(image);
 	}
 
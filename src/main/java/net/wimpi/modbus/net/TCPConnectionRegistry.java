@@ -0,0 +1,270 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.util.TimerWheel;
+
+/**
+ * Class that keeps track of the open connections of a
+ * <tt>ModbusTCPListener</tt>.
+ * <p>
+ * Operators can list the connections and drop them at runtime. If an idle
+ * timeout is set, connections that have not received a request for that long
+ * are closed, which releases the thread and socket held by clients that
+ * vanished without closing the connection. Each connection has a single
+ * timeout on a <tt>TimerWheel</tt>; when it expires early because of
+ * activity in between, it is simply rescheduled for the remaining time, so
+ * requests do not touch the wheel at all.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class TCPConnectionRegistry {
+
+	private final Map<TCPSlaveConnection, Entry> m_Connections = new ConcurrentHashMap<TCPSlaveConnection, Entry>();
+	private volatile long m_IdleTimeout;
+	private TimerWheel m_Wheel;
+	private final AtomicLong m_Reaped = new AtomicLong();
+	private final AtomicLong m_Dropped = new AtomicLong();
+
+	/**
+	 * Constructs a new <tt>TCPConnectionRegistry</tt> without idle timeout.
+	 */
+	public TCPConnectionRegistry() {
+	}// constructor
+
+	/**
+	 * Returns the idle timeout of the connections.
+	 * 
+	 * @return the timeout in milliseconds, or 0 if disabled.
+	 */
+	public long getIdleTimeout() {
+		return m_IdleTimeout;
+	}// getIdleTimeout
+
+	/**
+	 * Sets the time after which a connection without requests is closed. 0
+	 * disables the timeout. Applies to connections registered afterwards.
+	 * 
+	 * @param timeout
+	 *            the timeout in milliseconds.
+	 */
+	public void setIdleTimeout(long timeout) {
+		m_IdleTimeout = Math.max(0, timeout);
+	}// setIdleTimeout
+
+	/**
+	 * Registers an accepted connection.
+	 * 
+	 * @param con
+	 *            the <tt>TCPSlaveConnection</tt>.
+	 */
+	public void register(TCPSlaveConnection con) {
+		Entry e = new Entry(con);
+		m_Connections.put(con, e);
+		long timeout = m_IdleTimeout;
+		if (timeout > 0) {
+			e.schedule(timeout);
+		}
+	}// register
+
+	/**
+	 * Removes a connection that has been closed.
+	 * 
+	 * @param con
+	 *            the <tt>TCPSlaveConnection</tt>.
+	 */
+	public void unregister(TCPSlaveConnection con) {
+		Entry e = m_Connections.remove(con);
+		if (e != null) {
+			e.cancel();
+		}
+	}// unregister
+
+	/**
+	 * Returns a snapshot of the registered connections.
+	 * 
+	 * @return a list of <tt>TCPSlaveConnection</tt> instances.
+	 */
+	public List<TCPSlaveConnection> getConnections() {
+		return new ArrayList<TCPSlaveConnection>(m_Connections.keySet());
+	}// getConnections
+
+	/**
+	 * Returns the number of registered connections.
+	 * 
+	 * @return the number of connections.
+	 */
+	public int getConnectionCount() {
+		return m_Connections.size();
+	}// getConnectionCount
+
+	/**
+	 * Closes the given connection. The thread handling it sees the end of the
+	 * stream and unregisters it.
+	 * 
+	 * @param con
+	 *            the <tt>TCPSlaveConnection</tt> to drop.
+	 * @return true if the connection was registered, false otherwise.
+	 */
+	public boolean drop(TCPSlaveConnection con) {
+		if (!close(con)) {
+			return false;
+		}
+		m_Dropped.incrementAndGet();
+		return true;
+	}// drop
+
+	/**
+	 * Closes the given connection if it is registered, without counting it.
+	 */
+	private boolean close(TCPSlaveConnection con) {
+		if (!m_Connections.containsKey(con)) {
+			return false;
+		}
+		con.close();
+		return true;
+	}// close
+
+	/**
+	 * Closes all connections of the given client address.
+	 * 
+	 * @param addr
+	 *            the address of the client.
+	 * @return the number of dropped connections.
+	 */
+	public int drop(InetAddress addr) {
+		int n = 0;
+		for (Iterator<TCPSlaveConnection> it = m_Connections.keySet()
+				.iterator(); it.hasNext();) {
+			TCPSlaveConnection con = it.next();
+			if (addr.equals(con.getRemoteAddress()) && drop(con)) {
+				n++;
+			}
+		}
+		return n;
+	}// drop
+
+	/**
+	 * Closes all registered connections.
+	 * 
+	 * @return the number of dropped connections.
+	 */
+	public int dropAll() {
+		int n = 0;
+		for (Iterator<TCPSlaveConnection> it = m_Connections.keySet()
+				.iterator(); it.hasNext();) {
+			if (drop(it.next())) {
+				n++;
+			}
+		}
+		return n;
+	}// dropAll
+
+	/**
+	 * Returns the number of connections closed because of the idle timeout.
+	 * 
+	 * @return the number of reaped connections.
+	 */
+	public long getReapedCount() {
+		return m_Reaped.get();
+	}// getReapedCount
+
+	/**
+	 * Returns the number of connections dropped through this registry. The
+	 * connections closed because of the idle timeout are counted as reaped
+	 * only.
+	 * 
+	 * @return the number of dropped connections.
+	 */
+	public long getDroppedCount() {
+		return m_Dropped.get();
+	}// getDroppedCount
+
+	/**
+	 * Stops the idle timer of this registry. Pending timeouts are discarded.
+	 */
+	public synchronized void stop() {
+		if (m_Wheel != null) {
+			m_Wheel.stop();
+			m_Wheel = null;
+		}
+	}// stop
+
+	private synchronized TimerWheel getWheel() {
+		if (m_Wheel == null) {
+			// idle timeouts are seconds or more, a coarse tick is enough
+			m_Wheel = new TimerWheel(100, 512);
+		}
+		return m_Wheel;
+	}// getWheel
+
+	/**
+	 * Idle timer of a registered connection.
+	 */
+	class Entry implements Runnable {
+
+		private final TCPSlaveConnection m_Connection;
+		private TimerWheel.Timeout m_Timeout;
+		private boolean m_Cancelled;
+
+		Entry(TCPSlaveConnection con) {
+			m_Connection = con;
+		}// constructor
+
+		synchronized void schedule(long delay) {
+			if (!m_Cancelled) {
+				m_Timeout = getWheel().schedule(this, delay);
+			}
+		}// schedule
+
+		synchronized void cancel() {
+			m_Cancelled = true;
+			if (m_Timeout != null) {
+				m_Timeout.cancel();
+				m_Timeout = null;
+			}
+		}// cancel
+
+		public void run() {
+			long timeout = m_IdleTimeout;
+			if (timeout <= 0) {
+				return;
+			}
+			long idle = m_Connection.getIdleTime();
+			if (idle < timeout) {
+				schedule(timeout - idle);
+			} else if (close(m_Connection)) {
+				m_Reaped.incrementAndGet();
+				if (Modbus.debug)
+					System.out.println("Closing idle connection "
+							+ m_Connection);
+			}
+		}// run
+
+	}// inner class Entry
+
+}// class TCPConnectionRegistry
@@ -22,14 +22,29 @@ package net.wimpi.modbus.net;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.io.ModbusTCPTransport;
 import net.wimpi.modbus.io.ModbusTransport;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.util.TimerWheel;
 
 /**
  * Class that implements a TCPMasterConnection.
+ * <p>
+ * With auto reconnect enabled, the connection is meant to stay open across
+ * transactions: a transaction that fails on a broken socket closes the
+ * connection and retries on a fresh one. Failed connection attempts are
+ * spaced by an exponential back-off with random jitter, during which
+ * {@link #connect()} fails immediately, so that an unreachable device is not
+ * hammered with handshakes. Optionally, a keepalive request is sent when the
+ * connection has been idle for a while, which detects dead peers and keeps
+ * NAT and firewall state alive.
  * 
  * @author Dieter Wimberger
  * @version @version@ (@date@)
@@ -39,13 +54,34 @@ public class TCPMasterConnection {
 	// instance attributes
 	private Socket m_Socket;
 	private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
-	private boolean m_Connected;
+	private volatile boolean m_Connected;
 
 	private InetAddress m_Address;
 	private int m_Port = Modbus.DEFAULT_PORT;
 
 	// private int m_Retries = Modbus.DEFAULT_RETRIES;
 	private ModbusTCPTransport m_ModbusTransport;
+	private TransportOptions m_Options = new TransportOptions();
+
+	// reconnect with back-off
+	private boolean m_AutoReconnect;
+	private int m_ReconnectDelay = 100;
+	private int m_MaxReconnectDelay = 30000;
+	private volatile int m_Failures;
+	private long m_NextAttempt;
+	private boolean m_WasConnected;
+	private volatile long m_ReconnectCount;
+
+	// exchanges and keepalive
+	private final ReentrantLock m_ExchangeLock = new ReentrantLock();
+	private volatile long m_LastUsed;
+	private int m_KeepAliveInterval;
+	private ModbusRequest m_KeepAliveRequest;
+	private TimerWheel.Timeout m_KeepAliveTimeout;
+	private volatile long m_KeepAliveFailures;
+
+	private static TimerWheel c_KeepAliveTimer;
+	private static final Random c_Random = new Random();
 
 	/**
 	 * Constructs a <tt>TCPMasterConnection</tt> instance with a given
@@ -68,20 +104,325 @@ public class TCPMasterConnection {
 		if (!m_Connected) {
 			if (Modbus.debug)
 				System.out.println("connect()");
+			if (m_AutoReconnect) {
+				long wait = m_NextAttempt - System.currentTimeMillis();
+				if (wait > 0) {
+					throw new IOException("Reconnect back-off, next attempt in "
+							+ wait + " ms");
+				}
+			}
 			m_Socket = new Socket();
-			java.net.InetSocketAddress sockaddr = new java.net.InetSocketAddress(
-					m_Address, m_Port);
-			m_Socket.connect(sockaddr, m_Timeout);
-			setTimeout(m_Timeout);
-			prepareTransport();
+			try {
+				m_Options.apply(m_Socket);
+				java.net.InetSocketAddress sockaddr = new java.net.InetSocketAddress(
+						m_Address, m_Port);
+				m_Socket.connect(sockaddr, m_Timeout);
+				setTimeout(m_Timeout);
+				prepareTransport();
+			} catch (Exception ex) {
+				try {
+					m_Socket.close();
+				} catch (IOException cex) {
+					// ignore
+				}
+				if (m_AutoReconnect) {
+					backOff();
+				}
+				throw ex;
+			}
 			m_Connected = true;
+			m_Failures = 0;
+			m_NextAttempt = 0;
+			if (m_WasConnected) {
+				m_ReconnectCount++;
+			}
+			m_WasConnected = true;
+			m_LastUsed = System.currentTimeMillis();
+			scheduleKeepAlive(m_KeepAliveInterval);
 		}
 	}// connect
 
+	/**
+	 * Schedules the next connection attempt after a failed one. The delay
+	 * doubles with every consecutive failure up to the maximum, and is
+	 * randomized between half and the full delay so that many masters do not
+	 * reconnect in lockstep.
+	 */
+	private void backOff() {
+		m_Failures++;
+		long delay = Math.min((long) m_MaxReconnectDelay,
+				(long) m_ReconnectDelay << Math.min(m_Failures - 1, 20));
+		delay = delay / 2 + (long) (c_Random.nextDouble() * (delay / 2 + 1));
+		m_NextAttempt = System.currentTimeMillis() + delay;
+		if (Modbus.debug)
+			System.out.println("TCPMasterConnection::connect failed "
+					+ m_Failures + " time(s), next attempt in " + delay
+					+ " ms");
+	}// backOff
+
+	/**
+	 * Tests if a closed connection is reopened transparently by the
+	 * transactions using it.
+	 * 
+	 * @return true if reconnecting automatically, false otherwise.
+	 */
+	public boolean isAutoReconnect() {
+		return m_AutoReconnect;
+	}// isAutoReconnect
+
+	/**
+	 * Sets whether a transaction failing with an I/O error should close this
+	 * connection and retry on a fresh socket, and whether failed connection
+	 * attempts are spaced by a back-off.
+	 * 
+	 * @param b
+	 *            true to reconnect automatically, false otherwise.
+	 */
+	public void setAutoReconnect(boolean b) {
+		m_AutoReconnect = b;
+	}// setAutoReconnect
+
+	/**
+	 * Sets the delay after the first failed connection attempt. It doubles
+	 * with each further failure.
+	 * 
+	 * @param ms
+	 *            the delay in milliseconds.
+	 */
+	public void setReconnectDelay(int ms) {
+		m_ReconnectDelay = Math.max(1, ms);
+	}// setReconnectDelay
+
+	/**
+	 * Returns the delay after the first failed connection attempt.
+	 * 
+	 * @return the delay in milliseconds.
+	 */
+	public int getReconnectDelay() {
+		return m_ReconnectDelay;
+	}// getReconnectDelay
+
+	/**
+	 * Sets the maximum delay between connection attempts.
+	 * 
+	 * @param ms
+	 *            the maximum delay in milliseconds.
+	 */
+	public void setMaxReconnectDelay(int ms) {
+		m_MaxReconnectDelay = Math.max(1, ms);
+	}// setMaxReconnectDelay
+
+	/**
+	 * Returns the maximum delay between connection attempts.
+	 * 
+	 * @return the maximum delay in milliseconds.
+	 */
+	public int getMaxReconnectDelay() {
+		return m_MaxReconnectDelay;
+	}// getMaxReconnectDelay
+
+	/**
+	 * Returns the number of times this connection was reopened after it had
+	 * been open before.
+	 * 
+	 * @return the number of reconnects.
+	 */
+	public long getReconnectCount() {
+		return m_ReconnectCount;
+	}// getReconnectCount
+
+	/**
+	 * Returns the number of consecutive failed connection attempts.
+	 * 
+	 * @return the number of failures since the last successful connect.
+	 */
+	public int getConnectFailures() {
+		return m_Failures;
+	}// getConnectFailures
+
+	/**
+	 * Sets the time after which an idle connection sends a keepalive
+	 * request. A keepalive that fails closes the connection. 0, the
+	 * default, disables keepalive requests.
+	 * 
+	 * @param ms
+	 *            the keepalive interval in milliseconds.
+	 */
+	public synchronized void setKeepAliveInterval(int ms) {
+		m_KeepAliveInterval = Math.max(0, ms);
+		if (m_Connected) {
+			scheduleKeepAlive(m_KeepAliveInterval);
+		}
+	}// setKeepAliveInterval
+
+	/**
+	 * Returns the time after which an idle connection sends a keepalive
+	 * request.
+	 * 
+	 * @return the keepalive interval in milliseconds, or 0 if disabled.
+	 */
+	public int getKeepAliveInterval() {
+		return m_KeepAliveInterval;
+	}// getKeepAliveInterval
+
+	/**
+	 * Sets the request sent as keepalive. Any response, including an
+	 * exception response, proves the connection alive. By default, a single
+	 * holding register at reference 0 is read.
+	 * 
+	 * @param req
+	 *            the keepalive <tt>ModbusRequest</tt>.
+	 */
+	public synchronized void setKeepAliveRequest(ModbusRequest req) {
+		m_KeepAliveRequest = req;
+	}// setKeepAliveRequest
+
+	/**
+	 * Returns the number of keepalive requests that failed.
+	 * 
+	 * @return the number of failed keepalives.
+	 */
+	public long getKeepAliveFailures() {
+		return m_KeepAliveFailures;
+	}// getKeepAliveFailures
+
+	/**
+	 * Begins an exchange of a request and its response on this connection.
+	 * Exchanges of transactions and keepalives sharing this connection are
+	 * serialized; each call has to be paired with {@link #endExchange()}.
+	 */
+	public void beginExchange() {
+		m_ExchangeLock.lock();
+	}// beginExchange
+
+	/**
+	 * Ends an exchange begun with {@link #beginExchange()}, recording the use
+	 * of the connection.
+	 */
+	public void endExchange() {
+		m_LastUsed = System.currentTimeMillis();
+		m_ExchangeLock.unlock();
+	}// endExchange
+
+	private synchronized void scheduleKeepAlive(long delay) {
+		if (m_KeepAliveTimeout != null) {
+			m_KeepAliveTimeout.cancel();
+			m_KeepAliveTimeout = null;
+		}
+		if (delay > 0 && m_Connected) {
+			m_KeepAliveTimeout = getKeepAliveTimer().schedule(new Runnable() {
+				public void run() {
+					keepAlive();
+				}
+			}, delay);
+		}
+	}// scheduleKeepAlive
+
+	private static synchronized TimerWheel getKeepAliveTimer() {
+		if (c_KeepAliveTimer == null) {
+			c_KeepAliveTimer = new TimerWheel(100, 512);
+		}
+		return c_KeepAliveTimer;
+	}// getKeepAliveTimer
+
+	/**
+	 * Starts a keepalive probe if the connection has been idle for the
+	 * keepalive interval. Runs on the timer thread, which is shared by all
+	 * connections, so the probe itself runs on a thread of its own and
+	 * schedules the next round once done.
+	 */
+	private void keepAlive() {
+		final int interval = m_KeepAliveInterval;
+		if (interval <= 0 || !m_Connected) {
+			return;
+		}
+		long delay = interval;
+		boolean probing = false;
+		try {
+			long idle = System.currentTimeMillis() - m_LastUsed;
+			if (idle < interval) {
+				delay = interval - idle;
+				return;
+			}
+			Thread probe = new Thread(new Runnable() {
+				public void run() {
+					probe(interval);
+				}
+			}, "TCPMasterConnection keepalive");
+			probe.setDaemon(true);
+			probe.start();
+			probing = true;
+		} finally {
+			if (!probing) {
+				scheduleKeepAlive(delay);
+			}
+		}
+	}// keepAlive
+
+	/**
+	 * Sends a keepalive request, unless a transaction is using the
+	 * connection, and schedules the next round.
+	 */
+	private void probe(int interval) {
+		try {
+			if (!m_ExchangeLock.tryLock()) {
+				return;
+			}
+			try {
+				ModbusRequest req;
+				synchronized (this) {
+					if (m_KeepAliveRequest == null) {
+						m_KeepAliveRequest = new ReadMultipleRegistersRequest(
+								0, 1);
+					}
+					req = m_KeepAliveRequest;
+				}
+				if (m_Connected) {
+					m_ModbusTransport.flush();
+					m_ModbusTransport.writeMessage(req);
+					m_ModbusTransport.readResponse();
+					m_LastUsed = System.currentTimeMillis();
+				}
+			} catch (ModbusIOException ex) {
+				synchronized (this) {
+					m_KeepAliveFailures++;
+				}
+				if (Modbus.debug)
+					System.out.println("TCPMasterConnection::keepalive failed: "
+							+ ex.getMessage());
+				close();
+			} finally {
+				m_ExchangeLock.unlock();
+			}
+		} finally {
+			scheduleKeepAlive(interval);
+		}
+	}// probe
+
+	/**
+	 * Returns the socket options of this <tt>TCPMasterConnection</tt>.
+	 * 
+	 * @return the <tt>TransportOptions</tt>.
+	 */
+	public TransportOptions getTransportOptions() {
+		return m_Options;
+	}// getTransportOptions
+
+	/**
+	 * Sets the socket options of this <tt>TCPMasterConnection</tt>.
+	 * They are applied when the socket is created on connect.
+	 * 
+	 * @param options
+	 *            the <tt>TransportOptions</tt>.
+	 */
+	public void setTransportOptions(TransportOptions options) {
+		m_Options = options;
+	}// setTransportOptions
+
 	/**
 	 * Closes this <tt>TCPMasterConnection</tt>.
 	 */
-	public void close() {
+	public synchronized void close() {
 		if (m_Connected) {
 			try {
 				m_ModbusTransport.close();
@@ -89,7 +430,16 @@ public class TCPMasterConnection {
 				if (Modbus.debug)
 					System.out.println("close()");
 			}
+			try {
+				m_Socket.close();
+			} catch (IOException ex) {
+				// ignore
+			}
 			m_Connected = false;
+			if (m_KeepAliveTimeout != null) {
+				m_KeepAliveTimeout.cancel();
+				m_KeepAliveTimeout = null;
+			}
 		}
 	}// close
 
@@ -39,8 +39,11 @@ public class TCPSlaveConnection {
 	// instance attributes
 	private Socket m_Socket;
 	private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
-	private boolean m_Connected;
+	private volatile boolean m_Connected;
 	private ModbusTCPTransport m_ModbusTransport;
+	private final long m_ConnectTime = System.currentTimeMillis();
+	private volatile long m_LastActivity = m_ConnectTime;
+	private volatile long m_RequestCount;
 
 	/**
 	 * Constructs a <tt>TCPSlaveConnection</tt> instance using a given socket
@@ -62,13 +65,17 @@ public class TCPSlaveConnection {
 	}// constructor
 
 	/**
-	 * Closes this <tt>TCPSlaveConnection</tt>.
+	 * Closes this <tt>TCPSlaveConnection</tt>. May be called from another
+	 * thread than the one handling the connection, which then sees the end
+	 * of the stream.
 	 */
-	public void close() {
+	public synchronized void close() {
 		if (m_Connected) {
 			try {
-				m_ModbusTransport.close();
+				// closing the socket first ends a read blocked in another
+				// thread with a socket exception, which is taken as EOF
 				m_Socket.close();
+				m_ModbusTransport.close();
 			} catch (IOException ex) {
 				if (Modbus.debug)
 					ex.printStackTrace();
@@ -157,6 +164,79 @@ public class TCPSlaveConnection {
 	public boolean isConnected() {
 		return m_Connected;
 	}// isConnected
+
+	/**
+	 * Records activity on this <tt>TCPSlaveConnection</tt>, i.e. a request
+	 * that has been received.
+	 */
+	public void touch() {
+		m_LastActivity = System.currentTimeMillis();
+		m_RequestCount++;
+	}// touch
+
+	/**
+	 * Returns the time of the last request received on this
+	 * <tt>TCPSlaveConnection</tt>, or the time it was accepted if there was
+	 * none yet.
+	 * 
+	 * @return the time in milliseconds since the epoch.
+	 */
+	public long getLastActivity() {
+		return m_LastActivity;
+	}// getLastActivity
+
+	/**
+	 * Returns the time since the last request received on this
+	 * <tt>TCPSlaveConnection</tt>.
+	 * 
+	 * @return the idle time in milliseconds.
+	 */
+	public long getIdleTime() {
+		return System.currentTimeMillis() - m_LastActivity;
+	}// getIdleTime
+
+	/**
+	 * Returns the time this <tt>TCPSlaveConnection</tt> was accepted.
+	 * 
+	 * @return the time in milliseconds since the epoch.
+	 */
+	public long getConnectTime() {
+		return m_ConnectTime;
+	}// getConnectTime
+
+	/**
+	 * Returns the number of requests received on this
+	 * <tt>TCPSlaveConnection</tt>.
+	 * 
+	 * @return the number of requests.
+	 */
+	public long getRequestCount() {
+		return m_RequestCount;
+	}// getRequestCount
+
+	/**
+	 * Returns the address of the client of this <tt>TCPSlaveConnection</tt>.
+	 * 
+	 * @return the remote address as <tt>InetAddress</tt>.
+	 */
+	public InetAddress getRemoteAddress() {
+		return m_Socket.getInetAddress();
+	}// getRemoteAddress
+
+	/**
+	 * Returns the port of the client of this <tt>TCPSlaveConnection</tt>.
+	 * 
+	 * @return the remote port number as <tt>int</tt>.
+	 */
+	public int getRemotePort() {
+		return m_Socket.getPort();
+	}// getRemotePort
+
+	public String toString() {
+		return "TCPSlaveConnection[" + m_Socket.getInetAddress() + ":"
+				+ m_Socket.getPort() + ", idle " + getIdleTime() + " ms, "
+				+ m_RequestCount + " requests]";
+	}// toString
 	
 	/** Set the process image to associate with this connection.
 	 * @param image The process image to set.
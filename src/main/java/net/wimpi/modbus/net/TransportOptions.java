@@ -0,0 +1,261 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.net.DatagramSocket;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class holding the socket options applied by the TCP and UDP listeners and
+ * connections.
+ * <p>
+ * The defaults are tuned for request/response traffic with many clients:
+ * Nagle's algorithm is disabled so that small frames are sent immediately,
+ * the kernel buffers are large enough to absorb bursts of datagrams and the
+ * accept backlog allows many simultaneous connection attempts. A value of
+ * <tt>0</tt> for a buffer size keeps the platform default.
+ * <p>
+ * Options are applied when a socket is created; changing them later has no
+ * effect on open sockets.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class TransportOptions {
+
+	private boolean m_TcpNoDelay = true;
+	private boolean m_KeepAlive = false;
+	private boolean m_ReuseAddress = true;
+	private int m_ReceiveBufferSize = 256 * 1024;
+	private int m_SendBufferSize = 64 * 1024;
+	private int m_Backlog = 128;
+	private int m_TrafficClass = -1;
+
+	/**
+	 * Constructs a new <tt>TransportOptions</tt> instance with the default
+	 * settings.
+	 */
+	public TransportOptions() {
+	}// constructor
+
+	/**
+	 * Tests if Nagle's algorithm is disabled on TCP sockets.
+	 * 
+	 * @return true if TCP_NODELAY is set, false otherwise.
+	 */
+	public boolean isTcpNoDelay() {
+		return m_TcpNoDelay;
+	}// isTcpNoDelay
+
+	/**
+	 * Sets the flag that disables Nagle's algorithm on TCP sockets.
+	 * 
+	 * @param b
+	 *            true to set TCP_NODELAY, false otherwise.
+	 */
+	public void setTcpNoDelay(boolean b) {
+		m_TcpNoDelay = b;
+	}// setTcpNoDelay
+
+	/**
+	 * Tests if TCP keepalive probes are enabled.
+	 * 
+	 * @return true if SO_KEEPALIVE is set, false otherwise.
+	 */
+	public boolean isKeepAlive() {
+		return m_KeepAlive;
+	}// isKeepAlive
+
+	/**
+	 * Sets the flag that enables TCP keepalive probes, which detect peers that
+	 * disappeared without closing the connection.
+	 * 
+	 * @param b
+	 *            true to set SO_KEEPALIVE, false otherwise.
+	 */
+	public void setKeepAlive(boolean b) {
+		m_KeepAlive = b;
+	}// setKeepAlive
+
+	/**
+	 * Tests if local addresses may be reused by listening sockets.
+	 * 
+	 * @return true if SO_REUSEADDR is set, false otherwise.
+	 */
+	public boolean isReuseAddress() {
+		return m_ReuseAddress;
+	}// isReuseAddress
+
+	/**
+	 * Sets the flag that allows a listener to bind its port again while
+	 * connections of a previous instance are in TIME_WAIT.
+	 * 
+	 * @param b
+	 *            true to set SO_REUSEADDR, false otherwise.
+	 */
+	public void setReuseAddress(boolean b) {
+		m_ReuseAddress = b;
+	}// setReuseAddress
+
+	/**
+	 * Returns the requested size of the kernel receive buffer.
+	 * 
+	 * @return the size in bytes, or 0 for the platform default.
+	 */
+	public int getReceiveBufferSize() {
+		return m_ReceiveBufferSize;
+	}// getReceiveBufferSize
+
+	/**
+	 * Sets the requested size of the kernel receive buffer (SO_RCVBUF). The
+	 * kernel may limit the size, e.g. to <tt>net.core.rmem_max</tt> on
+	 * Linux.
+	 * 
+	 * @param size
+	 *            the size in bytes, or 0 for the platform default.
+	 */
+	public void setReceiveBufferSize(int size) {
+		m_ReceiveBufferSize = size;
+	}// setReceiveBufferSize
+
+	/**
+	 * Returns the requested size of the kernel send buffer.
+	 * 
+	 * @return the size in bytes, or 0 for the platform default.
+	 */
+	public int getSendBufferSize() {
+		return m_SendBufferSize;
+	}// getSendBufferSize
+
+	/**
+	 * Sets the requested size of the kernel send buffer (SO_SNDBUF).
+	 * 
+	 * @param size
+	 *            the size in bytes, or 0 for the platform default.
+	 */
+	public void setSendBufferSize(int size) {
+		m_SendBufferSize = size;
+	}// setSendBufferSize
+
+	/**
+	 * Returns the length of the accept queue of listening TCP sockets.
+	 * 
+	 * @return the backlog.
+	 */
+	public int getBacklog() {
+		return m_Backlog;
+	}// getBacklog
+
+	/**
+	 * Sets the length of the accept queue of listening TCP sockets.
+	 * 
+	 * @param backlog
+	 *            the backlog.
+	 */
+	public void setBacklog(int backlog) {
+		m_Backlog = backlog;
+	}// setBacklog
+
+	/**
+	 * Returns the IP traffic class (type of service).
+	 * 
+	 * @return the traffic class, or -1 if not set.
+	 */
+	public int getTrafficClass() {
+		return m_TrafficClass;
+	}// getTrafficClass
+
+	/**
+	 * Sets the IP traffic class (type of service), e.g. a DSCP value shifted
+	 * into place to prioritize control traffic.
+	 * 
+	 * @param tc
+	 *            the traffic class, or -1 to keep the default.
+	 */
+	public void setTrafficClass(int tc) {
+		m_TrafficClass = tc;
+	}// setTrafficClass
+
+	/**
+	 * Applies these options to a TCP socket. Buffer sizes are only effective
+	 * for the TCP window if applied before the socket is connected.
+	 * 
+	 * @param socket
+	 *            the <tt>Socket</tt>.
+	 * @throws SocketException
+	 *             if an option cannot be set.
+	 */
+	public void apply(Socket socket) throws SocketException {
+		socket.setTcpNoDelay(m_TcpNoDelay);
+		socket.setKeepAlive(m_KeepAlive);
+		if (m_ReceiveBufferSize > 0) {
+			socket.setReceiveBufferSize(m_ReceiveBufferSize);
+		}
+		if (m_SendBufferSize > 0) {
+			socket.setSendBufferSize(m_SendBufferSize);
+		}
+		if (m_TrafficClass >= 0) {
+			socket.setTrafficClass(m_TrafficClass);
+		}
+		if (Modbus.debug)
+			System.out.println("TransportOptions::applied to " + socket);
+	}// apply
+
+	/**
+	 * Applies these options to an unbound server socket. The receive buffer
+	 * size is inherited by the accepted sockets.
+	 * 
+	 * @param socket
+	 *            the <tt>ServerSocket</tt>.
+	 * @throws SocketException
+	 *             if an option cannot be set.
+	 */
+	public void apply(ServerSocket socket) throws SocketException {
+		socket.setReuseAddress(m_ReuseAddress);
+		if (m_ReceiveBufferSize > 0) {
+			socket.setReceiveBufferSize(m_ReceiveBufferSize);
+		}
+	}// apply
+
+	/**
+	 * Applies these options to a datagram socket.
+	 * 
+	 * @param socket
+	 *            the <tt>DatagramSocket</tt>.
+	 * @throws SocketException
+	 *             if an option cannot be set.
+	 */
+	public void apply(DatagramSocket socket) throws SocketException {
+		if (m_ReceiveBufferSize > 0) {
+			socket.setReceiveBufferSize(m_ReceiveBufferSize);
+		}
+		if (m_SendBufferSize > 0) {
+			socket.setSendBufferSize(m_SendBufferSize);
+		}
+		if (m_TrafficClass >= 0) {
+			socket.setTrafficClass(m_TrafficClass);
+		}
+		if (Modbus.debug)
+			System.out.println("TransportOptions::receive buffer "
+					+ socket.getReceiveBufferSize() + " bytes");
+	}// apply
+
+}// class TransportOptions
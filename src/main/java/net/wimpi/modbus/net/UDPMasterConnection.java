@@ -37,6 +37,7 @@ public class UDPMasterConnection {
 
 	private InetAddress m_Address;
 	private int m_Port = Modbus.DEFAULT_PORT;
+	private TransportOptions m_Options = new TransportOptions();
 
 	/**
 	 * Constructs a <tt>UDPMasterConnection</tt> instance with a given
@@ -63,6 +64,7 @@ public class UDPMasterConnection {
 			m_Terminal.setRemoteAddress(m_Address);
 			m_Terminal.setRemotePort(m_Port);
 			m_Terminal.setTimeout(m_Timeout);
+			m_Terminal.setTransportOptions(m_Options);
 			m_Terminal.activate();
 			m_Connected = true;
 		}
@@ -102,6 +104,26 @@ public class UDPMasterConnection {
 		return m_Terminal;
 	}// getTerminal
 
+	/**
+	 * Returns the socket options of this <tt>UDPMasterConnection</tt>.
+	 * 
+	 * @return the <tt>TransportOptions</tt>.
+	 */
+	public TransportOptions getTransportOptions() {
+		return m_Options;
+	}// getTransportOptions
+
+	/**
+	 * Sets the socket options of this <tt>UDPMasterConnection</tt>.
+	 * They are applied when the socket is created on connect.
+	 * 
+	 * @param options
+	 *            the <tt>TransportOptions</tt>.
+	 */
+	public void setTransportOptions(TransportOptions options) {
+		m_Options = options;
+	}// setTransportOptions
+
 	/**
 	 * Returns the timeout for this <tt>UDPMasterConnection</tt>.
 	 * 
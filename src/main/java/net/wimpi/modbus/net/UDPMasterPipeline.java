@@ -0,0 +1,593 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.io.BytesInputStream;
+import net.wimpi.modbus.io.BytesOutputStream;
+import net.wimpi.modbus.msg.ExceptionResponse;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.util.BufferPool;
+import net.wimpi.modbus.util.TimerWheel;
+
+/**
+ * Class implementing a Modbus/UDP master that keeps many requests
+ * outstanding on a single socket.
+ * <p>
+ * Requests to any number of slaves are sent from one <tt>DatagramChannel</tt>
+ * without waiting for the previous reply. The pipeline assigns every
+ * request its own transaction identifier and correlates replies by source
+ * address and transaction identifier, so a reply from the wrong slave or a
+ * late reply to a request that was already retransmitted elsewhere is
+ * dropped. Timeouts and retransmissions are handled by a
+ * <tt>TimerWheel</tt>.
+ * <p>
+ * Results are delivered through a <tt>ResponseFuture</tt> or a
+ * <tt>ResponseCallback</tt>. Callbacks are invoked on the receiver thread
+ * (responses) or the timer thread (timeouts) and should return quickly.
+ * <p>
+ * The request objects are not modified, so the same <tt>ModbusRequest</tt>
+ * can be submitted to many slaves at once.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class UDPMasterPipeline {
+
+	private static final int TID_SPACE = 65536;
+
+	private DatagramChannel m_Channel;
+	private InetAddress m_LocalAddress;
+	private int m_LocalPort = 0;
+	private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
+	private int m_Retries = Modbus.DEFAULT_RETRIES;
+	private int m_MaxPending = 1024;
+	private TransportOptions m_Options = new TransportOptions();
+
+	private final Pending[] m_Pending = new Pending[TID_SPACE];
+	private int m_PendingCount;
+	private int m_NextTID;
+	private TimerWheel m_Timer;
+	private Thread m_Receiver;
+	private volatile boolean m_Active;
+
+	private final BytesOutputStream m_ByteOut = new BytesOutputStream(
+			Modbus.MAX_IP_MESSAGE_LENGTH);
+	private final BufferPool m_Pool = BufferPool.getDefault();
+
+	private volatile long m_Completed;
+	private volatile long m_Timeouts;
+	private volatile long m_Retransmits;
+	private volatile long m_Stray;
+
+	/**
+	 * Constructs a new <tt>UDPMasterPipeline</tt> bound to an ephemeral port
+	 * on all interfaces.
+	 */
+	public UDPMasterPipeline() {
+	}// constructor
+
+	/**
+	 * Sets the local address the socket is bound to.
+	 * 
+	 * @param addr
+	 *            the local <tt>InetAddress</tt>.
+	 */
+	public void setLocalAddress(InetAddress addr) {
+		m_LocalAddress = addr;
+	}// setLocalAddress
+
+	/**
+	 * Returns the local port of the socket.
+	 * 
+	 * @return the local port.
+	 */
+	public int getLocalPort() {
+		return m_LocalPort;
+	}// getLocalPort
+
+	/**
+	 * Sets the local port the socket is bound to. The default of <tt>0</tt>
+	 * selects an ephemeral port.
+	 * 
+	 * @param port
+	 *            the local port.
+	 */
+	public void setLocalPort(int port) {
+		m_LocalPort = port;
+	}// setLocalPort
+
+	/**
+	 * Returns the time to wait for a reply before a request is retransmitted.
+	 * 
+	 * @return the timeout in milliseconds.
+	 */
+	public int getTimeout() {
+		return m_Timeout;
+	}// getTimeout
+
+	/**
+	 * Sets the time to wait for a reply before a request is retransmitted.
+	 * 
+	 * @param timeout
+	 *            the timeout in milliseconds.
+	 */
+	public void setTimeout(int timeout) {
+		m_Timeout = timeout;
+	}// setTimeout
+
+	/**
+	 * Returns the number of retransmissions before a request fails.
+	 * 
+	 * @return the number of retries.
+	 */
+	public int getRetries() {
+		return m_Retries;
+	}// getRetries
+
+	/**
+	 * Sets the number of retransmissions before a request fails.
+	 * 
+	 * @param retries
+	 *            the number of retries.
+	 */
+	public void setRetries(int retries) {
+		m_Retries = retries;
+	}// setRetries
+
+	/**
+	 * Returns the maximum number of outstanding requests.
+	 * 
+	 * @return the maximum number of outstanding requests.
+	 */
+	public int getMaxPending() {
+		return m_MaxPending;
+	}// getMaxPending
+
+	/**
+	 * Sets the maximum number of outstanding requests. Submitting a request
+	 * blocks while the limit is reached.
+	 * 
+	 * @param max
+	 *            the maximum number of outstanding requests, between 1 and
+	 *            65536.
+	 */
+	public void setMaxPending(int max) {
+		m_MaxPending = Math.max(1, Math.min(TID_SPACE, max));
+	}// setMaxPending
+
+	/**
+	 * Returns the socket options of this <tt>UDPMasterPipeline</tt>.
+	 * 
+	 * @return the <tt>TransportOptions</tt>.
+	 */
+	public TransportOptions getTransportOptions() {
+		return m_Options;
+	}// getTransportOptions
+
+	/**
+	 * Sets the socket options of this <tt>UDPMasterPipeline</tt>.
+	 * They are applied when the socket is opened.
+	 * 
+	 * @param options
+	 *            the <tt>TransportOptions</tt>.
+	 */
+	public void setTransportOptions(TransportOptions options) {
+		m_Options = options;
+	}// setTransportOptions
+
+	/**
+	 * Opens the socket and starts the receiver thread.
+	 * 
+	 * @throws IOException
+	 *             if the socket cannot be opened or bound.
+	 */
+	public synchronized void open() throws IOException {
+		if (m_Active) {
+			return;
+		}
+		m_Channel = DatagramChannel.open();
+		try {
+			m_Options.apply(m_Channel.socket());
+			m_Channel.socket().bind(
+					new InetSocketAddress(m_LocalAddress, m_LocalPort));
+		} catch (IOException ex) {
+			m_Channel.close();
+			throw ex;
+		}
+		m_LocalPort = m_Channel.socket().getLocalPort();
+		m_Timer = new TimerWheel();
+		m_Active = true;
+		m_Receiver = new Thread(new Receiver(), "UDPMasterPipeline");
+		m_Receiver.setDaemon(true);
+		m_Receiver.start();
+	}// open
+
+	/**
+	 * Closes the socket. All outstanding requests fail.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (!m_Active) {
+				return;
+			}
+			m_Active = false;
+			notifyAll();
+		}
+		try {
+			m_Channel.close();
+		} catch (IOException ex) {
+			// ignore
+		}
+		try {
+			m_Receiver.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		m_Timer.stop();
+		for (int tid = 0; tid < TID_SPACE; tid++) {
+			Pending p = remove(tid, null);
+			if (p != null) {
+				p.m_Callback.requestFailed(p.m_Request, new ModbusIOException(
+						"Pipeline closed"));
+			}
+		}
+	}// close
+
+	/**
+	 * Tests if this <tt>UDPMasterPipeline</tt> is open.
+	 * 
+	 * @return true if open, false otherwise.
+	 */
+	public boolean isOpen() {
+		return m_Active;
+	}// isOpen
+
+	/**
+	 * Returns the number of outstanding requests.
+	 * 
+	 * @return the number of outstanding requests.
+	 */
+	public synchronized int getPendingCount() {
+		return m_PendingCount;
+	}// getPendingCount
+
+	/**
+	 * Returns the number of requests that were answered.
+	 * 
+	 * @return the number of completed requests.
+	 */
+	public long getCompletedCount() {
+		return m_Completed;
+	}// getCompletedCount
+
+	/**
+	 * Returns the number of requests that failed after all retries.
+	 * 
+	 * @return the number of timed out requests.
+	 */
+	public long getTimeoutCount() {
+		return m_Timeouts;
+	}// getTimeoutCount
+
+	/**
+	 * Returns the number of retransmitted requests.
+	 * 
+	 * @return the number of retransmissions.
+	 */
+	public long getRetransmitCount() {
+		return m_Retransmits;
+	}// getRetransmitCount
+
+	/**
+	 * Returns the number of replies that did not match an outstanding
+	 * request.
+	 * 
+	 * @return the number of dropped replies.
+	 */
+	public long getStrayCount() {
+		return m_Stray;
+	}// getStrayCount
+
+	/**
+	 * Submits a request to the given slave.
+	 * 
+	 * @param addr
+	 *            the address of the slave.
+	 * @param port
+	 *            the port of the slave.
+	 * @param request
+	 *            the <tt>ModbusRequest</tt> to be sent.
+	 * @return a <tt>ResponseFuture</tt> for the response.
+	 * @throws ModbusIOException
+	 *             if the pipeline is not open.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a free slot.
+	 */
+	public ResponseFuture submit(InetAddress addr, int port,
+			ModbusRequest request) throws ModbusIOException,
+			InterruptedException {
+		ResponseFuture f = new ResponseFuture(this);
+		f.setTransactionID(enqueue(addr, port, request, f));
+		return f;
+	}// submit
+
+	/**
+	 * Submits a request to the given slave, notifying the given callback
+	 * about the result.
+	 * 
+	 * @param addr
+	 *            the address of the slave.
+	 * @param port
+	 *            the port of the slave.
+	 * @param request
+	 *            the <tt>ModbusRequest</tt> to be sent.
+	 * @param callback
+	 *            the <tt>ResponseCallback</tt> to be notified.
+	 * @throws ModbusIOException
+	 *             if the pipeline is not open.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a free slot.
+	 */
+	public void submit(InetAddress addr, int port, ModbusRequest request,
+			ResponseCallback callback) throws ModbusIOException,
+			InterruptedException {
+		enqueue(addr, port, request, callback);
+	}// submit
+
+	/**
+	 * Removes an outstanding request without notifying its callback.
+	 * 
+	 * @param tid
+	 *            the transaction identifier of the request.
+	 * @param callback
+	 *            the callback of the request.
+	 */
+	void cancel(int tid, ResponseCallback callback) {
+		Pending p;
+		synchronized (this) {
+			p = m_Pending[tid];
+			if (p == null || p.m_Callback != callback) {
+				return;
+			}
+			remove(tid, null);
+		}
+		p.m_TimeoutHandle.cancel();
+	}// cancel
+
+	private int enqueue(InetAddress addr, int port, ModbusRequest request,
+			ResponseCallback callback) throws ModbusIOException,
+			InterruptedException {
+		// 1. encode the request
+		byte[] frame;
+		int len;
+		synchronized (m_ByteOut) {
+			try {
+				m_ByteOut.reset();
+				request.writeTo(m_ByteOut);
+			} catch (IOException ex) {
+				throw new ModbusIOException("Failed to encode request");
+			}
+			len = m_ByteOut.size();
+			frame = m_Pool.acquire(len);
+			System.arraycopy(m_ByteOut.getBuffer(), 0, frame, 0, len);
+		}
+
+		// 2. allocate a transaction identifier
+		Pending p = new Pending(new InetSocketAddress(addr, port), request,
+				callback, frame, len);
+		synchronized (this) {
+			while (m_Active && m_PendingCount >= m_MaxPending) {
+				wait();
+			}
+			if (!m_Active) {
+				m_Pool.release(frame);
+				throw new ModbusIOException("Pipeline not open");
+			}
+			int tid = m_NextTID;
+			while (m_Pending[tid] != null) {
+				tid = (tid + 1) % TID_SPACE;
+			}
+			m_NextTID = (tid + 1) % TID_SPACE;
+			m_Pending[tid] = p;
+			m_PendingCount++;
+			p.m_TransactionID = tid;
+			frame[0] = (byte) (tid >> 8);
+			frame[1] = (byte) tid;
+			p.m_TimeoutHandle = m_Timer.schedule(p, m_Timeout);
+		}
+
+		// 3. send it
+		send(p);
+		return p.m_TransactionID;
+	}// enqueue
+
+	private void send(Pending p) {
+		ByteBuffer buf = m_Pool.acquireDirect(p.m_Length);
+		try {
+			synchronized (p) {
+				// the frame is released once the request completed
+				if (p.m_Frame == null) {
+					return;
+				}
+				buf.put(p.m_Frame, 0, p.m_Length);
+			}
+			buf.flip();
+			m_Channel.send(buf, p.m_Address);
+		} catch (IOException ex) {
+			if (remove(p.m_TransactionID, p) != null) {
+				p.m_TimeoutHandle.cancel();
+				p.m_Callback.requestFailed(p.m_Request, new ModbusIOException(
+						"I/O exception - failed to write."));
+			}
+		} finally {
+			m_Pool.releaseDirect(buf);
+		}
+	}// send
+
+	private synchronized Pending remove(int tid, Pending expected) {
+		Pending p = m_Pending[tid];
+		if (p == null || (expected != null && p != expected)) {
+			return null;
+		}
+		m_Pending[tid] = null;
+		m_PendingCount--;
+		notifyAll();
+		p.releaseFrame();
+		return p;
+	}// remove
+
+	/**
+	 * An outstanding request, which is also the task run on its timeout.
+	 */
+	private class Pending implements Runnable {
+
+		private final SocketAddress m_Address;
+		private final ModbusRequest m_Request;
+		private final ResponseCallback m_Callback;
+		private final int m_Length;
+		private byte[] m_Frame;
+		private int m_TransactionID;
+		private int m_Tries;
+		private TimerWheel.Timeout m_TimeoutHandle;
+
+		Pending(SocketAddress addr, ModbusRequest req,
+				ResponseCallback callback, byte[] frame, int len) {
+			m_Address = addr;
+			m_Request = req;
+			m_Callback = callback;
+			m_Frame = frame;
+			m_Length = len;
+		}// constructor
+
+		synchronized void releaseFrame() {
+			m_Pool.release(m_Frame);
+			m_Frame = null;
+		}// releaseFrame
+
+		public void run() {
+			synchronized (UDPMasterPipeline.this) {
+				if (m_Pending[m_TransactionID] != this) {
+					return;
+				}
+				if (m_Tries < m_Retries && m_Active) {
+					m_Tries++;
+					m_Retransmits++;
+					m_TimeoutHandle = m_Timer.schedule(this, m_Timeout);
+				} else {
+					remove(m_TransactionID, this);
+					m_Timeouts++;
+					m_TimeoutHandle = null;
+				}
+			}
+			if (m_TimeoutHandle != null) {
+				send(this);
+			} else {
+				m_Callback.requestFailed(m_Request, new ModbusIOException(
+						"Request timed out."));
+			}
+		}// run
+
+	}// inner class Pending
+
+	/**
+	 * Receives replies and completes the corresponding requests.
+	 */
+	private class Receiver implements Runnable {
+
+		private final ByteBuffer m_In = ByteBuffer
+				.allocateDirect(Modbus.MAX_IP_MESSAGE_LENGTH);
+		private final BytesInputStream m_ByteIn = new BytesInputStream(
+				Modbus.MAX_IP_MESSAGE_LENGTH);
+
+		public void run() {
+			byte[] data = m_ByteIn.getBuffer();
+			while (m_Active) {
+				try {
+					m_In.clear();
+					SocketAddress source = m_Channel.receive(m_In);
+					m_In.flip();
+					int len = m_In.remaining();
+					if (len < 8) {
+						m_Stray++;
+						continue;
+					}
+					m_In.get(data, 0, len);
+					int tid = ((data[0] & 0xff) << 8) | (data[1] & 0xff);
+
+					// 1. correlate by transaction id and source address
+					Pending p;
+					synchronized (UDPMasterPipeline.this) {
+						p = m_Pending[tid];
+						if (p == null || !p.m_Address.equals(source)) {
+							m_Stray++;
+							continue;
+						}
+						remove(tid, p);
+					}
+					p.m_TimeoutHandle.cancel();
+
+					// 2. decode and deliver the response
+					complete(p, len);
+				} catch (ClosedChannelException ex) {
+					break;
+				} catch (IOException ex) {
+					if (m_Active) {
+						ex.printStackTrace();
+					}
+				}
+			}
+		}// run
+
+		private void complete(Pending p, int len) {
+			ModbusResponse res;
+			try {
+				m_ByteIn.reset(m_ByteIn.getBuffer(), len);
+				res = ModbusResponse.createModbusResponse(m_ByteIn
+						.getBuffer()[7] & 0xff);
+				res.readFrom(m_ByteIn);
+				res.setReference(p.m_Request.getReference());
+			} catch (Exception ex) {
+				p.m_Callback.requestFailed(p.m_Request, new ModbusIOException(
+						"I/O exception - failed to read."));
+				return;
+			}
+			m_Completed++;
+			if (res instanceof ExceptionResponse) {
+				p.m_Callback.requestFailed(p.m_Request,
+						new ModbusSlaveException(((ExceptionResponse) res)
+								.getExceptionCode()));
+			} else {
+				p.m_Callback.responseReceived(p.m_Request, res);
+			}
+		}// complete
+
+	}// inner class Receiver
+
+}// class UDPMasterPipeline
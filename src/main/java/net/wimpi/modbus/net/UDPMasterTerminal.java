@@ -23,6 +23,7 @@ import java.net.InetAddress;
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.io.ModbusUDPTransport;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.util.BufferPool;
 
 /**
  * Class implementing a <tt>UDPMasterTerminal</tt>.
@@ -30,7 +31,7 @@ import net.wimpi.modbus.procimg.ProcessImage;
  * @author Dieter Wimberger
  * @version @version@ (@date@)
  */
-class UDPMasterTerminal implements UDPTerminal {
+class UDPMasterTerminal implements BufferedUDPTerminal {
 
 	private DatagramSocket m_Socket;
 	private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
@@ -40,6 +41,12 @@ class UDPMasterTerminal implements UDPTerminal {
 	private int m_RemotePort = Modbus.DEFAULT_PORT;
 	private int m_LocalPort = Modbus.DEFAULT_PORT;
 	protected ModbusUDPTransport m_ModbusTransport;
+	private final BufferPool m_Pool = BufferPool.getDefault();
+	private TransportOptions m_Options = new TransportOptions();
+	private final DatagramPacket m_SendPacket = new DatagramPacket(
+			new byte[0], 0);
+	private final DatagramPacket m_ReceivePacket = new DatagramPacket(
+			new byte[0], 0);
 
 	public UDPMasterTerminal() {
 	}// constructor
@@ -64,6 +71,10 @@ class UDPMasterTerminal implements UDPTerminal {
 		m_LocalPort = port;
 	}// setLocalPort
 
+	protected void setTransportOptions(TransportOptions options) {
+		m_Options = options;
+	}// setTransportOptions
+
 	/**
 	 * Returns the destination port of this <tt>UDPSlaveTerminal</tt>.
 	 * 
@@ -146,8 +157,7 @@ class UDPMasterTerminal implements UDPTerminal {
 								+ m_RemoteAddress.toString() + ":rport="
 								+ m_RemotePort);
 
-			m_Socket.setReceiveBufferSize(1024);
-			m_Socket.setSendBufferSize(1024);
+			m_Options.apply(m_Socket);
 
 			m_ModbusTransport = new ModbusUDPTransport(this);
 			m_Active = true;
@@ -210,22 +220,43 @@ class UDPMasterTerminal implements UDPTerminal {
 		}
 	}// sendPackage
 
+	public void sendMessage(byte[] msg, int len) throws Exception {
+		try {
+			synchronized (m_Socket) {
+				m_SendPacket.setData(msg, 0, len);
+				m_SendPacket.setAddress(m_RemoteAddress);
+				m_SendPacket.setPort(m_RemotePort);
+				m_Socket.send(m_SendPacket);
+			}
+		} finally {
+			m_Pool.release(msg);
+		}
+	}// sendPackage
+
 	public byte[] receiveMessage() throws Exception {
 
 		// 1. Prepare buffer and receive package
-		byte[] buffer = new byte[256];// max size
-		DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-		synchronized (m_Socket) {
-			m_Socket.setSoTimeout(m_Timeout);
-			m_Socket.receive(packet);
+		byte[] buffer = m_Pool.acquire(Modbus.MAX_IP_MESSAGE_LENGTH);
+		try {
+			synchronized (m_Socket) {
+				m_ReceivePacket.setData(buffer);
+				m_Socket.setSoTimeout(m_Timeout);
+				m_Socket.receive(m_ReceivePacket);
+			}
+		} catch (Exception ex) {
+			m_Pool.release(buffer);
+			throw ex;
 		}
 		return buffer;
 	}// receiveMessage
 
-	public void receiveMessage(byte[] buffer) throws Exception {
-		DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-		m_Socket.setSoTimeout(m_Timeout);
-		m_Socket.receive(packet);
+	public int receiveMessage(byte[] buffer) throws Exception {
+		synchronized (m_Socket) {
+			m_ReceivePacket.setData(buffer);
+			m_Socket.setSoTimeout(m_Timeout);
+			m_Socket.receive(m_ReceivePacket);
+			return m_ReceivePacket.getLength();
+		}
 	}// receiveMessage
 	
 	/** Set the process image to associate with this connection.
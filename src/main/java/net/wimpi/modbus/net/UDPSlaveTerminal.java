@@ -22,12 +22,15 @@ package net.wimpi.modbus.net;
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.io.ModbusUDPTransport;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.util.BufferPool;
 import net.wimpi.modbus.util.LinkedQueue;
 import net.wimpi.modbus.util.ModbusUtil;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.SocketAddress;
 import java.util.Hashtable;
 
 /**
@@ -36,7 +39,7 @@ import java.util.Hashtable;
  * @author Dieter Wimberger
  * @version @version@ (@date@)
  */
-class UDPSlaveTerminal implements UDPTerminal {
+class UDPSlaveTerminal implements BufferedUDPTerminal {
 
 	// instance attributes
 	private DatagramSocket m_Socket;
@@ -55,6 +58,8 @@ class UDPSlaveTerminal implements UDPTerminal {
 	private Thread m_Sender;
 
 	protected Hashtable<Integer, DatagramPacket> m_Requests;
+	private final BufferPool m_Pool = BufferPool.getDefault();
+	private TransportOptions m_Options = new TransportOptions();
 
 	protected UDPSlaveTerminal() {
 		m_SendQueue = new LinkedQueue();
@@ -81,6 +86,10 @@ class UDPSlaveTerminal implements UDPTerminal {
 		m_LocalPort = port;
 	}// setLocalPort
 
+	protected void setTransportOptions(TransportOptions options) {
+		m_Options = options;
+	}// setTransportOptions
+
 	/**
 	 * Tests if this <tt>UDPSlaveTerminal</tt> is active.
 	 * 
@@ -116,8 +125,7 @@ class UDPSlaveTerminal implements UDPTerminal {
 				System.out.println("UDPSlaveTerminal::addr=:"
 						+ m_LocalAddress.toString() + ":port=" + m_LocalPort);
 
-			m_Socket.setReceiveBufferSize(1024);
-			m_Socket.setSendBufferSize(1024);
+			m_Options.apply(m_Socket);
 			m_PacketReceiver = new PacketReceiver();
 			m_Receiver = new Thread(m_PacketReceiver);
 			m_Receiver.start();
@@ -214,9 +222,61 @@ class UDPSlaveTerminal implements UDPTerminal {
 		m_SendQueue.put(msg);
 	}// sendPackage
 
+	public void sendMessage(byte[] msg, int len) throws Exception {
+		// the length is taken from the header by the sender
+		m_SendQueue.put(msg);
+	}// sendPackage
+
 	public byte[] receiveMessage() throws Exception {
-		return (byte[]) m_ReceiveQueue.take();
+		DatagramPacket packet = (DatagramPacket) m_ReceiveQueue.take();
+		// remember the source for the response sent through the transport
+		byte[] buffer = packet.getData();
+		m_Requests.put(Integer.valueOf(ModbusUtil.registersToInt(buffer)), packet);
+		return buffer;
 	}// receiveMessage
+
+	public int receiveMessage(byte[] buffer) throws Exception {
+		DatagramPacket packet = (DatagramPacket) m_ReceiveQueue.take();
+		byte[] data = packet.getData();
+		int len = Math.min(packet.getLength(), buffer.length);
+		System.arraycopy(data, 0, buffer, 0, len);
+		// only the source is needed for routing the response
+		m_Requests.put(Integer.valueOf(ModbusUtil.registersToInt(data)), packet);
+		m_Pool.release(data);
+		return len;
+	}// receiveMessage
+
+	/**
+	 * Receives the next request datagram together with its source. Unlike
+	 * {@link #receiveMessage()} the request is not registered for routing by
+	 * transaction identifier; the response has to be sent with
+	 * {@link #send(byte[], int, SocketAddress)}. The data buffer of the packet
+	 * is obtained from the default <tt>BufferPool</tt>.
+	 * 
+	 * @return the received <tt>DatagramPacket</tt>.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting.
+	 */
+	DatagramPacket receivePacket() throws InterruptedException {
+		return (DatagramPacket) m_ReceiveQueue.take();
+	}// receivePacket
+
+	/**
+	 * Sends the first <tt>len</tt> bytes of the given message to the given
+	 * destination, directly on the calling thread.
+	 * 
+	 * @param msg
+	 *            the message as <tt>byte[]</tt>.
+	 * @param len
+	 *            the length of the message.
+	 * @param dest
+	 *            the address of the client.
+	 * @throws IOException
+	 *             if sending the message fails.
+	 */
+	void send(byte[] msg, int len, SocketAddress dest) throws IOException {
+		m_Socket.send(new DatagramPacket(msg, len, dest));
+	}// send
 	
 	/** Set the process image to associate with this connection.
 	 * @param image The process image to set.
@@ -228,6 +288,8 @@ class UDPSlaveTerminal implements UDPTerminal {
 	class PacketSender implements Runnable {
 
 		private boolean m_Continue;
+		private final DatagramPacket m_Packet = new DatagramPacket(
+				new byte[0], 0);
 
 		public PacketSender() {
 			m_Continue = true;
@@ -241,10 +303,17 @@ class UDPSlaveTerminal implements UDPTerminal {
 					DatagramPacket req = (DatagramPacket) m_Requests
 							.remove(new Integer(ModbusUtil
 									.registersToInt(message)));
-					// 2. create new Package with corresponding address and port
-					DatagramPacket res = new DatagramPacket(message,
-							message.length, req.getAddress(), req.getPort());
-					m_Socket.send(res);
+					// 2. send to the corresponding address and port
+					int len = Math.min(message.length,
+							6 + (ModbusUtil.registerToShort(message, 4) & 0xffff));
+					m_Packet.setData(message, 0, len);
+					m_Packet.setAddress(req.getAddress());
+					m_Packet.setPort(req.getPort());
+					try {
+						m_Socket.send(m_Packet);
+					} finally {
+						m_Pool.release(message);
+					}
 					if (Modbus.debug)
 						System.out.println("Sent package from queue.");
 				} catch (Exception ex) {
@@ -271,15 +340,12 @@ class UDPSlaveTerminal implements UDPTerminal {
 			do {
 				try {
 					// 1. Prepare buffer and receive package
-					byte[] buffer = new byte[256];// max size
+					byte[] buffer = m_Pool.acquire(Modbus.MAX_IP_MESSAGE_LENGTH);
 					DatagramPacket packet = new DatagramPacket(buffer,
 							buffer.length);
 					m_Socket.receive(packet);
-					// 2. Extract TID and remember request
-					Integer tid = new Integer(ModbusUtil.registersToInt(buffer));
-					m_Requests.put(tid, packet);
-					// 3. place the data buffer in the queue
-					m_ReceiveQueue.put(buffer);
+					// 2. place the packet in the queue, it carries the source
+					m_ReceiveQueue.put(packet);
 					if (Modbus.debug)
 						System.out.println("Received package to queue.");
 				} catch (Exception ex) {
@@ -0,0 +1,552 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.procimg;
+
+import java.nio.ByteBuffer;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.util.BitVector;
+
+/**
+ * Class implementing a process image backed by arrays of fixed size.
+ * <p>
+ * The registers are stored in Modbus wire format, so that a range of them
+ * is answered with a single bulk copy into the outgoing frame. Coils and
+ * discrete inputs are packed 64 to a <tt>long</tt> in a <tt>BitVector</tt>,
+ * and packed to and from the frame a word at a time; the full address space
+ * of 65536 bits takes 8 KB. The <tt>DigitalIn</tt>, <tt>DigitalOut</tt>,
+ * <tt>InputRegister</tt> and <tt>Register</tt> instances returned by the
+ * <tt>ProcessImage</tt> methods are views on the tables; they are created on
+ * first access and cached.
+ * <p>
+ * All accesses synchronize on the image, so bulk reads see a consistent
+ * snapshot. The unit identifier is handled as by the
+ * <tt>SimpleProcessImage</tt>.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class ArrayProcessImage implements BulkProcessImage {
+
+	private final BitVector m_Coils;
+	private final BitVector m_DiscreteInputs;
+	private final byte[] m_InputRegisters;
+	private final byte[] m_Registers;
+
+	// bit views are allocated on first use, as most bit tables are only
+	// accessed in ranges
+	private DigitalOut[] m_CoilViews;
+	private DigitalIn[] m_DiscreteInputViews;
+	private final InputRegister[] m_InputRegisterViews;
+	private final Register[] m_RegisterViews;
+
+	private Integer m_UnitId = null;
+	private ProcessImageFactory m_Factory = DefaultProcessImageFactory
+			.getReference();
+
+	/**
+	 * Constructs a new <tt>ArrayProcessImage</tt> instance with tables of the
+	 * given sizes, all cleared.
+	 * 
+	 * @param coils
+	 *            the number of coils.
+	 * @param discreteInputs
+	 *            the number of discrete inputs.
+	 * @param inputRegisters
+	 *            the number of input registers.
+	 * @param registers
+	 *            the number of holding registers.
+	 */
+	public ArrayProcessImage(int coils, int discreteInputs,
+			int inputRegisters, int registers) {
+		m_Coils = new BitVector(coils);
+		m_DiscreteInputs = new BitVector(discreteInputs);
+		m_InputRegisters = new byte[inputRegisters * 2];
+		m_Registers = new byte[registers * 2];
+		m_InputRegisterViews = new InputRegister[inputRegisters];
+		m_RegisterViews = new Register[registers];
+	}// constructor
+
+	/**
+	 * Set the unit ID for this process image. When the unit ID is not set, or
+	 * is set to null, the process image will allow the jamod slave to respond
+	 * to all requests.
+	 * 
+	 * @param unitId
+	 *            the unit ID, or <tt>null</tt>.
+	 * @see SimpleProcessImage#setUnitId(Integer)
+	 */
+	public void setUnitId(Integer unitId) {
+		m_UnitId = unitId;
+	}// setUnitId
+
+	public Integer getUnitId() {
+		return m_UnitId;
+	}// getUnitId
+
+	public ProcessImageFactory getProcessImageFactory() {
+		return m_Factory;
+	}// getProcessImageFactory
+
+	public void setProcessImageFactory(ProcessImageFactory pf) {
+		m_Factory = pf;
+	}// setProcessImageFactory
+
+	// direct access to the tables
+
+	public int getCoilCount() {
+		return m_Coils.size();
+	}// getCoilCount
+
+	public int getDiscreteInputCount() {
+		return m_DiscreteInputs.size();
+	}// getDiscreteInputCount
+
+	public int getInputRegisterCount() {
+		return m_InputRegisters.length / 2;
+	}// getInputRegisterCount
+
+	public int getRegisterCount() {
+		return m_Registers.length / 2;
+	}// getRegisterCount
+
+	public synchronized boolean getCoil(int ref) {
+		return m_Coils.getBit(ref);
+	}// getCoil
+
+	public synchronized void setCoil(int ref, boolean b) {
+		m_Coils.setBit(ref, b);
+	}// setCoil
+
+	/**
+	 * Copies the states of consecutive coils into a <tt>BitVector</tt>.
+	 * 
+	 * @param ref
+	 *            the reference of the first coil.
+	 * @param dst
+	 *            the <tt>BitVector</tt> to copy the states to.
+	 * @param index
+	 *            the index of the first bit in <tt>dst</tt>.
+	 * @param count
+	 *            the number of coils.
+	 */
+	public synchronized void getCoils(int ref, BitVector dst, int index,
+			int count) {
+		BitVector.copy(m_Coils, ref, dst, index, count);
+	}// getCoils
+
+	/**
+	 * Sets the states of consecutive coils from a <tt>BitVector</tt>.
+	 * 
+	 * @param ref
+	 *            the reference of the first coil.
+	 * @param src
+	 *            the <tt>BitVector</tt> holding the states.
+	 * @param index
+	 *            the index of the first bit in <tt>src</tt>.
+	 * @param count
+	 *            the number of coils.
+	 */
+	public synchronized void setCoils(int ref, BitVector src, int index,
+			int count) {
+		BitVector.copy(src, index, m_Coils, ref, count);
+	}// setCoils
+
+	public synchronized boolean getDiscreteInput(int ref) {
+		return m_DiscreteInputs.getBit(ref);
+	}// getDiscreteInput
+
+	public synchronized void setDiscreteInput(int ref, boolean b) {
+		m_DiscreteInputs.setBit(ref, b);
+	}// setDiscreteInput
+
+	/**
+	 * Copies the states of consecutive discrete inputs into a
+	 * <tt>BitVector</tt>.
+	 * 
+	 * @param ref
+	 *            the reference of the first input.
+	 * @param dst
+	 *            the <tt>BitVector</tt> to copy the states to.
+	 * @param index
+	 *            the index of the first bit in <tt>dst</tt>.
+	 * @param count
+	 *            the number of inputs.
+	 */
+	public synchronized void getDiscreteInputs(int ref, BitVector dst,
+			int index, int count) {
+		BitVector.copy(m_DiscreteInputs, ref, dst, index, count);
+	}// getDiscreteInputs
+
+	/**
+	 * Sets the states of consecutive discrete inputs from a
+	 * <tt>BitVector</tt>.
+	 * 
+	 * @param ref
+	 *            the reference of the first input.
+	 * @param src
+	 *            the <tt>BitVector</tt> holding the states.
+	 * @param index
+	 *            the index of the first bit in <tt>src</tt>.
+	 * @param count
+	 *            the number of inputs.
+	 */
+	public synchronized void setDiscreteInputs(int ref, BitVector src,
+			int index, int count) {
+		BitVector.copy(src, index, m_DiscreteInputs, ref, count);
+	}// setDiscreteInputs
+
+	/**
+	 * Returns the value of an input register as unsigned short.
+	 * 
+	 * @param ref
+	 *            the reference of the register.
+	 * @return the value as <tt>int</tt>.
+	 */
+	public synchronized int getInputRegisterValue(int ref) {
+		return getWord(m_InputRegisters, ref);
+	}// getInputRegisterValue
+
+	public synchronized void setInputRegisterValue(int ref, int v) {
+		putWord(m_InputRegisters, ref, v);
+	}// setInputRegisterValue
+
+	/**
+	 * Sets the values of consecutive input registers at once.
+	 * 
+	 * @param ref
+	 *            the reference of the first register.
+	 * @param values
+	 *            the values, as unsigned short.
+	 * @param off
+	 *            the index of the first value in <tt>values</tt>.
+	 * @param count
+	 *            the number of registers.
+	 */
+	public synchronized void setInputRegisterValues(int ref, int[] values,
+			int off, int count) {
+		for (int i = 0; i < count; i++) {
+			putWord(m_InputRegisters, ref + i, values[off + i]);
+		}
+	}// setInputRegisterValues
+
+	/**
+	 * Returns the value of a holding register as unsigned short.
+	 * 
+	 * @param ref
+	 *            the reference of the register.
+	 * @return the value as <tt>int</tt>.
+	 */
+	public synchronized int getRegisterValue(int ref) {
+		return getWord(m_Registers, ref);
+	}// getRegisterValue
+
+	public synchronized void setRegisterValue(int ref, int v) {
+		putWord(m_Registers, ref, v);
+	}// setRegisterValue
+
+	/**
+	 * Sets the values of consecutive holding registers at once.
+	 * 
+	 * @param ref
+	 *            the reference of the first register.
+	 * @param values
+	 *            the values, as unsigned short.
+	 * @param off
+	 *            the index of the first value in <tt>values</tt>.
+	 * @param count
+	 *            the number of registers.
+	 */
+	public synchronized void setRegisterValues(int ref, int[] values, int off,
+			int count) {
+		for (int i = 0; i < count; i++) {
+			putWord(m_Registers, ref + i, values[off + i]);
+		}
+	}// setRegisterValues
+
+	// ProcessImage
+
+	public DigitalOut getDigitalOut(int unitId, int ref)
+			throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, 1, m_Coils.size(), true);
+		synchronized (this) {
+			if (m_CoilViews == null) {
+				m_CoilViews = new DigitalOut[m_Coils.size()];
+			}
+			DigitalOut view = m_CoilViews[ref];
+			if (view == null) {
+				view = new CoilView(ref);
+				m_CoilViews[ref] = view;
+			}
+			return view;
+		}
+	}// getDigitalOut
+
+	public DigitalOut[] getDigitalOutRange(int unitId, int ref, int count)
+			throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_Coils.size(), false);
+		DigitalOut[] douts = new DigitalOut[count];
+		for (int i = 0; i < count; i++) {
+			douts[i] = getDigitalOut(unitId, ref + i);
+		}
+		return douts;
+	}// getDigitalOutRange
+
+	public DigitalIn getDigitalIn(int unitId, int ref)
+			throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, 1, m_DiscreteInputs.size(), false);
+		synchronized (this) {
+			if (m_DiscreteInputViews == null) {
+				m_DiscreteInputViews = new DigitalIn[m_DiscreteInputs.size()];
+			}
+			DigitalIn view = m_DiscreteInputViews[ref];
+			if (view == null) {
+				view = new DiscreteInputView(ref);
+				m_DiscreteInputViews[ref] = view;
+			}
+			return view;
+		}
+	}// getDigitalIn
+
+	public DigitalIn[] getDigitalInRange(int unitId, int ref, int count)
+			throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_DiscreteInputs.size(), false);
+		DigitalIn[] dins = new DigitalIn[count];
+		for (int i = 0; i < count; i++) {
+			dins[i] = getDigitalIn(unitId, ref + i);
+		}
+		return dins;
+	}// getDigitalInRange
+
+	public InputRegister getInputRegister(int unitId, int ref)
+			throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, 1, m_InputRegisterViews.length, false);
+		synchronized (this) {
+			InputRegister view = m_InputRegisterViews[ref];
+			if (view == null) {
+				view = new InputRegisterView(ref);
+				m_InputRegisterViews[ref] = view;
+			}
+			return view;
+		}
+	}// getInputRegister
+
+	public InputRegister[] getInputRegisterRange(int unitId, int ref,
+			int count) throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_InputRegisterViews.length, false);
+		InputRegister[] iregs = new InputRegister[count];
+		for (int i = 0; i < count; i++) {
+			iregs[i] = getInputRegister(unitId, ref + i);
+		}
+		return iregs;
+	}// getInputRegisterRange
+
+	public Register getRegister(int unitId, int ref)
+			throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, 1, m_RegisterViews.length, true);
+		synchronized (this) {
+			Register view = m_RegisterViews[ref];
+			if (view == null) {
+				view = new RegisterView(ref);
+				m_RegisterViews[ref] = view;
+			}
+			return view;
+		}
+	}// getRegister
+
+	public Register[] getRegisterRange(int unitId, int ref, int count)
+			throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_RegisterViews.length, false);
+		Register[] regs = new Register[count];
+		for (int i = 0; i < count; i++) {
+			regs[i] = getRegister(unitId, ref + i);
+		}
+		return regs;
+	}// getRegisterRange
+
+	// BulkProcessImage
+
+	public void readCoils(int unitId, int ref, int count, ByteBuffer dst,
+			int offset) throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_Coils.size(), false);
+		synchronized (this) {
+			m_Coils.pack(ref, count, dst, offset);
+		}
+	}// readCoils
+
+	public void readDiscreteInputs(int unitId, int ref, int count,
+			ByteBuffer dst, int offset) throws IllegalAddressException,
+			InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_DiscreteInputs.size(), false);
+		synchronized (this) {
+			m_DiscreteInputs.pack(ref, count, dst, offset);
+		}
+	}// readDiscreteInputs
+
+	public void readInputRegisters(int unitId, int ref, int count,
+			ByteBuffer dst, int offset) throws IllegalAddressException,
+			InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_InputRegisterViews.length, false);
+		synchronized (this) {
+			copyWords(m_InputRegisters, ref, count, dst, offset);
+		}
+	}// readInputRegisters
+
+	public void readRegisters(int unitId, int ref, int count, ByteBuffer dst,
+			int offset) throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_RegisterViews.length, false);
+		synchronized (this) {
+			copyWords(m_Registers, ref, count, dst, offset);
+		}
+	}// readRegisters
+
+	public void writeCoils(int unitId, int ref, int count, ByteBuffer src,
+			int offset) throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_Coils.size(), true);
+		synchronized (this) {
+			m_Coils.unpack(src, offset, ref, count);
+		}
+	}// writeCoils
+
+	public void writeCoils(int unitId, int ref, int count, BitVector src,
+			int index) throws IllegalAddressException, InvalidUnitIDException {
+		checkRange(unitId, ref, count, m_Coils.size(), true);
+		synchronized (this) {
+			BitVector.copy(src, index, m_Coils, ref, count);
+		}
+	}// writeCoils
+
+	private void checkRange(int unitId, int ref, int count, int size,
+			boolean write) throws IllegalAddressException,
+			InvalidUnitIDException {
+		// broadcasts are accepted only on the paths write requests take
+		if (m_UnitId != null) {
+			if (unitId != m_UnitId
+					&& !(write && unitId == Modbus.BROADCAST_UNIT_ID)) {
+				throw new InvalidUnitIDException();
+			}
+		}
+		if (ref < 0 || count < 0 || ref + count > size) {
+			throw new IllegalAddressException();
+		}
+	}// checkRange
+
+	private static void copyWords(byte[] words, int ref, int count,
+			ByteBuffer dst, int offset) {
+		int pos = dst.position();
+		dst.position(offset);
+		dst.put(words, ref * 2, count * 2);
+		dst.position(pos);
+	}// copyWords
+
+	private static int getWord(byte[] words, int ref) {
+		return (words[2 * ref] & 0xff) << 8 | (words[2 * ref + 1] & 0xff);
+	}// getWord
+
+	private static void putWord(byte[] words, int ref, int v) {
+		words[2 * ref] = (byte) (v >> 8);
+		words[2 * ref + 1] = (byte) v;
+	}// putWord
+
+	class CoilView implements DigitalOut {
+
+		private final int m_Ref;
+
+		CoilView(int ref) {
+			m_Ref = ref;
+		}// constructor
+
+		public boolean isSet() {
+			return getCoil(m_Ref);
+		}// isSet
+
+		public void set(boolean b) {
+			setCoil(m_Ref, b);
+		}// set
+
+	}// inner class CoilView
+
+	class DiscreteInputView implements DigitalIn {
+
+		private final int m_Ref;
+
+		DiscreteInputView(int ref) {
+			m_Ref = ref;
+		}// constructor
+
+		public boolean isSet() {
+			return getDiscreteInput(m_Ref);
+		}// isSet
+
+	}// inner class DiscreteInputView
+
+	class InputRegisterView implements InputRegister {
+
+		protected final int m_Ref;
+
+		InputRegisterView(int ref) {
+			m_Ref = ref;
+		}// constructor
+
+		public int getValue() {
+			return getInputRegisterValue(m_Ref);
+		}// getValue
+
+		public int toUnsignedShort() {
+			return getValue();
+		}// toUnsignedShort
+
+		public short toShort() {
+			return (short) getValue();
+		}// toShort
+
+		public byte[] toBytes() {
+			int v = getValue();
+			return new byte[] { (byte) (v >> 8), (byte) v };
+		}// toBytes
+
+	}// inner class InputRegisterView
+
+	class RegisterView extends InputRegisterView implements Register {
+
+		RegisterView(int ref) {
+			super(ref);
+		}// constructor
+
+		public int getValue() {
+			return getRegisterValue(m_Ref);
+		}// getValue
+
+		public void setValue(int v) {
+			setRegisterValue(m_Ref, v);
+		}// setValue
+
+		public void setValue(short s) {
+			setRegisterValue(m_Ref, s);
+		}// setValue
+
+		public void setValue(byte[] bytes) {
+			if (bytes.length < 2) {
+				throw new IllegalArgumentException();
+			}
+			setRegisterValue(m_Ref, (bytes[0] & 0xff) << 8 | (bytes[1] & 0xff));
+		}// setValue
+
+	}// inner class RegisterView
+
+}// class ArrayProcessImage
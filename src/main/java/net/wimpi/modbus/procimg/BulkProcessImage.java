@@ -0,0 +1,170 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.procimg;
+
+import java.nio.ByteBuffer;
+
+import net.wimpi.modbus.util.BitVector;
+
+/**
+ * Interface defining a process image that can copy ranges of its tables
+ * directly into an outgoing frame, and ranges of coils from an incoming one.
+ * <p>
+ * The data is put in Modbus wire format, i.e. registers as big endian
+ * 16-bit words and bits packed eight to a byte, starting with the least
+ * significant bit. Implementations should put a consistent snapshot of the
+ * range, so that values spanning several registers are not torn by
+ * concurrent writes. The position and limit of the buffer are left as they
+ * are.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public interface BulkProcessImage extends ProcessImage {
+
+	/**
+	 * Puts the values of a range of coils into the given buffer.
+	 * 
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param ref
+	 *            the reference of the first coil.
+	 * @param count
+	 *            the number of coils.
+	 * @param dst
+	 *            the buffer to put the packed bits into.
+	 * @param offset
+	 *            the absolute offset in the buffer to start at.
+	 * @throws IllegalAddressException
+	 *             if the range is not valid.
+	 * @throws InvalidUnitIDException
+	 *             if the unit identifier is not valid for this image.
+	 */
+	public void readCoils(int unitId, int ref, int count, ByteBuffer dst,
+			int offset) throws IllegalAddressException, InvalidUnitIDException;
+
+	/**
+	 * Puts the values of a range of discrete inputs into the given buffer.
+	 * 
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param ref
+	 *            the reference of the first input.
+	 * @param count
+	 *            the number of inputs.
+	 * @param dst
+	 *            the buffer to put the packed bits into.
+	 * @param offset
+	 *            the absolute offset in the buffer to start at.
+	 * @throws IllegalAddressException
+	 *             if the range is not valid.
+	 * @throws InvalidUnitIDException
+	 *             if the unit identifier is not valid for this image.
+	 */
+	public void readDiscreteInputs(int unitId, int ref, int count,
+			ByteBuffer dst, int offset) throws IllegalAddressException,
+			InvalidUnitIDException;
+
+	/**
+	 * Puts the values of a range of input registers into the given buffer.
+	 * 
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param ref
+	 *            the reference of the first register.
+	 * @param count
+	 *            the number of registers.
+	 * @param dst
+	 *            the buffer to put the register bytes into.
+	 * @param offset
+	 *            the absolute offset in the buffer to start at.
+	 * @throws IllegalAddressException
+	 *             if the range is not valid.
+	 * @throws InvalidUnitIDException
+	 *             if the unit identifier is not valid for this image.
+	 */
+	public void readInputRegisters(int unitId, int ref, int count,
+			ByteBuffer dst, int offset) throws IllegalAddressException,
+			InvalidUnitIDException;
+
+	/**
+	 * Puts the values of a range of holding registers into the given buffer.
+	 * 
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param ref
+	 *            the reference of the first register.
+	 * @param count
+	 *            the number of registers.
+	 * @param dst
+	 *            the buffer to put the register bytes into.
+	 * @param offset
+	 *            the absolute offset in the buffer to start at.
+	 * @throws IllegalAddressException
+	 *             if the range is not valid.
+	 * @throws InvalidUnitIDException
+	 *             if the unit identifier is not valid for this image.
+	 */
+	public void readRegisters(int unitId, int ref, int count, ByteBuffer dst,
+			int offset) throws IllegalAddressException, InvalidUnitIDException;
+
+	/**
+	 * Sets the values of a range of coils from the packed bits in the given
+	 * buffer. Nothing is written unless the whole range is valid.
+	 * 
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param ref
+	 *            the reference of the first coil.
+	 * @param count
+	 *            the number of coils.
+	 * @param src
+	 *            the buffer holding the packed bits.
+	 * @param offset
+	 *            the absolute offset in the buffer to start at.
+	 * @throws IllegalAddressException
+	 *             if the range is not valid.
+	 * @throws InvalidUnitIDException
+	 *             if the unit identifier is not valid for this image.
+	 */
+	public void writeCoils(int unitId, int ref, int count, ByteBuffer src,
+			int offset) throws IllegalAddressException, InvalidUnitIDException;
+
+	/**
+	 * Sets the values of a range of coils from the bits of the given
+	 * <tt>BitVector</tt>. Nothing is written unless the whole range is valid.
+	 * 
+	 * @param unitId
+	 *            the unit identifier of the request.
+	 * @param ref
+	 *            the reference of the first coil.
+	 * @param count
+	 *            the number of coils.
+	 * @param src
+	 *            the <tt>BitVector</tt> holding the states.
+	 * @param index
+	 *            the index of the first bit in <tt>src</tt>.
+	 * @throws IllegalAddressException
+	 *             if the range is not valid.
+	 * @throws InvalidUnitIDException
+	 *             if the unit identifier is not valid for this image.
+	 */
+	public void writeCoils(int unitId, int ref, int count, BitVector src,
+			int index) throws IllegalAddressException, InvalidUnitIDException;
+
+}// interface BulkProcessImage
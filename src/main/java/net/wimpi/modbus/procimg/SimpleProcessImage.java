@@ -21,6 +21,8 @@ package net.wimpi.modbus.procimg;
 
 import java.util.Vector;
 
+import net.wimpi.modbus.Modbus;
+
 /**
  * Class implementing a simple process image to be able to run unit tests or
  * handle simple cases.
@@ -82,7 +84,9 @@ public class SimpleProcessImage implements ProcessImage {
 	 * <p>
 	 * If the unit ID is explicitly set, then the process image will not allow a
 	 * jamod slave to send a response unless the requests was addressed with the
-	 * correct unit ID.
+	 * correct unit ID. Write requests addressed to the broadcast unit ID are
+	 * accepted as well, so that broadcast writes are applied; reads addressed
+	 * to it are not.
 	 * 
 	 * @param unitId
 	 */
@@ -94,9 +98,16 @@ public class SimpleProcessImage implements ProcessImage {
 		return m_UnitId;
 	}
 
-	private void checkUnitId(int unitId) throws InvalidUnitIDException {
+	/**
+	 * Checks the unit ID a request was addressed with. The broadcast unit ID
+	 * is accepted only through the single element lookups of coils and
+	 * registers, which write requests (FC 5, 6, 15, 16) are served through.
+	 */
+	private void checkUnitId(int unitId, boolean write)
+			throws InvalidUnitIDException {
 		if (m_UnitId != null) {
-			if (unitId != m_UnitId) {
+			if (unitId != m_UnitId
+					&& !(write && unitId == Modbus.BROADCAST_UNIT_ID)) {
 				throw new InvalidUnitIDException();
 			}
 		}
@@ -106,7 +117,7 @@ public class SimpleProcessImage implements ProcessImage {
 	public DigitalIn getDigitalIn(int unitId, int ref)
 			throws IllegalAddressException, InvalidUnitIDException {
 
-		checkUnitId(unitId);
+		checkUnitId(unitId, false);
 
 		try {
 			return m_DigitalInputs.elementAt(ref);
@@ -119,7 +130,7 @@ public class SimpleProcessImage implements ProcessImage {
 	public DigitalIn[] getDigitalInRange(int unitId, int ref, int count)
 			throws IllegalAddressException, InvalidUnitIDException {
 
-		checkUnitId(unitId);
+		checkUnitId(unitId, false);
 
 		// ensure valid reference range
 		if (ref < 0 || ref + count > m_DigitalInputs.size()) {
@@ -149,7 +160,7 @@ public class SimpleProcessImage implements ProcessImage {
 	public DigitalOut getDigitalOut(int unitId, int ref)
 			throws IllegalAddressException, InvalidUnitIDException {
 
-		checkUnitId(unitId);
+		checkUnitId(unitId, true);
 
 		try {
 			return m_DigitalOutputs.elementAt(ref);
@@ -162,7 +173,7 @@ public class SimpleProcessImage implements ProcessImage {
 	public DigitalOut[] getDigitalOutRange(int unitId, int ref, int count)
 			throws IllegalAddressException, InvalidUnitIDException {
 
-		checkUnitId(unitId);
+		checkUnitId(unitId, false);
 
 		// ensure valid reference range
 		if (ref < 0 || ref + count > m_DigitalOutputs.size()) {
@@ -192,7 +203,7 @@ public class SimpleProcessImage implements ProcessImage {
 	public InputRegister getInputRegister(int unitId, int ref)
 			throws IllegalAddressException, InvalidUnitIDException {
 
-		checkUnitId(unitId);
+		checkUnitId(unitId, false);
 
 		try {
 			return m_InputRegisters.elementAt(ref);
@@ -205,7 +216,7 @@ public class SimpleProcessImage implements ProcessImage {
 	public InputRegister[] getInputRegisterRange(int unitId, int ref, int count)
 			throws IllegalAddressException, InvalidUnitIDException {
 
-		checkUnitId(unitId);
+		checkUnitId(unitId, false);
 
 		// ensure valid reference range
 		if (ref < 0 || ref + count > m_InputRegisters.size()) {
@@ -235,7 +246,7 @@ public class SimpleProcessImage implements ProcessImage {
 	public Register getRegister(int unitId, int ref)
 			throws IllegalAddressException, InvalidUnitIDException {
 
-		checkUnitId(unitId);
+		checkUnitId(unitId, true);
 
 		try {
 			return m_Registers.elementAt(ref);
@@ -248,7 +259,7 @@ public class SimpleProcessImage implements ProcessImage {
 	public Register[] getRegisterRange(int unitId, int ref, int count)
 			throws IllegalAddressException, InvalidUnitIDException {
 
-		checkUnitId(unitId);
+		checkUnitId(unitId, false);
 
 		// ensure valid reference range
 		if (ref < 0 || ref + count > m_Registers.size()) {
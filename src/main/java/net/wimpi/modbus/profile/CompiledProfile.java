@@ -0,0 +1,464 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.profile;
+
+import java.util.Arrays;
+
+import net.wimpi.modbus.procimg.ArrayProcessImage;
+import net.wimpi.modbus.util.BitVector;
+import net.wimpi.modbus.util.RegisterCodec;
+
+/**
+ * Class implementing a compiled <tt>DeviceProfile</tt>: a read plan, i.e.
+ * the blocks of registers or bits to be read from a device, and a decoder
+ * turning the data of each block into the values of its tags.
+ * <p>
+ * The values of all tags are decoded into one flat array, indexed like the
+ * tags of the profile: a <tt>double[]</tt> with the scaled values, or a
+ * <tt>long[]</tt> with the unscaled integer values. Consecutive tags of the
+ * same type, order and scale at consecutive addresses are decoded with a
+ * single bulk call. Decoding does not allocate.
+ * <p>
+ * A compiled profile is immutable and may be shared by any number of
+ * masters and threads. On the slave side, it populates the tables of an
+ * <tt>ArrayProcessImage</tt> from the tag values.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ * @see DeviceProfile#compile(int)
+ */
+public final class CompiledProfile {
+
+	/**
+	 * The maximum number of registers read by one block.
+	 */
+	public static final int MAX_READ_REGISTERS = 125;
+
+	/**
+	 * The maximum number of bits read by one block.
+	 */
+	public static final int MAX_READ_BITS = 2000;
+
+	private final DeviceProfile m_Profile;
+	private final Tag[] m_Tags;
+
+	// the blocks
+	private final int[] m_BlockTable;
+	private final int[] m_BlockRef;
+	private final int[] m_BlockSize;
+	private final int[] m_BlockFirst; // first entry, plus an end marker
+
+	// the entries of the blocks, one per tag
+	private final int[] m_Index;
+	private final int[] m_Offset;
+	private final int[] m_Type;
+	private final int[] m_Order;
+	private final double[] m_Scale;
+	private final int[] m_Run; // tags decoded together, 0 inside a run
+
+	/**
+	 * Constructs a new <tt>CompiledProfile</tt>.
+	 * 
+	 * @param profile
+	 *            the <tt>DeviceProfile</tt> compiled.
+	 * @param tags
+	 *            the tags of the profile.
+	 * @param maxGap
+	 *            the maximum gap in registers.
+	 */
+	CompiledProfile(DeviceProfile profile, Tag[] tags, int maxGap) {
+		m_Profile = profile;
+		m_Tags = tags;
+		int n = tags.length;
+		m_Index = new int[n];
+		m_Offset = new int[n];
+		m_Type = new int[n];
+		m_Order = new int[n];
+		m_Scale = new double[n];
+		m_Run = new int[n];
+
+		// 1. sort the tags by table and address, keeping the profile order
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = ((long) tags[i].getTable() << 48)
+					| ((long) tags[i].getAddress() << 24) | i;
+		}
+		Arrays.sort(keys);
+
+		// 2. merge them into blocks
+		int[] table = new int[n];
+		int[] ref = new int[n];
+		int[] size = new int[n];
+		int[] first = new int[n + 1];
+		int blocks = 0;
+		int end = 0;
+		for (int k = 0; k < n; k++) {
+			Tag tag = tags[(int) (keys[k] & 0xffffff)];
+			int t = tag.getTable();
+			int gap = tag.isBit() ? maxGap * 16 : maxGap;
+			int max = tag.isBit() ? MAX_READ_BITS : MAX_READ_REGISTERS;
+			int tagEnd = tag.getAddress() + tag.getWordCount();
+			if (blocks == 0 || table[blocks - 1] != t
+					|| tag.getAddress() > end + gap
+					|| tagEnd - ref[blocks - 1] > max) {
+				table[blocks] = t;
+				ref[blocks] = tag.getAddress();
+				first[blocks] = k;
+				blocks++;
+				end = tagEnd;
+			} else if (tagEnd > end) {
+				end = tagEnd;
+			}
+			size[blocks - 1] = end - ref[blocks - 1];
+			m_Index[k] = (int) (keys[k] & 0xffffff);
+			m_Offset[k] = tag.getAddress() - ref[blocks - 1];
+			m_Type[k] = tag.getType();
+			m_Order[k] = tag.getOrder();
+			m_Scale[k] = tag.getScale();
+		}
+		first[blocks] = n;
+		m_BlockTable = copyOf(table, blocks);
+		m_BlockRef = copyOf(ref, blocks);
+		m_BlockSize = copyOf(size, blocks);
+		m_BlockFirst = copyOf(first, blocks + 1);
+
+		// 3. find the runs of tags that can be decoded together
+		for (int b = 0; b < blocks; b++) {
+			int start = m_BlockFirst[b];
+			for (int k = start; k < m_BlockFirst[b + 1]; k++) {
+				if (k > start && m_Type[k] != Tag.BIT
+						&& extendsRun(start, k)) {
+					m_Run[start]++;
+				} else {
+					start = k;
+					m_Run[k] = 1;
+				}
+			}
+		}
+	}// constructor
+
+	/**
+	 * Returns the profile this plan was compiled from.
+	 * 
+	 * @return the <tt>DeviceProfile</tt>.
+	 */
+	public DeviceProfile getProfile() {
+		return m_Profile;
+	}// getProfile
+
+	/**
+	 * Returns the number of tags, i.e. the length of the value arrays.
+	 * 
+	 * @return the number of tags.
+	 */
+	public int getTagCount() {
+		return m_Tags.length;
+	}// getTagCount
+
+	/**
+	 * Returns the tag with the given index.
+	 * 
+	 * @param index
+	 *            the index of the tag.
+	 * @return the <tt>Tag</tt>.
+	 */
+	public Tag getTag(int index) {
+		return m_Tags[index];
+	}// getTag
+
+	/**
+	 * Returns the number of blocks read per scan.
+	 * 
+	 * @return the number of blocks.
+	 */
+	public int getBlockCount() {
+		return m_BlockRef.length;
+	}// getBlockCount
+
+	/**
+	 * Returns the table of the given block.
+	 * 
+	 * @param block
+	 *            the index of the block.
+	 * @return the table, e.g. <tt>Tag.HOLDING_REGISTER</tt>.
+	 */
+	public int getBlockTable(int block) {
+		return m_BlockTable[block];
+	}// getBlockTable
+
+	/**
+	 * Returns the reference of the first bit or register of the given block.
+	 * 
+	 * @param block
+	 *            the index of the block.
+	 * @return the reference as <tt>int</tt>.
+	 */
+	public int getBlockReference(int block) {
+		return m_BlockRef[block];
+	}// getBlockReference
+
+	/**
+	 * Returns the number of bits or registers of the given block.
+	 * 
+	 * @param block
+	 *            the index of the block.
+	 * @return the number as <tt>int</tt>.
+	 */
+	public int getBlockSize(int block) {
+		return m_BlockSize[block];
+	}// getBlockSize
+
+	/**
+	 * Decodes the tags of a register block from its register values.
+	 * 
+	 * @param block
+	 *            the index of the block.
+	 * @param words
+	 *            the register values read for the block.
+	 * @param values
+	 *            the scaled values of all tags.
+	 */
+	public void decode(int block, int[] words, double[] values) {
+		int last = m_BlockFirst[block + 1];
+		for (int k = m_BlockFirst[block]; k < last; k += m_Run[k]) {
+			RegisterCodec.decode(words, m_Offset[k], m_Type[k], m_Order[k],
+					values, m_Index[k], m_Run[k]);
+			scale(k, values);
+		}
+	}// decode
+
+	/**
+	 * Decodes the tags of a register block from its raw registers, e.g. the
+	 * data of a response frame.
+	 * 
+	 * @param block
+	 *            the index of the block.
+	 * @param data
+	 *            the raw registers read for the block.
+	 * @param off
+	 *            the offset of the first register in <tt>data</tt>.
+	 * @param values
+	 *            the scaled values of all tags.
+	 */
+	public void decode(int block, byte[] data, int off, double[] values) {
+		int last = m_BlockFirst[block + 1];
+		for (int k = m_BlockFirst[block]; k < last; k += m_Run[k]) {
+			RegisterCodec.decode(data, off + m_Offset[k] * 2, m_Type[k],
+					m_Order[k], values, m_Index[k], m_Run[k]);
+			scale(k, values);
+		}
+	}// decode
+
+	/**
+	 * Decodes the tags of a bit block, to <tt>0</tt> or <tt>1</tt>.
+	 * 
+	 * @param block
+	 *            the index of the block.
+	 * @param bits
+	 *            the bits read for the block.
+	 * @param values
+	 *            the values of all tags.
+	 */
+	public void decode(int block, BitVector bits, double[] values) {
+		int last = m_BlockFirst[block + 1];
+		for (int k = m_BlockFirst[block]; k < last; k++) {
+			values[m_Index[k]] = bits.getBit(m_Offset[k]) ? 1 : 0;
+		}
+	}// decode
+
+	/**
+	 * Decodes the tags of a register block from its register values, into
+	 * unscaled integers. Float values are rounded.
+	 * 
+	 * @param block
+	 *            the index of the block.
+	 * @param words
+	 *            the register values read for the block.
+	 * @param values
+	 *            the unscaled values of all tags.
+	 */
+	public void decode(int block, int[] words, long[] values) {
+		int last = m_BlockFirst[block + 1];
+		for (int k = m_BlockFirst[block]; k < last; k += m_Run[k]) {
+			if (RegisterCodec.isInteger(m_Type[k])) {
+				RegisterCodec.decode(words, m_Offset[k], m_Type[k],
+						m_Order[k], values, m_Index[k], m_Run[k]);
+			} else {
+				int size = RegisterCodec.getWordCount(m_Type[k]);
+				for (int i = 0; i < m_Run[k]; i++) {
+					int idx = m_Offset[k] + i * size;
+					double v = (m_Type[k] == RegisterCodec.FLOAT32) ? RegisterCodec
+							.getFloat32(words, idx, m_Order[k])
+							: RegisterCodec.getFloat64(words, idx, m_Order[k]);
+					values[m_Index[k] + i] = Math.round(v);
+				}
+			}
+		}
+	}// decode
+
+	/**
+	 * Decodes the tags of a register block from its raw registers into
+	 * unscaled integers. Float values are rounded.
+	 * 
+	 * @param block
+	 *            the index of the block.
+	 * @param data
+	 *            the raw registers read for the block.
+	 * @param off
+	 *            the offset of the first register in <tt>data</tt>.
+	 * @param values
+	 *            the unscaled values of all tags.
+	 */
+	public void decode(int block, byte[] data, int off, long[] values) {
+		int last = m_BlockFirst[block + 1];
+		for (int k = m_BlockFirst[block]; k < last; k += m_Run[k]) {
+			if (RegisterCodec.isInteger(m_Type[k])) {
+				RegisterCodec.decode(data, off + m_Offset[k] * 2, m_Type[k],
+						m_Order[k], values, m_Index[k], m_Run[k]);
+			} else {
+				int bytes = RegisterCodec.getWordCount(m_Type[k]) * 2;
+				for (int i = 0; i < m_Run[k]; i++) {
+					int pos = off + m_Offset[k] * 2 + i * bytes;
+					double v = (m_Type[k] == RegisterCodec.FLOAT32) ? RegisterCodec
+							.getFloat32(data, pos, m_Order[k])
+							: RegisterCodec.getFloat64(data, pos, m_Order[k]);
+					values[m_Index[k] + i] = Math.round(v);
+				}
+			}
+		}
+	}// decode
+
+	/**
+	 * Decodes the tags of a bit block, to <tt>0</tt> or <tt>1</tt>.
+	 * 
+	 * @param block
+	 *            the index of the block.
+	 * @param bits
+	 *            the bits read for the block.
+	 * @param values
+	 *            the values of all tags.
+	 */
+	public void decode(int block, BitVector bits, long[] values) {
+		int last = m_BlockFirst[block + 1];
+		for (int k = m_BlockFirst[block]; k < last; k++) {
+			values[m_Index[k]] = bits.getBit(m_Offset[k]) ? 1 : 0;
+		}
+	}// decode
+
+	/**
+	 * Creates an <tt>ArrayProcessImage</tt> with tables just large enough
+	 * for the tags of this profile, e.g. for a slave simulating a device.
+	 * 
+	 * @return the <tt>ArrayProcessImage</tt>.
+	 */
+	public ArrayProcessImage createProcessImage() {
+		int[] size = new int[4];
+		for (int b = 0; b < m_BlockRef.length; b++) {
+			size[m_BlockTable[b]] = Math.max(size[m_BlockTable[b]],
+					m_BlockRef[b] + m_BlockSize[b]);
+		}
+		return new ArrayProcessImage(size[Tag.COIL],
+				size[Tag.DISCRETE_INPUT], size[Tag.INPUT_REGISTER],
+				size[Tag.HOLDING_REGISTER]);
+	}// createProcessImage
+
+	/**
+	 * Sets the tables of the given process image from the scaled values of
+	 * all tags, i.e. encodes the tags for a slave. The image is updated as a
+	 * whole, while holding its lock.
+	 * 
+	 * @param image
+	 *            the <tt>ArrayProcessImage</tt> to be updated.
+	 * @param values
+	 *            the scaled values of all tags.
+	 * @throws IllegalArgumentException
+	 *             if a BCD value is out of range.
+	 * @throws IndexOutOfBoundsException
+	 *             if a tag does not fit into the tables of the image.
+	 */
+	public void update(ArrayProcessImage image, double[] values) {
+		double[] value = new double[1];
+		int[] words = new int[4];
+		synchronized (image) {
+			for (int i = 0; i < m_Tags.length; i++) {
+				Tag tag = m_Tags[i];
+				switch (tag.getTable()) {
+				case Tag.COIL:
+					image.setCoil(tag.getAddress(), values[i] != 0);
+					break;
+				case Tag.DISCRETE_INPUT:
+					image.setDiscreteInput(tag.getAddress(), values[i] != 0);
+					break;
+				default:
+					value[0] = values[i] / tag.getScale();
+					RegisterCodec.encode(value, 0, tag.getType(),
+							tag.getOrder(), words, 0, 1);
+					if (tag.getTable() == Tag.INPUT_REGISTER) {
+						image.setInputRegisterValues(tag.getAddress(), words, 0,
+								tag.getWordCount());
+					} else {
+						image.setRegisterValues(tag.getAddress(), words, 0, tag
+								.getWordCount());
+					}
+				}
+			}
+		}
+	}// update
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("CompiledProfile[").append(m_Profile.getName()).append(", ")
+				.append(m_Tags.length).append(" tags");
+		for (int b = 0; b < m_BlockRef.length; b++) {
+			sb.append(", ").append(Tag.getTableName(m_BlockTable[b]))
+					.append(' ').append(m_BlockRef[b]).append('+')
+					.append(m_BlockSize[b]);
+		}
+		return sb.append(']').toString();
+	}// toString
+
+	private void scale(int k, double[] values) {
+		double scale = m_Scale[k];
+		if (scale != 1) {
+			for (int i = m_Index[k]; i < m_Index[k] + m_Run[k]; i++) {
+				values[i] *= scale;
+			}
+		}
+	}// scale
+
+	/**
+	 * Tests if the entry <tt>k</tt> continues the run starting at the given
+	 * entry, i.e. is the next tag at the next address with the same
+	 * encoding.
+	 */
+	private boolean extendsRun(int start, int k) {
+		int n = m_Run[start];
+		int words = RegisterCodec.getWordCount(m_Type[start]);
+		return m_Type[k] == m_Type[start] && m_Order[k] == m_Order[start]
+				&& m_Scale[k] == m_Scale[start]
+				&& m_Index[k] == m_Index[start] + n
+				&& m_Offset[k] == m_Offset[start] + n * words;
+	}// extendsRun
+
+	private static int[] copyOf(int[] a, int n) {
+		int[] copy = new int[n];
+		System.arraycopy(a, 0, copy, 0, n);
+		return copy;
+	}// copyOf
+
+}// class CompiledProfile
@@ -0,0 +1,260 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.profile;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.StringTokenizer;
+
+import net.wimpi.modbus.util.RegisterCodec;
+
+/**
+ * Class implementing a device profile, i.e. the register map of a device
+ * model as a list of tags.
+ * <p>
+ * A profile is compiled once into a <tt>CompiledProfile</tt>, which reads
+ * and decodes all tags of a device into a flat array per scan. Profiles can
+ * be loaded from a simple line based format:
+ * 
+ * <pre>
+ * # a comment
+ * profile PM-100
+ * # name      table    address  type     [order] [scale]
+ * voltage     input    3000     float32  CDAB
+ * energy      holding  2700     int64    ABCD    0.001
+ * frequency   input    3110     uint16   ABCD    0.01
+ * breaker     coil     10
+ * </pre>
+ * 
+ * The tables are <tt>coil</tt>, <tt>discrete</tt>, <tt>input</tt> and
+ * <tt>holding</tt>, the types and orders those of <tt>RegisterCodec</tt>.
+ * The order defaults to <tt>ABCD</tt> and the scale to <tt>1</tt>. Bit
+ * tags have neither type, order nor scale. The index of a tag in the
+ * profile is its index in the arrays decoded by the compiled profile.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ * @see CompiledProfile
+ */
+public class DeviceProfile {
+
+	/**
+	 * Defines the default gap, in registers, that is read over to merge the
+	 * reads of neighbouring tags.
+	 */
+	public static final int DEFAULT_MAX_GAP = 8;
+
+	private String m_Name;
+	private ArrayList<Tag> m_Tags = new ArrayList<Tag>();
+	private HashMap<String, Integer> m_Index = new HashMap<String, Integer>();
+
+	/**
+	 * Constructs a new <tt>DeviceProfile</tt>.
+	 * 
+	 * @param name
+	 *            the name of the device model.
+	 */
+	public DeviceProfile(String name) {
+		m_Name = name;
+	}// constructor
+
+	/**
+	 * Returns the name of this profile.
+	 * 
+	 * @return the name as <tt>String</tt>.
+	 */
+	public String getName() {
+		return m_Name;
+	}// getName
+
+	/**
+	 * Adds a tag to this profile.
+	 * 
+	 * @param tag
+	 *            the <tt>Tag</tt> to be added.
+	 * @return the index of the tag.
+	 * @throws IllegalArgumentException
+	 *             if a tag with the same name exists.
+	 */
+	public synchronized int addTag(Tag tag) {
+		if (m_Index.containsKey(tag.getName())) {
+			throw new IllegalArgumentException("Duplicate tag: "
+					+ tag.getName());
+		}
+		int index = m_Tags.size();
+		m_Tags.add(tag);
+		m_Index.put(tag.getName(), Integer.valueOf(index));
+		return index;
+	}// addTag
+
+	/**
+	 * Returns the number of tags of this profile.
+	 * 
+	 * @return the number of tags.
+	 */
+	public synchronized int getTagCount() {
+		return m_Tags.size();
+	}// getTagCount
+
+	/**
+	 * Returns the tag with the given index.
+	 * 
+	 * @param index
+	 *            the index of the tag.
+	 * @return the <tt>Tag</tt>.
+	 */
+	public synchronized Tag getTag(int index) {
+		return m_Tags.get(index);
+	}// getTag
+
+	/**
+	 * Returns the index of the tag with the given name.
+	 * 
+	 * @param name
+	 *            the name of the tag.
+	 * @return the index, or -1 if there is no such tag.
+	 */
+	public synchronized int indexOf(String name) {
+		Integer index = m_Index.get(name);
+		return (index == null) ? -1 : index.intValue();
+	}// indexOf
+
+	/**
+	 * Compiles this profile, merging reads over gaps of up to
+	 * <tt>DEFAULT_MAX_GAP</tt> registers.
+	 * 
+	 * @return the <tt>CompiledProfile</tt>.
+	 */
+	public CompiledProfile compile() {
+		return compile(DEFAULT_MAX_GAP);
+	}// compile
+
+	/**
+	 * Compiles this profile. Tags of a table are read together as long as
+	 * the unused registers between them do not exceed the given gap; bit
+	 * tables use a gap of 16 bits per register. A gap of 0 only merges
+	 * adjacent tags, for devices that reject reads of unmapped addresses.
+	 * 
+	 * @param maxGap
+	 *            the maximum gap in registers.
+	 * @return the <tt>CompiledProfile</tt>.
+	 */
+	public synchronized CompiledProfile compile(int maxGap) {
+		return new CompiledProfile(this,
+				m_Tags.toArray(new Tag[m_Tags.size()]), maxGap);
+	}// compile
+
+	public String toString() {
+		return "DeviceProfile[" + m_Name + ", " + getTagCount() + " tags]";
+	}// toString
+
+	/**
+	 * Loads a profile from the given file.
+	 * 
+	 * @param file
+	 *            the name of the file.
+	 * @return the loaded <tt>DeviceProfile</tt>.
+	 * @throws IOException
+	 *             if the file cannot be read or is malformed.
+	 */
+	public static DeviceProfile load(String file) throws IOException {
+		Reader in = new FileReader(file);
+		try {
+			return load(in);
+		} finally {
+			in.close();
+		}
+	}// load
+
+	/**
+	 * Loads a profile from the given reader, which is not closed.
+	 * 
+	 * @param in
+	 *            the <tt>Reader</tt> to read from.
+	 * @return the loaded <tt>DeviceProfile</tt>.
+	 * @throws IOException
+	 *             if reading fails or the profile is malformed.
+	 */
+	public static DeviceProfile load(Reader in) throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		DeviceProfile profile = new DeviceProfile(null);
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			int comment = line.indexOf('#');
+			if (comment >= 0) {
+				line = line.substring(0, comment);
+			}
+			StringTokenizer st = new StringTokenizer(line);
+			int n = st.countTokens();
+			if (n == 0) {
+				continue;
+			}
+			String[] tokens = new String[n];
+			for (int i = 0; i < n; i++) {
+				tokens[i] = st.nextToken();
+			}
+			try {
+				if (tokens[0].equals("profile")) {
+					if (n != 2) {
+						throw new IllegalArgumentException(
+								"Expected: profile <name>");
+					}
+					profile.m_Name = tokens[1];
+				} else {
+					profile.addTag(parseTag(tokens));
+				}
+			} catch (IllegalArgumentException ex) {
+				// includes NumberFormatException
+				throw new IOException("Line " + lineNumber + ": "
+						+ ex.getMessage());
+			}
+		}
+		return profile;
+	}// load
+
+	private static Tag parseTag(String[] tokens) {
+		if (tokens.length < 3) {
+			throw new IllegalArgumentException(
+					"Expected: <name> <table> <address> [<type> [<order> [<scale>]]]");
+		}
+		int table = Tag.getTable(tokens[1]);
+		int address = Integer.parseInt(tokens[2]);
+		if (table <= Tag.DISCRETE_INPUT) {
+			if (tokens.length > 3) {
+				throw new IllegalArgumentException("Bit tags have no type");
+			}
+			return new Tag(tokens[0], table, address);
+		}
+		if (tokens.length < 4 || tokens.length > 6) {
+			throw new IllegalArgumentException(
+					"Expected: <name> <table> <address> <type> [<order> [<scale>]]");
+		}
+		int type = RegisterCodec.getType(tokens[3]);
+		int order = (tokens.length > 4) ? RegisterCodec.getOrder(tokens[4])
+				: RegisterCodec.ABCD;
+		double scale = (tokens.length > 5) ? Double.parseDouble(tokens[5]) : 1;
+		return new Tag(tokens[0], table, address, type, order, scale);
+	}// parseTag
+
+}// class DeviceProfile
@@ -0,0 +1,247 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.profile;
+
+import net.wimpi.modbus.util.RegisterCodec;
+
+/**
+ * Class implementing a tag of a <tt>DeviceProfile</tt>, i.e. a named value
+ * of a device and where and how it is held in the device's tables.
+ * <p>
+ * Register tags have a type and an order as defined by
+ * <tt>RegisterCodec</tt>, and a scale the decoded value is multiplied with.
+ * Bit tags, in the coil and discrete input tables, decode to <tt>0</tt> or
+ * <tt>1</tt>.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public final class Tag {
+
+	/**
+	 * The coil table.
+	 */
+	public static final int COIL = 0;
+
+	/**
+	 * The discrete input table.
+	 */
+	public static final int DISCRETE_INPUT = 1;
+
+	/**
+	 * The input register table.
+	 */
+	public static final int INPUT_REGISTER = 2;
+
+	/**
+	 * The holding register table.
+	 */
+	public static final int HOLDING_REGISTER = 3;
+
+	/**
+	 * The type of tags in the bit tables.
+	 */
+	public static final int BIT = -1;
+
+	private static final String[] c_TableNames = { "coil", "discrete",
+			"input", "holding" };
+
+	private final String m_Name;
+	private final int m_Table;
+	private final int m_Address;
+	private final int m_Type;
+	private final int m_Order;
+	private final double m_Scale;
+
+	/**
+	 * Constructs a new bit tag.
+	 * 
+	 * @param name
+	 *            the name of the tag.
+	 * @param table
+	 *            <tt>COIL</tt> or <tt>DISCRETE_INPUT</tt>.
+	 * @param address
+	 *            the address of the bit.
+	 * @throws IllegalArgumentException
+	 *             if the table is not a bit table, or the address is out of
+	 *             range.
+	 */
+	public Tag(String name, int table, int address) {
+		this(name, table, address, BIT, RegisterCodec.ABCD, 1);
+	}// constructor
+
+	/**
+	 * Constructs a new tag.
+	 * 
+	 * @param name
+	 *            the name of the tag.
+	 * @param table
+	 *            the table holding the tag.
+	 * @param address
+	 *            the address of the bit or first register of the tag.
+	 * @param type
+	 *            the <tt>RegisterCodec</tt> type of a register tag, or
+	 *            <tt>BIT</tt> for a bit tag.
+	 * @param order
+	 *            the <tt>RegisterCodec</tt> order of a register tag.
+	 * @param scale
+	 *            the factor the decoded value is multiplied with.
+	 * @throws IllegalArgumentException
+	 *             if the type does not fit the table, is <tt>STRING</tt>, or
+	 *             the tag does not fit into the table.
+	 */
+	public Tag(String name, int table, int address, int type, int order,
+			double scale) {
+		if (table < COIL || table > HOLDING_REGISTER) {
+			throw new IllegalArgumentException("Unknown table: " + table);
+		}
+		if ((table <= DISCRETE_INPUT) != (type == BIT)) {
+			throw new IllegalArgumentException("Type does not fit table: "
+					+ name);
+		}
+		if (type == RegisterCodec.STRING) {
+			throw new IllegalArgumentException("Strings are not supported: "
+					+ name);
+		}
+		m_Name = name;
+		m_Table = table;
+		m_Address = address;
+		m_Type = type;
+		m_Order = order;
+		m_Scale = scale;
+		if (address < 0 || address + getWordCount() > 65536) {
+			throw new IllegalArgumentException("Address out of range: "
+					+ name);
+		}
+	}// constructor
+
+	/**
+	 * Returns the name of this tag.
+	 * 
+	 * @return the name as <tt>String</tt>.
+	 */
+	public String getName() {
+		return m_Name;
+	}// getName
+
+	/**
+	 * Returns the table holding this tag.
+	 * 
+	 * @return the table, e.g. <tt>HOLDING_REGISTER</tt>.
+	 */
+	public int getTable() {
+		return m_Table;
+	}// getTable
+
+	/**
+	 * Returns the address of the bit or first register of this tag.
+	 * 
+	 * @return the address as <tt>int</tt>.
+	 */
+	public int getAddress() {
+		return m_Address;
+	}// getAddress
+
+	/**
+	 * Returns the type of this tag.
+	 * 
+	 * @return the <tt>RegisterCodec</tt> type, or <tt>BIT</tt>.
+	 */
+	public int getType() {
+		return m_Type;
+	}// getType
+
+	/**
+	 * Returns the order of this tag.
+	 * 
+	 * @return the <tt>RegisterCodec</tt> order.
+	 */
+	public int getOrder() {
+		return m_Order;
+	}// getOrder
+
+	/**
+	 * Returns the scale of this tag.
+	 * 
+	 * @return the scale as <tt>double</tt>.
+	 */
+	public double getScale() {
+		return m_Scale;
+	}// getScale
+
+	/**
+	 * Returns the number of bits or registers this tag occupies.
+	 * 
+	 * @return the number as <tt>int</tt>.
+	 */
+	public int getWordCount() {
+		return (m_Type == BIT) ? 1 : RegisterCodec.getWordCount(m_Type);
+	}// getWordCount
+
+	/**
+	 * Tests if this tag is held in a bit table.
+	 * 
+	 * @return true if a bit tag, false otherwise.
+	 */
+	public boolean isBit() {
+		return m_Type == BIT;
+	}// isBit
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append(m_Name).append(' ').append(c_TableNames[m_Table])
+				.append(' ').append(m_Address);
+		if (m_Type != BIT) {
+			sb.append(' ').append(RegisterCodec.getTypeName(m_Type))
+					.append(' ').append(RegisterCodec.getOrderName(m_Order))
+					.append(' ').append(m_Scale);
+		}
+		return sb.toString();
+	}// toString
+
+	/**
+	 * Returns the table with the given name, one of <tt>coil</tt>,
+	 * <tt>discrete</tt>, <tt>input</tt> and <tt>holding</tt>.
+	 * 
+	 * @param name
+	 *            the name of the table, case is ignored.
+	 * @return the table as <tt>int</tt>.
+	 * @throws IllegalArgumentException
+	 *             if the name is unknown.
+	 */
+	public static int getTable(String name) {
+		for (int i = 0; i < c_TableNames.length; i++) {
+			if (c_TableNames[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown table: " + name);
+	}// getTable
+
+	/**
+	 * Returns the name of the given table.
+	 * 
+	 * @param table
+	 *            the table.
+	 * @return the name as <tt>String</tt>.
+	 */
+	public static String getTableName(int table) {
+		return c_TableNames[table];
+	}// getTableName
+
+}// class Tag
@@ -16,10 +16,15 @@
 
 package net.wimpi.modbus.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import net.wimpi.modbus.Modbus;
 
 /**
- * Provides an atomic integer.
+ * Provides an atomic integer, used as transaction identifier counter. The
+ * value wraps from {@link Modbus#MAX_TRANSACTION_ID} back to <tt>1</tt>. It
+ * is updated with a compare-and-set instead of a lock, so concurrent
+ * transactions do not serialize on the counter.
  * <p/>
  * 
  * @author Dieter Wimberger (wimpi)
@@ -27,13 +32,13 @@ import net.wimpi.modbus.Modbus;
  */
 public class AtomicCounter {
 
-	private int m_Value;
+	private final AtomicInteger m_Value;
 
 	/**
 	 * Constructs a new <tt>AtomicInteger</tt>.
 	 */
 	public AtomicCounter() {
-		m_Value = 0;
+		m_Value = new AtomicInteger(0);
 	}// constructor
 
 	/**
@@ -43,7 +48,7 @@ public class AtomicCounter {
 	 *            the initial value.
 	 */
 	public AtomicCounter(int value) {
-		m_Value = value;
+		m_Value = new AtomicInteger(value);
 	}// constructor
 
 	/**
@@ -51,11 +56,15 @@ public class AtomicCounter {
 	 * 
 	 * @return the resulting value.
 	 */
-	public synchronized int increment() {
-		if (m_Value == Modbus.MAX_TRANSACTION_ID) {
-			m_Value = 0;
+	public int increment() {
+		for (;;) {
+			int current = m_Value.get();
+			int next = (current >= Modbus.MAX_TRANSACTION_ID) ? 1
+					: current + 1;
+			if (m_Value.compareAndSet(current, next)) {
+				return next;
+			}
 		}
-		return ++m_Value;
 	}// increment
 
 	/**
@@ -63,8 +72,8 @@ public class AtomicCounter {
 	 * 
 	 * @return the actual value.
 	 */
-	public synchronized int get() {
-		return m_Value;
+	public int get() {
+		return m_Value.get();
 	}// get
 
 }// class AtomicCounter
@@ -16,9 +16,18 @@
 
 package net.wimpi.modbus.util;
 
+import java.nio.ByteBuffer;
+
 /**
- * Class that implements a collection for bits, storing them packed into bytes.
- * Per default the access operations will index from the LSB (rightmost) bit.
+ * Class that implements a collection for bits, storing them packed into
+ * <tt>long</tt> words. Per default the access operations will index from the
+ * LSB (rightmost) bit.
+ * <p>
+ * Bit <tt>i</tt> is stored in bit <tt>i % 64</tt> of word <tt>i / 64</tt>,
+ * which is the order of the bits in the data of the Modbus coil and input
+ * discrete messages read as little endian <tt>long</tt>. Ranges of bits are
+ * thus read, written, copied and packed to and from coil bytes a word at a
+ * time, rather than bit by bit.
  * 
  * @author Dieter Wimberger
  * @version @version@ (@date@)
@@ -27,7 +36,8 @@ public final class BitVector {
 
 	// instance attributes
 	private int m_Size;
-	private byte[] m_Data;
+	private int m_ByteSize;
+	private long[] m_Data;
 	private boolean m_MSBAccess = false;
 
 	/**
@@ -42,13 +52,9 @@ public final class BitVector {
 		// store bits
 		m_Size = size;
 
-		// calculate size in bytes
-		if ((size % 8) > 0) {
-			size = (size / 8) + 1;
-		} else {
-			size = (size / 8);
-		}
-		m_Data = new byte[size];
+		// calculate size in bytes and words
+		m_ByteSize = (size + 7) >>> 3;
+		m_Data = new long[(m_ByteSize + 7) >>> 3];
 	}// constructor
 
 	/**
@@ -91,14 +97,20 @@ public final class BitVector {
 	}// isMSBAccess
 
 	/**
-	 * Returns the <tt>byte[]</tt> which is used to store the bits of this
-	 * <tt>BitVector</tt>.
+	 * Returns a <tt>byte[]</tt> holding the bits of this <tt>BitVector</tt>,
+	 * packed as they would be stored in bytes.
 	 * <p>
+	 * The array is a copy; changes to it do not affect this
+	 * <tt>BitVector</tt>.
 	 * 
-	 * @return the <tt>byte[]</tt> used to store the bits.
+	 * @return a <tt>byte[]</tt> of {@link #byteSize()} bytes.
 	 */
 	public final byte[] getBytes() {
-		return m_Data;
+		byte[] data = new byte[m_ByteSize];
+		for (int k = 0; k < m_ByteSize; k++) {
+			data[k] = (byte) (m_Data[k >>> 3] >>> ((k & 7) << 3));
+		}
+		return data;
 	}// getBytes
 
 	/**
@@ -110,7 +122,14 @@ public final class BitVector {
 	 *            a <tt>byte[]</tt>.
 	 */
 	public final void setBytes(byte[] data) {
-		System.arraycopy(data, 0, m_Data, 0, data.length);
+		if (data.length > m_ByteSize) {
+			throw new IndexOutOfBoundsException();
+		}
+		for (int k = 0; k < data.length; k++) {
+			int shift = (k & 7) << 3;
+			m_Data[k >>> 3] = m_Data[k >>> 3] & ~(0xffL << shift)
+					| (data[k] & 0xffL) << shift;
+		}
 	}// setBytes
 
 	/**
@@ -122,7 +141,7 @@ public final class BitVector {
 	 *            a <tt>byte[]</tt>.
 	 */
 	public final void setBytes(byte[] data, int size) {
-		System.arraycopy(data, 0, m_Data, 0, data.length);
+		setBytes(data);
 		m_Size = size;
 	}// setBytes
 
@@ -141,9 +160,8 @@ public final class BitVector {
 	 */
 	public final boolean getBit(int index) throws IndexOutOfBoundsException {
 		index = translateIndex(index);
-		// System.out.println("Get bit #" + index);
-		return ((m_Data[byteIndex(index)] & (0x01 << bitIndex(index))) != 0) ? true
-				: false;
+		checkIndex(index);
+		return (m_Data[index >>> 6] & (1L << index)) != 0;
 	}// getBit
 
 	/**
@@ -161,13 +179,329 @@ public final class BitVector {
 	public final void setBit(int index, boolean b)
 			throws IndexOutOfBoundsException {
 		index = translateIndex(index);
-		// System.out.println("Set bit #"+index);
-		int value = ((b) ? 1 : 0);
-		int byteNum = byteIndex(index);
-		int bitNum = bitIndex(index);
-		m_Data[byteNum] = (byte) ((m_Data[byteNum] & ~(0x01 << bitNum)) | ((value & 0x01) << bitNum));
+		checkIndex(index);
+		if (b) {
+			m_Data[index >>> 6] |= 1L << index;
+		} else {
+			m_Data[index >>> 6] &= ~(1L << index);
+		}
 	}// setBit
 
+	/**
+	 * Returns the states of up to 64 bits starting at the given index as the
+	 * bits of a <tt>long</tt>, the state of the first one in the LSB.
+	 * 
+	 * @param index
+	 *            the index of the first bit.
+	 * @param count
+	 *            the number of bits, between 0 and 64.
+	 * @return the bits as <tt>long</tt>, with all higher bits reset.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public final long getBits(int index, int count)
+			throws IndexOutOfBoundsException {
+		checkRange(index, count, 64);
+		if (count == 0) {
+			return 0;
+		}
+		if (m_MSBAccess) {
+			long v = 0;
+			for (int i = count - 1; i >= 0; i--) {
+				v = v << 1 | (getBit(index + i) ? 1 : 0);
+			}
+			return v;
+		}
+		int w = index >>> 6;
+		int shift = index & 63;
+		long v = m_Data[w] >>> shift;
+		if (shift + count > 64) {
+			v |= m_Data[w + 1] << (64 - shift);
+		}
+		return (count == 64) ? v : v & ((1L << count) - 1);
+	}// getBits
+
+	/**
+	 * Sets the states of up to 64 bits starting at the given index from the
+	 * bits of a <tt>long</tt>, the state of the first one taken from the LSB.
+	 * 
+	 * @param index
+	 *            the index of the first bit.
+	 * @param count
+	 *            the number of bits, between 0 and 64.
+	 * @param bits
+	 *            the states as <tt>long</tt>; bits above <tt>count</tt> are
+	 *            ignored.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public final void setBits(int index, int count, long bits)
+			throws IndexOutOfBoundsException {
+		checkRange(index, count, 64);
+		if (count == 0) {
+			return;
+		}
+		if (m_MSBAccess) {
+			for (int i = 0; i < count; i++) {
+				setBit(index + i, ((bits >>> i) & 1) != 0);
+			}
+			return;
+		}
+		long mask = (count == 64) ? -1L : (1L << count) - 1;
+		bits &= mask;
+		int w = index >>> 6;
+		int shift = index & 63;
+		m_Data[w] = m_Data[w] & ~(mask << shift) | bits << shift;
+		if (shift + count > 64) {
+			int rest = 64 - shift;
+			m_Data[w + 1] = m_Data[w + 1] & ~(mask >>> rest) | bits >>> rest;
+		}
+	}// setBits
+
+	/**
+	 * Sets or resets a range of bits of this <tt>BitVector</tt>.
+	 * 
+	 * @param index
+	 *            the index of the first bit.
+	 * @param count
+	 *            the number of bits.
+	 * @param b
+	 *            true if the bits should be set, false if they should be
+	 *            reset.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public final void fill(int index, int count, boolean b)
+			throws IndexOutOfBoundsException {
+		checkRange(index, count, Integer.MAX_VALUE);
+		long bits = b ? -1L : 0;
+		for (int i = 0; i < count; i += 64) {
+			setBits(index + i, Math.min(64, count - i), bits);
+		}
+	}// fill
+
+	/**
+	 * Copies a range of bits from one <tt>BitVector</tt> to another, like
+	 * <tt>System.arraycopy</tt>. The ranges may overlap when source and
+	 * destination are the same instance.
+	 * 
+	 * @param src
+	 *            the source <tt>BitVector</tt>.
+	 * @param srcIndex
+	 *            the index of the first bit to be copied.
+	 * @param dst
+	 *            the destination <tt>BitVector</tt>.
+	 * @param dstIndex
+	 *            the index of the first bit to be written.
+	 * @param count
+	 *            the number of bits.
+	 * @throws IndexOutOfBoundsException
+	 *             if either range is out of bounds.
+	 */
+	public static void copy(BitVector src, int srcIndex, BitVector dst,
+			int dstIndex, int count) throws IndexOutOfBoundsException {
+		src.checkRange(srcIndex, count, Integer.MAX_VALUE);
+		dst.checkRange(dstIndex, count, Integer.MAX_VALUE);
+		if (src == dst && dstIndex > srcIndex) {
+			// copy backwards, so that no bit is overwritten before it is read
+			for (int i = (count - 1) & ~63; i >= 0; i -= 64) {
+				int n = Math.min(64, count - i);
+				dst.setBits(dstIndex + i, n, src.getBits(srcIndex + i, n));
+			}
+		} else {
+			for (int i = 0; i < count; i += 64) {
+				int n = Math.min(64, count - i);
+				dst.setBits(dstIndex + i, n, src.getBits(srcIndex + i, n));
+			}
+		}
+	}// copy
+
+	/**
+	 * Returns the number of bits set in this <tt>BitVector</tt>.
+	 * 
+	 * @return the number of set bits among the first {@link #size()} bits.
+	 */
+	public final int cardinality() {
+		int size = Math.min(m_Size, m_ByteSize * 8);
+		int full = size >>> 6;
+		int count = 0;
+		for (int w = 0; w < full; w++) {
+			count += Long.bitCount(m_Data[w]);
+		}
+		if ((size & 63) != 0) {
+			count += Long.bitCount(m_Data[full] & ((1L << size) - 1));
+		}
+		return count;
+	}// cardinality
+
+	/**
+	 * Returns the index of the first set bit at or after the given index.
+	 * The set bits are iterated with:
+	 * 
+	 * <pre>
+	 * for (int i = bv.nextSetBit(0); i &gt;= 0; i = bv.nextSetBit(i + 1)) {
+	 * 	// bit i is set
+	 * }
+	 * </pre>
+	 * 
+	 * @param index
+	 *            the index to start searching at.
+	 * @return the index of the next set bit below {@link #size()}, or -1 if
+	 *         there is none.
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is negative.
+	 */
+	public final int nextSetBit(int index) throws IndexOutOfBoundsException {
+		if (index < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		int size = Math.min(m_Size, m_ByteSize * 8);
+		if (m_MSBAccess) {
+			for (; index < size; index++) {
+				if (getBit(index)) {
+					return index;
+				}
+			}
+			return -1;
+		}
+		if (index >= size) {
+			return -1;
+		}
+		int w = index >>> 6;
+		long word = m_Data[w] & (-1L << index);
+		while (word == 0) {
+			if (++w == m_Data.length) {
+				return -1;
+			}
+			word = m_Data[w];
+		}
+		index = (w << 6) + Long.numberOfTrailingZeros(word);
+		return (index < size) ? index : -1;
+	}// nextSetBit
+
+	/**
+	 * Packs a range of bits into bytes in the order of the data of Modbus coil
+	 * messages, i.e. the first bit into the LSB of the first byte. Unused bits
+	 * of the last byte are reset.
+	 * 
+	 * @param index
+	 *            the index of the first bit.
+	 * @param count
+	 *            the number of bits.
+	 * @param dst
+	 *            the <tt>byte[]</tt> to pack the bits into.
+	 * @param off
+	 *            the offset in <tt>dst</tt> to start at.
+	 * @return the number of bytes written, i.e. <tt>(count + 7) / 8</tt>.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public final int pack(int index, int count, byte[] dst, int off)
+			throws IndexOutOfBoundsException {
+		checkRange(index, count, Integer.MAX_VALUE);
+		for (int i = 0; i < count; i += 64) {
+			int n = Math.min(64, count - i);
+			long v = getBits(index + i, n);
+			int end = off + ((i + n + 7) >>> 3);
+			for (int k = off + (i >>> 3); k < end; k++) {
+				dst[k] = (byte) v;
+				v >>>= 8;
+			}
+		}
+		return (count + 7) >>> 3;
+	}// pack
+
+	/**
+	 * Packs a range of bits into a buffer in the order of the data of Modbus
+	 * coil messages, as {@link #pack(int, int, byte[], int)}. The position of
+	 * the buffer is not changed.
+	 * 
+	 * @param index
+	 *            the index of the first bit.
+	 * @param count
+	 *            the number of bits.
+	 * @param dst
+	 *            the <tt>ByteBuffer</tt> to pack the bits into.
+	 * @param off
+	 *            the absolute offset in <tt>dst</tt> to start at.
+	 * @return the number of bytes written, i.e. <tt>(count + 7) / 8</tt>.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public final int pack(int index, int count, ByteBuffer dst, int off)
+			throws IndexOutOfBoundsException {
+		checkRange(index, count, Integer.MAX_VALUE);
+		for (int i = 0; i < count; i += 64) {
+			int n = Math.min(64, count - i);
+			long v = getBits(index + i, n);
+			int end = off + ((i + n + 7) >>> 3);
+			for (int k = off + (i >>> 3); k < end; k++) {
+				dst.put(k, (byte) v);
+				v >>>= 8;
+			}
+		}
+		return (count + 7) >>> 3;
+	}// pack
+
+	/**
+	 * Sets a range of bits from bytes in the order of the data of Modbus coil
+	 * messages, i.e. the first bit from the LSB of the first byte.
+	 * 
+	 * @param src
+	 *            the <tt>byte[]</tt> holding the packed bits.
+	 * @param off
+	 *            the offset in <tt>src</tt> to start at.
+	 * @param index
+	 *            the index of the first bit to be set.
+	 * @param count
+	 *            the number of bits.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public final void unpack(byte[] src, int off, int index, int count)
+			throws IndexOutOfBoundsException {
+		checkRange(index, count, Integer.MAX_VALUE);
+		for (int i = 0; i < count; i += 64) {
+			int n = Math.min(64, count - i);
+			int first = off + (i >>> 3);
+			long v = 0;
+			for (int k = first + ((n + 7) >>> 3) - 1; k >= first; k--) {
+				v = v << 8 | (src[k] & 0xff);
+			}
+			setBits(index + i, n, v);
+		}
+	}// unpack
+
+	/**
+	 * Sets a range of bits from a buffer in the order of the data of Modbus
+	 * coil messages, as {@link #unpack(byte[], int, int, int)}. The position
+	 * of the buffer is not changed.
+	 * 
+	 * @param src
+	 *            the <tt>ByteBuffer</tt> holding the packed bits.
+	 * @param off
+	 *            the absolute offset in <tt>src</tt> to start at.
+	 * @param index
+	 *            the index of the first bit to be set.
+	 * @param count
+	 *            the number of bits.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of bounds.
+	 */
+	public final void unpack(ByteBuffer src, int off, int index, int count)
+			throws IndexOutOfBoundsException {
+		checkRange(index, count, Integer.MAX_VALUE);
+		for (int i = 0; i < count; i += 64) {
+			int n = Math.min(64, count - i);
+			int first = off + (i >>> 3);
+			long v = 0;
+			for (int k = first + ((n + 7) >>> 3) - 1; k >= first; k--) {
+				v = v << 8 | (src.get(k) & 0xff);
+			}
+			setBits(index + i, n, v);
+		}
+	}// unpack
+
 	/**
 	 * Returns the number of bits in this <tt>BitVector</tt> as <tt>int</tt>.
 	 * <p>
@@ -186,7 +520,7 @@ public final class BitVector {
 	 *             if the size exceeds the byte[] store size multiplied by 8.
 	 */
 	public final void forceSize(int size) {
-		if (size > m_Data.length * 8) {
+		if (size > m_ByteSize * 8) {
 			throw new IllegalArgumentException("Size exceeds byte[] store.");
 		} else {
 			m_Size = size;
@@ -201,7 +535,7 @@ public final class BitVector {
 	 * @return the number of bits in this <tt>BitVector</tt>.
 	 */
 	public final int byteSize() {
-		return m_Data.length;
+		return m_ByteSize;
 	}// byteSize
 
 	/**
@@ -216,8 +550,7 @@ public final class BitVector {
 	public String toString() {
 		StringBuffer sbuf = new StringBuffer();
 		for (int i = 0; i < size(); i++) {
-			sbuf.append(((((m_Data[byteIndex(i)] & (0x01 << bitIndex(i))) != 0) ? true
-					: false) ? '1' : '0'));
+			sbuf.append(((m_Data[i >>> 6] & (1L << i)) != 0) ? '1' : '0');
 			if (((i + 1) % 8) == 0) {
 				sbuf.append(" ");
 			}
@@ -226,48 +559,40 @@ public final class BitVector {
 	}// toString
 
 	/**
-	 * Returns the index of the byte in the the byte array that contains the
-	 * given bit.
-	 * <p>
+	 * Checks the index of a bit in the store.
 	 * 
 	 * @param index
 	 *            the index of the bit.
 	 * 
-	 * @return the index of the byte where the given bit is stored.
-	 * 
 	 * @throws IndexOutOfBoundsException
 	 *             if index is out of bounds.
 	 */
-	private final int byteIndex(int index) throws IndexOutOfBoundsException {
-
-		if (index < 0 || index >= m_Data.length * 8) {
+	private final void checkIndex(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= m_ByteSize * 8) {
 			throw new IndexOutOfBoundsException();
-		} else {
-			return index / 8;
 		}
-	}// byteIndex
+	}// checkIndex
 
 	/**
-	 * Returns the index of the given bit in the byte where it it stored.
-	 * <p>
+	 * Checks a range of bits in the store.
 	 * 
 	 * @param index
-	 *            the index of the bit.
-	 * 
-	 * @return the bit index relative to the position in the byte that stores
-	 *         the specified bit.
+	 *            the index of the first bit.
+	 * @param count
+	 *            the number of bits.
+	 * @param max
+	 *            the maximum number of bits.
 	 * 
 	 * @throws IndexOutOfBoundsException
-	 *             if index is out of bounds.
+	 *             if the range is out of bounds.
 	 */
-	private final int bitIndex(int index) throws IndexOutOfBoundsException {
-
-		if (index < 0 || index >= m_Data.length * 8) {
+	private final void checkRange(int index, int count, int max)
+			throws IndexOutOfBoundsException {
+		if (index < 0 || count < 0 || count > max
+				|| (long) index + count > m_ByteSize * 8L) {
 			throw new IndexOutOfBoundsException();
-		} else {
-			return index % 8;
 		}
-	}// bitIndex
+	}// checkRange
 
 	private final int translateIndex(int idx) {
 
@@ -0,0 +1,257 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class implementing a size-classed pool of packet buffers.
+ * <p>
+ * Buffers are handed out in power of two size classes between
+ * {@link #MIN_SIZE} and {@link #MAX_SIZE}, as heap <tt>byte[]</tt> or as
+ * direct <tt>ByteBuffer</tt>. A buffer is owned by whoever acquired it until
+ * it is released; it must not be used after it has been released. Each size
+ * class keeps a bounded number of free buffers, so a steady state request
+ * path does not allocate once the pool is warm.
+ * <p>
+ * The pool counts acquired, released and newly allocated buffers, which
+ * allows to verify that a code path recycles its buffers: in the steady
+ * state the allocation count does not grow.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class BufferPool {
+
+	/**
+	 * The smallest size class in bytes.
+	 */
+	public static final int MIN_SIZE = 64;
+
+	/**
+	 * The largest size class in bytes. Larger buffers are allocated, but not
+	 * pooled.
+	 */
+	public static final int MAX_SIZE = 65536;
+
+	private static final BufferPool c_Default = new BufferPool(64);
+
+	private final SizeClass[] m_Heap;
+	private final SizeClass[] m_Direct;
+	private final AtomicLong m_Acquired = new AtomicLong();
+	private final AtomicLong m_Released = new AtomicLong();
+	private final AtomicLong m_Allocated = new AtomicLong();
+
+	/**
+	 * Constructs a new <tt>BufferPool</tt>.
+	 * 
+	 * @param capacity
+	 *            the maximum number of free buffers kept per size class and
+	 *            kind.
+	 */
+	public BufferPool(int capacity) {
+		int classes = index(MAX_SIZE) + 1;
+		m_Heap = new SizeClass[classes];
+		m_Direct = new SizeClass[classes];
+		for (int i = 0; i < classes; i++) {
+			m_Heap[i] = new SizeClass(capacity);
+			m_Direct[i] = new SizeClass(capacity);
+		}
+	}// constructor
+
+	/**
+	 * Returns the shared default <tt>BufferPool</tt> used by the transports.
+	 * 
+	 * @return the default <tt>BufferPool</tt>.
+	 */
+	public static BufferPool getDefault() {
+		return c_Default;
+	}// getDefault
+
+	/**
+	 * Acquires a heap buffer of at least the given size.
+	 * 
+	 * @param size
+	 *            the minimum size in bytes.
+	 * @return a <tt>byte[]</tt> with a length of at least <tt>size</tt>.
+	 */
+	public byte[] acquire(int size) {
+		m_Acquired.incrementAndGet();
+		if (size <= MAX_SIZE) {
+			int idx = index(size);
+			byte[] b = (byte[]) m_Heap[idx].poll();
+			if (b != null) {
+				return b;
+			}
+			size = MIN_SIZE << idx;
+		}
+		m_Allocated.incrementAndGet();
+		return new byte[size];
+	}// acquire
+
+	/**
+	 * Releases a heap buffer to this pool.
+	 * 
+	 * @param b
+	 *            a <tt>byte[]</tt> obtained from {@link #acquire(int)}.
+	 */
+	public void release(byte[] b) {
+		if (b == null) {
+			return;
+		}
+		m_Released.incrementAndGet();
+		int idx = classOf(b.length);
+		if (idx >= 0) {
+			m_Heap[idx].offer(b);
+		}
+	}// release
+
+	/**
+	 * Acquires a cleared direct buffer of at least the given size.
+	 * 
+	 * @param size
+	 *            the minimum capacity in bytes.
+	 * @return a direct <tt>ByteBuffer</tt> with a capacity of at least
+	 *         <tt>size</tt>, positioned at 0 with the limit set to its
+	 *         capacity.
+	 */
+	public ByteBuffer acquireDirect(int size) {
+		m_Acquired.incrementAndGet();
+		if (size <= MAX_SIZE) {
+			int idx = index(size);
+			ByteBuffer b = (ByteBuffer) m_Direct[idx].poll();
+			if (b != null) {
+				b.clear();
+				return b;
+			}
+			size = MIN_SIZE << idx;
+		}
+		m_Allocated.incrementAndGet();
+		return ByteBuffer.allocateDirect(size);
+	}// acquireDirect
+
+	/**
+	 * Releases a direct buffer to this pool.
+	 * 
+	 * @param b
+	 *            a <tt>ByteBuffer</tt> obtained from
+	 *            {@link #acquireDirect(int)}.
+	 */
+	public void releaseDirect(ByteBuffer b) {
+		if (b == null) {
+			return;
+		}
+		m_Released.incrementAndGet();
+		int idx = classOf(b.capacity());
+		if (idx >= 0 && b.isDirect()) {
+			m_Direct[idx].offer(b);
+		}
+	}// releaseDirect
+
+	/**
+	 * Returns the number of buffers acquired from this pool.
+	 * 
+	 * @return the number of acquired buffers.
+	 */
+	public long getAcquireCount() {
+		return m_Acquired.get();
+	}// getAcquireCount
+
+	/**
+	 * Returns the number of buffers released to this pool.
+	 * 
+	 * @return the number of released buffers.
+	 */
+	public long getReleaseCount() {
+		return m_Released.get();
+	}// getReleaseCount
+
+	/**
+	 * Returns the number of buffers this pool had to allocate because no free
+	 * buffer was available.
+	 * 
+	 * @return the number of allocated buffers.
+	 */
+	public long getAllocationCount() {
+		return m_Allocated.get();
+	}// getAllocationCount
+
+	/**
+	 * Returns the number of buffers that are currently acquired and not yet
+	 * released.
+	 * 
+	 * @return the number of buffers in use.
+	 */
+	public long getOutstandingCount() {
+		return m_Acquired.get() - m_Released.get();
+	}// getOutstandingCount
+
+	/**
+	 * Returns the index of the smallest size class holding <tt>size</tt>
+	 * bytes.
+	 */
+	private static int index(int size) {
+		int idx = 0;
+		while ((MIN_SIZE << idx) < size) {
+			idx++;
+		}
+		return idx;
+	}// index
+
+	/**
+	 * Returns the size class of a buffer with exactly the given capacity, or
+	 * -1 if the buffer does not belong to a size class.
+	 */
+	private static int classOf(int capacity) {
+		if (capacity < MIN_SIZE || capacity > MAX_SIZE
+				|| (capacity & (capacity - 1)) != 0) {
+			return -1;
+		}
+		return index(capacity);
+	}// classOf
+
+	/**
+	 * Bounded stack of free buffers of one size class.
+	 */
+	private static class SizeClass {
+
+		private final Object[] m_Free;
+		private int m_Count;
+
+		SizeClass(int capacity) {
+			m_Free = new Object[capacity];
+		}// constructor
+
+		synchronized Object poll() {
+			if (m_Count == 0) {
+				return null;
+			}
+			Object o = m_Free[--m_Count];
+			m_Free[m_Count] = null;
+			return o;
+		}// poll
+
+		synchronized void offer(Object o) {
+			if (m_Count < m_Free.length) {
+				m_Free[m_Count++] = o;
+			}
+		}// offer
+
+	}// inner class SizeClass
+
+}// class BufferPool
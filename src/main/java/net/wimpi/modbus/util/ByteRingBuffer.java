@@ -0,0 +1,196 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Class implementing a bounded ring buffer of bytes with blocking reads.
+ * <p>
+ * A producer (e.g. the event thread of a serial port) appends received bytes
+ * in bulk, while a consumer reads them with an optional timeout. Bytes that
+ * do not fit into the buffer are discarded and counted as overrun, just like
+ * the receive buffer of a UART.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class ByteRingBuffer {
+
+	private final byte[] m_Buffer;
+	private int m_Head;
+	private int m_Count;
+	private long m_Overruns;
+	private boolean m_Closed;
+
+	/**
+	 * Constructs a new <tt>ByteRingBuffer</tt> with the given capacity.
+	 * 
+	 * @param capacity
+	 *            the capacity in bytes.
+	 */
+	public ByteRingBuffer(int capacity) {
+		m_Buffer = new byte[capacity];
+	}// constructor
+
+	/**
+	 * Appends the given bytes to this buffer, waking up a waiting reader.
+	 * 
+	 * @param data
+	 *            the bytes to be appended.
+	 * @param off
+	 *            the offset of the first byte.
+	 * @param len
+	 *            the number of bytes.
+	 * @return the number of bytes stored; the remainder is discarded.
+	 */
+	public synchronized int write(byte[] data, int off, int len) {
+		int cap = m_Buffer.length;
+		int n = Math.min(len, cap - m_Count);
+		int tail = (m_Head + m_Count) % cap;
+		int first = Math.min(n, cap - tail);
+		System.arraycopy(data, off, m_Buffer, tail, first);
+		System.arraycopy(data, off + first, m_Buffer, 0, n - first);
+		m_Count += n;
+		m_Overruns += len - n;
+		if (n > 0) {
+			notifyAll();
+		}
+		return n;
+	}// write
+
+	/**
+	 * Reads a single byte, waiting up to the given timeout.
+	 * 
+	 * @param timeout
+	 *            the timeout in milliseconds; 0 or less waits indefinitely.
+	 * @return the byte as unsigned value, or -1 if the timeout expired.
+	 * @throws IOException
+	 *             if the buffer was closed or the thread was interrupted.
+	 */
+	public synchronized int read(long timeout) throws IOException {
+		if (!await(timeout)) {
+			return -1;
+		}
+		int b = m_Buffer[m_Head] & 0xff;
+		m_Head = (m_Head + 1) % m_Buffer.length;
+		m_Count--;
+		return b;
+	}// read
+
+	/**
+	 * Reads up to <tt>len</tt> bytes, waiting up to the given timeout for the
+	 * first byte.
+	 * 
+	 * @param buf
+	 *            the buffer to read into.
+	 * @param off
+	 *            the offset into the buffer.
+	 * @param len
+	 *            the maximum number of bytes to be read.
+	 * @param timeout
+	 *            the timeout in milliseconds; 0 or less waits indefinitely.
+	 * @return the number of bytes read, or -1 if the timeout expired.
+	 * @throws IOException
+	 *             if the buffer was closed or the thread was interrupted.
+	 */
+	public synchronized int read(byte[] buf, int off, int len, long timeout)
+			throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!await(timeout)) {
+			return -1;
+		}
+		int cap = m_Buffer.length;
+		int n = Math.min(len, m_Count);
+		int first = Math.min(n, cap - m_Head);
+		System.arraycopy(m_Buffer, m_Head, buf, off, first);
+		System.arraycopy(m_Buffer, 0, buf, off + first, n - first);
+		m_Head = (m_Head + n) % cap;
+		m_Count -= n;
+		return n;
+	}// read
+
+	/**
+	 * Returns the number of bytes that can be read without blocking.
+	 * 
+	 * @return the number of buffered bytes.
+	 */
+	public synchronized int available() {
+		return m_Count;
+	}// available
+
+	/**
+	 * Discards all buffered bytes.
+	 */
+	public synchronized void clear() {
+		m_Head = 0;
+		m_Count = 0;
+	}// clear
+
+	/**
+	 * Returns the number of bytes discarded because the buffer was full.
+	 * 
+	 * @return the number of lost bytes.
+	 */
+	public synchronized long getOverruns() {
+		return m_Overruns;
+	}// getOverruns
+
+	/**
+	 * Closes this buffer; blocked and subsequent reads will fail.
+	 */
+	public synchronized void close() {
+		m_Closed = true;
+		notifyAll();
+	}// close
+
+	/**
+	 * Reopens this buffer after it has been closed, discarding its content.
+	 */
+	public synchronized void open() {
+		clear();
+		m_Closed = false;
+	}// open
+
+	private boolean await(long timeout) throws IOException {
+		long deadline = (timeout > 0) ? System.currentTimeMillis() + timeout
+				: 0;
+		while (m_Count == 0) {
+			if (m_Closed) {
+				throw new IOException("Buffer closed.");
+			}
+			try {
+				if (timeout > 0) {
+					long left = deadline - System.currentTimeMillis();
+					if (left <= 0) {
+						return false;
+					}
+					wait(left);
+				} else {
+					wait();
+				}
+			} catch (InterruptedException ex) {
+				throw new InterruptedIOException();
+			}
+		}
+		return true;
+	}// await
+
+}// class ByteRingBuffer
@@ -30,7 +30,7 @@ package net.wimpi.modbus.util;
 public class LinkedNode {
 
 	protected Object m_Node;
-	protected LinkedNode m_NextNode = null;
+	protected volatile LinkedNode m_NextNode = null;
 
 	public LinkedNode(Object node) {
 		m_Node = node;
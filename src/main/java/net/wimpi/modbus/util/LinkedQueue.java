@@ -21,22 +21,48 @@
  ***/
 package net.wimpi.modbus.util;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unbounded FIFO queue with blocking take.
+ * <p>
+ * Producers append to the list without locking: the tail is swapped
+ * atomically and the previous tail is linked to the new node afterwards. The
+ * consumer side follows the links from a sentinel head node. With a single
+ * consumer, which is the common case for the terminals and listeners, the
+ * take lock is never contended; several consumers, as in a
+ * <tt>ThreadPool</tt>, are serialized on it. Consumers that find the queue
+ * empty park on a condition and are only signalled by producers if there is
+ * a waiting thread.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
 public class LinkedQueue {
 
 	/**
-	 * The head of the list.
+	 * The sentinel head of the list, its successor is the first element.
+	 * Only accessed while holding the take lock.
 	 **/
 	protected LinkedNode m_Head;
 
 	/**
-	 * Helper monitor for managing access to the list.
+	 * The last node of the list, swapped atomically by producers.
 	 **/
-	private final Object m_PutLock = new Object();
+	protected volatile LinkedNode m_Tail;
+
+	private static final AtomicReferenceFieldUpdater<LinkedQueue, LinkedNode> c_Tail = AtomicReferenceFieldUpdater
+			.newUpdater(LinkedQueue.class, LinkedNode.class, "m_Tail");
 
 	/**
-	 * The last node of the list.
+	 * Lock serializing consumers, and the condition they wait on.
 	 **/
-	protected LinkedNode m_Tail;
+	private final ReentrantLock m_TakeLock = new ReentrantLock();
+	private final Condition m_NotEmpty = m_TakeLock.newCondition();
 
 	/**
 	 * The number of threads waiting for a take. Notifications are provided in
@@ -44,41 +70,47 @@ public class LinkedQueue {
 	 * reasonably balanced usages, the notifications will hardly ever be
 	 * necessary, so the call overhead to notify can be eliminated.
 	 **/
-	protected int m_WaitingForTake = 0;
+	protected volatile int m_WaitingForTake = 0;
+
+	private static final AtomicIntegerFieldUpdater<LinkedQueue> c_WaitingForTake = AtomicIntegerFieldUpdater
+			.newUpdater(LinkedQueue.class, "m_WaitingForTake");
 
 	public LinkedQueue() {
-		m_Head = null;
+		m_Head = new LinkedNode(null);
 		m_Tail = m_Head;
 	}// constructor
 
 	/** Main mechanics for put/offer **/
 	protected void insert(Object x) {
-		synchronized (m_PutLock) {
-			LinkedNode p = new LinkedNode(x);
-			if (m_Tail != null) {
-				m_Tail.m_NextNode = p;
-				m_Tail = p;
-			} else {
-				m_Head = p;
-				m_Tail = p;
+		LinkedNode p = new LinkedNode(x);
+		LinkedNode prev = c_Tail.getAndSet(this, p);
+		prev.m_NextNode = p;
+		if (m_WaitingForTake > 0) {
+			m_TakeLock.lock();
+			try {
+				m_NotEmpty.signal();
+			} finally {
+				m_TakeLock.unlock();
 			}
-			if (m_WaitingForTake > 0)
-				m_PutLock.notify();
 		}
 	}// insert
 
-	/** Main mechanics for take/poll **/
+	/** Main mechanics for take/poll, called with the take lock held **/
 	protected Object extract() {
-		synchronized (m_PutLock) {
-			if (m_Head == null) {
+		LinkedNode next = m_Head.m_NextNode;
+		if (next == null) {
+			if (m_Tail == m_Head) {
 				return null;
 			}
-			Object x = m_Head.m_Node;
-			m_Head = m_Head.m_NextNode;
-			if (m_Head == null)
-				m_Tail = null;
-			return x;
+			// a producer swapped the tail but has not linked it yet
+			while ((next = m_Head.m_NextNode) == null) {
+				Thread.yield();
+			}
 		}
+		Object x = next.m_Node;
+		next.m_Node = null;
+		m_Head = next;
+		return x;
 	}// extract
 
 	/**
@@ -87,8 +119,8 @@ public class LinkedQueue {
 	 * @param x
 	 *            The object to add to the queue
 	 * @throws InterruptedException
-	 *             In the event that this thread is interrupted while waiting
-	 *             for the queue's lock
+	 *             Never thrown, as adding does not block; declared for
+	 *             compatibility.
 	 */
 	public void put(Object x) throws InterruptedException {
 		if (x == null)
@@ -105,27 +137,24 @@ public class LinkedQueue {
 	 *             be put on the queue.
 	 */
 	public Object take() throws InterruptedException {
-		Object x = extract();
-		if (x != null)
-			return x;
-		else {
-			synchronized (m_PutLock) {
-				try {
-					++m_WaitingForTake;
-					while (true) {
-						m_PutLock.wait();
-						x = extract();
-						if (x != null) {
-							--m_WaitingForTake;
-							return x;
-						}
-					}
-				} catch (InterruptedException ex) {
-					--m_WaitingForTake;
-					m_PutLock.notify();
-					throw ex;
+		m_TakeLock.lockInterruptibly();
+		try {
+			Object x = extract();
+			if (x != null) {
+				return x;
+			}
+			c_WaitingForTake.incrementAndGet(this);
+			try {
+				while ((x = extract()) == null) {
+					m_NotEmpty.await();
 				}
+			} finally {
+				c_WaitingForTake.decrementAndGet(this);
 			}
+			signalNext();
+			return x;
+		} finally {
+			m_TakeLock.unlock();
 		}
 	}// take
 
@@ -136,10 +165,12 @@ public class LinkedQueue {
 	 * @return The head of the queue, or null if it is empty.
 	 */
 	public Object peek() {
-		synchronized (m_PutLock) {
-			if (m_Head == null)
-				return null;
-			return m_Head.m_Node;
+		m_TakeLock.lock();
+		try {
+			LinkedNode next = m_Head.m_NextNode;
+			return (next == null) ? null : next.m_Node;
+		} finally {
+			m_TakeLock.unlock();
 		}
 	}// peek
 
@@ -149,8 +180,11 @@ public class LinkedQueue {
 	 * @return true if the queu is empty.
 	 */
 	public boolean isEmpty() {
-		synchronized (m_PutLock) {
-			return m_Head == null;
+		m_TakeLock.lock();
+		try {
+			return m_Tail == m_Head;
+		} finally {
+			m_TakeLock.unlock();
 		}
 	}// isEmpty
 
@@ -171,34 +205,40 @@ public class LinkedQueue {
 	public Object poll(long msecs) throws InterruptedException {
 		if (msecs < 0)
 			return take();
-		Object x = extract();
-		if (x != null || msecs == 0) {
-			return x;
-		} else {
-			synchronized (m_PutLock) {
-				try {
-					long timeLeft = msecs;
-					long start = System.currentTimeMillis();
-					++m_WaitingForTake;
-					x = null;
-					while (timeLeft > 0) {
-						m_PutLock.wait(timeLeft);
-						x = extract();
-						if (x != null) {
-							break;
-						}
-						timeLeft = msecs + start - System.currentTimeMillis();
+		m_TakeLock.lockInterruptibly();
+		try {
+			Object x = extract();
+			if (x != null || msecs == 0) {
+				return x;
+			}
+			long nanos = TimeUnit.MILLISECONDS.toNanos(msecs);
+			c_WaitingForTake.incrementAndGet(this);
+			try {
+				while ((x = extract()) == null) {
+					if (nanos <= 0) {
+						return null;
 					}
-					--m_WaitingForTake;
-					return x;
-				} catch (InterruptedException ex) {
-					--m_WaitingForTake;
-					m_PutLock.notify();
-					throw ex;
+					nanos = m_NotEmpty.awaitNanos(nanos);
 				}
+			} finally {
+				c_WaitingForTake.decrementAndGet(this);
 			}
+			signalNext();
+			return x;
+		} finally {
+			m_TakeLock.unlock();
 		}
 	}// poll
 
-}// LinkedQueue
+	/**
+	 * Passes a signal on to another waiting consumer if elements are left,
+	 * as producers only signal one consumer per element while some are
+	 * waiting.
+	 */
+	private void signalNext() {
+		if (m_WaitingForTake > 0 && m_Head.m_NextNode != null) {
+			m_NotEmpty.signal();
+		}
+	}// signalNext
 
+}// LinkedQueue
@@ -16,14 +16,19 @@
 
 package net.wimpi.modbus.util;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
 /**
  * A simple non-reentrant mutual exclusion lock. The lock is free upon
  * construction. Each acquire gets the lock, and each release frees it.
  * Releasing a lock that is already free has no effect.
  * <p/>
- * This implementation makes no attempt to provide any fairness or ordering
- * guarantees. If you need them, consider using one of the Semaphore
- * implementations as a locking mechanism.
+ * Waiting threads are queued and parked rather than woken with
+ * <tt>notify()</tt>, so a release hands the lock to exactly one waiter. By
+ * default the lock is barging, i.e. a thread calling acquire may take a free
+ * lock before queued threads; a fair mutex grants it in arrival order, at the
+ * cost of a context switch on every contended hand-over.
  * <p/>
  * <b>Sample usage</b><br>
  * <p/>
@@ -108,61 +113,137 @@ package net.wimpi.modbus.util;
 public class Mutex {
 
 	/**
-	 * The lock status
+	 * The lock status, kept in step with the synchronizer that actually holds
+	 * the lock.
+	 */
+	protected volatile boolean inuse_ = false;
+
+	private final Sync m_Sync;
+
+	/**
+	 * Constructs a new non-fair <tt>Mutex</tt>.
+	 */
+	public Mutex() {
+		this(false);
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>Mutex</tt> with the given fairness policy.
+	 * 
+	 * @param fair
+	 *            true if the lock should be granted in arrival order.
 	 */
-	protected boolean inuse_ = false;
+	public Mutex(boolean fair) {
+		m_Sync = new Sync(fair);
+	}// constructor
 
+	/**
+	 * Acquires this mutex, waiting if it is held by another thread.
+	 * 
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting.
+	 */
 	public void acquire() throws InterruptedException {
-		if (Thread.interrupted())
-			throw new InterruptedException();
-		synchronized (this) {
-			try {
-				while (inuse_)
-					wait();
-				inuse_ = true;
-			} catch (InterruptedException ex) {
-				notify();
-				throw ex;
-			}
-		}
-	}// accquire
+		m_Sync.acquireInterruptibly(1);
+	}// acquire
 
-	public synchronized void release() {
-		inuse_ = false;
-		notify();
+	/**
+	 * Releases this mutex. Releasing a free mutex has no effect.
+	 */
+	public void release() {
+		m_Sync.release(1);
 	}// release
 
+	/**
+	 * Tries to acquire this mutex, waiting at most the given time.
+	 * 
+	 * @param msecs
+	 *            the maximum time to wait in milliseconds; if less than or
+	 *            equal to zero, the method does not wait at all.
+	 * @return true if acquired, false otherwise.
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting.
+	 */
 	public boolean attempt(long msecs) throws InterruptedException {
 		if (Thread.interrupted())
 			throw new InterruptedException();
-		synchronized (this) {
-			if (!inuse_) {
+		if (msecs <= 0) {
+			// like an untimed attempt, takes a free lock even if fair
+			return m_Sync.tryBarge();
+		}
+		return m_Sync.tryAcquireNanos(1, TimeUnit.MILLISECONDS.toNanos(msecs));
+	}// attempt
+
+	/**
+	 * Tests if this mutex is held by some thread.
+	 * 
+	 * @return true if held, false otherwise.
+	 */
+	public boolean isLocked() {
+		return m_Sync.isHeld();
+	}// isLocked
+
+	/**
+	 * Tests if this mutex is granted in arrival order.
+	 * 
+	 * @return true if fair, false otherwise.
+	 */
+	public boolean isFair() {
+		return m_Sync.m_Fair;
+	}// isFair
+
+	/**
+	 * Returns an estimate of the number of threads waiting to acquire this
+	 * mutex.
+	 * 
+	 * @return the number of waiting threads.
+	 */
+	public int getQueueLength() {
+		return m_Sync.getQueueLength();
+	}// getQueueLength
+
+	/**
+	 * Synchronizer holding the lock state; <tt>0</tt> is free, <tt>1</tt> is
+	 * held. Ownership is not tracked, so any thread may release the mutex.
+	 */
+	private final class Sync extends AbstractQueuedSynchronizer {
+
+		private static final long serialVersionUID = 1L;
+
+		private final boolean m_Fair;
+
+		Sync(boolean fair) {
+			m_Fair = fair;
+		}// constructor
+
+		protected boolean tryAcquire(int arg) {
+			if (m_Fair) {
+				Thread first = getFirstQueuedThread();
+				if (first != null && first != Thread.currentThread()) {
+					return false;
+				}
+			}
+			return tryBarge();
+		}// tryAcquire
+
+		protected boolean tryRelease(int arg) {
+			inuse_ = false;
+			setState(0);
+			return true;
+		}// tryRelease
+
+		boolean tryBarge() {
+			if (compareAndSetState(0, 1)) {
 				inuse_ = true;
 				return true;
-			} else if (msecs <= 0)
-				return false;
-			else {
-				long waitTime = msecs;
-				long start = System.currentTimeMillis();
-				try {
-					for (;;) {
-						wait(waitTime);
-						if (!inuse_) {
-							inuse_ = true;
-							return true;
-						} else {
-							waitTime = msecs
-									- (System.currentTimeMillis() - start);
-							if (waitTime <= 0)
-								return false;
-						}
-					}
-				} catch (InterruptedException ex) {
-					notify();
-					throw ex;
-				}
 			}
-		}
-	}// attempt
+			return false;
+		}// tryBarge
+
+		boolean isHeld() {
+			return getState() != 0;
+		}// isHeld
+
+	}// inner class Sync
 
-}// class Mutex
\ No newline at end of file
+}// class Mutex
@@ -0,0 +1,1432 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.util;
+
+/**
+ * Helper class that decodes and encodes typed values held in registers, for
+ * all four byte and word orders in use by devices.
+ * <p>
+ * Values are read from and written to either a raw <tt>byte[]</tt> holding
+ * the registers in wire format, e.g. the data of a response frame, or an
+ * <tt>int[]</tt> holding one register value per element. The order names
+ * the bytes of a 32 bit value <tt>0xAABBCCDD</tt> as they are stored:
+ * <ul>
+ * <li><tt>ABCD</tt> - big endian, high word first, as Modbus specifies.</li>
+ * <li><tt>CDAB</tt> - low word first, bytes within words big endian.</li>
+ * <li><tt>BADC</tt> - high word first, bytes within words swapped.</li>
+ * <li><tt>DCBA</tt> - little endian.</li>
+ * </ul>
+ * The same rules apply to 16 and 64 bit values and to strings, i.e. a
+ * 16 bit value has its bytes swapped in <tt>BADC</tt> and <tt>DCBA</tt>.
+ * <p>
+ * Except for strings, neither the scalar nor the bulk methods allocate, so
+ * large blocks of tags can be decoded into primitive arrays on every scan.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public final class RegisterCodec {
+
+	/**
+	 * Big endian, high word first.
+	 */
+	public static final int ABCD = 0;
+
+	/**
+	 * Low word first, bytes within words big endian.
+	 */
+	public static final int CDAB = 1;
+
+	/**
+	 * High word first, bytes within words swapped.
+	 */
+	public static final int BADC = 2;
+
+	/**
+	 * Little endian.
+	 */
+	public static final int DCBA = 3;
+
+	/**
+	 * Signed 16 bit integer.
+	 */
+	public static final int INT16 = 0;
+
+	/**
+	 * Unsigned 16 bit integer.
+	 */
+	public static final int UINT16 = 1;
+
+	/**
+	 * Signed 32 bit integer.
+	 */
+	public static final int INT32 = 2;
+
+	/**
+	 * Unsigned 32 bit integer.
+	 */
+	public static final int UINT32 = 3;
+
+	/**
+	 * Signed 64 bit integer.
+	 */
+	public static final int INT64 = 4;
+
+	/**
+	 * IEEE 754 single precision float.
+	 */
+	public static final int FLOAT32 = 5;
+
+	/**
+	 * IEEE 754 double precision float.
+	 */
+	public static final int FLOAT64 = 6;
+
+	/**
+	 * Four BCD digits in one register.
+	 */
+	public static final int BCD16 = 7;
+
+	/**
+	 * Eight BCD digits in two registers.
+	 */
+	public static final int BCD32 = 8;
+
+	/**
+	 * Character string, two characters per register.
+	 */
+	public static final int STRING = 9;
+
+	private static final String[] c_OrderNames = { "ABCD", "CDAB", "BADC",
+			"DCBA" };
+
+	private static final String[] c_TypeNames = { "int16", "uint16", "int32",
+			"uint32", "int64", "float32", "float64", "bcd16", "bcd32",
+			"string" };
+
+	private static final int[] c_WordCounts = { 1, 1, 2, 2, 4, 2, 4, 1, 2, 0 };
+
+	private RegisterCodec() {
+	}// constructor
+
+	/**
+	 * Returns the order with the given name, e.g. <tt>CDAB</tt>.
+	 * 
+	 * @param name
+	 *            the name of the order, case is ignored.
+	 * @return the order as <tt>int</tt>.
+	 * @throws IllegalArgumentException
+	 *             if the name is unknown.
+	 */
+	public static int getOrder(String name) {
+		for (int i = 0; i < c_OrderNames.length; i++) {
+			if (c_OrderNames[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown order: " + name);
+	}// getOrder
+
+	/**
+	 * Returns the name of the given order.
+	 * 
+	 * @param order
+	 *            the order.
+	 * @return the name as <tt>String</tt>.
+	 */
+	public static String getOrderName(int order) {
+		return c_OrderNames[order];
+	}// getOrderName
+
+	/**
+	 * Returns the type with the given name, e.g. <tt>float32</tt>.
+	 * 
+	 * @param name
+	 *            the name of the type, case is ignored.
+	 * @return the type as <tt>int</tt>.
+	 * @throws IllegalArgumentException
+	 *             if the name is unknown.
+	 */
+	public static int getType(String name) {
+		for (int i = 0; i < c_TypeNames.length; i++) {
+			if (c_TypeNames[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown type: " + name);
+	}// getType
+
+	/**
+	 * Returns the name of the given type.
+	 * 
+	 * @param type
+	 *            the type.
+	 * @return the name as <tt>String</tt>.
+	 */
+	public static String getTypeName(int type) {
+		return c_TypeNames[type];
+	}// getTypeName
+
+	/**
+	 * Returns the number of registers a value of the given type occupies.
+	 * 
+	 * @param type
+	 *            the type.
+	 * @return the number of registers, or 0 for <tt>STRING</tt>, whose length
+	 *         varies.
+	 */
+	public static int getWordCount(int type) {
+		return c_WordCounts[type];
+	}// getWordCount
+
+	/**
+	 * Tests if values of the given type are integers, i.e. can be decoded
+	 * into a <tt>long</tt> without loss.
+	 * 
+	 * @param type
+	 *            the type.
+	 * @return true if integer, false otherwise.
+	 */
+	public static boolean isInteger(int type) {
+		return type != FLOAT32 && type != FLOAT64 && type != STRING;
+	}// isInteger
+
+	// scalar decoders on raw registers
+
+	/**
+	 * Decodes a signed 16 bit integer from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static short getInt16(byte[] src, int off, int order) {
+		return (short) getBits(src, off, 1, order);
+	}// getInt16
+
+	/**
+	 * Decodes an unsigned 16 bit integer from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static int getUInt16(byte[] src, int off, int order) {
+		return (int) getBits(src, off, 1, order);
+	}// getUInt16
+
+	/**
+	 * Decodes a signed 32 bit integer from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static int getInt32(byte[] src, int off, int order) {
+		return (int) getBits(src, off, 2, order);
+	}// getInt32
+
+	/**
+	 * Decodes an unsigned 32 bit integer from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static long getUInt32(byte[] src, int off, int order) {
+		return getBits(src, off, 2, order);
+	}// getUInt32
+
+	/**
+	 * Decodes a signed 64 bit integer from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static long getInt64(byte[] src, int off, int order) {
+		return getBits(src, off, 4, order);
+	}// getInt64
+
+	/**
+	 * Decodes a single precision float from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static float getFloat32(byte[] src, int off, int order) {
+		return Float.intBitsToFloat((int) getBits(src, off, 2, order));
+	}// getFloat32
+
+	/**
+	 * Decodes a double precision float from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static double getFloat64(byte[] src, int off, int order) {
+		return Double.longBitsToDouble(getBits(src, off, 4, order));
+	}// getFloat64
+
+	/**
+	 * Decodes a four digit BCD value from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 * @throws IllegalArgumentException
+	 *             if a digit is invalid.
+	 */
+	public static int getBCD16(byte[] src, int off, int order) {
+		return (int) fromBCD(getBits(src, off, 1, order), 4);
+	}// getBCD16
+
+	/**
+	 * Decodes an eight digit BCD value from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 * @throws IllegalArgumentException
+	 *             if a digit is invalid.
+	 */
+	public static int getBCD32(byte[] src, int off, int order) {
+		return (int) fromBCD(getBits(src, off, 2, order), 8);
+	}// getBCD32
+
+	/**
+	 * Decodes a string of one byte characters, ending at the first NUL
+	 * character.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>src</tt>.
+	 * @param words
+	 *            the number of registers holding the string.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded <tt>String</tt>.
+	 */
+	public static String getString(byte[] src, int off, int words, int order) {
+		char[] chars = new char[words * 2];
+		int len = 0;
+		for (int i = 0; i < words; i++) {
+			int w = getWord(src, off, i, words, order);
+			if ((chars[len] = (char) (w >>> 8)) == 0) {
+				break;
+			}
+			if ((chars[++len] = (char) (w & 0xff)) == 0) {
+				break;
+			}
+			len++;
+		}
+		return new String(chars, 0, len);
+	}// getString
+
+	// scalar decoders on register values
+
+	/**
+	 * Decodes a signed 16 bit integer from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static short getInt16(int[] src, int idx, int order) {
+		return (short) getBits(src, idx, 1, order);
+	}// getInt16
+
+	/**
+	 * Decodes an unsigned 16 bit integer from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static int getUInt16(int[] src, int idx, int order) {
+		return (int) getBits(src, idx, 1, order);
+	}// getUInt16
+
+	/**
+	 * Decodes a signed 32 bit integer from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static int getInt32(int[] src, int idx, int order) {
+		return (int) getBits(src, idx, 2, order);
+	}// getInt32
+
+	/**
+	 * Decodes an unsigned 32 bit integer from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static long getUInt32(int[] src, int idx, int order) {
+		return getBits(src, idx, 2, order);
+	}// getUInt32
+
+	/**
+	 * Decodes a signed 64 bit integer from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static long getInt64(int[] src, int idx, int order) {
+		return getBits(src, idx, 4, order);
+	}// getInt64
+
+	/**
+	 * Decodes a single precision float from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static float getFloat32(int[] src, int idx, int order) {
+		return Float.intBitsToFloat((int) getBits(src, idx, 2, order));
+	}// getFloat32
+
+	/**
+	 * Decodes a double precision float from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 */
+	public static double getFloat64(int[] src, int idx, int order) {
+		return Double.longBitsToDouble(getBits(src, idx, 4, order));
+	}// getFloat64
+
+	/**
+	 * Decodes a four digit BCD value from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 * @throws IllegalArgumentException
+	 *             if a digit is invalid.
+	 */
+	public static int getBCD16(int[] src, int idx, int order) {
+		return (int) fromBCD(getBits(src, idx, 1, order), 4);
+	}// getBCD16
+
+	/**
+	 * Decodes an eight digit BCD value from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded value.
+	 * @throws IllegalArgumentException
+	 *             if a digit is invalid.
+	 */
+	public static int getBCD32(int[] src, int idx, int order) {
+		return (int) fromBCD(getBits(src, idx, 2, order), 8);
+	}// getBCD32
+
+	/**
+	 * Decodes a string from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>src</tt>.
+	 * @param words
+	 *            the number of registers holding the string.
+	 * @param order
+	 *            the order of the registers.
+	 * @return the decoded <tt>String</tt>.
+	 */
+	public static String getString(int[] src, int idx, int words, int order) {
+		char[] chars = new char[words * 2];
+		int len = 0;
+		for (int i = 0; i < words; i++) {
+			int w = getWord(src, idx, i, words, order);
+			if ((chars[len] = (char) (w >>> 8)) == 0) {
+				break;
+			}
+			if ((chars[++len] = (char) (w & 0xff)) == 0) {
+				break;
+			}
+			len++;
+		}
+		return new String(chars, 0, len);
+	}// getString
+
+	// scalar encoders on raw registers
+
+	/**
+	 * Encodes a signed 16 bit integer into raw registers.
+	 * 
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setInt16(byte[] dst, int off, int v, int order) {
+		putBits(dst, off, v, 1, order);
+	}// setInt16
+
+	/**
+	 * Encodes a signed 32 bit integer into raw registers.
+	 * 
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setInt32(byte[] dst, int off, long v, int order) {
+		putBits(dst, off, v, 2, order);
+	}// setInt32
+
+	/**
+	 * Encodes a signed 64 bit integer into raw registers.
+	 * 
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setInt64(byte[] dst, int off, long v, int order) {
+		putBits(dst, off, v, 4, order);
+	}// setInt64
+
+	/**
+	 * Encodes a single precision float into raw registers.
+	 * 
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setFloat32(byte[] dst, int off, float v, int order) {
+		putBits(dst, off, Float.floatToIntBits(v), 2, order);
+	}// setFloat32
+
+	/**
+	 * Encodes a double precision float into raw registers.
+	 * 
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setFloat64(byte[] dst, int off, double v, int order) {
+		putBits(dst, off, Double.doubleToLongBits(v), 4, order);
+	}// setFloat64
+
+	/**
+	 * Encodes a four digit BCD value into raw registers.
+	 * 
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 * @throws IllegalArgumentException
+	 *             if the value is out of range.
+	 */
+	public static void setBCD16(byte[] dst, int off, int v, int order) {
+		putBits(dst, off, toBCD(v, 4), 1, order);
+	}// setBCD16
+
+	/**
+	 * Encodes an eight digit BCD value into raw registers.
+	 * 
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 * @throws IllegalArgumentException
+	 *             if the value is out of range.
+	 */
+	public static void setBCD32(byte[] dst, int off, int v, int order) {
+		putBits(dst, off, toBCD(v, 8), 2, order);
+	}// setBCD32
+
+	/**
+	 * Encodes a string of one byte characters, padded with NUL characters
+	 * or truncated to the given number of registers.
+	 * 
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first register in <tt>dst</tt>.
+	 * @param words
+	 *            the number of registers to hold the string.
+	 * @param s
+	 *            the <tt>String</tt> to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setString(byte[] dst, int off, int words, String s,
+			int order) {
+		for (int i = 0; i < words; i++) {
+			putWord(dst, off, i, words, stringWord(s, i), order);
+		}
+	}// setString
+
+	// scalar encoders on register values
+
+	/**
+	 * Encodes a signed 16 bit integer into register values.
+	 * 
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setInt16(int[] dst, int idx, int v, int order) {
+		putBits(dst, idx, v, 1, order);
+	}// setInt16
+
+	/**
+	 * Encodes a signed 32 bit integer into register values.
+	 * 
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setInt32(int[] dst, int idx, long v, int order) {
+		putBits(dst, idx, v, 2, order);
+	}// setInt32
+
+	/**
+	 * Encodes a signed 64 bit integer into register values.
+	 * 
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setInt64(int[] dst, int idx, long v, int order) {
+		putBits(dst, idx, v, 4, order);
+	}// setInt64
+
+	/**
+	 * Encodes a single precision float into register values.
+	 * 
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setFloat32(int[] dst, int idx, float v, int order) {
+		putBits(dst, idx, Float.floatToIntBits(v), 2, order);
+	}// setFloat32
+
+	/**
+	 * Encodes a double precision float into register values.
+	 * 
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 */
+	public static void setFloat64(int[] dst, int idx, double v, int order) {
+		putBits(dst, idx, Double.doubleToLongBits(v), 4, order);
+	}// setFloat64
+
+	/**
+	 * Encodes a four digit BCD value into register values.
+	 * 
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 * @throws IllegalArgumentException
+	 *             if the value is out of range.
+	 */
+	public static void setBCD16(int[] dst, int idx, int v, int order) {
+		putBits(dst, idx, toBCD(v, 4), 1, order);
+	}// setBCD16
+
+	/**
+	 * Encodes an eight digit BCD value into register values.
+	 * 
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>dst</tt>.
+	 * @param v
+	 *            the value to be encoded.
+	 * @param order
+	 *            the order of the registers.
+	 * @throws IllegalArgumentException
+	 *             if the value is out of range.
+	 */
+	public static void setBCD32(int[] dst, int idx, int v, int order) {
+		putBits(dst, idx, toBCD(v, 8), 2, order);
+	}// setBCD32
+
+	/**
+	 * Encodes a string into register values.
+	 * 
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first register in <tt>dst</tt>.
+	 * @param words
+	 *            the number of registers holding the string.
+	 * @param s
+	 *            the <tt>String</tt> to be encoded.
+	 */
+	public static void setString(int[] dst, int idx, int words, String s,
+			int order) {
+		for (int i = 0; i < words; i++) {
+			putWord(dst, idx, i, words, stringWord(s, i), order);
+		}
+	}// setString
+
+	// bulk decoders
+
+	/**
+	 * Decodes consecutive values of one type from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first value in <tt>src</tt>.
+	 * @param type
+	 *            the type of the values, any but <tt>STRING</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 * @throws IllegalArgumentException
+	 *             if the type is <tt>STRING</tt>.
+	 */
+	public static void decode(byte[] src, int off, int type, int order,
+			double[] dst, int dstOff, int count) {
+		int words = checkNumeric(type);
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = toDouble(getBits(src, off, words, order), type);
+			off += words * 2;
+		}
+	}// decode
+
+	/**
+	 * Decodes consecutive values of one integer type from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first value in <tt>src</tt>.
+	 * @param type
+	 *            the type of the values, an integer type.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 * @throws IllegalArgumentException
+	 *             if the type is not an integer type.
+	 */
+	public static void decode(byte[] src, int off, int type, int order,
+			long[] dst, int dstOff, int count) {
+		int words = checkInteger(type);
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = toLong(getBits(src, off, words, order), type);
+			off += words * 2;
+		}
+	}// decode
+
+	/**
+	 * Decodes consecutive values of one type from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param type
+	 *            the type of the values.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 * @throws IllegalArgumentException
+	 *             if the type is <tt>STRING</tt>.
+	 */
+	public static void decode(int[] src, int idx, int type, int order,
+			double[] dst, int dstOff, int count) {
+		int words = checkNumeric(type);
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = toDouble(getBits(src, idx, words, order), type);
+			idx += words;
+		}
+	}// decode
+
+	/**
+	 * Decodes consecutive values of one integer type from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param type
+	 *            the type of the values.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 * @throws IllegalArgumentException
+	 *             if the type is not an integer type.
+	 */
+	public static void decode(int[] src, int idx, int type, int order,
+			long[] dst, int dstOff, int count) {
+		int words = checkInteger(type);
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = toLong(getBits(src, idx, words, order), type);
+			idx += words;
+		}
+	}// decode
+
+	/**
+	 * Decodes consecutive signed 16 bit integers from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first value in <tt>src</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 */
+	public static void decodeInt16(byte[] src, int off, int order,
+			short[] dst, int dstOff, int count) {
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = (short) getBits(src, off + i * 2, 1, order);
+		}
+	}// decodeInt16
+
+	/**
+	 * Decodes consecutive signed 32 bit integers from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first value in <tt>src</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 */
+	public static void decodeInt32(byte[] src, int off, int order, int[] dst,
+			int dstOff, int count) {
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = (int) getBits(src, off + i * 4, 2, order);
+		}
+	}// decodeInt32
+
+	/**
+	 * Decodes consecutive single precision floats from raw registers.
+	 * 
+	 * @param src
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first value in <tt>src</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 */
+	public static void decodeFloat32(byte[] src, int off, int order,
+			float[] dst, int dstOff, int count) {
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = Float.intBitsToFloat((int) getBits(src, off + i
+					* 4, 2, order));
+		}
+	}// decodeFloat32
+
+	/**
+	 * Decodes consecutive signed 16 bit integers from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 */
+	public static void decodeInt16(int[] src, int idx, int order,
+			short[] dst, int dstOff, int count) {
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = (short) getBits(src, idx + i, 1, order);
+		}
+	}// decodeInt16
+
+	/**
+	 * Decodes consecutive signed 32 bit integers from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 */
+	public static void decodeInt32(int[] src, int idx, int order, int[] dst,
+			int dstOff, int count) {
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = (int) getBits(src, idx + i * 2, 2, order);
+		}
+	}// decodeInt32
+
+	/**
+	 * Decodes consecutive single precision floats from register values.
+	 * 
+	 * @param src
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the array to decode into.
+	 * @param dstOff
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 */
+	public static void decodeFloat32(int[] src, int idx, int order,
+			float[] dst, int dstOff, int count) {
+		for (int i = 0; i < count; i++) {
+			dst[dstOff + i] = Float.intBitsToFloat((int) getBits(src, idx + i
+					* 2, 2, order));
+		}
+	}// decodeFloat32
+
+	// bulk encoders
+
+	/**
+	 * Encodes consecutive values of one type into raw registers. Values of
+	 * integer types are rounded, excess high bits are dropped.
+	 * 
+	 * @param src
+	 *            the values to be encoded.
+	 * @param srcOff
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param type
+	 *            the type of the values, any but <tt>STRING</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 * @throws IllegalArgumentException
+	 *             if the type is <tt>STRING</tt>, or a BCD value is out of
+	 *             range.
+	 */
+	public static void encode(double[] src, int srcOff, int type, int order,
+			byte[] dst, int off, int count) {
+		int words = checkNumeric(type);
+		for (int i = 0; i < count; i++) {
+			putBits(dst, off, fromDouble(src[srcOff + i], type), words, order);
+			off += words * 2;
+		}
+	}// encode
+
+	/**
+	 * Encodes consecutive values of one integer type into raw registers.
+	 * Excess high bits are dropped.
+	 * 
+	 * @param src
+	 *            the values to be encoded.
+	 * @param srcOff
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param type
+	 *            the type of the values, an integer type.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 * @throws IllegalArgumentException
+	 *             if the type is not an integer type, or a BCD value is out
+	 *             of range.
+	 */
+	public static void encode(long[] src, int srcOff, int type, int order,
+			byte[] dst, int off, int count) {
+		int words = checkInteger(type);
+		for (int i = 0; i < count; i++) {
+			putBits(dst, off, fromLong(src[srcOff + i], type), words, order);
+			off += words * 2;
+		}
+	}// encode
+
+	/**
+	 * Encodes consecutive values of one type into register values. Values of
+	 * integer types are rounded, excess high bits are dropped.
+	 * 
+	 * @param src
+	 *            the values to be encoded.
+	 * @param srcOff
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param type
+	 *            the type of the values.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 * @throws IllegalArgumentException
+	 *             if the type is <tt>STRING</tt>, or a BCD value is out of
+	 *             range.
+	 */
+	public static void encode(double[] src, int srcOff, int type, int order,
+			int[] dst, int idx, int count) {
+		int words = checkNumeric(type);
+		for (int i = 0; i < count; i++) {
+			putBits(dst, idx, fromDouble(src[srcOff + i], type), words, order);
+			idx += words;
+		}
+	}// encode
+
+	/**
+	 * Encodes consecutive values of one integer type into register values.
+	 * Excess high bits are dropped.
+	 * 
+	 * @param src
+	 *            the values to be encoded.
+	 * @param srcOff
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param type
+	 *            the type of the values.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 * @throws IllegalArgumentException
+	 *             if the type is not an integer type, or a BCD value is out
+	 *             of range.
+	 */
+	public static void encode(long[] src, int srcOff, int type, int order,
+			int[] dst, int idx, int count) {
+		int words = checkInteger(type);
+		for (int i = 0; i < count; i++) {
+			putBits(dst, idx, fromLong(src[srcOff + i], type), words, order);
+			idx += words;
+		}
+	}// encode
+
+	/**
+	 * Encodes consecutive single precision floats into raw registers.
+	 * 
+	 * @param src
+	 *            the values to be encoded.
+	 * @param srcOff
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the raw registers.
+	 * @param off
+	 *            the offset of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 */
+	public static void encodeFloat32(float[] src, int srcOff, int order,
+			byte[] dst, int off, int count) {
+		for (int i = 0; i < count; i++) {
+			putBits(dst, off + i * 4, Float.floatToIntBits(src[srcOff + i]), 2,
+					order);
+		}
+	}// encodeFloat32
+
+	/**
+	 * Encodes consecutive single precision floats into register values.
+	 * 
+	 * @param src
+	 *            the values to be encoded.
+	 * @param srcOff
+	 *            the index of the first value in <tt>src</tt>.
+	 * @param order
+	 *            the order of the values.
+	 * @param dst
+	 *            the register values.
+	 * @param idx
+	 *            the index of the first value in <tt>dst</tt>.
+	 * @param count
+	 *            the number of values.
+	 */
+	public static void encodeFloat32(float[] src, int srcOff, int order,
+			int[] dst, int idx, int count) {
+		for (int i = 0; i < count; i++) {
+			putBits(dst, idx + i * 2, Float.floatToIntBits(src[srcOff + i]), 2,
+					order);
+		}
+	}// encodeFloat32
+
+	// conversions between bits and values
+
+	private static double toDouble(long bits, int type) {
+		switch (type) {
+		case FLOAT32:
+			return Float.intBitsToFloat((int) bits);
+		case FLOAT64:
+			return Double.longBitsToDouble(bits);
+		default:
+			return toLong(bits, type);
+		}
+	}// toDouble
+
+	private static long toLong(long bits, int type) {
+		switch (type) {
+		case INT16:
+			return (short) bits;
+		case INT32:
+			return (int) bits;
+		case BCD16:
+			return fromBCD(bits, 4);
+		case BCD32:
+			return fromBCD(bits, 8);
+		default:
+			// unsigned types and INT64
+			return bits;
+		}
+	}// toLong
+
+	private static long fromDouble(double v, int type) {
+		switch (type) {
+		case FLOAT32:
+			return Float.floatToIntBits((float) v);
+		case FLOAT64:
+			return Double.doubleToLongBits(v);
+		default:
+			return fromLong(Math.round(v), type);
+		}
+	}// fromDouble
+
+	private static long fromLong(long v, int type) {
+		switch (type) {
+		case BCD16:
+			return toBCD(v, 4);
+		case BCD32:
+			return toBCD(v, 8);
+		default:
+			return v;
+		}
+	}// fromLong
+
+	private static long fromBCD(long bits, int digits) {
+		long v = 0;
+		for (int i = digits - 1; i >= 0; i--) {
+			int d = (int) (bits >>> (i * 4)) & 0x0f;
+			if (d > 9) {
+				throw new IllegalArgumentException("Invalid BCD digit: " + d);
+			}
+			v = v * 10 + d;
+		}
+		return v;
+	}// fromBCD
+
+	private static long toBCD(long v, int digits) {
+		if (v < 0 || (digits == 4 && v > 9999) || v > 99999999L) {
+			throw new IllegalArgumentException("Value out of BCD range: " + v);
+		}
+		long bits = 0;
+		for (int i = 0; i < digits; i++) {
+			bits |= (v % 10) << (i * 4);
+			v /= 10;
+		}
+		return bits;
+	}// toBCD
+
+	private static int stringWord(String s, int i) {
+		int hi = (2 * i < s.length()) ? s.charAt(2 * i) & 0xff : 0;
+		int lo = (2 * i + 1 < s.length()) ? s.charAt(2 * i + 1) & 0xff : 0;
+		return (hi << 8) | lo;
+	}// stringWord
+
+	private static int checkNumeric(int type) {
+		if (type == STRING) {
+			throw new IllegalArgumentException("Not a numeric type: string");
+		}
+		return c_WordCounts[type];
+	}// checkNumeric
+
+	private static int checkInteger(int type) {
+		if (!isInteger(type)) {
+			throw new IllegalArgumentException("Not an integer type: "
+					+ c_TypeNames[type]);
+		}
+		return c_WordCounts[type];
+	}// checkInteger
+
+	// access to the words of a value, the order applied
+
+	private static long getBits(byte[] src, int off, int words, int order) {
+		long bits = 0;
+		for (int i = 0; i < words; i++) {
+			bits = (bits << 16) | getWord(src, off, i, words, order);
+		}
+		return bits;
+	}// getBits
+
+	private static long getBits(int[] src, int idx, int words, int order) {
+		long bits = 0;
+		for (int i = 0; i < words; i++) {
+			bits = (bits << 16) | getWord(src, idx, i, words, order);
+		}
+		return bits;
+	}// getBits
+
+	private static void putBits(byte[] dst, int off, long bits, int words,
+			int order) {
+		for (int i = words - 1; i >= 0; i--) {
+			putWord(dst, off, i, words, (int) bits & 0xffff, order);
+			bits >>>= 16;
+		}
+	}// putBits
+
+	private static void putBits(int[] dst, int idx, long bits, int words,
+			int order) {
+		for (int i = words - 1; i >= 0; i--) {
+			putWord(dst, idx, i, words, (int) bits & 0xffff, order);
+			bits >>>= 16;
+		}
+	}// putBits
+
+	/**
+	 * Returns the word of a value with the given significance, 0 being the
+	 * most significant word.
+	 */
+	private static int getWord(byte[] src, int off, int i, int words,
+			int order) {
+		int pos = off + 2 * ((order == CDAB || order == DCBA) ? words - 1 - i
+				: i);
+		if (order == BADC || order == DCBA) {
+			return (src[pos] & 0xff) | ((src[pos + 1] & 0xff) << 8);
+		}
+		return ((src[pos] & 0xff) << 8) | (src[pos + 1] & 0xff);
+	}// getWord
+
+	private static int getWord(int[] src, int idx, int i, int words, int order) {
+		int w = src[idx + ((order == CDAB || order == DCBA) ? words - 1 - i : i)];
+		if (order == BADC || order == DCBA) {
+			return ((w & 0xff) << 8) | ((w >>> 8) & 0xff);
+		}
+		return w & 0xffff;
+	}// getWord
+
+	private static void putWord(byte[] dst, int off, int i, int words, int w,
+			int order) {
+		int pos = off + 2 * ((order == CDAB || order == DCBA) ? words - 1 - i
+				: i);
+		if (order == BADC || order == DCBA) {
+			dst[pos] = (byte) w;
+			dst[pos + 1] = (byte) (w >>> 8);
+		} else {
+			dst[pos] = (byte) (w >>> 8);
+			dst[pos + 1] = (byte) w;
+		}
+	}// putWord
+
+	private static void putWord(int[] dst, int idx, int i, int words, int w,
+			int order) {
+		if (order == BADC || order == DCBA) {
+			w = ((w & 0xff) << 8) | ((w >>> 8) & 0xff);
+		}
+		dst[idx + ((order == CDAB || order == DCBA) ? words - 1 - i : i)] = w;
+	}// putWord
+
+}// class RegisterCodec
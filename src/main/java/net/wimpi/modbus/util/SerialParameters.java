@@ -520,6 +520,69 @@ public class SerialParameters {
 		m_ReceiveTimeout = Integer.parseInt(str);
 	}// setReceiveTimeout
 
+	/**
+	 * Returns the number of bits on the line per transmitted character,
+	 * including start bit, data bits, parity bit and stop bits.
+	 * 
+	 * @return the number of bits per character.
+	 */
+	public double getCharacterBits() {
+		double bits = 1 + m_Databits;
+		if (m_Parity != SerialPort.PARITY_NONE) {
+			bits++;
+		}
+		switch (m_Stopbits) {
+		case SerialPort.STOPBITS_1_5:
+			return bits + 1.5;
+		case SerialPort.STOPBITS_2:
+			return bits + 2;
+		default:
+			return bits + 1;
+		}
+	}// getCharacterBits
+
+	/**
+	 * Returns the time it takes to transmit a single character with the
+	 * configured baud rate and character format.
+	 * 
+	 * @return the character time in nanoseconds.
+	 */
+	public long getCharacterTimeNanos() {
+		return (long) (getCharacterBits() * 1000000000L / m_BaudRate);
+	}// getCharacterTimeNanos
+
+	/**
+	 * Returns the minimum silent interval that has to separate two frames on
+	 * the line (t3.5).
+	 * <p>
+	 * This is 3.5 character times; above 19200 baud the specification fixes
+	 * the interval at 1750 microseconds.
+	 * 
+	 * @return the inter-frame delay in nanoseconds.
+	 */
+	public long getInterFrameDelayNanos() {
+		if (m_BaudRate > 19200) {
+			return 1750000L;
+		}
+		return getCharacterTimeNanos() * 7 / 2;
+	}// getInterFrameDelayNanos
+
+	/**
+	 * Returns the maximum silent interval allowed between two characters of
+	 * the same frame (t1.5).
+	 * <p>
+	 * This is 1.5 character times; above 19200 baud the specification fixes
+	 * the interval at 750 microseconds.
+	 * 
+	 * @return the inter-character timeout in nanoseconds.
+	 */
+	public long getInterCharacterTimeoutNanos() {
+		if (m_BaudRate > 19200) {
+			return 750000L;
+		}
+		return getCharacterTimeNanos() * 3 / 2;
+	}// getInterCharacterTimeoutNanos
+
 	/**
 	 * Converts a <tt>String</tt> describing a flow control type to the
 	 * <tt>int</tt> which is defined in SerialPort.
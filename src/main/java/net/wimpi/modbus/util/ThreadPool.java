@@ -20,10 +20,18 @@
 package net.wimpi.modbus.util;
 
 import java.util.ArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class implementing a simple thread pool.
+ * <p>
+ * The pool may be bounded by a capacity, the number of tasks that can wait
+ * for a free thread. Once it is reached, {@link #execute(Runnable)} blocks
+ * and {@link #offer(Runnable)} fails, so that callers notice the overload
+ * instead of queueing work without limit.
  * 
  * @author Dieter Wimberger
  * @version @version@ (@date@)
@@ -34,15 +42,35 @@ public class ThreadPool {
 	private final LinkedQueue m_TaskPool;
 	private ArrayList<PoolThread> m_Threads;
 	private int m_Size = 1;
+	private final int m_Capacity;
+	private final Semaphore m_Slots;
+	private final AtomicInteger m_Queued = new AtomicInteger();
+	private final AtomicInteger m_Active = new AtomicInteger();
 
 	/**
-	 * Constructs a new <tt>ThreadPool</tt> instance.
+	 * Constructs a new <tt>ThreadPool</tt> instance with an unbounded task
+	 * queue.
 	 * 
 	 * @param size
 	 *            the size of the thread pool.
 	 */
 	public ThreadPool(int size) {
+		this(size, 0);
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>ThreadPool</tt> instance.
+	 * 
+	 * @param size
+	 *            the size of the thread pool.
+	 * @param capacity
+	 *            the maximum number of tasks waiting for a thread, or 0 for
+	 *            no limit.
+	 */
+	public ThreadPool(int size, int capacity) {
 		m_Size = size;
+		m_Capacity = capacity;
+		m_Slots = (capacity > 0) ? new Semaphore(capacity) : null;
 		m_TaskPool = new LinkedQueue();
 		m_Threads = new ArrayList<PoolThread>();
 		initPool();
@@ -50,21 +78,115 @@ public class ThreadPool {
 
 	/**
 	 * Execute the <tt>Runnable</tt> instance through a thread in this
-	 * <tt>ThreadPool</tt>.
+	 * <tt>ThreadPool</tt>. If the pool is bounded and full, waits until a
+	 * task has been picked up.
+	 * <p>
+	 * If the calling thread is interrupted while waiting, the task is not
+	 * queued and the interrupt status of the thread is set again, so the
+	 * caller can dispose of the task.
 	 * 
 	 * @param task
 	 *            the <tt>Runnable</tt> to be executed.
+	 * @return true if the task was queued, false if the calling thread was
+	 *         interrupted while waiting.
 	 */
-	public void execute(Runnable task) {
-		try {
-			synchronized(m_TaskPool) {
-				m_TaskPool.put(task);
+	public boolean execute(Runnable task) {
+		if (m_Slots != null) {
+			try {
+				m_Slots.acquire();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return false;
 			}
-		} catch (InterruptedException ex) {
-			// FIXME: Handle!?
 		}
+		enqueue(task);
+		return true;
 	}// execute
 
+	/**
+	 * Execute the <tt>Runnable</tt> instance through a thread in this
+	 * <tt>ThreadPool</tt>, unless the pool is full.
+	 * 
+	 * @param task
+	 *            the <tt>Runnable</tt> to be executed.
+	 * @return true if the task was queued, false if the pool is full.
+	 */
+	public boolean offer(Runnable task) {
+		if (m_Slots != null && !m_Slots.tryAcquire()) {
+			return false;
+		}
+		enqueue(task);
+		return true;
+	}// offer
+
+	/**
+	 * Execute the <tt>Runnable</tt> instance through a thread in this
+	 * <tt>ThreadPool</tt>, waiting at most the given time for room if the
+	 * pool is full.
+	 * 
+	 * @param task
+	 *            the <tt>Runnable</tt> to be executed.
+	 * @param msecs
+	 *            the maximum time to wait in milliseconds.
+	 * @return true if the task was queued, false if the pool stayed full.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting.
+	 */
+	public boolean offer(Runnable task, long msecs)
+			throws InterruptedException {
+		if (m_Slots != null
+				&& !m_Slots.tryAcquire(msecs, TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+		enqueue(task);
+		return true;
+	}// offer
+
+	private void enqueue(Runnable task) {
+		m_Queued.incrementAndGet();
+		try {
+			m_TaskPool.put(task);
+		} catch (InterruptedException ex) {
+			// not thrown, adding does not block
+		}
+	}// enqueue
+
+	/**
+	 * Returns the number of threads in this <tt>ThreadPool</tt>.
+	 * 
+	 * @return the pool size.
+	 */
+	public int getSize() {
+		return m_Size;
+	}// getSize
+
+	/**
+	 * Returns the maximum number of tasks waiting for a thread.
+	 * 
+	 * @return the capacity, or 0 if unbounded.
+	 */
+	public int getCapacity() {
+		return m_Capacity;
+	}// getCapacity
+
+	/**
+	 * Returns the number of tasks currently executed.
+	 * 
+	 * @return the number of active tasks.
+	 */
+	public int getActiveCount() {
+		return m_Active.get();
+	}// getActiveCount
+
+	/**
+	 * Returns the number of tasks waiting for a thread.
+	 * 
+	 * @return the number of queued tasks.
+	 */
+	public int getQueuedCount() {
+		return m_Queued.get();
+	}// getQueuedCount
+
 	/**
 	 * Initializes the pool, populating it with n started threads.
 	 */
@@ -109,8 +231,17 @@ public class ThreadPool {
 			do {
 				try {
 					task = (Runnable) m_TaskPool.take();
-					task.run();
-					
+					m_Queued.decrementAndGet();
+					if (m_Slots != null) {
+						m_Slots.release();
+					}
+					m_Active.incrementAndGet();
+					try {
+						task.run();
+					} finally {
+						m_Active.decrementAndGet();
+						task = null;
+					}
 				} catch (Exception e) {
 					// Ignore, we were likely just interrupted. Recheck if we
 					// should be running or not.
@@ -0,0 +1,231 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class implementing a hashed timer wheel.
+ * <p>
+ * Timeouts are kept in a fixed number of buckets that are visited by a single
+ * thread once per tick, so scheduling and cancelling a timeout takes constant
+ * time regardless of the number of pending timeouts. The price is a
+ * resolution of one tick, which is fine for protocol timeouts of many
+ * outstanding requests.
+ * <p>
+ * The tasks of expired timeouts run on the thread of the wheel and should
+ * therefore return quickly.
+ * 
+ * @author jamod development team
+ * @version @version@ (@date@)
+ */
+public class TimerWheel {
+
+	private final Timeout[] m_Buckets;
+	private final long m_TickNanos;
+	private long m_Tick;
+	private int m_Pending;
+	private Thread m_Thread;
+	private volatile boolean m_Running;
+
+	/**
+	 * Constructs a new <tt>TimerWheel</tt> with the given tick duration and
+	 * number of buckets. The wheel thread is started with the first
+	 * scheduled timeout.
+	 * 
+	 * @param tickMillis
+	 *            the duration of a tick in milliseconds.
+	 * @param size
+	 *            the number of buckets.
+	 */
+	public TimerWheel(long tickMillis, int size) {
+		m_TickNanos = Math.max(1, tickMillis) * 1000000L;
+		m_Buckets = new Timeout[size];
+	}// constructor
+
+	/**
+	 * Constructs a new <tt>TimerWheel</tt> with a tick of 10 milliseconds and
+	 * 512 buckets.
+	 */
+	public TimerWheel() {
+		this(10, 512);
+	}// constructor
+
+	/**
+	 * Schedules the given task to run once after the given delay.
+	 * 
+	 * @param task
+	 *            the task to be run.
+	 * @param delayMillis
+	 *            the delay in milliseconds.
+	 * @return the <tt>Timeout</tt> that can be used to cancel the task.
+	 */
+	public synchronized Timeout schedule(Runnable task, long delayMillis) {
+		if (!m_Running) {
+			start();
+		}
+		long ticks = Math.max(1, (delayMillis * 1000000L + m_TickNanos - 1)
+				/ m_TickNanos);
+		Timeout t = new Timeout(task);
+		long deadline = m_Tick + ticks;
+		t.m_Rounds = (ticks - 1) / m_Buckets.length;
+		t.m_Bucket = (int) (deadline % m_Buckets.length);
+		t.m_Next = m_Buckets[t.m_Bucket];
+		if (t.m_Next != null) {
+			t.m_Next.m_Prev = t;
+		}
+		m_Buckets[t.m_Bucket] = t;
+		m_Pending++;
+		return t;
+	}// schedule
+
+	/**
+	 * Returns the number of pending timeouts.
+	 * 
+	 * @return the number of pending timeouts.
+	 */
+	public synchronized int getPendingCount() {
+		return m_Pending;
+	}// getPendingCount
+
+	/**
+	 * Stops the thread of this <tt>TimerWheel</tt>, discarding all pending
+	 * timeouts.
+	 */
+	public void stop() {
+		Thread t;
+		synchronized (this) {
+			m_Running = false;
+			for (int i = 0; i < m_Buckets.length; i++) {
+				while (m_Buckets[i] != null) {
+					remove(m_Buckets[i]);
+				}
+			}
+			t = m_Thread;
+			m_Thread = null;
+		}
+		if (t != null && t != Thread.currentThread()) {
+			t.interrupt();
+			try {
+				t.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}// stop
+
+	private void start() {
+		m_Running = true;
+		m_Thread = new Thread(new Runnable() {
+			public void run() {
+				tick();
+			}
+		}, "TimerWheel");
+		m_Thread.setDaemon(true);
+		m_Thread.start();
+	}// start
+
+	private synchronized boolean remove(Timeout t) {
+		if (t.m_Bucket < 0) {
+			return false;
+		}
+		if (t.m_Prev != null) {
+			t.m_Prev.m_Next = t.m_Next;
+		} else {
+			m_Buckets[t.m_Bucket] = t.m_Next;
+		}
+		if (t.m_Next != null) {
+			t.m_Next.m_Prev = t.m_Prev;
+		}
+		t.m_Prev = null;
+		t.m_Next = null;
+		t.m_Bucket = -1;
+		m_Pending--;
+		return true;
+	}// remove
+
+	private void tick() {
+		List<Timeout> expired = new ArrayList<Timeout>();
+		long next = System.nanoTime() + m_TickNanos;
+		while (m_Running) {
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+				} catch (InterruptedException ex) {
+					continue;
+				}
+			}
+			next += m_TickNanos;
+			synchronized (this) {
+				if (!m_Running) {
+					break;
+				}
+				m_Tick++;
+				int idx = (int) (m_Tick % m_Buckets.length);
+				Timeout t = m_Buckets[idx];
+				while (t != null) {
+					Timeout n = t.m_Next;
+					if (t.m_Rounds == 0) {
+						remove(t);
+						expired.add(t);
+					} else {
+						t.m_Rounds--;
+					}
+					t = n;
+				}
+			}
+			for (int i = 0; i < expired.size(); i++) {
+				try {
+					expired.get(i).m_Task.run();
+				} catch (RuntimeException ex) {
+					ex.printStackTrace();
+				}
+			}
+			expired.clear();
+		}
+	}// tick
+
+	/**
+	 * Handle of a task scheduled on a <tt>TimerWheel</tt>.
+	 */
+	public class Timeout {
+
+		private final Runnable m_Task;
+		private long m_Rounds;
+		private int m_Bucket;
+		private Timeout m_Prev;
+		private Timeout m_Next;
+
+		private Timeout(Runnable task) {
+			m_Task = task;
+		}// constructor
+
+		/**
+		 * Cancels this timeout.
+		 * 
+		 * @return true if the timeout was pending, false if it has already
+		 *         expired or been cancelled.
+		 */
+		public boolean cancel() {
+			return remove(this);
+		}// cancel
+
+	}// inner class Timeout
+
+}// class TimerWheel